@@ -126,6 +126,7 @@ public class HortonMessages {
     public static final String OMSKRIGING_pA_DESCRIPTION = "The range if the models runs with the gaussian variogram.";
     public static final String OMSKRIGING_pS_DESCRIPTION = "The sill if the models runs with the gaussian variogram.";
     public static final String OMSKRIGING_pNug_DESCRIPTION = "Is the nugget if the models runs with the gaussian variogram.";
+    public static final String OMSKRIGING_pMaxNeighbours_DESCRIPTION = "The number of nearest stations used for every point (local kriging), 0 to use all the stations.";
     public static final String OMSKRIGING_outGrid_DESCRIPTION = "The interpolated gridded data (for pMode == 1).";
     public static final String OMSKRIGING_outData_DESCRIPTION = "The interpolated data (for pMode == 0).";
 
@@ -173,6 +174,8 @@ public class HortonMessages {
     public static final String OMSPITFILLER_AUTHORNAMES = "David Tarboton, Andrea Antonello";
     public static final String OMSPITFILLER_AUTHORCONTACTS = "http://www.neng.usu.edu/cee/faculty/dtarb/tardem.html#programs, http://www.hydrologis.com";
     public static final String OMSPITFILLER_inElev_DESCRIPTION = "The map of digital elevation model (DEM).";
+    public static final String OMSPITFILLER_pMode_DESCRIPTION = "The filling algorithm (0 = iterative pool resolution, 1 = priority-flood, 2 = priority-flood with epsilon gradient on filled areas).";
+    public static final String OMSPITFILLER_pTileSize_DESCRIPTION = "If > 0, the priority-flood is done on tiles of this size and the result is kept on disk, to bound the memory used (not supported with epsilon gradient).";
     public static final String OMSPITFILLER_outPit_DESCRIPTION = "The depitted elevation map.";
 
     public static final String OMSSKYVIEW_DESCRIPTION = "Calculates the skyview factor.";
@@ -185,6 +188,8 @@ public class HortonMessages {
     public static final String OMSSKYVIEW_AUTHORNAMES = "Daniele Andreis and Riccardo Rigon";
     public static final String OMSSKYVIEW_AUTHORCONTACTS = "http://www.ing.unitn.it/dica/hp/?user=rigon";
     public static final String OMSSKYVIEW_inElev_DESCRIPTION = "The map of the elevation.";
+    public static final String OMSSKYVIEW_pHorizonSectors_DESCRIPTION = "The number of azimuth sectors of the horizon angles used for the skyview: if 0 the dem is swept for 35 directions and every elevation degree, else the horizon angles are computed once (default is 0).";
+    public static final String OMSSKYVIEW_inHorizon_DESCRIPTION = "An optional file to cache the horizon angles in: it is read if it was created for the same dem and sectors, else written.";
     public static final String OMSSKYVIEW_outSky_DESCRIPTION = "The map of skyview factor.";
 
     public static final String OMSSHALSTAB_DESCRIPTION = "A version of the OmsShalstab stability model.";
@@ -385,6 +390,8 @@ public class HortonMessages {
     public static final String OMSHILLSHADE_pMinDiffuse_DESCRIPTION = "The minimum value of diffuse insolation between 0 to 1 (default is 0).";
     public static final String OMSHILLSHADE_pAzimuth_DESCRIPTION = "The value of the azimuth (default is 360).";
     public static final String OMSHILLSHADE_pElev_DESCRIPTION = "The sun elevation (default is 90).";
+    public static final String OMSHILLSHADE_pHorizonSectors_DESCRIPTION = "The number of azimuth sectors of the horizon angles used for the shading: if 0 the dem is swept for every sun position, else the horizon angles are computed once (default is 0).";
+    public static final String OMSHILLSHADE_inHorizon_DESCRIPTION = "An optional file to cache the horizon angles in: it is read if it was created for the same dem and sectors, else written.";
     public static final String OMSHILLSHADE_outHill_DESCRIPTION = "The map of hillshade.";
 
     public static final String OMSEPANETPROJECTFILESGENERATOR_DESCRIPTION = "Generates the base shapefiles for an epanet run.";
@@ -569,6 +576,8 @@ public class HortonMessages {
     public static final String OMSINSOLATION_inElev_DESCRIPTION = "The map of the elevation.";
     public static final String OMSINSOLATION_tStartDate_DESCRIPTION = "The first day of the simulation.";
     public static final String OMSINSOLATION_tEndDate_DESCRIPTION = "The last day of the simulation.";
+    public static final String OMSINSOLATION_pHorizonSectors_DESCRIPTION = "The number of azimuth sectors of the horizon angles used for the shading: if 0 the dem is swept for every sun position, else the horizon angles are computed once (default is 0).";
+    public static final String OMSINSOLATION_inHorizon_DESCRIPTION = "An optional file to cache the horizon angles in: it is read if it was created for the same dem and sectors, else written.";
     public static final String OMSINSOLATION_outIns_DESCRIPTION = "The map of total insolation.";
 
     public static final String OMSMELTONNUMBER_DESCRIPTION = "Melton number calculator";
@@ -868,6 +877,7 @@ public class HortonMessages {
     public static final String OMSADIGE_inNetwork_DESCRIPTION = "The network data.";
     public static final String OMSADIGE_inEtp_DESCRIPTION = "The evapotranspiration data.";
     public static final String OMSADIGE_doLog_DESCRIPTION = "Switch to activate additional logging to file.";
+    public static final String OMSADIGE_pThreads_DESCRIPTION = "The number of threads used to solve the independent sub-networks in parallel, only for the Hymod model (default is 1).";
     public static final String OMSADIGE_tTimestep_DESCRIPTION = "The timestep in minutes.";
     public static final String OMSADIGE_tStart_DESCRIPTION = "The start date.";
     public static final String OMSADIGE_tEnd_DESCRIPTION = "The end date.";
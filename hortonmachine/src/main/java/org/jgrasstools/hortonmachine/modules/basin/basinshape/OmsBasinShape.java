@@ -135,7 +135,7 @@ public class OmsBasinShape extends JGTModel {
         int[] nstream = new int[1];
         // nstream[0] = 1508;
         WritableRaster basinsWR = CoverageUtilities.renderedImage2WritableRaster(basinsRI, true);
-        RandomIter basinsRandomIter = RandomIterFactory.create(basinsWR, null);
+        RandomIter basinsRandomIter = CoverageUtilities.getRandomIterator(basinsWR);
 
         for( int j = 0; j < nRows; j++ ) {
             for( int i = 0; i < nCols; i++ ) {
@@ -148,7 +148,7 @@ public class OmsBasinShape extends JGTModel {
         }
 
         WritableRaster subbasinsWR = CoverageUtilities.createDoubleWritableRaster(basinsRI.getWidth(), basinsRI.getHeight(),
-                null, basinsRI.getSampleModel(), doubleNovalue);
+                null, null, doubleNovalue);
 
         // create the feature type
         SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
@@ -189,7 +189,7 @@ public class OmsBasinShape extends JGTModel {
             double averageZ = 0.0;
             if (pitRI != null)
                 pitRandomIter = RandomIterFactory.create(pitRI, null);
-            WritableRandomIter subbasinIter = RandomIterFactory.createWritable(subbasinsWR, null);
+            WritableRandomIter subbasinIter = CoverageUtilities.getWritableRandomIterator(subbasinsWR);
             for( int i = 0; i < nCols; i++ ) {
                 for( int j = 0; j < nRows; j++ ) {
                     double basinId = basinsRandomIter.getSampleDouble(i, j, 0);
@@ -125,7 +125,7 @@ public class OmsRescaledDistance extends JGTModel {
         }
 
         WritableRaster rescaledWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
-        rescaledIter = RandomIterFactory.createWritable(rescaledWR, null);
+        rescaledIter = CoverageUtilities.getWritableRandomIterator(rescaledWR);
 
         pm.beginTask("Find outlets...", rows); //$NON-NLS-1$
         List<FlowNode> exitsList = new ArrayList<FlowNode>();
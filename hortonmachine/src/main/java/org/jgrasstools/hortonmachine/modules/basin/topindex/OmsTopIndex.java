@@ -34,7 +34,6 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTOPINDEX_outT
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -91,7 +90,7 @@ public class OmsTopIndex extends JGTModel {
         RandomIter slopeIter = CoverageUtilities.getRandomIterator(inSlope);
 
         WritableRaster topindexWR = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, doubleNovalue);
-        WritableRandomIter topindexIter = RandomIterFactory.createWritable(topindexWR, null);
+        WritableRandomIter topindexIter = CoverageUtilities.getWritableRandomIterator(topindexWR);
 
         pm.beginTask(msg.message("topindex.calculating"), nRows);
         for( int r = 0; r < nRows; r++ ) {
@@ -30,7 +30,6 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMARKOUTLETS_o
 
 import java.awt.image.WritableRaster;
 
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -80,7 +79,7 @@ public class OmsMarkoutlets extends JGTModel {
         int nRows = regionMap.getRows();
 
         WritableRaster mflowWR = CoverageUtilities.renderedImage2WritableRaster(inFlow.getRenderedImage(), false);
-        WritableRandomIter mflowIter = RandomIterFactory.createWritable(mflowWR, null);
+        WritableRandomIter mflowIter = CoverageUtilities.getWritableRandomIterator(mflowWR);
 
         pm.beginTask(msg.message("markoutlets.working"), nRows); //$NON-NLS-1$
 
@@ -29,8 +29,12 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_NAM
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_inElev_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_outPit_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_pMode_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_pTileSize_DESCRIPTION;
 
+import java.awt.image.DataBuffer;
 import java.awt.image.WritableRaster;
+import java.io.IOException;
 import java.util.HashMap;
 
 import javax.media.jai.iterator.RandomIter;
@@ -48,9 +52,13 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.libs.modules.ModelsSupporter;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.coverage.DiskTiledImage;
+import org.jgrasstools.gears.utils.coverage.DiskTiledRaster;
 import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
 
 @Description(OMSPITFILLER_DESCRIPTION)
@@ -65,6 +73,14 @@ public class OmsPitfiller extends JGTModel {
     @In
     public GridCoverage2D inElev;
 
+    @Description(OMSPITFILLER_pMode_DESCRIPTION)
+    @In
+    public int pMode = 0;
+
+    @Description(OMSPITFILLER_pTileSize_DESCRIPTION)
+    @In
+    public int pTileSize = 0;
+
     @Description(OMSPITFILLER_outPit_DESCRIPTION)
     @Out
     public GridCoverage2D outPit = null;
@@ -75,6 +91,10 @@ public class OmsPitfiller extends JGTModel {
      * The novalue needed by PitFiller.
      */
     public static final double PITNOVALUE = -1.0;
+    /**
+     * The size of the tiles of the output kept on disk in tiled mode.
+     */
+    private static final int OUT_TILE_SIZE = 512;
     private WritableRandomIter pitIter;
     private RandomIter elevationIter = null;
 
@@ -149,6 +169,25 @@ public class OmsPitfiller extends JGTModel {
         xRes = regionMap.get(CoverageUtilities.XRES);
         yRes = regionMap.get(CoverageUtilities.YRES);
 
+        if ((pMode == 1 || pMode == 2) && pTileSize > 0) {
+            if (pMode == 2) {
+                throw new ModelsIllegalargumentException("The epsilon gradient is not supported on tiles.", this, pm);
+            }
+            DiskTiledRaster pitRaster = tiledPriorityFlood();
+            if (pitRaster != null) {
+                outPit = CoverageUtilities.buildCoverage("pitfiller", new DiskTiledImage(pitRaster), regionMap,
+                        inElev.getCoordinateReferenceSystem());
+            }
+            return;
+        }
+        if (pMode == 1 || pMode == 2) {
+            WritableRaster pitRaster = priorityFlood(pMode == 2);
+            if (pitRaster != null) {
+                outPit = CoverageUtilities.buildCoverage("pitfiller", pitRaster, regionMap, inElev.getCoordinateReferenceSystem());
+            }
+            return;
+        }
+
         elevationIter = CoverageUtilities.getRandomIterator(inElev);
 
         // output raster
@@ -193,6 +232,58 @@ public class OmsPitfiller extends JGTModel {
         outPit = CoverageUtilities.buildCoverage("pitfiller", pitRaster, regionMap, inElev.getCoordinateReferenceSystem());
     }
 
+    /**
+     * Fill the pits with the priority-flood algorithm.
+     * 
+     * @param doEpsilon if <code>true</code>, the filled areas get a minimal gradient.
+     * @return the filled raster or <code>null</code>, if the process was canceled.
+     */
+    private WritableRaster priorityFlood( boolean doEpsilon ) {
+        RandomIter elevIter = CoverageUtilities.getRandomIterator(inElev);
+        double[] elev = new double[nCols * nRows];
+        for( int r = 0; r < nRows; r++ ) {
+            for( int c = 0; c < nCols; c++ ) {
+                elev[r * nCols + c] = elevIter.getSampleDouble(c, r, 0);
+            }
+        }
+        elevIter.done();
+
+        PriorityFloodFiller filler = new PriorityFloodFiller(nCols, nRows, pm);
+        if (!filler.fill(elev, doEpsilon)) {
+            return null;
+        }
+        WritableRaster pitRaster = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, null);
+        pitRaster.setSamples(0, 0, nCols, nRows, 0, elev);
+        return pitRaster;
+    }
+
+    /**
+     * Fill the pits with the priority-flood algorithm on tiles of size {@link #pTileSize}.
+     * 
+     * <p>The result is kept on disk, only the tiles in use are held in memory.</p>
+     * 
+     * @return the filled raster or <code>null</code>, if the process was canceled.
+     */
+    private DiskTiledRaster tiledPriorityFlood() {
+        int threadsNum = getDefaultThreadsNum();
+        // the tiles are written row by row, every thread needs the output tiles of a row
+        int outTilesPerRow = pTileSize / OUT_TILE_SIZE + 2;
+        DiskTiledRaster pitRaster;
+        try {
+            pitRaster = new DiskTiledRaster(nCols, nRows, DataBuffer.TYPE_DOUBLE, doubleNovalue, OUT_TILE_SIZE,
+                    threadsNum * outTilesPerRow, null);
+        } catch (IOException e) {
+            throw new ModelsRuntimeException("Unable to create the scratch file of the output: " + e.getLocalizedMessage(),
+                    this);
+        }
+        TiledPriorityFloodFiller filler = new TiledPriorityFloodFiller(inElev.getRenderedImage(), pTileSize, threadsNum, pm);
+        if (!filler.fill(pitRaster)) {
+            pitRaster.dispose();
+            return null;
+        }
+        return pitRaster;
+    }
+
     /**
      * Takes the elevation matrix and calculate a matrix with pits filled, using the flooding
      * algorithm.
@@ -0,0 +1,199 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+import static org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller.OmsPitfiller.PITNOVALUE;
+
+import java.util.BitSet;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.DoubleIntMinHeap;
+
+/**
+ * Priority-flood depression filling.
+ *
+ * <p>Cells are flooded inwards from the outlets (the cells on the border of the
+ * region) in order of elevation, raising every reached cell that is lower than
+ * the cell it was reached from. This fills the pits in O(n log n), the cells
+ * raised inside a pit are handled through a plain fifo queue.</p>
+ *
+ * <p>As in the legacy pitfiller, novalues take part in the flooding with the
+ * elevation {@link OmsPitfiller#PITNOVALUE}: novalue holes inside the region are
+ * filled like pits, while the ones connected to the border stay novalue.</p>
+ *
+ * <p>With the epsilon variant the filled areas get a minimal gradient towards the
+ * outlet instead of being flat.</p>
+ *
+ * <p>Reference: Barnes R., Lehman C., Mulla D., Priority-flood: An optimal depression-filling
+ * and watershed-labeling algorithm for digital elevation models. Computers & Geosciences, 2014.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class PriorityFloodFiller {
+
+    /**
+     * The column offsets of the 8 neighbours.
+     */
+    static final int[] DCOL = {1, 1, 0, -1, -1, -1, 0, 1};
+    /**
+     * The row offsets of the 8 neighbours.
+     */
+    static final int[] DROW = {0, -1, -1, -1, 0, 1, 1, 1};
+
+    private final int cols;
+    private final int rows;
+    private final IJGTProgressMonitor pm;
+
+    /**
+     * @param cols the columns of the grid.
+     * @param rows the rows of the grid.
+     * @param pm the progress monitor.
+     */
+    public PriorityFloodFiller( int cols, int rows, IJGTProgressMonitor pm ) {
+        this.cols = cols;
+        this.rows = rows;
+        this.pm = pm;
+    }
+
+    /**
+     * Fill the depressions of the elevation grid in place.
+     *
+     * @param elev the elevations, row by row. Novalues are {@link Double#NaN}.
+     * @param doEpsilon if <code>true</code>, filled areas get a minimal gradient instead of being flat.
+     * @return <code>false</code> if the process was canceled.
+     */
+    public boolean fill( double[] elev, boolean doEpsilon ) {
+        int cellsNum = cols * rows;
+        BitSet closed = new BitSet(cellsNum);
+        DoubleIntMinHeap open = new DoubleIntMinHeap(2 * (cols + rows));
+        IntFifo pit = new IntFifo(1024);
+
+        for( int index = 0; index < cellsNum; index++ ) {
+            if (isNovalue(elev[index])) {
+                elev[index] = PITNOVALUE;
+            }
+        }
+
+        /*
+         * the outlets: the border cells
+         */
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                if (c == 0 || r == 0 || c == cols - 1 || r == rows - 1) {
+                    int index = r * cols + c;
+                    closed.set(index);
+                    open.push(elev[index], index);
+                }
+            }
+        }
+
+        pm.beginTask("Filling depressions...", rows);
+        int processed = 0;
+        while( !open.isEmpty() || !pit.isEmpty() ) {
+            // raised cells first, unless an open cell is at the same level
+            int index;
+            if (!open.isEmpty() && (pit.isEmpty() || open.peekKey() == elev[pit.peek()])) {
+                index = open.pop();
+            } else {
+                index = pit.poll();
+            }
+
+            double value = elev[index];
+            // novalues connected to the border must stay novalues
+            double fillValue = doEpsilon && value != PITNOVALUE ? Math.nextUp(value) : value;
+            int c = index % cols;
+            int r = index / cols;
+            for( int k = 0; k < 8; k++ ) {
+                int nc = c + DCOL[k];
+                int nr = r + DROW[k];
+                if (nc < 0 || nr < 0 || nc >= cols || nr >= rows) {
+                    continue;
+                }
+                int nIndex = nr * cols + nc;
+                if (closed.get(nIndex)) {
+                    continue;
+                }
+                closed.set(nIndex);
+                if (elev[nIndex] <= fillValue) {
+                    elev[nIndex] = fillValue;
+                    pit.add(nIndex);
+                } else {
+                    open.push(elev[nIndex], nIndex);
+                }
+            }
+
+            processed++;
+            if (processed % cols == 0) {
+                if (pm.isCanceled()) {
+                    return false;
+                }
+                pm.worked(1);
+            }
+        }
+        pm.done();
+
+        for( int index = 0; index < cellsNum; index++ ) {
+            if (elev[index] == PITNOVALUE) {
+                elev[index] = Double.NaN;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A growable fifo queue of ints.
+     */
+    static class IntFifo {
+        private int[] data;
+        private int head = 0;
+        private int size = 0;
+
+        IntFifo( int initialCapacity ) {
+            data = new int[initialCapacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add( int value ) {
+            if (size == data.length) {
+                int[] newData = new int[data.length * 2];
+                for( int i = 0; i < size; i++ ) {
+                    newData[i] = data[(head + i) % data.length];
+                }
+                data = newData;
+                head = 0;
+            }
+            data[(head + size) % data.length] = value;
+            size++;
+        }
+
+        int peek() {
+            return data[head];
+        }
+
+        int poll() {
+            int value = data[head];
+            head = (head + 1) % data.length;
+            size--;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,490 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+import static org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller.OmsPitfiller.PITNOVALUE;
+import static org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller.PriorityFloodFiller.DCOL;
+import static org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller.PriorityFloodFiller.DROW;
+
+import java.awt.image.RenderedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.media.jai.iterator.RandomIter;
+import javax.media.jai.iterator.RandomIterFactory;
+
+import org.jgrasstools.gears.libs.modules.JGTExecutionService;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.DoubleIntMinHeap;
+import org.jgrasstools.gears.utils.coverage.DiskTiledRaster;
+
+/**
+ * Memory bounded priority-flood depression filling, working on tiles.
+ *
+ * <p>Only one tile per thread is held in memory, the result is written to a
+ * {@link DiskTiledRaster}:</p>
+ * <ol>
+ * <li>every tile is flooded from its own border, labeling the areas drained by each
+ *      border cell and keeping the lowest spill elevation between adjacent labels.
+ *      Only the labels and filled elevations of the tile border are kept.</li>
+ * <li>the spill graph of the labels, completed with the spills between adjacent
+ *      tiles, is flooded from the labels that drain out of the region, giving the
+ *      level of every label.</li>
+ * <li>every tile is flooded again and every cell is raised to the level of its label.</li>
+ * </ol>
+ *
+ * <p>Novalues are handled as in {@link PriorityFloodFiller}.</p>
+ *
+ * <p>Reference: Barnes R., Parallel priority-flood depression filling for trillion cell
+ * digital elevation models on desktops or clusters. Computers & Geosciences, 2016.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TiledPriorityFloodFiller {
+
+    private static final int UNLABELED = 0;
+    /**
+     * The label of the areas that drain out of the region.
+     */
+    private static final int OUTLET_LABEL = 1;
+
+    private final RenderedImage elevImage;
+    private final int cols;
+    private final int rows;
+    private final int tileSize;
+    private final int tileCols;
+    private final int tileRows;
+    private final int threadsNum;
+    private final IJGTProgressMonitor pm;
+
+    private TileBorder[] tileBorders;
+    private int[] labelOffsets;
+    private final Map<Long, Double> spills = new HashMap<Long, Double>();
+    private double[] labelLevels;
+
+    /**
+     * @param elevImage the elevation image.
+     * @param tileSize the size of the side of the tiles.
+     * @param threadsNum the number of tiles to process in parallel.
+     * @param pm the progress monitor.
+     */
+    public TiledPriorityFloodFiller( RenderedImage elevImage, int tileSize, int threadsNum, IJGTProgressMonitor pm ) {
+        this.elevImage = elevImage;
+        this.cols = elevImage.getWidth();
+        this.rows = elevImage.getHeight();
+        this.tileSize = tileSize;
+        this.threadsNum = threadsNum;
+        this.pm = pm;
+        tileCols = (cols + tileSize - 1) / tileSize;
+        tileRows = (rows + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * Fill the depressions, writing the result into the output raster.
+     *
+     * @param outPit the raster to write the filled elevations to.
+     * @return <code>false</code> if the process was canceled.
+     */
+    public boolean fill( final DiskTiledRaster outPit ) {
+        int tilesNum = tileCols * tileRows;
+        tileBorders = new TileBorder[tilesNum];
+
+        pm.beginTask("Labeling tiles...", tilesNum);
+        JGTTaskGroup taskGroup = JGTExecutionService.newTaskGroup(threadsNum, pm);
+        for( int t = 0; t < tilesNum; t++ ) {
+            final int tileIndex = t;
+            taskGroup.execute(new Runnable(){
+                public void run() {
+                    FloodedTile tile = floodTile(tileIndex);
+                    tileBorders[tileIndex] = tile.getBorder();
+                    pm.worked(1);
+                }
+            });
+        }
+        taskGroup.await();
+        pm.done();
+        if (taskGroup.isCanceled()) {
+            return false;
+        }
+
+        /*
+         * the labels of the tiles are made unique and their spills collected
+         */
+        labelOffsets = new int[tilesNum];
+        int labelsNum = 2;
+        for( int t = 0; t < tilesNum; t++ ) {
+            labelOffsets[t] = labelsNum;
+            labelsNum += tileBorders[t].labelsNum;
+        }
+        for( int t = 0; t < tilesNum; t++ ) {
+            for( Entry<Long, Double> entry : tileBorders[t].spills.entrySet() ) {
+                long key = entry.getKey();
+                int labelA = globalLabel(t, (int) (key >>> 32));
+                int labelB = globalLabel(t, (int) (key & 0xFFFFFFFFL));
+                addSpill(labelA, labelB, entry.getValue());
+            }
+            tileBorders[t].spills = null;
+        }
+        addSpillsBetweenTiles();
+
+        pm.message("Flooding the graph of " + labelsNum + " labels...");
+        floodLabels(labelsNum);
+
+        pm.beginTask("Filling tiles...", tilesNum);
+        taskGroup = JGTExecutionService.newTaskGroup(threadsNum, pm);
+        for( int t = 0; t < tilesNum; t++ ) {
+            final int tileIndex = t;
+            taskGroup.execute(new Runnable(){
+                public void run() {
+                    FloodedTile tile = floodTile(tileIndex);
+                    double[] rowValues = new double[tile.width];
+                    for( int r = 0; r < tile.height; r++ ) {
+                        for( int c = 0; c < tile.width; c++ ) {
+                            int index = r * tile.width + c;
+                            double value = tile.fill[index];
+                            double level = labelLevels[globalLabel(tileIndex, tile.labels[index])];
+                            if (level > value && !Double.isInfinite(level)) {
+                                value = level;
+                            }
+                            if (value == PITNOVALUE) {
+                                value = Double.NaN;
+                            }
+                            rowValues[c] = value;
+                        }
+                        outPit.setSamples(tile.startCol, tile.startRow + r, tile.width, 1, rowValues);
+                    }
+                    pm.worked(1);
+                }
+            });
+        }
+        taskGroup.await();
+        pm.done();
+        return !taskGroup.isCanceled();
+    }
+
+    private void addSpill( int labelA, int labelB, double elevation ) {
+        if (labelA == labelB || labelA == UNLABELED || labelB == UNLABELED) {
+            return;
+        }
+        long key = labelA < labelB ? ((long) labelA << 32) | labelB : ((long) labelB << 32) | labelA;
+        Double previous = spills.get(key);
+        if (previous == null || elevation < previous) {
+            spills.put(key, elevation);
+        }
+    }
+
+    private int globalLabel( int tileIndex, int localLabel ) {
+        if (localLabel == UNLABELED) {
+            return UNLABELED;
+        }
+        if (localLabel == OUTLET_LABEL) {
+            return OUTLET_LABEL;
+        }
+        return labelOffsets[tileIndex] + localLabel - 2;
+    }
+
+    /**
+     * Add the spills between the border cells of adjacent tiles.
+     */
+    private void addSpillsBetweenTiles() {
+        for( int ty = 0; ty < tileRows; ty++ ) {
+            for( int tx = 0; tx < tileCols; tx++ ) {
+                int tileIndex = ty * tileCols + tx;
+                TileBorder border = tileBorders[tileIndex];
+                // right neighbour tile
+                if (tx + 1 < tileCols) {
+                    int otherIndex = tileIndex + 1;
+                    TileBorder other = tileBorders[otherIndex];
+                    for( int r = 0; r < border.height; r++ ) {
+                        for( int dr = -1; dr <= 1; dr++ ) {
+                            int otherRow = r + dr;
+                            if (otherRow < 0 || otherRow >= other.height) {
+                                continue;
+                            }
+                            addBorderSpill(tileIndex, border.rightLabels[r], border.rightFill[r], otherIndex,
+                                    other.leftLabels[otherRow], other.leftFill[otherRow]);
+                        }
+                    }
+                }
+                // bottom neighbour tile
+                if (ty + 1 < tileRows) {
+                    int otherIndex = tileIndex + tileCols;
+                    TileBorder other = tileBorders[otherIndex];
+                    for( int c = 0; c < border.width; c++ ) {
+                        for( int dc = -1; dc <= 1; dc++ ) {
+                            int otherCol = c + dc;
+                            if (otherCol < 0 || otherCol >= other.width) {
+                                continue;
+                            }
+                            addBorderSpill(tileIndex, border.bottomLabels[c], border.bottomFill[c], otherIndex,
+                                    other.topLabels[otherCol], other.topFill[otherCol]);
+                        }
+                    }
+                }
+                // diagonal neighbour tiles, touching only at the corners
+                if (tx + 1 < tileCols && ty + 1 < tileRows) {
+                    int otherIndex = tileIndex + tileCols + 1;
+                    TileBorder other = tileBorders[otherIndex];
+                    addBorderSpill(tileIndex, border.bottomLabels[border.width - 1], border.bottomFill[border.width - 1],
+                            otherIndex, other.topLabels[0], other.topFill[0]);
+                }
+                if (tx > 0 && ty + 1 < tileRows) {
+                    int otherIndex = tileIndex + tileCols - 1;
+                    TileBorder other = tileBorders[otherIndex];
+                    addBorderSpill(tileIndex, border.bottomLabels[0], border.bottomFill[0], otherIndex,
+                            other.topLabels[other.width - 1], other.topFill[other.width - 1]);
+                }
+            }
+        }
+    }
+
+    private void addBorderSpill( int tileIndex, int localLabel, double fill, int otherTileIndex, int otherLocalLabel,
+            double otherFill ) {
+        int label = globalLabel(tileIndex, localLabel);
+        int otherLabel = globalLabel(otherTileIndex, otherLocalLabel);
+        addSpill(label, otherLabel, Math.max(fill, otherFill));
+    }
+
+    /**
+     * Flood the spill graph from the outlet label, assigning to every label the
+     * lowest level through which it can drain out.
+     */
+    private void floodLabels( int labelsNum ) {
+        // adjacency in compressed rows
+        int[] degree = new int[labelsNum + 1];
+        for( Long key : spills.keySet() ) {
+            degree[(int) (key >>> 32) + 1]++;
+            degree[(int) (key & 0xFFFFFFFFL) + 1]++;
+        }
+        for( int i = 1; i <= labelsNum; i++ ) {
+            degree[i] += degree[i - 1];
+        }
+        int[] adjacent = new int[degree[labelsNum]];
+        double[] adjacentSpill = new double[degree[labelsNum]];
+        int[] position = new int[labelsNum];
+        System.arraycopy(degree, 0, position, 0, labelsNum);
+        for( Entry<Long, Double> entry : spills.entrySet() ) {
+            long key = entry.getKey();
+            int labelA = (int) (key >>> 32);
+            int labelB = (int) (key & 0xFFFFFFFFL);
+            adjacent[position[labelA]] = labelB;
+            adjacentSpill[position[labelA]++] = entry.getValue();
+            adjacent[position[labelB]] = labelA;
+            adjacentSpill[position[labelB]++] = entry.getValue();
+        }
+        spills.clear();
+
+        double[] levels = new double[labelsNum];
+        Arrays.fill(levels, Double.POSITIVE_INFINITY);
+        boolean[] done = new boolean[labelsNum];
+        DoubleIntMinHeap open = new DoubleIntMinHeap(1024);
+        levels[OUTLET_LABEL] = Double.NEGATIVE_INFINITY;
+        open.push(Double.NEGATIVE_INFINITY, OUTLET_LABEL);
+        while( !open.isEmpty() ) {
+            int label = open.pop();
+            if (done[label]) {
+                continue;
+            }
+            done[label] = true;
+            for( int i = degree[label]; i < degree[label + 1]; i++ ) {
+                int other = adjacent[i];
+                double level = Math.max(adjacentSpill[i], levels[label]);
+                if (!done[other] && level < levels[other]) {
+                    levels[other] = level;
+                    open.push(level, other);
+                }
+            }
+        }
+        labelLevels = levels;
+    }
+
+    /**
+     * Read a tile and flood it from its border.
+     */
+    private FloodedTile floodTile( int tileIndex ) {
+        int tx = tileIndex % tileCols;
+        int ty = tileIndex / tileCols;
+        FloodedTile tile = new FloodedTile();
+        tile.startCol = tx * tileSize;
+        tile.startRow = ty * tileSize;
+        tile.width = Math.min(tileSize, cols - tile.startCol);
+        tile.height = Math.min(tileSize, rows - tile.startRow);
+        int width = tile.width;
+        int height = tile.height;
+
+        /*
+         * read with one cell of halo, to know if border cells are on the border of the region
+         */
+        int haloWidth = width + 2;
+        double[] halo = new double[haloWidth * (height + 2)];
+        RandomIter elevIter = RandomIterFactory.create(elevImage, null);
+        try {
+            for( int r = -1; r <= height; r++ ) {
+                for( int c = -1; c <= width; c++ ) {
+                    int col = tile.startCol + c;
+                    int row = tile.startRow + r;
+                    double value = Double.NaN;
+                    if (col >= 0 && row >= 0 && col < cols && row < rows) {
+                        value = elevIter.getSampleDouble(col, row, 0);
+                        if (isNovalue(value)) {
+                            value = PITNOVALUE;
+                        }
+                    }
+                    halo[(r + 1) * haloWidth + c + 1] = value;
+                }
+            }
+        } finally {
+            elevIter.done();
+        }
+
+        double[] fill = new double[width * height];
+        int[] labels = new int[width * height];
+        boolean[] closed = new boolean[width * height];
+        DoubleIntMinHeap open = new DoubleIntMinHeap(2 * (width + height));
+        for( int r = 0; r < height; r++ ) {
+            for( int c = 0; c < width; c++ ) {
+                int index = r * width + c;
+                double value = halo[(r + 1) * haloWidth + c + 1];
+                fill[index] = value;
+                boolean isRegionBorder = false;
+                for( int k = 0; k < 8; k++ ) {
+                    // only the cells outside of the region are read as novalue
+                    if (isNovalue(halo[(r + 1 + DROW[k]) * haloWidth + c + 1 + DCOL[k]])) {
+                        isRegionBorder = true;
+                        break;
+                    }
+                }
+                if (isRegionBorder) {
+                    labels[index] = OUTLET_LABEL;
+                    closed[index] = true;
+                    open.push(value, index);
+                } else if (c == 0 || r == 0 || c == width - 1 || r == height - 1) {
+                    closed[index] = true;
+                    open.push(value, index);
+                }
+            }
+        }
+
+        int nextLabel = 2;
+        while( !open.isEmpty() ) {
+            int index = open.pop();
+            if (labels[index] == UNLABELED) {
+                labels[index] = nextLabel++;
+            }
+            int label = labels[index];
+            double value = fill[index];
+            int c = index % width;
+            int r = index / width;
+            for( int k = 0; k < 8; k++ ) {
+                int nc = c + DCOL[k];
+                int nr = r + DROW[k];
+                if (nc < 0 || nr < 0 || nc >= width || nr >= height) {
+                    continue;
+                }
+                int nIndex = nr * width + nc;
+                if (closed[nIndex]) {
+                    int nLabel = labels[nIndex];
+                    if (nLabel != UNLABELED && nLabel != label) {
+                        tile.addSpill(label, nLabel, Math.max(value, fill[nIndex]));
+                    }
+                    continue;
+                }
+                closed[nIndex] = true;
+                labels[nIndex] = label;
+                if (fill[nIndex] < value) {
+                    fill[nIndex] = value;
+                }
+                open.push(fill[nIndex], nIndex);
+            }
+        }
+        tile.fill = fill;
+        tile.labels = labels;
+        tile.labelsNum = nextLabel - 2;
+        return tile;
+    }
+
+    private static class FloodedTile {
+        int startCol;
+        int startRow;
+        int width;
+        int height;
+        double[] fill;
+        int[] labels;
+        int labelsNum;
+        final Map<Long, Double> spills = new HashMap<Long, Double>();
+
+        void addSpill( int labelA, int labelB, double elevation ) {
+            long key = labelA < labelB ? ((long) labelA << 32) | labelB : ((long) labelB << 32) | labelA;
+            Double previous = spills.get(key);
+            if (previous == null || elevation < previous) {
+                spills.put(key, elevation);
+            }
+        }
+
+        TileBorder getBorder() {
+            TileBorder border = new TileBorder();
+            border.width = width;
+            border.height = height;
+            border.labelsNum = labelsNum;
+            border.spills = spills;
+            border.topLabels = new int[width];
+            border.topFill = new double[width];
+            border.bottomLabels = new int[width];
+            border.bottomFill = new double[width];
+            for( int c = 0; c < width; c++ ) {
+                border.topLabels[c] = labels[c];
+                border.topFill[c] = fill[c];
+                border.bottomLabels[c] = labels[(height - 1) * width + c];
+                border.bottomFill[c] = fill[(height - 1) * width + c];
+            }
+            border.leftLabels = new int[height];
+            border.leftFill = new double[height];
+            border.rightLabels = new int[height];
+            border.rightFill = new double[height];
+            for( int r = 0; r < height; r++ ) {
+                border.leftLabels[r] = labels[r * width];
+                border.leftFill[r] = fill[r * width];
+                border.rightLabels[r] = labels[r * width + width - 1];
+                border.rightFill[r] = fill[r * width + width - 1];
+            }
+            return border;
+        }
+    }
+
+    /**
+     * The labels and filled elevations of the border cells of a tile.
+     */
+    private static class TileBorder {
+        int width;
+        int height;
+        int labelsNum;
+        Map<Long, Double> spills;
+        int[] topLabels;
+        double[] topFill;
+        int[] bottomLabels;
+        double[] bottomFill;
+        int[] leftLabels;
+        double[] leftFill;
+        int[] rightLabels;
+        double[] rightFill;
+    }
+}
@@ -37,7 +37,6 @@ import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -113,16 +112,16 @@ public class OmsSplitSubbasins extends JGTModel {
         RenderedImage hacksRI = inHack.getRenderedImage();
         WritableRaster hackWR = CoverageUtilities.renderedImage2WritableRaster(hacksRI, true);
 
-        WritableRandomIter flowIter = RandomIterFactory.createWritable(flowWR, null);
-        WritableRandomIter hacksIter = RandomIterFactory.createWritable(hackWR, null);
+        WritableRandomIter flowIter = CoverageUtilities.getWritableRandomIterator(flowWR);
+        WritableRandomIter hacksIter = CoverageUtilities.getWritableRandomIterator(hackWR);
 
         WritableRaster netImage = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null,
                 JGTConstants.doubleNovalue);
-        WritableRandomIter netIter = RandomIterFactory.createWritable(netImage, null);
+        WritableRandomIter netIter = CoverageUtilities.getWritableRandomIterator(netImage);
         net(hacksIter, netIter);
 
         WritableRaster netNumberWR = netNumber(flowIter, hacksIter, netIter);
-        WritableRandomIter netNumberIter = RandomIterFactory.createWritable(netNumberWR, null);
+        WritableRandomIter netNumberIter = CoverageUtilities.getWritableRandomIterator(netNumberWR);
         WritableRaster subbasinWR = ModelsEngine.extractSubbasins(flowIter, netIter, netNumberIter, nRows, nCols, pm);
 
         outNetnum = CoverageUtilities.buildCoverage("netnum", netNumberWR, regionMap, inFlow.getCoordinateReferenceSystem()); //$NON-NLS-1$
@@ -163,7 +162,7 @@ public class OmsSplitSubbasins extends JGTModel {
         int[] flowColRow = new int[2];
 
         WritableRaster netNumberingImage = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, 0.0);
-        WritableRandomIter netNumberRandomIter = RandomIterFactory.createWritable(netNumberingImage, null);
+        WritableRandomIter netNumberRandomIter = CoverageUtilities.getWritableRandomIterator(netNumberingImage);
 
         int n = 0;
         pm.beginTask("Numbering network...", nRows);
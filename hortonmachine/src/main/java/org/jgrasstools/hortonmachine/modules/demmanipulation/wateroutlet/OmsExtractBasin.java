@@ -48,7 +48,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -209,10 +208,10 @@ public class OmsExtractBasin extends JGTModel {
 
         RenderedImage flowRI = inFlow.getRenderedImage();
         WritableRaster flowWR = CoverageUtilities.renderedImage2WritableRaster(flowRI, false);
-        WritableRandomIter flowIter = RandomIterFactory.createWritable(flowWR, null);
+        WritableRandomIter flowIter = CoverageUtilities.getWritableRandomIterator(flowWR);
 
         WritableRaster basinWR = CoverageUtilities.createDoubleWritableRaster(ncols, nrows, null, null, doubleNovalue);
-        WritableRandomIter basinIter = RandomIterFactory.createWritable(basinWR, null);
+        WritableRandomIter basinIter = CoverageUtilities.getWritableRandomIterator(basinWR);
 
         Coordinate outlet = new Coordinate(pEast, pNorth);
 
@@ -36,7 +36,6 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSWATEROUTLET_p
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -130,10 +129,10 @@ public class OmsWateroutlet extends JGTModel {
         }
         RenderedImage flowRI = inFlow.getRenderedImage();
         WritableRaster flowWR = CoverageUtilities.renderedImage2WritableRaster(flowRI, false);
-        WritableRandomIter flowIter = RandomIterFactory.createWritable(flowWR, null);
+        WritableRandomIter flowIter = CoverageUtilities.getWritableRandomIterator(flowWR);
 
         WritableRaster basinWR = CoverageUtilities.createDoubleWritableRaster(ncols, nrows, null, null, null);
-        WritableRandomIter basinIter = RandomIterFactory.createWritable(basinWR, null);
+        WritableRandomIter basinIter = CoverageUtilities.getWritableRandomIterator(basinWR);
 
         drain_ptrs = new double[size_array(pt_seg, nrows, ncols)];
         // bas = (CELL *) G_calloc (size_array (&ba_seg, nrows, ncols),
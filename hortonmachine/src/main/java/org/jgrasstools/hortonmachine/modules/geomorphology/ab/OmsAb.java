@@ -35,7 +35,6 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSAB_outB_DESCR
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -98,9 +97,9 @@ public class OmsAb extends JGTModel {
         RandomIter planIter = CoverageUtilities.getRandomIterator(inPlan);
 
         WritableRaster alungWR = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, null);
-        WritableRandomIter alungIter = RandomIterFactory.createWritable(alungWR, null);
+        WritableRandomIter alungIter = CoverageUtilities.getWritableRandomIterator(alungWR);
         WritableRaster bWR = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, null);
-        WritableRandomIter bIter = RandomIterFactory.createWritable(bWR, null);
+        WritableRandomIter bIter = CoverageUtilities.getWritableRandomIterator(bWR);
 
         pm.beginTask(msg.message("ab.calculating"), nRows);
         for( int r = 0; r < nRows; r++ ) {
@@ -45,7 +45,6 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSASPECT_outAsp
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -115,7 +114,7 @@ public class OmsAspect extends JGTModel {
         RandomIter elevationIter = CoverageUtilities.getRandomIterator(inElev);
 
         WritableRaster aspectWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
-        WritableRandomIter aspectIter = RandomIterFactory.createWritable(aspectWR, null);
+        WritableRandomIter aspectIter = CoverageUtilities.getWritableRandomIterator(aspectWR);
 
         pm.beginTask(msg.message("aspect.calculating"), rows);
 
@@ -144,17 +143,30 @@ public class OmsAspect extends JGTModel {
      * @return the value of aspect.
      */
     public static double calculateAspect( GridNode node, double radtodeg, boolean doRound ) {
+        return calculateAspect(node.elevation, node.getNorthElev(), node.getSouthElev(), node.getWestElev(),
+                node.getEastElev(), node.xRes, node.yRes, radtodeg, doRound);
+    }
+
+    /**
+     * Calculates the aspect from the elevations of a cell and its four neighbours.
+     * 
+     * @param centralValue the elevation of the cell.
+     * @param nValue the elevation of the north neighbour (novalue if missing).
+     * @param sValue the elevation of the south neighbour (novalue if missing).
+     * @param wValue the elevation of the west neighbour (novalue if missing).
+     * @param eValue the elevation of the east neighbour (novalue if missing).
+     * @param xRes the x resolution.
+     * @param yRes the y resolution.
+     * @param radtodeg radiants to degrees conversion factor.
+     * @param doRound if <code>true</code>, values are round to integer.
+     * @return the value of aspect.
+     */
+    public static double calculateAspect( double centralValue, double nValue, double sValue, double wValue, double eValue,
+            double xRes, double yRes, double radtodeg, boolean doRound ) {
         double aspect = doubleNovalue;
         // the value of the x and y derivative
         double aData = 0.0;
         double bData = 0.0;
-        double xRes = node.xRes;
-        double yRes = node.yRes;
-        double centralValue = node.elevation;
-        double nValue = node.getNorthElev();
-        double sValue = node.getSouthElev();
-        double wValue = node.getWestElev();
-        double eValue = node.getEastElev();
 
         if (!isNovalue(centralValue)) {
             boolean sIsNovalue = isNovalue(sValue);
@@ -76,7 +76,6 @@ public class OmsCurvaturesIM extends JGTModelIM {
     @Out
     public String outProf = null;
 
-    private double[] planTangProf = new double[3];
     private double disXX;
     private double disYY;
 
@@ -107,6 +106,8 @@ public class OmsCurvaturesIM extends JGTModelIM {
             int writeRows ) {
 
         RandomIter elevIter = inRasterIterators.get(0);
+        // local, since tiles can be processed in parallel
+        double[] planTangProf = new double[3];
         OmsCurvatures.calculateCurvatures(elevIter, planTangProf, readCol, readRow, xRes, yRes, disXX, disYY);
         if (outPlan != null)
             outRasters.get(0).setSample(writeCol, writeRow, 0, planTangProf[0]);
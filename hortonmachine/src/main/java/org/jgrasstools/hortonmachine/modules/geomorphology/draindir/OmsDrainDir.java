@@ -41,7 +41,6 @@ import java.awt.image.WritableRaster;
 import java.util.HashMap;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -143,7 +142,7 @@ public class OmsDrainDir extends JGTModel {
         RenderedImage flowRI = inFlow.getRenderedImage();
         WritableRaster flowWR = CoverageUtilities.renderedImage2WritableRaster(flowRI, true);
 
-        RandomIter pitRandomIter = RandomIterFactory.create(pitfillerWR, null);
+        RandomIter pitRandomIter = CoverageUtilities.getRandomIterator(pitfillerWR);
 
         // create new matrix
         orderedelev = new double[cols * rows];
@@ -220,12 +219,12 @@ public class OmsDrainDir extends JGTModel {
         // get rows and cols from the active region
 
         ncelle = 0;
-        RandomIter pitRandomIter = RandomIterFactory.create(pitImage, null);
-        RandomIter flowRandomIter = RandomIterFactory.create(flowImage, null);
+        RandomIter pitRandomIter = CoverageUtilities.getRandomIterator(pitImage);
+        RandomIter flowRandomIter = CoverageUtilities.getRandomIterator(flowImage);
 
-        WritableRandomIter tcaRandomIter = RandomIterFactory.createWritable(tcaImage, null);
-        WritableRandomIter deviationRandomIter = RandomIterFactory.createWritable(deviationsImage, null);
-        WritableRandomIter dirRandomIter = RandomIterFactory.createWritable(dirImage, null);
+        WritableRandomIter tcaRandomIter = CoverageUtilities.getWritableRandomIterator(tcaImage);
+        WritableRandomIter deviationRandomIter = CoverageUtilities.getWritableRandomIterator(deviationsImage);
+        WritableRandomIter dirRandomIter = CoverageUtilities.getWritableRandomIterator(dirImage);
 
         pm.beginTask(msg.message("draindir.orlandinilad"), rows * cols);
         for( int i = rows * cols - 1; i >= 0; i-- ) {
@@ -335,12 +334,12 @@ public class OmsDrainDir extends JGTModel {
          * it indicates the position of the triangle's vertexes
          */
         ncelle = 0;
-        RandomIter pitRandomIter = RandomIterFactory.create(pitImage, null);
-        RandomIter flowRandomIter = RandomIterFactory.create(flowImage, null);
+        RandomIter pitRandomIter = CoverageUtilities.getRandomIterator(pitImage);
+        RandomIter flowRandomIter = CoverageUtilities.getRandomIterator(flowImage);
 
-        WritableRandomIter tcaRandomIter = RandomIterFactory.createWritable(tcaImage, null);
-        WritableRandomIter deviationRandomIter = RandomIterFactory.createWritable(deviationsImage, null);
-        WritableRandomIter dirRandomIter = RandomIterFactory.createWritable(dirImage, null);
+        WritableRandomIter tcaRandomIter = CoverageUtilities.getWritableRandomIterator(tcaImage);
+        WritableRandomIter deviationRandomIter = CoverageUtilities.getWritableRandomIterator(deviationsImage);
+        WritableRandomIter dirRandomIter = CoverageUtilities.getWritableRandomIterator(dirImage);
         double[] u = {xRes, yRes};
         double[] v = {NaN, NaN};
         dx = u[0];
@@ -611,17 +610,17 @@ public class OmsDrainDir extends JGTModel {
                 {0, 0, 9}, {0, 0, 10}};
         double elev = 0.0;
         int[] flow = new int[2], nflow = new int[2];
-        RandomIter pitRandomIter = RandomIterFactory.create(pitWR, null);
+        RandomIter pitRandomIter = CoverageUtilities.getRandomIterator(pitWR);
 
         RenderedImage flowFixedRI = inFlownet.getRenderedImage();
         WritableRaster flowFixedWR = CoverageUtilities.renderedImage2WritableRaster(flowFixedRI, true);
-        RandomIter flowFixedIter = RandomIterFactory.create(flowFixedWR, null);
+        RandomIter flowFixedIter = CoverageUtilities.getRandomIterator(flowFixedWR);
 
-        WritableRandomIter dirRandomIter = RandomIterFactory.createWritable(dirWR, null);
+        WritableRandomIter dirRandomIter = CoverageUtilities.getWritableRandomIterator(dirWR);
 
         WritableRaster modflowImage = CoverageUtilities.createDoubleWritableRaster(pitWR.getWidth(), pitWR.getHeight(), null,
                 null, null);
-        WritableRandomIter modflowRandomIter = RandomIterFactory.createWritable(modflowImage, null);
+        WritableRandomIter modflowRandomIter = CoverageUtilities.getWritableRandomIterator(modflowImage);
 
         pm.beginTask("Correcting drainage directions...", rows);
         for( int j = 0; j < rows; j++ ) {
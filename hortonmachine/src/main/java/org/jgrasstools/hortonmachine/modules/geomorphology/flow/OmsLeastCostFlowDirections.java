@@ -18,14 +18,8 @@
 package org.jgrasstools.hortonmachine.modules.geomorphology.flow;
 
 import static java.lang.Math.abs;
-import static org.jgrasstools.gears.libs.modules.Direction.E;
-import static org.jgrasstools.gears.libs.modules.Direction.EN;
-import static org.jgrasstools.gears.libs.modules.Direction.N;
-import static org.jgrasstools.gears.libs.modules.Direction.NW;
-import static org.jgrasstools.gears.libs.modules.Direction.S;
-import static org.jgrasstools.gears.libs.modules.Direction.SE;
-import static org.jgrasstools.gears.libs.modules.Direction.W;
-import static org.jgrasstools.gears.libs.modules.Direction.WS;
+import static java.lang.Math.pow;
+import static java.lang.Math.sqrt;
 import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
 import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSLEASTCOSTFLOWDIRECTIONS_AUTHORCONTACTS;
@@ -47,8 +41,6 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSLEASTCOSTFLOW
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSLEASTCOSTFLOWDIRECTIONS_outTca_DESCRIPTION;
 
 import java.awt.image.WritableRaster;
-import java.util.List;
-import java.util.TreeSet;
 
 import javax.media.jai.iterator.RandomIter;
 import javax.media.jai.iterator.WritableRandomIter;
@@ -66,15 +58,15 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.D8Grid;
 import org.jgrasstools.gears.libs.modules.Direction;
-import org.jgrasstools.gears.libs.modules.GridNode;
-import org.jgrasstools.gears.libs.modules.GridNodeElevationToLeastComparator;
+import org.jgrasstools.gears.libs.modules.DownstreamAccumulator;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.BitMatrix;
+import org.jgrasstools.gears.utils.DoubleIntMinHeap;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.modules.geomorphology.aspect.OmsAspect;
-import org.jgrasstools.hortonmachine.modules.geomorphology.slope.OmsSlope;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 @Description(OMSLEASTCOSTFLOWDIRECTIONS_DESCRIPTION)
@@ -120,11 +112,24 @@ public class OmsLeastCostFlowDirections extends JGTModel {
 
     private BitMatrix assignedFlowsMap;
 
-    private WritableRandomIter flowIter;
+    private RandomIter elevationIter;
 
-    private TreeSet<GridNode> orderedNodes;
+    /**
+     * The flow direction of every cell, 0 if not assigned.
+     */
+    private byte[] flows;
+
+    /**
+     * The cells to process, ordered by elevation. The heap holds the negated insertion 
+     * number, so that among cells of equal elevation the last inserted comes first.
+     */
+    private DoubleIntMinHeap orderedCells;
+    /**
+     * The cell index for every insertion number.
+     */
+    private int[] insertedCells;
+    private int insertedNum;
 
-    private WritableRandomIter tcaIter;
     private WritableRandomIter slopeIter;
     private WritableRandomIter aspectIter;
 
@@ -132,8 +137,17 @@ public class OmsLeastCostFlowDirections extends JGTModel {
 
     private int rows;
 
+    private double xRes;
+
+    private double yRes;
+
     private boolean doExcludeBorder = true;
 
+    /**
+     * The elevations of the neighbours of the current cell, by flow direction.
+     */
+    private final double[] neighbourElevations = new double[9];
+
     @Execute
     public void process() throws Exception {
         if (!concatOr(outFlow == null, doReset)) {
@@ -143,19 +157,10 @@ public class OmsLeastCostFlowDirections extends JGTModel {
         RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inElev);
         cols = regionMap.getCols();
         rows = regionMap.getRows();
-        double xRes = regionMap.getXres();
-        double yRes = regionMap.getYres();
-
-        RandomIter elevationIter = CoverageUtilities.getRandomIterator(inElev);
-
-        WritableRaster flowWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
-        flowIter = CoverageUtilities.getWritableRandomIterator(flowWR);
+        xRes = regionMap.getXres();
+        yRes = regionMap.getYres();
 
-        WritableRaster tcaWR = null;
-        if (doTca) {
-            tcaWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
-            tcaIter = CoverageUtilities.getWritableRandomIterator(tcaWR);
-        }
+        elevationIter = CoverageUtilities.getRandomIterator(inElev);
 
         WritableRaster slopeWR = null;
         if (doSlope) {
@@ -169,7 +174,10 @@ public class OmsLeastCostFlowDirections extends JGTModel {
             aspectIter = CoverageUtilities.getWritableRandomIterator(aspectWR);
         }
 
-        orderedNodes = new TreeSet<GridNode>(new GridNodeElevationToLeastComparator());
+        flows = new byte[cols * rows];
+        orderedCells = new DoubleIntMinHeap(2 * (cols + rows));
+        insertedCells = new int[cols * rows];
+        insertedNum = 0;
         assignedFlowsMap = new BitMatrix(cols, rows);
 
         pm.beginTask("Check for potential outlets...", cols);
@@ -179,18 +187,18 @@ public class OmsLeastCostFlowDirections extends JGTModel {
                 return;
             }
             for( int r = 0; r < rows; r++ ) {
-                GridNode node = new GridNode(elevationIter, cols, rows, xRes, yRes, c, r);
-                if (!node.isValid()) {
+                double elevation = getElevation(c, r);
+                if (isNovalue(elevation)) {
                     nonValidCellsNum++;
                     assignedFlowsMap.mark(c, r);
                     continue;
                 }
-                if (node.touchesBound()) {
-                    orderedNodes.add(node);
+                if (touchesBound(c, r)) {
+                    addCell(c, r, elevation);
                     if (doExcludeBorder) {
                         assignedFlowsMap.mark(c, r);
                     } else {
-                        flowIter.setSample(c, r, 0, Direction.getOutletValue());
+                        flows[r * cols + c] = (byte) Direction.getOutletValue();
                     }
                 }
             }
@@ -199,124 +207,161 @@ public class OmsLeastCostFlowDirections extends JGTModel {
         pm.done();
 
         pm.beginTask("Extract flowdirections...", (rows * cols - nonValidCellsNum));
-        GridNode lowestNode = null;
-        while( (lowestNode = orderedNodes.pollFirst()) != null ) {
+        while( !orderedCells.isEmpty() ) {
+            double elevation = orderedCells.peekKey();
+            int cell = insertedCells[-orderedCells.pop()];
+            int col = cell % cols;
+            int row = cell / cols;
             /*
              * set the current cell as marked. If it is an alone one,
              * it will stay put as an outlet (if we do not mark it, it 
              * might get overwritten. Else il will be redundantly set 
              * later again.
              */
-            assignedFlowsMap.mark(lowestNode.col, lowestNode.row);
+            assignedFlowsMap.mark(col, row);
 
-            List<GridNode> surroundingNodes = lowestNode.getSurroundingNodes();
+            for( int k = 1; k <= 8; k++ ) {
+                int nCol = col + D8Grid.DCOL[k];
+                int nRow = row + D8Grid.DROW[k];
+                neighbourElevations[k] = getElevation(nCol, nRow);
+            }
 
             /*
              * vertical and horiz cells, if they exist, are 
              * set to flow inside the current cell and added to the 
              * list of cells to process.
              */
-            GridNode e = surroundingNodes.get(0);
-            if (nodeOk(e)) {
-                // flow in current and get added to the list of nodes to process by elevation
-                // order
-                setNodeValues(e, E.getEnteringFlow());
-            }
-            GridNode n = surroundingNodes.get(2);
-            if (nodeOk(n)) {
-                setNodeValues(n, N.getEnteringFlow());
-            }
-            GridNode w = surroundingNodes.get(4);
-            if (nodeOk(w)) {
-                setNodeValues(w, W.getEnteringFlow());
-            }
-            GridNode s = surroundingNodes.get(6);
-            if (nodeOk(s)) {
-                setNodeValues(s, S.getEnteringFlow());
+            for( int k = 1; k <= 7; k += 2 ) {
+                if (cellOk(col, row, k)) {
+                    // flow in current and get added to the list of nodes to process by elevation
+                    // order
+                    setCellValues(col, row, elevation, k);
+                }
             }
 
             /*
              * diagonal cells are processed only if they are valid and 
              * they are not steeper than their attached vertical and horiz cells.
              */
-            GridNode en = surroundingNodes.get(1);
-            if (nodeOk(en) && assignFlowDirection(lowestNode, en, e, n)) {
-                setNodeValues(en, EN.getEnteringFlow());
-            }
-            GridNode nw = surroundingNodes.get(3);
-            if (nodeOk(nw) && assignFlowDirection(lowestNode, nw, n, w)) {
-                setNodeValues(nw, NW.getEnteringFlow());
-            }
-            GridNode ws = surroundingNodes.get(5);
-            if (nodeOk(ws) && assignFlowDirection(lowestNode, ws, w, s)) {
-                setNodeValues(ws, WS.getEnteringFlow());
-            }
-            GridNode se = surroundingNodes.get(7);
-            if (nodeOk(se) && assignFlowDirection(lowestNode, se, s, e)) {
-                setNodeValues(se, SE.getEnteringFlow());
+            for( int k = 2; k <= 8; k += 2 ) {
+                if (cellOk(col, row, k) && assignFlowDirection(elevation, k, k - 1, k == 8 ? 1 : k + 1)) {
+                    setCellValues(col, row, elevation, k);
+                }
             }
         }
         pm.done();
+        elevationIter.done();
+
+        WritableRaster flowWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                byte flow = flows[r * cols + c];
+                if (flow != 0) {
+                    flowWR.setSample(c, r, 0, flow);
+                }
+            }
+        }
 
         CoordinateReferenceSystem crs = inElev.getCoordinateReferenceSystem();
         outFlow = CoverageUtilities.buildCoverage("flowdirections", flowWR, regionMap, crs);
         if (doTca)
-            outTca = CoverageUtilities.buildCoverage("tca", tcaWR, regionMap, crs);
+            outTca = CoverageUtilities.buildCoverage("tca", calculateTca(), regionMap, crs);
         if (doSlope)
             outSlope = CoverageUtilities.buildCoverage("slope", slopeWR, regionMap, crs);
         if (doAspect)
             outAspect = CoverageUtilities.buildCoverage("aspect", aspectWR, regionMap, crs);
     }
 
-    private void setNodeValues( GridNode node, int enteringFlow ) {
-        int col = node.col;
-        int row = node.row;
-        flowIter.setSample(col, row, 0, enteringFlow);
+    /**
+     * Set the flow of the neighbour of the current cell to drain into the current cell.
+     * 
+     * @param col the column of the current cell.
+     * @param row the row of the current cell.
+     * @param elevation the elevation of the current cell.
+     * @param direction the direction of the neighbour from the current cell.
+     */
+    private void setCellValues( int col, int row, double elevation, int direction ) {
+        int nCol = col + D8Grid.DCOL[direction];
+        int nRow = row + D8Grid.DROW[direction];
+        double nElevation = neighbourElevations[direction];
+        int enteringFlow = D8Grid.ENTERING[direction];
+        flows[nRow * cols + nCol] = (byte) enteringFlow;
         pm.worked(1);
 
-        orderedNodes.add(node);
-        assignedFlowsMap.mark(col, row);
+        addCell(nCol, nRow, nElevation);
+        assignedFlowsMap.mark(nCol, nRow);
 
         if (doSlope) {
-            double slope = OmsSlope.calculateSlope(node, enteringFlow);
+            double slope = (nElevation - elevation) / Direction.forFlow(enteringFlow).getDistance(xRes, yRes);
             if (slope <= 0.0) {
                 // put smallest possible slope
                 slope = Double.MIN_VALUE;
             }
-            slopeIter.setSample(col, row, 0, slope);
+            slopeIter.setSample(nCol, nRow, 0, slope);
         }
         if (doAspect) {
-            double aspect = OmsAspect.calculateAspect(node, 1.0, false);
-            aspectIter.setSample(col, row, 0, aspect);
+            double aspect = OmsAspect.calculateAspect(nElevation, getElevation(nCol, nRow - 1), getElevation(nCol, nRow + 1),
+                    getElevation(nCol - 1, nRow), getElevation(nCol + 1, nRow), xRes, yRes, 1.0, false);
+            aspectIter.setSample(nCol, nRow, 0, aspect);
         }
+    }
 
-        /*
-         * once a flow value is set, if tca is meant to be calculated,
-         * the flow has to be followed downstream adding the contributing cell.
-         */
-        if (doTca) {
-            int runningCol = col;
-            int runningRow = row;
-            while( isInRaster(runningCol, runningRow) ) {
-                double tmpFlow = flowIter.getSampleDouble(runningCol, runningRow, 0);
-                if (!isNovalue(tmpFlow)) {
-                    double tmpTca = tcaIter.getSampleDouble(runningCol, runningRow, 0);
-                    if (isNovalue(tmpTca)) {
-                        tmpTca = 0.0;
-                    }
-                    tcaIter.setSample(runningCol, runningRow, 0, tmpTca + 1.0);
-                    Direction flowDir = Direction.forFlow((int) tmpFlow);
-                    if (flowDir != null) {
-                        runningCol = runningCol + flowDir.col;
-                        runningRow = runningRow + flowDir.row;
-                    } else {
-                        break;
-                    }
-                } else {
-                    break;
+    private void addCell( int col, int row, double elevation ) {
+        insertedCells[insertedNum] = row * cols + col;
+        orderedCells.push(elevation, -insertedNum);
+        insertedNum++;
+    }
+
+    /**
+     * Once all flows are set, every cell that has a flow contributes to itself
+     * and to all the cells downstream.
+     */
+    private WritableRaster calculateTca() {
+        int cellsNum = cols * rows;
+        int[] receivers = new int[cellsNum];
+        double[] tca = new double[cellsNum];
+        for( int cell = 0; cell < cellsNum; cell++ ) {
+            receivers[cell] = DownstreamAccumulator.NO_RECEIVER;
+            int flow = flows[cell];
+            if (flow == 0) {
+                tca[cell] = doubleNovalue;
+                continue;
+            }
+            tca[cell] = 1.0;
+            if (flow <= 8) {
+                int nCol = cell % cols + D8Grid.DCOL[flow];
+                int nRow = cell / cols + D8Grid.DROW[flow];
+                if (isInRaster(nCol, nRow) && flows[nRow * cols + nCol] != 0) {
+                    receivers[cell] = nRow * cols + nCol;
                 }
             }
         }
+        DownstreamAccumulator.singleReceiver(receivers).accumulate(tca, getDefaultThreadsNum(), pm);
+
+        WritableRaster tcaWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
+        tcaWR.setSamples(0, 0, cols, rows, 0, tca);
+        return tcaWR;
+    }
+
+    private double getElevation( int col, int row ) {
+        if (!isInRaster(col, row)) {
+            return doubleNovalue;
+        }
+        try {
+            return elevationIter.getSampleDouble(col, row, 0);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // might be tiled, which needs better support
+            return doubleNovalue;
+        }
+    }
+
+    private boolean touchesBound( int col, int row ) {
+        for( int k = 1; k <= 8; k++ ) {
+            if (isNovalue(getElevation(col + D8Grid.DCOL[k], row + D8Grid.DROW[k]))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private boolean isInRaster( int col, int row ) {
@@ -327,43 +372,53 @@ public class OmsLeastCostFlowDirections extends JGTModel {
     }
 
     /**
-     * Checks if the path from the current to the first node is steeper than to the others.
+     * Checks if the path from the current to the diagonal cell is steeper than from the 
+     * diagonal to the others.
      * 
-     * @param current the current node.
-     * @param diagonal the diagonal node to check.
-     * @param node1 the first other node to check.
-     * @param node2 the second other node to check.
-     * @return <code>true</code> if the path to the first node is steeper in module than 
+     * @param elevation the elevation of the current cell.
+     * @param diagonal the direction of the diagonal cell to check.
+     * @param direction1 the direction of the first other cell to check.
+     * @param direction2 the direction of the second other cell to check.
+     * @return <code>true</code> if the path to the diagonal cell is steeper in module than 
      *         that to the others.
      */
-    private boolean assignFlowDirection( GridNode current, GridNode diagonal, GridNode node1, GridNode node2 ) {
-        double diagonalSlope = abs(current.getSlopeTo(diagonal));
-        if (node1 != null) {
-            double tmpSlope = abs(diagonal.getSlopeTo(node1));
-            if (diagonalSlope < tmpSlope) {
-                return false;
-            }
+    private boolean assignFlowDirection( double elevation, int diagonal, int direction1, int direction2 ) {
+        double diagonalElevation = neighbourElevations[diagonal];
+        double diagonalSlope = abs((elevation - diagonalElevation) / getDistance(D8Grid.DCOL[diagonal], D8Grid.DROW[diagonal]));
+        if (diagonalSlope < getSlopeFromDiagonal(diagonal, direction1)) {
+            return false;
         }
-        if (node2 != null) {
-            double tmpSlope = abs(diagonal.getSlopeTo(node2));
-            if (diagonalSlope < tmpSlope) {
-                return false;
-            }
+        if (diagonalSlope < getSlopeFromDiagonal(diagonal, direction2)) {
+            return false;
         }
         return true;
     }
 
+    private double getSlopeFromDiagonal( int diagonal, int other ) {
+        double otherElevation = neighbourElevations[other];
+        if (isNovalue(otherElevation)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return abs((neighbourElevations[diagonal] - otherElevation)
+                / getDistance(D8Grid.DCOL[other] - D8Grid.DCOL[diagonal], D8Grid.DROW[other] - D8Grid.DROW[diagonal]));
+    }
+
+    private double getDistance( int deltaCol, int deltaRow ) {
+        return sqrt(pow(deltaCol * xRes, 2.0) + pow(deltaRow * yRes, 2.0));
+    }
+
     /**
-     * Checks if the node is ok.
+     * Checks if the neighbour cell is ok.
      * 
-     * <p>A node is ok if:</p>
+     * <p>A cell is ok if:</p>
      * <ul>
-     *  <li>if the node is valid (!= null in surrounding)</li>
-     *  <li>if the node has not been processed already (!.isMarked)</li>
+     *  <li>if the cell is valid (inside the raster and not novalue)</li>
+     *  <li>if the cell has not been processed already (!.isMarked)</li>
      * </ul> 
      */
-    private boolean nodeOk( GridNode node ) {
-        return node != null && !assignedFlowsMap.isMarked(node.col, node.row);
+    private boolean cellOk( int col, int row, int direction ) {
+        return !isNovalue(neighbourElevations[direction])
+                && !assignedFlowsMap.isMarked(col + D8Grid.DCOL[direction], row + D8Grid.DROW[direction]);
     }
 
 }
@@ -39,7 +39,6 @@ import java.awt.image.WritableRaster;
 import java.util.HashMap;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -126,10 +125,10 @@ public class OmsGc extends JGTModel {
         RandomIter cp9Iter = CoverageUtilities.getRandomIterator(inCp9);
 
         WritableRaster cpClassWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
-        WritableRandomIter cpClassIter = RandomIterFactory.createWritable(cpClassWR, null);
+        WritableRandomIter cpClassIter = CoverageUtilities.getWritableRandomIterator(cpClassWR);
 
         WritableRaster cpAggClassWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
-        WritableRandomIter cpAggClassIter = RandomIterFactory.createWritable(cpAggClassWR, null);
+        WritableRandomIter cpAggClassIter = CoverageUtilities.getWritableRandomIterator(cpAggClassWR);
         // calculate ...
 
         pm.beginTask(msg.message("working") + "gc... (1/2)", rows);
@@ -98,7 +98,7 @@ public class OmsGeomorphonIM extends JGTModelIM {
             int writeRows ) {
         try {
             RandomIter elevIter = inRasterIterators.get(0);
-            double classification = OmsGeomorphon.calculateGeomorphon(elevIter, readGridGeometry, pRadius, pThreshold,
+            double classification = OmsGeomorphon.calculateGeomorphon(elevIter, getReadGridGeometry(), pRadius, pThreshold,
                     diagonalDelta, readCol, readRow);
             WritableRandomIter outDataIter = outRasters.get(0);
             outDataIter.setSample(writeCol, writeRow, 0, classification);
@@ -16,11 +16,10 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_inPi
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTITCA_outMultiTca_DESCRIPTION;
 
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -35,11 +34,11 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.DownstreamAccumulator;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.libs.modules.ModelsSupporter;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
-import org.jgrasstools.gears.utils.sorting.QuickSortAlgorithm;
 
 @Description(OMSMULTITCA_DESCRIPTION)
 @Documentation(OMSMULTITCA_DOCUMENTATION)
@@ -68,8 +67,12 @@ public class OmsMultiTca extends JGTModel {
 
     // the flow direction.
     private int[][] dir = ModelsSupporter.DIR_WITHFLOW_EXITING;
-    // the incoming flow direction.
-    private int[][] dirIn = ModelsSupporter.DIR_WITHFLOW_ENTERING;
+
+    private int cols;
+    private int rows;
+    private double[] pit;
+    private double[] flow;
+    private double[] cp9;
 
     @Execute
     public void process() {
@@ -78,210 +81,134 @@ public class OmsMultiTca extends JGTModel {
         }
         checkNull(inPit, inFlow, inCp9);
         HashMap<String, Double> regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inFlow);
-        int cols = regionMap.get(CoverageUtilities.COLS).intValue();
-        int rows = regionMap.get(CoverageUtilities.ROWS).intValue();
-        // pm.message();
-
-        @SuppressWarnings("unused")
-        int ipos, jpos, i, j, ncicli = 0;
-        double sum, delta, pos;
-
-        // create new matrix
-        double[] elevationArray = new double[cols * rows];
-        double[] indexOfElevation = new double[cols * rows];
+        cols = regionMap.get(CoverageUtilities.COLS).intValue();
+        rows = regionMap.get(CoverageUtilities.ROWS).intValue();
 
-        // pm.message();
-
-        RandomIter flowIter = CoverageUtilities.getRandomIterator(inFlow);
-        RandomIter pitIter = CoverageUtilities.getRandomIterator(inPit);
-        RandomIter cp9Iter = CoverageUtilities.getRandomIterator(inCp9);
-        WritableRaster alreadyDonePixelWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, 0.0);
-        WritableRandomIter alreadyDoneIter = RandomIterFactory.createWritable(alreadyDonePixelWR, null);
-        WritableRaster multiTcaWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, 1.0);
-        WritableRandomIter multiTcaIter = RandomIterFactory.createWritable(multiTcaWR, null);
+        pit = readMap(inPit);
+        flow = readMap(inFlow);
+        cp9 = readMap(inCp9);
 
         /*
-         * store the value of elevation in an array
+         * every cell drains into its lower neighbours (proportionally to the drop)
+         * or along the flow direction, depending on its curvature class.
          */
-        for( int t = 0; t < rows; t++ ) {
-            for( int s = 0; s < cols; s++ ) {
-                elevationArray[((t) * cols) + s] = pitIter.getSampleDouble(s, t, 0);
-                indexOfElevation[((t) * cols) + s] = ((t) * cols) + s + 1;
-            }
+        int cellsNum = cols * rows;
+        int[] cellReceivers = new int[8];
+        double[] cellWeights = new double[8];
+        int[] receiverOffsets = new int[cellsNum + 1];
+        for( int index = 0; index < cellsNum; index++ ) {
+            int receiversNum = getReceivers(index, cellReceivers, cellWeights);
+            receiverOffsets[index + 1] = receiverOffsets[index] + receiversNum;
         }
-
-        /*
-         * sorted the array of elevation.
-         */
-        // pm.message();
-        try {
-            QuickSortAlgorithm sortAlgorithm = new QuickSortAlgorithm(pm);
-            sortAlgorithm.sort(elevationArray, indexOfElevation);
-        } catch (Exception e) {
-            e.printStackTrace();
+        int[] receivers = new int[receiverOffsets[cellsNum]];
+        double[] weights = new double[receiverOffsets[cellsNum]];
+        for( int index = 0; index < cellsNum; index++ ) {
+            int receiversNum = getReceivers(index, cellReceivers, cellWeights);
+            System.arraycopy(cellReceivers, 0, receivers, receiverOffsets[index], receiversNum);
+            System.arraycopy(cellWeights, 0, weights, receiverOffsets[index], receiversNum);
         }
 
-        /*
-         * start to working with the highest value of elevation.
-         */
-        for( int l = cols * rows - 1; l >= 0; l-- ) {
-            ncicli = cols * rows - l;
-            if (elevationArray[l] <= 0) {
-                break;
-            } else {
-
-                pos = indexOfElevation[l];
-                // extract the index of the matrix from the arrays index.
-                i = (int) (pos - 1) % cols;
-                j = (int) (pos - 1) / cols;
-
-                if (alreadyDoneIter.getSampleDouble(i, j, 0) == 0.0) {
-
-                    alreadyDoneIter.setSample(i, j, 0, 1.0);
-                    if (cp9Iter.getSampleDouble(i, j, 0) == 10 || cp9Iter.getSampleDouble(i, j, 0) == 20
-                            || cp9Iter.getSampleDouble(i, j, 0) == 30 || cp9Iter.getSampleDouble(i, j, 0) == 40
-                            || cp9Iter.getSampleDouble(i, j, 0) == 50 || cp9Iter.getSampleDouble(i, j, 0) == 60) {
-                        sum = 0;
-                        for( int k = 1; k <= 8; k++ ) {
-                            ipos = i + dir[k][0];
-                            jpos = j + dir[k][1];
-                            delta = pitIter.getSampleDouble(i, j, 0) - pitIter.getSampleDouble(ipos, jpos, 0);
-                            if (delta == 0) {
-                                if (alreadyDoneIter.getSampleDouble(ipos, jpos, 0) == 0.0
-                                        && flowIter.getSampleDouble(ipos, jpos, 0) == dirIn[k][2]) {
-                                    resolveFlat(ipos, jpos, cols, rows, pitIter, multiTcaIter, alreadyDoneIter, flowIter, cp9Iter);
-                                }
-                            }
-                            if (delta > 0.0 && pitIter.getSampleDouble(ipos, jpos, 0) > 0.0) {
-                                sum += delta;
-                            }
-                        }
-                        for( int k = 1; k <= 8; k++ ) {
-                            ipos = i + dir[k][0];
-                            jpos = j + dir[k][1];
-                            delta = pitIter.getSampleDouble(i, j, 0) - pitIter.getSampleDouble(ipos, jpos, 0);
-                            if (delta > 0.0 && pitIter.getSampleDouble(ipos, jpos, 0) > 0.0) {
-                                multiTcaIter.setSample(ipos, jpos, 0,
-                                        multiTcaIter.getSampleDouble(ipos, jpos, 0) + multiTcaIter.getSampleDouble(i, j, 0)
-                                                * (delta / sum));
-                            } else if (delta == 0.0 && flowIter.getSampleDouble(i, j, 0) == dirIn[k][2]) {
-                                multiTcaIter.setSample(ipos, jpos, 0,
-                                        multiTcaIter.getSampleDouble(ipos, jpos, 0) + multiTcaIter.getSampleDouble(i, j, 0));
-                            }
-                        }
-
-                    } else if (cp9Iter.getSampleDouble(i, j, 0) == 70 || cp9Iter.getSampleDouble(i, j, 0) == 80
-                            || cp9Iter.getSampleDouble(i, j, 0) == 90) {
-                        for( int k = 1; k <= 8; k++ ) {
-                            ipos = i + dir[k][0];
-                            jpos = j + dir[k][1];
-                            double delta2 = pitIter.getSampleDouble(i, j, 0) - pitIter.getSampleDouble(ipos, jpos, 0);
-                            if (delta2 == 0) {
-                                if (alreadyDoneIter.getSampleDouble(ipos, jpos, 0) == 0.0
-                                        && flowIter.getSampleDouble(ipos, jpos, 0) == dirIn[k][2]) {
-
-                                    resolveFlat(ipos, jpos, cols, rows, pitIter, multiTcaIter, alreadyDoneIter, flowIter, cp9Iter);
-                                }
-                            }
-                        }
-                        for( int k = 1; k <= 8; k++ ) {
-                            ipos = i + dir[k][0];
-                            jpos = j + dir[k][1];
-                            if (flowIter.getSampleDouble(i, j, 0) != 10 && flowIter.getSampleDouble(i, j, 0) == dir[k][2]) {
-
-                                multiTcaIter.setSample(ipos, jpos, 0,
-                                        multiTcaIter.getSampleDouble(ipos, jpos, 0) + multiTcaIter.getSampleDouble(i, j, 0));
-                                break;
-                            }
-                        }
-                    }
-
-                }
-
-            }
+        double[] multiTca = new double[cellsNum];
+        Arrays.fill(multiTca, 1.0);
+        DownstreamAccumulator accumulator = DownstreamAccumulator.multipleReceivers(receiverOffsets, receivers, weights);
+        if (!accumulator.accumulate(multiTca, getDefaultThreadsNum(), pm)) {
+            return;
         }
-        for( int t = 0; t < rows; t++ ) {
-            for( int s = 0; s < cols; s++ ) {
-                if (isNovalue(cp9Iter.getSampleDouble(s, t, 0)) || isNovalue(flowIter.getSampleDouble(s, t, 0)))
-                    multiTcaIter.setSample(s, t, 0, JGTConstants.doubleNovalue);
+
+        for( int index = 0; index < cellsNum; index++ ) {
+            if (isNovalue(cp9[index]) || isNovalue(flow[index]) || !accumulator.isResolved(index)) {
+                multiTca[index] = JGTConstants.doubleNovalue;
             }
         }
 
+        WritableRaster multiTcaWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
+        multiTcaWR.setSamples(0, 0, cols, rows, 0, multiTca);
         outMultiTca = CoverageUtilities.buildCoverage("multiTca", multiTcaWR, regionMap, inFlow.getCoordinateReferenceSystem());
+    }
 
+    private double[] readMap( GridCoverage2D coverage ) {
+        RandomIter iter = CoverageUtilities.getRandomIterator(coverage);
+        double[] values = new double[cols * rows];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                values[r * cols + c] = iter.getSampleDouble(c, r, 0);
+            }
+        }
+        iter.done();
+        return values;
     }
-    private int resolveFlat( int ipos, int jpos, int cols, int rows, RandomIter pitRandomIter,
-            WritableRandomIter multitcaRandomIter, WritableRandomIter segnaRandomIter, RandomIter flowRandomIter,
-            RandomIter cp3RandomIter ) {
-        double delta2 = 0;
-        double sum2 = 0;
-        int count = 0;
 
-        segnaRandomIter.setSample(ipos, jpos, 0, 1.0);
-        if (cp3RandomIter.getSampleDouble(ipos, jpos, 0) == 10 || cp3RandomIter.getSampleDouble(ipos, jpos, 0) == 20
-                || cp3RandomIter.getSampleDouble(ipos, jpos, 0) == 30 || cp3RandomIter.getSampleDouble(ipos, jpos, 0) == 40
-                || cp3RandomIter.getSampleDouble(ipos, jpos, 0) == 50 || cp3RandomIter.getSampleDouble(ipos, jpos, 0) == 60) {
+    /**
+     * Get the cells a cell drains into.
+     * 
+     * <p>Convergent and planar cells (classes 10 to 60) drain into all the lower neighbours, 
+     * weighted by the drop, and along the flow direction if the neighbour is at the same 
+     * elevation. Divergent cells (classes 70 to 90) drain only along the flow direction.</p>
+     * 
+     * @return the number of receivers.
+     */
+    private int getReceivers( int index, int[] cellReceivers, double[] cellWeights ) {
+        double elevation = pit[index];
+        // cells with elevation <= 0 don't drain
+        if (!(elevation > 0)) {
+            return 0;
+        }
+        int i = index % cols;
+        int j = index / cols;
+        double cp9Value = cp9[index];
+        int count = 0;
+        if (cp9Value == 10 || cp9Value == 20 || cp9Value == 30 || cp9Value == 40 || cp9Value == 50 || cp9Value == 60) {
+            double sum = 0;
             for( int k = 1; k <= 8; k++ ) {
-                int ipos2 = ipos + dir[k][0];
-                int jpos2 = jpos + dir[k][1];
-                delta2 = pitRandomIter.getSampleDouble(ipos, jpos, 0) - pitRandomIter.getSampleDouble(ipos2, jpos2, 0);
-                if (delta2 == 0) {
-                    if (segnaRandomIter.getSampleDouble(ipos2, jpos2, 0) == 0.0
-                            && flowRandomIter.getSampleDouble(ipos2, jpos2, 0) == dirIn[k][2]) {
-                        resolveFlat(ipos2, jpos2, cols, rows, pitRandomIter, multitcaRandomIter, segnaRandomIter, flowRandomIter,
-                                cp3RandomIter);
+                int nIndex = neighbour(i, j, k);
+                if (nIndex >= 0) {
+                    double delta = elevation - pit[nIndex];
+                    if (delta > 0.0 && pit[nIndex] > 0.0) {
+                        sum += delta;
                     }
                 }
-                if (delta2 > 0.0 && pitRandomIter.getSampleDouble(ipos2, jpos2, 0) > 0.0) {
-                    sum2 += delta2;
-                }
             }
             for( int k = 1; k <= 8; k++ ) {
-                int ipos2 = ipos + dir[k][0];
-                int jpos2 = jpos + dir[k][1];
-                delta2 = pitRandomIter.getSampleDouble(ipos, jpos, 0) - pitRandomIter.getSampleDouble(ipos2, jpos2, 0);
-                if (delta2 > 0.0 && pitRandomIter.getSampleDouble(ipos2, jpos2, 0) > 0.0) {
-                    multitcaRandomIter.setSample(ipos2, jpos2, 0, multitcaRandomIter.getSampleDouble(ipos2, jpos2, 0)
-                            + multitcaRandomIter.getSampleDouble(ipos, jpos, 0) * (delta2 / sum2));
-                } else if (delta2 == 0.0 && flowRandomIter.getSampleDouble(ipos, jpos, 0) == dir[k][2]) {
-                    multitcaRandomIter.setSample(ipos2, jpos2, 0, multitcaRandomIter.getSampleDouble(ipos2, jpos2, 0)
-                            + multitcaRandomIter.getSampleDouble(ipos, jpos, 0));
+                int nIndex = neighbour(i, j, k);
+                if (nIndex < 0) {
+                    continue;
                 }
-            }
-        } else if (cp3RandomIter.getSampleDouble(ipos, jpos, 0) == 70 || cp3RandomIter.getSampleDouble(ipos, jpos, 0) == 80
-                || cp3RandomIter.getSampleDouble(ipos, jpos, 0) == 90) {
-
-            for( int k = 1; k <= 8; k++ ) {
-
-                int ipos2 = ipos + dir[k][0];
-                int jpos2 = jpos + dir[k][1];
-
-                delta2 = pitRandomIter.getSampleDouble(ipos, jpos, 0) - pitRandomIter.getSampleDouble(ipos2, jpos2, 0);
-                if (delta2 == 0) {
-                    if (segnaRandomIter.getSampleDouble(ipos2, jpos2, 0) == 0.0
-                            && flowRandomIter.getSampleDouble(ipos2, jpos2, 0) == dirIn[k][2]) {
-                        resolveFlat(ipos2, jpos2, cols, rows, pitRandomIter, multitcaRandomIter, segnaRandomIter, flowRandomIter,
-                                cp3RandomIter);
-                    }
+                double delta = elevation - pit[nIndex];
+                if (delta > 0.0 && pit[nIndex] > 0.0) {
+                    cellReceivers[count] = nIndex;
+                    cellWeights[count] = delta / sum;
+                    count++;
+                } else if (delta == 0.0 && flow[index] == dir[k][2]) {
+                    // on flats follow the own flow direction (dir, as resolveFlat did): the
+                    // incoming code (dirIn) routes against the flow and closes loops between
+                    // flat cells, which the topological accumulation can't resolve
+                    cellReceivers[count] = nIndex;
+                    cellWeights[count] = 1.0;
+                    count++;
                 }
-
             }
-
+        } else if (cp9Value == 70 || cp9Value == 80 || cp9Value == 90) {
             for( int k = 1; k <= 8; k++ ) {
-
-                int ipos2 = ipos + dir[k][0];
-                int jpos2 = jpos + dir[k][1];
-
-                if (flowRandomIter.getSampleDouble(ipos, jpos, 0) != 10
-                        && flowRandomIter.getSampleDouble(ipos, jpos, 0) == dir[k][2]) {
-
-                    multitcaRandomIter.setSample(ipos2, jpos2, 0, multitcaRandomIter.getSampleDouble(ipos2, jpos2, 0)
-                            + multitcaRandomIter.getSampleDouble(ipos, jpos, 0));
+                if (flow[index] != 10 && flow[index] == dir[k][2]) {
+                    int nIndex = neighbour(i, j, k);
+                    if (nIndex >= 0) {
+                        cellReceivers[count] = nIndex;
+                        cellWeights[count] = 1.0;
+                        count++;
+                    }
                     break;
                 }
             }
         }
-
         return count;
     }
+
+    private int neighbour( int i, int j, int k ) {
+        int ipos = i + dir[k][0];
+        int jpos = j + dir[k][1];
+        if (ipos < 0 || jpos < 0 || ipos >= cols || jpos >= rows) {
+            return -1;
+        }
+        return jpos * cols + ipos;
+    }
 }
@@ -132,7 +132,7 @@ public class OmsOldTca extends JGTModel {
         WritableRaster tcaWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, 1.0);
 
         RandomIter flowIter = RandomIterFactory.create(flowRI, null);
-        WritableRandomIter tcaIter = RandomIterFactory.createWritable(tcaWR, null);
+        WritableRandomIter tcaIter = CoverageUtilities.getWritableRandomIterator(tcaWR);
 
         pm.beginTask(msg.message("tca.workingon"), cols);
 
@@ -32,12 +32,9 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTCA_inFlow_DE
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTCA_outLoop_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTCA_outTca_DESCRIPTION;
 
-import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -53,7 +50,7 @@ import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.jgrasstools.gears.libs.modules.FlowNode;
+import org.jgrasstools.gears.libs.modules.DownstreamAccumulator;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
@@ -90,44 +87,33 @@ public class OmsTca extends JGTModel {
         int cols = regionMap.getCols();
         int rows = regionMap.getRows();
 
-        RenderedImage flowRI = inFlow.getRenderedImage();
-        WritableRaster tcaWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
-
-        RandomIter flowIter = RandomIterFactory.create(flowRI, null);
-        WritableRandomIter tcaIter = RandomIterFactory.createWritable(tcaWR, null);
-
-        pm.beginTask("Calculating tca...", rows); //$NON-NLS-1$
+        RandomIter flowIter = CoverageUtilities.getRandomIterator(inFlow);
+        int[] receivers = DownstreamAccumulator.getD8Receivers(flowIter, cols, rows);
+        double[] tca = new double[cols * rows];
         for( int r = 0; r < rows; r++ ) {
             for( int c = 0; c < cols; c++ ) {
-                FlowNode flowNode = new FlowNode(flowIter, cols, rows, c, r);
-                if (flowNode.isSource()) {
-                    double previousTcaValue = 0.0;
-                    while( flowNode != null && flowNode.isValid() ) {
-                        int col = flowNode.col;
-                        int row = flowNode.row;
-                        double tmpTca = tcaIter.getSampleDouble(col, row, 0);
-                        double newTcaValue;
-                        /*
-                         * cumulate only if first time passing, else
-                         * just propagate 
-                         */
-                        if (isNovalue(tmpTca)) {
-                            tmpTca = 1.0;
-                            newTcaValue = tmpTca + previousTcaValue;
-                            previousTcaValue = newTcaValue;
-                        } else {
-                            newTcaValue = tmpTca + previousTcaValue;
-                        }
-                        tcaIter.setSample(col, row, 0, newTcaValue);
-                        flowNode = flowNode.goDownstream();
-                    }
+                if (isNovalue(flowIter.getSampleDouble(c, r, 0))) {
+                    tca[r * cols + c] = doubleNovalue;
+                } else {
+                    tca[r * cols + c] = 1.0;
                 }
             }
-            pm.worked(1);
         }
-        pm.done();
         flowIter.done();
-        tcaIter.done();
+
+        DownstreamAccumulator accumulator = DownstreamAccumulator.singleReceiver(receivers);
+        if (!accumulator.accumulate(tca, getDefaultThreadsNum(), pm)) {
+            return;
+        }
+        for( int i = 0; i < tca.length; i++ ) {
+            // cells on flow loops can't be resolved
+            if (!accumulator.isResolved(i)) {
+                tca[i] = doubleNovalue;
+            }
+        }
+
+        WritableRaster tcaWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
+        tcaWR.setSamples(0, 0, cols, rows, 0, tca);
 
         outTca = CoverageUtilities.buildCoverage("tca", tcaWR, regionMap, inFlow.getCoordinateReferenceSystem());
     }
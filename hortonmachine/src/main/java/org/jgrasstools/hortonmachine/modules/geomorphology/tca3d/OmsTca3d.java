@@ -40,7 +40,6 @@ import java.awt.image.WritableRaster;
 import java.util.HashMap;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -154,8 +153,8 @@ public class OmsTca3d extends JGTModel {
         // planimetrica
         double[][] dzdiff = new double[3][2];
 
-        RandomIter pitIter = RandomIterFactory.create(pitImage, null);
-        WritableRandomIter tca3dIter = RandomIterFactory.createWritable(tca3dImage, null);
+        RandomIter pitIter = CoverageUtilities.getRandomIterator(pitImage);
+        WritableRandomIter tca3dIter = CoverageUtilities.getWritableRandomIterator(tca3dImage);
 
         pm.beginTask(msg.message("tca3d.woringon"), rows - 2); //$NON-NLS-1$
         for( int j = 1; j < rows - 1; j++ ) {
@@ -221,7 +220,7 @@ public class OmsTca3d extends JGTModel {
             pm.worked(1);
         }
         pm.done();
-        RandomIter flowIter = RandomIterFactory.create(flowImage, null);
+        RandomIter flowIter = CoverageUtilities.getRandomIterator(flowImage);
         return ModelsEngine.sumDownstream(flowIter, tca3dIter, cols, rows, null, null, pm);
     }
 }
\ No newline at end of file
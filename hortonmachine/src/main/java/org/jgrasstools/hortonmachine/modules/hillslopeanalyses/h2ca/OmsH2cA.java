@@ -35,7 +35,6 @@ import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -93,7 +92,7 @@ public class OmsH2cA extends JGTModel {
 
         RenderedImage flowRI = inFlow.getRenderedImage();
         WritableRaster flowWR = CoverageUtilities.renderedImage2WritableRaster(flowRI, true);
-        WritableRandomIter flowIter = RandomIterFactory.createWritable(flowWR, null);
+        WritableRandomIter flowIter = CoverageUtilities.getWritableRandomIterator(flowWR);
         RandomIter attributeIter = CoverageUtilities.getRandomIterator(inAttribute);
         RandomIter netIter = CoverageUtilities.getRandomIterator(inNet);
 
@@ -113,7 +112,7 @@ public class OmsH2cA extends JGTModel {
         netIter.done();
 
         WritableRaster h2caWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
-        WritableRandomIter h2caIter = RandomIterFactory.createWritable(h2caWR, null);
+        WritableRandomIter h2caIter = CoverageUtilities.getWritableRandomIterator(h2caWR);
 
         ModelsEngine.markHillSlopeWithLinkValue(flowIter, attributeIter, h2caIter, cols, rows, pm);
 
@@ -96,7 +96,7 @@ public class OmsH2cd extends JGTModel {
 
         RenderedImage flowRI = inFlow.getRenderedImage();
         WritableRaster flowWR = CoverageUtilities.renderedImage2WritableRaster(flowRI, false);
-        WritableRandomIter flowIter = RandomIterFactory.createWritable(flowWR, null);
+        WritableRandomIter flowIter = CoverageUtilities.getWritableRandomIterator(flowWR);
         RenderedImage netRI = inNet.getRenderedImage();
         RandomIter netIter = RandomIterFactory.create(netRI, null);
 
@@ -107,7 +107,7 @@ public class OmsH2cd extends JGTModel {
         }
 
         WritableRaster h2cdWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, 0.0);
-        WritableRandomIter h2cdIter = RandomIterFactory.createWritable(h2cdWR, null);
+        WritableRandomIter h2cdIter = CoverageUtilities.getWritableRandomIterator(h2cdWR);
 
         for( int c = 0; c < cols; c++ ) {
             for( int r = 0; r < rows; r++ ) {
@@ -111,11 +111,11 @@ public class OmsTc extends JGTModel {
         RandomIter tangRandomIter = RandomIterFactory.create(tanRI, null);
 
         WritableRaster tc3WR = CoverageUtilities.createDoubleWritableRaster(profRI.getWidth(), profRI.getHeight(), null,
-                profRI.getSampleModel(), null);
-        WritableRandomIter tc3Iter = RandomIterFactory.createWritable(tc3WR, null);
+                null, null);
+        WritableRandomIter tc3Iter = CoverageUtilities.getWritableRandomIterator(tc3WR);
         WritableRaster tc9WR = CoverageUtilities.createDoubleWritableRaster(profRI.getWidth(), profRI.getHeight(), null,
-                profRI.getSampleModel(), null);
-        WritableRandomIter tc9Iter = RandomIterFactory.createWritable(tc9WR, null);
+                null, null);
+        WritableRandomIter tc9Iter = CoverageUtilities.getWritableRandomIterator(tc9WR);
 
         // calculate ...
         pm.beginTask(msg.message("working") + "tc9...", rows); //$NON-NLS-1$ //$NON-NLS-2$
@@ -46,6 +46,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSADIGE_inTribu
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSADIGE_outDischarge_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSADIGE_outSubdischarge_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSADIGE_pPfafids_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSADIGE_pThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSADIGE_pRainduration_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSADIGE_pRainintensity_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSADIGE_tEnd_DESCRIPTION;
@@ -55,6 +56,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSADIGE_tTimest
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -93,6 +95,7 @@ import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy.Duff
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.hymod.HymodAdigeEngine;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.hymod.HymodInputs;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.AdigeUtilities;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.SubNetworks;
 import org.jgrasstools.hortonmachine.modules.network.networkattributes.NetworkChannel;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
@@ -185,6 +188,10 @@ public class OmsAdige extends JGTModel {
     @In
     public boolean doLog = false;
 
+    @Description(OMSADIGE_pThreads_DESCRIPTION)
+    @In
+    public int pThreads = 1;
+
     @Description(OMSADIGE_tTimestep_DESCRIPTION)
     @In
     public int tTimestep = 0;
@@ -259,6 +266,11 @@ public class OmsAdige extends JGTModel {
 
     public static DateTimeFormatter adigeFormatter = JGTConstants.utcDateFormatterYYYYMMDDHHMM;
 
+    /**
+     * The number of sub-networks per thread in the parallel mode, to balance their different sizes.
+     */
+    private static final int SUBNETWORKS_PER_THREAD = 4;
+
     private DateTime startTimestamp;
     private DateTime endTimestamp;
     private DateTime currentTimstamp;
@@ -350,6 +362,11 @@ public class OmsAdige extends JGTModel {
                 initialConditions = null;
                 adigeEngine = new HymodAdigeEngine(inHymodInput, orderedHillslopes, index2Basinid, outDischarge, outSubdischarge,
                         pfaffsList, doLog, doLog, pm);
+                if (pThreads > 1) {
+                    SubNetworks subNetworks = createSubNetworks();
+                    pm.message("Solving " + subNetworks.getSubNetworksCount() + " sub-networks in parallel.");
+                    ((HymodAdigeEngine) adigeEngine).setSubNetworks(subNetworks, pThreads);
+                }
             } else {
                 throw new ModelsIllegalargumentException("No parameters for any model were defined. Check your syntax.", this, pm);
             }
@@ -417,6 +434,28 @@ public class OmsAdige extends JGTModel {
 
     }
 
+    /**
+     * Split the network at the monitoring points and in pieces small enough
+     * to keep all the threads busy.
+     */
+    private SubNetworks createSubNetworks() {
+        Set<String> boundaryPfafs = new HashSet<String>();
+        if (hydrometer_pfaff2idMap != null) {
+            boundaryPfafs.addAll(hydrometer_pfaff2idMap.keySet());
+        }
+        if (dams_pfaff2idMap != null) {
+            boundaryPfafs.addAll(dams_pfaff2idMap.keySet());
+        }
+        if (tributary_pfaff2idMap != null) {
+            boundaryPfafs.addAll(tributary_pfaff2idMap.keySet());
+        }
+        if (offtakes_pfaff2idMap != null) {
+            boundaryPfafs.addAll(offtakes_pfaff2idMap.keySet());
+        }
+        int targetSize = Math.max(1, orderedHillslopes.size() / (SUBNETWORKS_PER_THREAD * pThreads));
+        return new SubNetworks(orderedHillslopes, boundaryPfafs, targetSize);
+    }
+
     private void linkBasinWithNetwork() throws Exception {
         FeatureExtender fExt = new FeatureExtender(inNetwork.getSchema(), new String[]{NetworkChannel.NETNUMNAME},
                 new Class[]{Integer.class});
@@ -57,7 +57,7 @@ public class Dams implements IDischargeContributor {
         dams_id2valuesQMap = currentDataMap;
     }
 
-    public double mergeWithDischarge( double contributorDischarge, double inputDischarge ) {
+    public double mergeWithDischarge( String pNum, double contributorDischarge, double inputDischarge ) {
         return contributorDischarge;
     }
 
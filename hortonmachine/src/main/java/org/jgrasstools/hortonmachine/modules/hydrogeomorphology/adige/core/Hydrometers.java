@@ -57,7 +57,7 @@ public class Hydrometers implements IDischargeContributor {
         hydrometer_id2valuesMap = currentDataMap;
     }
 
-    public double mergeWithDischarge( double contributorDischarge, double inputDischarge ) {
+    public double mergeWithDischarge( String pNum, double contributorDischarge, double inputDischarge ) {
         return contributorDischarge;
     }
 
@@ -35,7 +35,6 @@ public class Offtakes implements IDischargeContributor {
     private final HashMap<String, Integer> offtakes_pfaff2idMap;
     private HashMap<Integer, double[]> offtakes_id2valuesQMap;
     private final IJGTProgressMonitor out;
-    private String pNum;
 
     /**
      * Constructor.
@@ -50,7 +49,6 @@ public class Offtakes implements IDischargeContributor {
     }
 
     public Double getDischarge( String pNum ) {
-        this.pNum = pNum;
         Integer damId = offtakes_pfaff2idMap.get(pNum);
         if (damId != null) {
             double[] discharges = offtakes_id2valuesQMap.get(damId);
@@ -63,7 +61,7 @@ public class Offtakes implements IDischargeContributor {
         offtakes_id2valuesQMap = currentDataMap;
     }
 
-    public double mergeWithDischarge( double contributorDischarge, double inputDischarge ) {
+    public double mergeWithDischarge( String pNum, double contributorDischarge, double inputDischarge ) {
         if (inputDischarge >= contributorDischarge) {
             return inputDischarge - contributorDischarge;
         } else {
@@ -150,6 +150,10 @@ public class DuffyAdigeEngine implements IAdigeEngine {
         }
 
         rainRunoffRaining = new RungeKuttaFelberg(duffyEvaluator, 1e-2, 10 / 60., pm, doLog);
+        if (inDuffyInput.doHillslopeErrorScale) {
+            rainRunoffRaining.setErrorScales(duffyEvaluator.getStateScales());
+        }
+        rainRunoffRaining.setMaxSubsteps(inDuffyInput.pMaxSubsteps);
 
     }
 
@@ -115,6 +115,14 @@ public class DuffyInputs extends JGTModel {
     @In@Out
     public boolean doBoundary = false;
 
+    @Description("Switch to relate the integration error of every hillslope to its minimum discharges and residual storages, so that the almost dry hillslopes don't force small timesteps on the whole basin.")
+    @In@Out
+    public boolean doHillslopeErrorScale = false;
+
+    @Description("The maximum ratio between the timestep of the basin and the one of the hillslopes that need a smaller timestep, which are integrated with substeps while the others keep the timestep of the basin (1 integrates all hillslopes with the same timestep).")
+    @In@Out
+    public int pMaxSubsteps = 1;
+
     @Description("The initial conditions of the model.")
     @In@Out
     public HashMap<Integer, AdigeBoundaryCondition> inInitialconditions = null;
@@ -37,7 +37,6 @@ import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IDisc
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlopeDuffy;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlopeDuffy.Parameters;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IHillSlope;
-import org.jgrasstools.hortonmachine.modules.network.PfafstetterNumber;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.AdigeUtilities;
 /**
  * The duffy model.
@@ -52,11 +51,6 @@ import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.Adig
  * @author Silvia Franceschi (www.hydrologis.com)
  */
 public class DuffyModel {
-    private double qd, qs, Q_trib, Qs_trib;
-    // public double pcoe;
-
-    private double satsurf, mst, qdh, qds, inf, re, qe1, qe2;
-
     private double THRESHOLD_AREA = 500000; // 0.1Km2
     /*
      * HydroloGIS addons
@@ -72,7 +66,34 @@ public class DuffyModel {
 
     private boolean doPrint = false;
     private List<IDischargeContributor> dischargeContributorList = new ArrayList<IDischargeContributor>();
-    private HashMap<Integer, ADischargeDistributor> hillslopeId2DischargeDistributor;
+
+    /*
+     * the hillslopes data, read once from the hillslopes and kept
+     * in arrays in the order of the list of hillslopes.
+     */
+    private final int hillslopesNum;
+    private final int[] hillslopeIds;
+    private final double[] areas;
+    private final double[] minSupDischarges;
+    private final double[] minSubDischarges;
+    private final double[] s1Residuals;
+    private final double[] s2Residuals;
+    private final double[] s2Params;
+    private final double[] s2Maxs;
+    private final double[] kss;
+    private final double[] mstExps;
+    private final double[] recParams;
+    private final Double[] etRates;
+    /**
+     * The indexes of the hillslopes directly upstream of every hillslope.
+     */
+    private final int[][] upstreamIndexes;
+    private final String[][] upstreamPfafs;
+    /**
+     * The constant powers of the routing of every link, see {@link AdigeUtilities#doRouting(double, IHillSlope, int)}.
+     */
+    private final double[][] routingFactors;
+    private ADischargeDistributor[] dischargeDistributors;
 
     /**
      * Duffy model function.
@@ -94,6 +115,157 @@ public class DuffyModel {
         this.pm = pm;
         this.doLog = doLog;
 
+        hillslopesNum = orderedHillslopes.size();
+        hillslopeIds = new int[hillslopesNum];
+        areas = new double[hillslopesNum];
+        minSupDischarges = new double[hillslopesNum];
+        minSubDischarges = new double[hillslopesNum];
+        s1Residuals = new double[hillslopesNum];
+        s2Residuals = new double[hillslopesNum];
+        s2Params = new double[hillslopesNum];
+        s2Maxs = new double[hillslopesNum];
+        kss = new double[hillslopesNum];
+        mstExps = new double[hillslopesNum];
+        recParams = new double[hillslopesNum];
+        etRates = new Double[hillslopesNum];
+        upstreamIndexes = new int[hillslopesNum][];
+        upstreamPfafs = new String[hillslopesNum][];
+        routingFactors = new double[4][hillslopesNum];
+
+        HashMap<String, Integer> pfaf2Index = new HashMap<String, Integer>();
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            pfaf2Index.put(orderedHillslopes.get(i).getPfafstetterNumber().toString(), i);
+        }
+        double chezLawExpon = -1. / 3.;
+        double chezLawCoeff = 200. / Math.pow(0.000357911, chezLawExpon);
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            HillSlopeDuffy hillslope = (HillSlopeDuffy) orderedHillslopes.get(i);
+            Parameters parameters = hillslope.getParameters();
+            hillslopeIds[i] = hillslope.getHillslopeId();
+            areas[i] = hillslope.getHillslopeArea();
+            double upstreamArea = hillslope.getUpstreamArea(null);
+            minSupDischarges[i] = parameters.getqqsupmin() * upstreamArea / 1E6;
+            minSubDischarges[i] = parameters.getqqsubmin() * upstreamArea / 1E6;
+            s1Residuals[i] = parameters.getS1residual();
+            s2Residuals[i] = parameters.getS2residual();
+            s2Params[i] = parameters.getS2Param();
+            s2Maxs[i] = parameters.getS2max();
+            kss[i] = parameters.getKs();
+            mstExps[i] = parameters.getMstExp();
+            recParams[i] = parameters.getRecParam();
+            etRates[i] = parameters.getETrate();
+
+            List<IHillSlope> connectedUpstreamHillSlopes = hillslope.getConnectedUpstreamElements();
+            if (connectedUpstreamHillSlopes != null) {
+                int upstreamNum = connectedUpstreamHillSlopes.size();
+                upstreamIndexes[i] = new int[upstreamNum];
+                upstreamPfafs[i] = new String[upstreamNum];
+                for( int j = 0; j < upstreamNum; j++ ) {
+                    String pfaf = connectedUpstreamHillSlopes.get(j).getPfafstetterNumber().toString();
+                    Integer index = pfaf2Index.get(pfaf);
+                    upstreamIndexes[i][j] = index != null ? index : -1;
+                    upstreamPfafs[i][j] = pfaf;
+                }
+            }
+
+            double linkWidth = hillslope.getLinkWidth(8.66, 0.6, 0.0);
+            double linkLength = hillslope.getLinkLength();
+            double linkSlope = hillslope.getLinkSlope();
+            double linkChezy = hillslope.getLinkChezi(chezLawCoeff, chezLawExpon);
+            switch( routingType ) {
+            case ROUTING_CHEZY_NONEXPL:
+                routingFactors[0][i] = Math.pow(linkWidth, -1 / 3.);
+                routingFactors[1][i] = Math.pow(linkLength, -1);
+                routingFactors[2][i] = Math.pow(linkSlope, 2 / 9.);
+                break;
+            case ROUTING_CHEZY:
+                routingFactors[0][i] = Math.pow(linkChezy, 2. / 3.);
+                routingFactors[1][i] = Math.pow(linkWidth, -1. / 3.);
+                routingFactors[2][i] = Math.pow(linkLength, -1);
+                routingFactors[3][i] = Math.pow(linkSlope, 1. / 3.);
+                break;
+            case ROUTING_MANNING:
+                routingFactors[0][i] = linkWidth;
+                routingFactors[1][i] = Math.pow(linkSlope, 1 / 2.);
+                routingFactors[2][i] = Math.pow(linkLength, -1);
+                break;
+            }
+        }
+    }
+
+    /**
+     * The routing coefficient of a link.
+     * 
+     * <p>The same as {@link AdigeUtilities#doRouting(double, IHillSlope, int)},
+     * with the powers of the link constants taken from {@link #routingFactors}.</p>
+     */
+    private double doRouting( double discharge, int i ) {
+        switch( routingType ) {
+        case ROUTING_CHEZY_NONEXPL:
+            return 8.796 * Math.pow(discharge, 1 / 3.) * routingFactors[0][i] * routingFactors[1][i] * routingFactors[2][i];
+        case ROUTING_CHEZY:
+            return 3 / 2. * Math.pow(discharge, 1. / 3.) * routingFactors[0][i] * routingFactors[1][i] * routingFactors[2][i]
+                    * routingFactors[3][i];
+        case ROUTING_MANNING:
+            double linkWidth = routingFactors[0][i];
+            double flowdepth = (1. / 3.) * Math.pow(discharge, 1. / 3.);
+            double hydrad = (flowdepth * linkWidth) / (2.f * flowdepth + linkWidth);
+            return Math.pow(hydrad, 2. / 3.) * routingFactors[1][i] * routingFactors[2][i];
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Add to the hillslopes of a mask all the hillslopes downstream of them.
+     * 
+     * @param hillslopesMask the hillslopes, in the order of the hillslopes.
+     */
+    void addDownstreamHillslopes( boolean[] hillslopesMask ) {
+        boolean changed = true;
+        while( changed ) {
+            changed = false;
+            for( int i = 0; i < hillslopesNum; i++ ) {
+                if (hillslopesMask[i] || upstreamIndexes[i] == null) {
+                    continue;
+                }
+                for( int index : upstreamIndexes[i] ) {
+                    if (index >= 0 && hillslopesMask[index]) {
+                        hillslopesMask[i] = true;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the scales of the values of the state, below which their changes are not relevant.
+     * 
+     * @return the minimum discharges and the residual storages of the hillslopes, in the
+     *              same structure of the input of {@link #eval(double, double[], double[], double[], boolean)}.
+     */
+    public double[] getStateScales() {
+        double[] scales = new double[4 * hillslopesNum];
+        System.arraycopy(minSupDischarges, 0, scales, 0, hillslopesNum);
+        System.arraycopy(minSubDischarges, 0, scales, hillslopesNum, hillslopesNum);
+        System.arraycopy(s1Residuals, 0, scales, 2 * hillslopesNum, hillslopesNum);
+        System.arraycopy(s2Residuals, 0, scales, 3 * hillslopesNum, hillslopesNum);
+        return scales;
+    }
+
+    /**
+     * Duffy function evaluation.
+     * 
+     * @see #eval(double, double[], double[], double[], boolean, double[])
+     * @return the derivatives.
+     */
+    public double[] eval( double currentTimeInMinutes, double[] input, double[] rainArray, double[] etpArray,
+            boolean isAtFinalSubtimestep ) {
+        double[] output = new double[input.length];
+        eval(currentTimeInMinutes, input, rainArray, etpArray, isAtFinalSubtimestep, output);
+        return output;
     }
 
     /**
@@ -127,11 +299,27 @@ public class DuffyModel {
      * @param etpArray 
      * @param timeinMinutes
      *            the time
+     * @param output
+     *            the array to put the derivatives in, of the size of the input.
+     */
+    public void eval( double currentTimeInMinutes, double[] input, double[] rainArray, double[] etpArray,
+            boolean isAtFinalSubtimestep, double[] output ) {
+        eval(currentTimeInMinutes, input, rainArray, etpArray, isAtFinalSubtimestep, output, null);
+    }
+
+    /**
+     * Duffy function evaluation for some of the hillslopes.
+     * 
+     * <p>The derivatives of the other hillslopes are left untouched in the output, their 
+     * values in the input are only read as inflow from upstream.</p>
      * 
-     * @return
+     * @see #eval(double, double[], double[], double[], boolean, double[])
+     * @param hillslopesMask
+     *            the hillslopes to evaluate, in the order of the hillslopes. If <code>null</code>,
+     *            all the hillslopes are evaluated.
      */
-    public double[] eval( double currentTimeInMinutes, double[] input, double[] rainArray, double[] etpArray,
-            boolean isAtFinalSubtimestep ) {
+    public void eval( double currentTimeInMinutes, double[] input, double[] rainArray, double[] etpArray,
+            boolean isAtFinalSubtimestep, double[] output, boolean[] hillslopesMask ) {
         // the input's length is twice the number of links... the first half
         // corresponds to links
         // discharge and the second to hillslopes storage
@@ -139,15 +327,14 @@ public class DuffyModel {
 
         // define the month
         long currentTimeInMillis = (long) (currentTimeInMinutes * 60.0 * 1000.0);
-        int linksNum = orderedHillslopes.size(); // linksConectionStruct.headsArray.length;
+        int linksNum = hillslopesNum; // linksConectionStruct.headsArray.length;
         // double mstold = 0.0;
 
-        double[] output = new double[input.length];
-
         for( int i = linksNum - 1; i >= 0; i-- ) {
+            if (hillslopesMask != null && !hillslopesMask[i]) {
+                continue;
+            }
             // start from the last pieces
-            HillSlopeDuffy currentHillslope = (HillSlopeDuffy) orderedHillslopes.get(i);
-            Parameters parameters = currentHillslope.getParameters();
             /*
              * NOTE: Initial conditions are ... input[i] for link discharge
              * input[i+nLi] for link base flow input[i+2*nLi] for unsaturated
@@ -157,115 +344,81 @@ public class DuffyModel {
 
             double prec_mphr = rainArray[i] / 1000.0; // input precipitation is in mm/h
 
-            double area_m2 = currentHillslope.getHillslopeArea();
+            double area_m2 = areas[i];
             // automatically in m2 from the features
             /*
              * Added some check for phisic consistency of the parameters
              */
-            // if (input[i + 3 * linksNum] != input[i + 3 * linksNum]) {
-            // System.out.println();
-            // }
-            double minsupdischarge = parameters.getqqsupmin() * currentHillslope.getUpstreamArea(null) / 1E6;
-            if (input[i] < minsupdischarge) {
-                input[i] = minsupdischarge;
-                // System.out
-                // .println(
-                // "Current superficial discharge is less than the minimum value, setted to it for the basin "
-                // + currentHillslope.getHillslopeId());
+            if (input[i] < minSupDischarges[i]) {
+                input[i] = minSupDischarges[i];
             }
-            double minsubdischarge = parameters.getqqsubmin() * currentHillslope.getUpstreamArea(null) / 1E6;
-            if (input[i + linksNum] < minsubdischarge) {
-                input[i + linksNum] = minsubdischarge;
-                // System.out
-                // .println(
-                // "Current subsuperficial discharge is less than the minimum value, setted to it for the basin "
-                // + currentHillslope.getHillslopeId());
+            if (input[i + linksNum] < minSubDischarges[i]) {
+                input[i + linksNum] = minSubDischarges[i];
             }
-            if (input[i + 2 * linksNum] < parameters.getS1residual()) {
-                input[i + 2 * linksNum] = parameters.getS1residual();
-                // System.out
-                // .println(
-                // "Current S1 parameter is less than the minimum value, setted to it for the basin "
-                // + currentHillslope.getHillslopeId());
+            if (input[i + 2 * linksNum] < s1Residuals[i]) {
+                input[i + 2 * linksNum] = s1Residuals[i];
             }
-            if (input[i + 3 * linksNum] < parameters.getS2residual()) {
-                input[i + 3 * linksNum] = parameters.getS2residual();
-                // System.out
-                // .println(
-                // "Current S2 parameter is less than the minimum value, setted to it for the basin "
-                // + currentHillslope.getHillslopeId());
+            if (input[i + 3 * linksNum] < s2Residuals[i]) {
+                input[i + 3 * linksNum] = s2Residuals[i];
             }
 
             /* HILLSLOPE FLUX CONDITIONS */
-            satsurf = parameters.getS2Param() * (input[i + 3 * linksNum]); // dimless
-            // double areasat = satsurf * area_m2;
-            mst = (input[i + 2 * linksNum]) / (parameters.getS2max() - (input[i + 3 * linksNum])); // dimless
+            double satsurf = s2Params[i] * (input[i + 3 * linksNum]); // dimless
+            double mst = (input[i + 2 * linksNum]) / (s2Maxs[i] - (input[i + 3 * linksNum])); // dimless
             if (Double.isInfinite(mst)) {
                 mst = MSTMAX;
             }
 
-            // if ((mst - mstold) > 0.01) {
-            // System.out.println("mst " + mst + "mstold " + mstold);
-            // mstold = mst;
-            // }
-            // Ku = hillSlopesInfo.Ks(currentHillslope)
-            // * (Math.pow(mst, hillSlopesInfo.MstExp(currentHillslope))); //
-            // mphr
-
             /* HILLSLOPE S1-SURFACE FLUX VALUES */
-            if (prec_mphr < parameters.getKs()) {
+            double inf;
+            double qdh;
+            double ks = kss[i];
+            if (prec_mphr < ks) {
                 inf = (1.0 - satsurf) * area_m2 * prec_mphr; // m3phr
                 qdh = 0.0; // m3phr
             } else {
-                inf = (1.0 - satsurf) * area_m2 * parameters.getKs(); // m3phr
-                qdh = (1.0 - satsurf) * area_m2 * (prec_mphr - parameters.getKs()); // m3phr
+                inf = (1.0 - satsurf) * area_m2 * ks; // m3phr
+                qdh = (1.0 - satsurf) * area_m2 * (prec_mphr - ks); // m3phr
             }
 
-            Double eTrate = parameters.getETrate();
+            double qe1;
             if (etpArray != null) {
                 qe1 = etpArray[i];
             } else {
-                if (input[i + 2 * linksNum] > parameters.getS1residual()) {
-                    qe1 = eTrate * area_m2 * (1.0 - satsurf) * mst; // m3phr
+                if (input[i + 2 * linksNum] > s1Residuals[i]) {
+                    qe1 = etRates[i] * area_m2 * (1.0 - satsurf) * mst; // m3phr
                 } else {
                     qe1 = 0.0;
                 }
             }
 
             /* HILLSLOPE S1-S2 FLUX VALUE */
-            // re = 1100.0
-            // * (input[i + 2 * linksNum] / parameters.getS2max())
-            // + 300.0
-            // * ((input[i + 2 * linksNum] / parameters.getS2max()) + 5)
-            // * Math.pow((input[i + 3 * linksNum] / parameters.getS2max()),
-            // 2.0);
-            re = parameters.getKs() * area_m2 * (1.0 - satsurf) * (Math.pow(mst, parameters.getMstExp())); // m3phr
+            double re = ks * area_m2 * (1.0 - satsurf) * (Math.pow(mst, mstExps[i])); // m3phr
 
             /* HILLSLOPE S2-SURFACE FLUX VALUES */
-            qds = satsurf * area_m2 * prec_mphr; // m3phr
+            double qds = satsurf * area_m2 * prec_mphr; // m3phr
 
+            double qe2;
             if (etpArray != null) {
                 qe2 = etpArray[i];
             } else {
-                qe2 = eTrate * area_m2 * satsurf; // m3phr,
+                qe2 = etRates[i] * area_m2 * satsurf; // m3phr,
             }
 
-            qs = parameters.getRecParam() * (input[i + 3 * linksNum]); // m3phr
+            double qs = recParams[i] * (input[i + 3 * linksNum]); // m3phr
 
             /* HILLSLOPE DIRECT RUNOFF (TOTAL) FLUXES */
-            // System.out.println("qdh = " + qdh);
-            // System.out.println("qds = " + qds);
-            qd = qdh + qds; // m3phr
+            double qd = qdh + qds; // m3phr
 
             if (Double.isNaN(qs) || Double.isNaN(qd)) {
                 if (Double.isNaN(qs)) {
-                    throw new ModelsIllegalargumentException("Subsuperficial discharge for the hillslope "
-                            + currentHillslope.getHillslopeId() + " " + i + " is NaN", this.getClass().getSimpleName(), pm);
+                    throw new ModelsIllegalargumentException("Subsuperficial discharge for the hillslope " + hillslopeIds[i]
+                            + " " + i + " is NaN", this.getClass().getSimpleName(), pm);
                 } else {
                     throw new ModelsIllegalargumentException("Timestep " + currentTimeInMinutes
-                            + "Superficial discharge for the hillslope " + currentHillslope.getHillslopeId() + " " + i
-                            + " is NaN" + "\nValue of qdh " + qdh + "\nValue of qds " + qds + "\nPrecipitation " + prec_mphr
-                            + "\nSatsurf " + satsurf, this.getClass().getSimpleName(), pm);
+                            + "Superficial discharge for the hillslope " + hillslopeIds[i] + " " + i + " is NaN"
+                            + "\nValue of qdh " + qdh + "\nValue of qds " + qds + "\nPrecipitation " + prec_mphr + "\nSatsurf "
+                            + satsurf, this.getClass().getSimpleName(), pm);
                 }
             }
 
@@ -280,8 +433,7 @@ public class DuffyModel {
              */
             if (area_m2 > THRESHOLD_AREA) {
                 // distribute the discharge
-                int hillslopeId = currentHillslope.getHillslopeId();
-                ADischargeDistributor dischargeDistributor = hillslopeId2DischargeDistributor.get(hillslopeId);
+                ADischargeDistributor dischargeDistributor = dischargeDistributors[i];
                 qs = dischargeDistributor.calculateSubsuperficialDischarge(qs, satsurf, currentTimeInMillis);
                 qd = dischargeDistributor.calculateSuperficialDischarge(qd, satsurf, currentTimeInMillis);
             }
@@ -296,23 +448,22 @@ public class DuffyModel {
              * Below, i=link#, j=id of connecting links, Array[i][j]=link# for
              * connecting link
              */
-            Q_trib = 0.0D;
-            Qs_trib = 0.0D;
-
-            List<IHillSlope> connectedUpstreamHillSlopes = currentHillslope.getConnectedUpstreamElements();
-
-            if (connectedUpstreamHillSlopes != null) {
-                for( IHillSlope hillSlope : connectedUpstreamHillSlopes ) {
-                    PfafstetterNumber pNum = hillSlope.getPfafstetterNumber();
-                    int index = orderedHillslopes.indexOf(hillSlope);
+            double Q_trib = 0.0D;
+            double Qs_trib = 0.0D;
+
+            int[] upstream = upstreamIndexes[i];
+            if (upstream != null) {
+                for( int j = 0; j < upstream.length; j++ ) {
+                    String pNum = upstreamPfafs[i][j];
+                    int index = upstream[j];
                     boolean doCalculate = true;
                     for( IDischargeContributor dContributor : dischargeContributorList ) {
-                        Double contributedDischarge = dContributor.getDischarge(pNum.toString());
-                        contributedDischarge = dContributor.mergeWithDischarge(contributedDischarge, input[index]);
+                        Double contributedDischarge = dContributor.getDischarge(pNum);
+                        contributedDischarge = dContributor.mergeWithDischarge(pNum, contributedDischarge, input[index]);
                         if (!isNovalue(contributedDischarge)) {
                             if (doLog && doPrint) {
-                                pm.message("----> For hillslope " + currentHillslope.getPfafstetterNumber()
-                                        + " using hydrometer/dams data in pfafstetter: " + pNum.toString() + "(meaning added "
+                                pm.message("----> For hillslope " + orderedHillslopes.get(i).getPfafstetterNumber()
+                                        + " using hydrometer/dams data in pfafstetter: " + pNum + "(meaning added "
                                         + contributedDischarge + " instead of " + input[index] + ")");
                             }
                             double dischargeRatio = 0.3;// input[index] / (input[index] +
@@ -331,22 +482,13 @@ public class DuffyModel {
 
             }
 
-            double K_Q = AdigeUtilities.doRouting(input[i], currentHillslope, routingType);
+            double K_Q = doRouting(input[i], i);
 
-            /*
-             * if (i == 62) { System.out.println(" WD ratio ="+
-             * linksHydraulicInfo.Width(i)/flowdepth); System.out.println("
-             * Mannings v (m/s) =" +
-             * (Math.pow(hydrad,2./3.)*Math.pow(linksHydraulicInfo.Slope(i),1/2.)/mannings_n) );
-             * System.out.println(" K_Q =" +
-             * (Math.pow(hydrad,2./3.)*Math.pow(linksHydraulicInfo.Slope(i),1/2.)/mannings_n)
-             * *Math.pow(linksHydraulicInfo.Length(i),-1) ); }
-             */
             if (input[i] == 0.0D)
                 K_Q = 1e-10;
 
             if (Double.isNaN(qs) || Double.isNaN(qd)) {
-                pm.errorMessage("Problems in basin: " + currentHillslope.getHillslopeId() + " " + i); //$NON-NLS-1$ //$NON-NLS-2$
+                pm.errorMessage("Problems in basin: " + hillslopeIds[i] + " " + i); //$NON-NLS-1$ //$NON-NLS-2$
                 if (area_m2 < THRESHOLD_AREA) {
                     qd = 0.0;
                     qs = 0.0;
@@ -386,8 +528,6 @@ public class DuffyModel {
 
         }
         doPrint = false;
-
-        return output;
     }
 
     public void addDischargeContributor( IDischargeContributor dischargeContributor ) {
@@ -395,6 +535,9 @@ public class DuffyModel {
     }
 
     public void addDischargeDistributor( HashMap<Integer, ADischargeDistributor> hillslopeId2DischargeDistributor ) {
-        this.hillslopeId2DischargeDistributor = hillslopeId2DischargeDistributor;
+        dischargeDistributors = new ADischargeDistributor[hillslopesNum];
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            dischargeDistributors[i] = hillslopeId2DischargeDistributor.get(hillslopeIds[i]);
+        }
     }
 }
@@ -26,6 +26,7 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
 package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
@@ -50,7 +51,7 @@ public class RungeKuttaFelberg {
     private double[] finalCond;
     private double epsilon;
     private double basicTimeStepInMinutes = 10. / 60.;
-    // private double[] a = {0., 1. / 5., 3. / 10., 3. / 5., 1., 7. / 8.};
+    private double[] a = {0., 1. / 5., 3. / 10., 3. / 5., 1., 7. / 8.};
     private double[][] b = {{0.}, {1. / 5.}, {3. / 40., 9. / 40.}, {3. / 10., -9. / 10., 6. / 5.},
             {-11. / 54., 5. / 2., -70. / 27., 35. / 27.},
             {1631. / 55296., 175. / 512., 575. / 13824., 44275. / 110592., 253. / 4096.}};
@@ -63,6 +64,38 @@ public class RungeKuttaFelberg {
     private boolean isAtFinalSubtimestep = true;
     private IJGTProgressMonitor outputStream;
 
+    /*
+     * the buffers of the stages and of the solutions, reused by every step.
+     */
+    private double[] carrier;
+    private double[] k0;
+    private double[] k1;
+    private double[] k2;
+    private double[] k3;
+    private double[] k4;
+    private double[] k5;
+    private double[] newYstar;
+    private double[][] solutions;
+
+    private double[] errorScales;
+
+    /*
+     * the values below which the multirate stepping doesn't consider the relative error.
+     */
+    private static final double MIN_ERROR_SCALE = 1E-9;
+    /*
+     * the multirate stepping, off with a single substep.
+     */
+    private int maxSubsteps = 1;
+    /*
+     * the step the fast hillslopes need, as adapted in their last substeps, 0 if unknown.
+     */
+    private double fastStepInMinutes = 0;
+    private double[] hillslopeErrors;
+    private boolean[] fastHillslopes;
+    private double[] subY;
+    private double[] subNewY;
+
     /**
      * Creates new RKF
      * 
@@ -93,80 +126,120 @@ public class RungeKuttaFelberg {
      */
     private void step( double currentTimeInMinutes, double[] initialConditions, double timeStepInMinutes, boolean finalize,
             CurrentTimestepSolution currentSolution, double[] rainArray, double[] etpArray ) {
+        int n = initialConditions.length;
+        if (carrier == null || carrier.length != n) {
+            carrier = new double[n];
+            k0 = new double[n];
+            k1 = new double[n];
+            k2 = new double[n];
+            k3 = new double[n];
+            k4 = new double[n];
+            k5 = new double[n];
+            newYstar = new double[n];
+            solutions = new double[][]{new double[n], new double[n]};
+        }
 
-        double[] carrier = new double[initialConditions.length];
-
-        double[] k0 = duffy.eval(currentTimeInMinutes, initialConditions, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, initialConditions, rainArray, etpArray, false, k0);
+        for( int i = 0; i < n; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes * b[1][0] * k0[i]);
 
-        double[] k1 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k1);
+        for( int i = 0; i < n; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes * (b[2][0] * k0[i] + b[2][1] * k1[i]));
 
-        double[] k2 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k2);
+        for( int i = 0; i < n; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes
                     * (b[3][0] * k0[i] + b[3][1] * k1[i] + b[3][2] * k2[i]));
 
-        double[] k3 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k3);
+        for( int i = 0; i < n; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes
                     * (b[4][0] * k0[i] + b[4][1] * k1[i] + b[4][2] * k2[i] + b[4][3] * k3[i]));
 
-        double[] k4 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k4);
+        for( int i = 0; i < n; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes
                     * (b[5][0] * k0[i] + b[5][1] * k1[i] + b[5][2] * k2[i] + b[5][3] * k3[i] + b[5][4] * k4[i]));
 
-        double[] k5 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, isAtFinalSubtimestep);
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, isAtFinalSubtimestep, k5);
 
-        double[] newY = new double[initialConditions.length];
-        for( int i = 0; i < initialConditions.length; i++ ) {
+        // the solution goes in the buffer that doesn't hold the initial conditions
+        double[] newY = solutions[0] == initialConditions ? solutions[1] : solutions[0];
+        for( int i = 0; i < n; i++ ) {
             newY[i] = initialConditions[i] + timeStepInMinutes
                     * (c[0] * k0[i] + c[1] * k1[i] + c[2] * k2[i] + c[3] * k3[i] + c[4] * k4[i] + c[5] * k5[i]);
-            newY[i] = Math.max(0, newY[i]);
             if (Double.isInfinite(newY[i]) || newY[i] != newY[i]) {
                 throw new ModelsIllegalargumentException("An error occurred during the integration procedure.", this);
             }
         }
 
-        double[] newYstar = new double[initialConditions.length];
-        for( int i = 0; i < initialConditions.length; i++ ) {
+        for( int i = 0; i < n; i++ ) {
             newYstar[i] = initialConditions[i]
                     + timeStepInMinutes
                     * (cStar[0] * k0[i] + cStar[1] * k1[i] + cStar[2] * k2[i] + cStar[3] * k3[i] + cStar[4] * k4[i] + cStar[5]
                             * k5[i]);
-            newYstar[i] = Math.max(0, newYstar[i]);
             if (Double.isInfinite(newYstar[i]) || newYstar[i] != newYstar[i]) {
                 throw new ModelsIllegalargumentException("An error occurred during the integration procedure.", this);
             }
         }
 
+        // the values are cut to zero only after the error is known
         double delta = 0;
-        for( int i = 0; i < initialConditions.length; i++ ) {
-            if ((newY[i] + newYstar[i]) > 0)
-                delta = Math.max(delta, Math.abs(2 * (newY[i] - newYstar[i]) / (newY[i] + newYstar[i])));
+        double fullDelta = 0;
+        if (maxSubsteps > 1) {
+            // the error of every hillslope, over its four values
+            int hillslopesNum = n / 4;
+            if (hillslopeErrors == null || hillslopeErrors.length != hillslopesNum) {
+                hillslopeErrors = new double[hillslopesNum];
+                fastHillslopes = new boolean[hillslopesNum];
+                subY = new double[n];
+                subNewY = new double[n];
+            }
+            Arrays.fill(hillslopeErrors, 0.0);
+            for( int i = 0; i < n; i++ ) {
+                int h = i % hillslopesNum;
+                hillslopeErrors[h] = Math.max(hillslopeErrors[h], hillslopeError(newY[i], newYstar[i], i));
+            }
+            // the step is controlled by the hillslopes that don't need substeps
+            double slowDelta = -1;
+            for( int h = 0; h < hillslopesNum; h++ ) {
+                fullDelta = Math.max(fullDelta, hillslopeErrors[h]);
+                if (hillslopeErrors[h] <= epsilon) {
+                    slowDelta = Math.max(slowDelta, hillslopeErrors[h]);
+                }
+            }
+            delta = slowDelta >= 0 ? slowDelta : fullDelta;
+        } else {
+            for( int i = 0; i < n; i++ ) {
+                delta = Math.max(delta, relativeError(Math.max(0, newY[i]), Math.max(0, newYstar[i]), i));
+            }
+        }
+        for( int i = 0; i < n; i++ ) {
+            newY[i] = Math.max(0, newY[i]);
+            newYstar[i] = Math.max(0, newYstar[i]);
         }
 
         double newTimeStepInMinutes = timeStepInMinutes;
 
         if (finalize) {
+            if (maxSubsteps > 1) {
+                substepFastHillslopes(currentTimeInMinutes, initialConditions, newY, timeStepInMinutes, rainArray, etpArray);
+            }
             currentSolution.newTimeStepInMinutes = newTimeStepInMinutes;
             currentSolution.solution = newY;
         } else {
-            double factor;
-            if (delta != 0.0) {
-                factor = epsilon / delta;
-
-                if (factor >= 1)
-                    newTimeStepInMinutes = timeStepInMinutes * Math.pow(factor, 0.15);
-                else
-                    newTimeStepInMinutes = timeStepInMinutes * Math.pow(factor, 0.25);
-            } else {
-                factor = 1e8;
-                newTimeStepInMinutes = timeStepInMinutes * Math.pow(factor, 0.15);
-                finalize = true;
+            newTimeStepInMinutes = adaptStep(timeStepInMinutes, delta);
+            if (maxSubsteps > 1 && delta != fullDelta) {
+                /*
+                 * the fast hillslopes have to reach their error with at most the maximum
+                 * number of substeps. Their error doesn't grow above 2, so the step they
+                 * need is also taken from their last substeps.
+                 */
+                newTimeStepInMinutes = Math.min(newTimeStepInMinutes, maxSubsteps * adaptStep(timeStepInMinutes, fullDelta));
+                if (fastStepInMinutes > 0) {
+                    newTimeStepInMinutes = Math.min(newTimeStepInMinutes, maxSubsteps * fastStepInMinutes);
+                }
             }
 
             // System.out.println(" --> "+timeStep+" "+epsilon+" "+Delta+" "+factor+"
@@ -177,6 +250,201 @@ public class RungeKuttaFelberg {
 
     }
 
+    /**
+     * The step adapted to the error of a step, that satisfies the allowed error.
+     */
+    private double adaptStep( double timeStepInMinutes, double delta ) {
+        if (delta != 0.0) {
+            double factor = epsilon / delta;
+            if (factor >= 1)
+                return timeStepInMinutes * Math.pow(factor, 0.15);
+            else
+                return timeStepInMinutes * Math.pow(factor, 0.25);
+        }
+        return timeStepInMinutes * Math.pow(1e8, 0.15);
+    }
+
+    /**
+     * The error of a value of a hillslope in the multirate stepping.
+     * 
+     * <p>The values are taken before they are cut to zero, so that a step that is too large
+     * for a hillslope can't hide its error behind two zero values. Below their scale, or 
+     * {@link #MIN_ERROR_SCALE} if no scales are set, the values are not considered, so that
+     * the storages drained to zero don't make a hillslope fast.</p>
+     */
+    private double hillslopeError( double y, double yStar, int i ) {
+        double scale = errorScales != null ? Math.max(errorScales[i], MIN_ERROR_SCALE) : MIN_ERROR_SCALE;
+        double sum = Math.max(Math.abs(y) + Math.abs(yStar), 2 * scale);
+        return Math.abs(2 * (y - yStar) / sum);
+    }
+
+    /**
+     * The relative error of a value of the solution, see {@link #setErrorScales(double[])}.
+     */
+    private double relativeError( double y, double yStar, int i ) {
+        double sum = y + yStar;
+        if (errorScales != null) {
+            // the relative error of values below their scale is not considered
+            sum = Math.max(sum, 2 * errorScales[i]);
+        }
+        if (sum > 0) {
+            return Math.abs(2 * (y - yStar) / sum);
+        }
+        return 0;
+    }
+
+    /**
+     * Integrate again with substeps the hillslopes whose error is too large for the step.
+     * 
+     * <p>The hillslopes downstream of them are integrated again too, since their inflow of the 
+     * step is not reliable. The other hillslopes keep the solution of the step. Where the 
+     * substeps need their values as inflow from upstream, the values are interpolated linearly
+     * between the start and the end of the step.</p>
+     * 
+     * <p>The substeps are adapted to the error of the fast hillslopes in the same way as the
+     * steps of the whole basin, but they are at most the maximum number of substeps and 
+     * not smaller than the step divided by that number, as the control of the step expects.</p>
+     * 
+     * @param currentTimeInMinutes the start time of the step.
+     * @param initialConditions the values at the start of the step.
+     * @param newY the solution of the step, in which the values of the fast hillslopes are replaced.
+     * @param timeStepInMinutes the step.
+     * @param rainArray
+     * @param etpArray
+     */
+    private void substepFastHillslopes( double currentTimeInMinutes, double[] initialConditions, double[] newY,
+            double timeStepInMinutes, double[] rainArray, double[] etpArray ) {
+        int n = initialConditions.length;
+        int hillslopesNum = hillslopeErrors.length;
+        double maxError = 0;
+        for( int h = 0; h < hillslopesNum; h++ ) {
+            fastHillslopes[h] = hillslopeErrors[h] > epsilon;
+            maxError = Math.max(maxError, hillslopeErrors[h]);
+        }
+        if (maxError <= epsilon) {
+            fastStepInMinutes = 0;
+            return;
+        }
+
+        duffy.addDownstreamHillslopes(fastHillslopes);
+
+        // at most maxSubsteps substeps, the last one takes what remains of the step
+        double minSubstep = timeStepInMinutes / maxSubsteps;
+        double substep = Math.max(minSubstep, adaptStep(timeStepInMinutes, maxError));
+        double doneInMinutes = 0;
+        System.arraycopy(initialConditions, 0, subY, 0, n);
+        fastStepInMinutes = Double.POSITIVE_INFINITY;
+        for( int substepsNum = 1; substepsNum <= maxSubsteps; substepsNum++ ) {
+            double remainingInMinutes = timeStepInMinutes - doneInMinutes;
+            boolean isLast = substepsNum == maxSubsteps || substep >= remainingInMinutes
+                    || NumericsUtilities.dEq(substep, remainingInMinutes);
+            if (isLast) {
+                substep = remainingInMinutes;
+            }
+            double delta = substep(currentTimeInMinutes, doneInMinutes, substep, initialConditions, newY, timeStepInMinutes,
+                    rainArray, etpArray);
+            // as for the steps, the substep is adapted once to the error
+            double newSubstep = adaptStep(substep, delta);
+            fastStepInMinutes = Math.min(fastStepInMinutes, newSubstep);
+            newSubstep = Math.max(minSubstep, newSubstep);
+            if (newSubstep < substep && !isLast) {
+                substep = newSubstep;
+                delta = substep(currentTimeInMinutes, doneInMinutes, substep, initialConditions, newY, timeStepInMinutes,
+                        rainArray, etpArray);
+                fastStepInMinutes = Math.min(fastStepInMinutes, adaptStep(substep, delta));
+            }
+            for( int i = 0; i < n; i++ ) {
+                if (fastHillslopes[i % hillslopesNum]) {
+                    subY[i] = subNewY[i];
+                }
+            }
+            if (isLast) {
+                break;
+            }
+            doneInMinutes += substep;
+            substep = newSubstep;
+        }
+        for( int i = 0; i < n; i++ ) {
+            if (fastHillslopes[i % hillslopesNum]) {
+                newY[i] = subY[i];
+            }
+        }
+    }
+
+    /**
+     * A Runge-Kutta-Felberg substep of the fast hillslopes, from {@link #subY} to {@link #subNewY}.
+     * 
+     * @return the largest error of the values of the fast hillslopes.
+     */
+    private double substep( double currentTimeInMinutes, double doneInMinutes, double substep, double[] initialConditions,
+            double[] newY, double timeStepInMinutes, double[] rainArray, double[] etpArray ) {
+        int n = initialConditions.length;
+        int hillslopesNum = hillslopeErrors.length;
+        double[][] k = {k0, k1, k2, k3, k4, k5};
+        for( int stage = 0; stage < 6; stage++ ) {
+            double theta = (doneInMinutes + a[stage] * substep) / timeStepInMinutes;
+            for( int i = 0; i < n; i++ ) {
+                if (fastHillslopes[i % hillslopesNum]) {
+                    double sum = 0;
+                    for( int j = 0; j < stage; j++ ) {
+                        sum += b[stage][j] * k[j][i];
+                    }
+                    carrier[i] = Math.max(0, subY[i] + substep * sum);
+                } else {
+                    carrier[i] = initialConditions[i] + theta * (newY[i] - initialConditions[i]);
+                }
+            }
+            duffy.eval(currentTimeInMinutes + doneInMinutes, carrier, rainArray, etpArray, false, k[stage], fastHillslopes);
+        }
+        double delta = 0;
+        for( int i = 0; i < n; i++ ) {
+            if (fastHillslopes[i % hillslopesNum]) {
+                double y = subY[i] + substep
+                        * (c[0] * k0[i] + c[1] * k1[i] + c[2] * k2[i] + c[3] * k3[i] + c[4] * k4[i] + c[5] * k5[i]);
+                double yStar = subY[i]
+                        + substep
+                        * (cStar[0] * k0[i] + cStar[1] * k1[i] + cStar[2] * k2[i] + cStar[3] * k3[i] + cStar[4] * k4[i] + cStar[5]
+                                * k5[i]);
+                if (Double.isInfinite(y) || y != y || Double.isInfinite(yStar) || yStar != yStar) {
+                    throw new ModelsIllegalargumentException("An error occurred during the integration procedure.", this);
+                }
+                delta = Math.max(delta, hillslopeError(y, yStar, i));
+                subNewY[i] = Math.max(0, y);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Set the maximum number of substeps of the multirate stepping.
+     * 
+     * <p>With more than one substep, the time step is controlled only by the hillslopes whose
+     * error stays within the allowed one. The other hillslopes, and the ones downstream of them,
+     * are integrated again with their own adaptive substeps, while the slow ones keep the 
+     * single step, so that a few fast hillslopes don't force small time steps on the whole basin.</p>
+     * 
+     * @param maxSubsteps the maximum ratio between the time step and the step that the fast 
+     *              hillslopes would need, 1 to integrate all hillslopes with the same time step.
+     */
+    public void setMaxSubsteps( int maxSubsteps ) {
+        this.maxSubsteps = Math.max(1, maxSubsteps);
+    }
+
+    /**
+     * Set the scales of the values of the solution used in the control of the time step.
+     * 
+     * <p>By default the time step is controlled by the largest relative error of all the values.
+     * With the scales, the error of a value is relative to the value or to its scale, whichever
+     * is larger, so that the hillslopes with almost no water don't force small time steps on
+     * the whole basin.</p>
+     * 
+     * @param errorScales the scales of the values, as the solution. If <code>null</code>, the 
+     *              default relative error is used.
+     */
+    public void setErrorScales( double[] errorScales ) {
+        this.errorScales = errorScales;
+    }
+
     public void printDate( double minutes ) {
         double millis = minutes * 1000d * 60d;
         System.out.println(new DateTime((long) millis).toString(JGTConstants.utcDateFormatterYYYYMMDDHHMM));
@@ -325,6 +593,10 @@ public class RungeKuttaFelberg {
 
     }
 
+    /**
+     * @return the solution at the end of the last solved interval. The array
+     *              is reused by the next call to solve.
+     */
     public double[] getFinalCond() {
         return finalCond;
     }
@@ -32,6 +32,8 @@ import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.OmsAdige;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.IAdigeEngine;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IDischargeContributor;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IHillSlope;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.SubNetworks;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.SubNetworks.ISubNetworkSolver;
 import org.jgrasstools.hortonmachine.modules.network.PfafstetterNumber;
 import org.joda.time.DateTime;
 
@@ -52,14 +54,20 @@ public class HymodAdigeEngine implements IAdigeEngine {
     private double[][] xQuick = null;
     private final HashMap<Integer, double[]> outDischarge;
     private final HashMap<Integer, double[]> outSubDischarge;
-    private final HashMap<Integer, double[]> outDischargeInternal;
+    /**
+     * The discharge of every hillslope in the current timestep, by index.
+     */
+    private final double[] dischargeInternal;
     private final HashMap<Integer, Integer> index2Basinid;
+    private final HashMap<Integer, Integer> basinid2Index;
     private List<IDischargeContributor> dischargeContributorList = new ArrayList<IDischargeContributor>();
     private final boolean doPrint;
     private final boolean doLog;
     private final IJGTProgressMonitor pm;
     private final List<String> pfaffsList;
     private double[] coeffs;
+    private SubNetworks subNetworks;
+    private int threadsNum = 1;
     public static final double doubleNovalue = Double.NaN;
     int conta = 0;
 
@@ -76,7 +84,25 @@ public class HymodAdigeEngine implements IAdigeEngine {
         this.doLog = doLog;
         this.doPrint = doPrint;
         this.pm = pm;
-        outDischargeInternal = new HashMap<Integer, double[]>();
+        dischargeInternal = new double[orderedHillslopes.size()];
+        basinid2Index = new HashMap<Integer, Integer>();
+        for( int i = 0; i < orderedHillslopes.size(); i++ ) {
+            basinid2Index.put(orderedHillslopes.get(i).getHillslopeId(), i);
+        }
+    }
+
+    /**
+     * Solve the independent sub-networks of the network in parallel.
+     * 
+     * <p>The results are the same as the sequential solution, every hillslope
+     * being solved after the ones upstream of it.</p>
+     * 
+     * @param subNetworks the split of the network of the ordered hillslopes.
+     * @param threadsNum the number of threads to use.
+     */
+    public void setSubNetworks( SubNetworks subNetworks, int threadsNum ) {
+        this.subNetworks = subNetworks;
+        this.threadsNum = threadsNum;
     }
 
     public void addDischargeContributor( IDischargeContributor dischargeContributor ) {
@@ -123,122 +149,152 @@ public class HymodAdigeEngine implements IAdigeEngine {
             }
         }
 
-        for( int i = orderedHillslopes.size() - 1; i >= 0; i-- ) {
-            IHillSlope hillSlope = orderedHillslopes.get(i);
-
-            // /////////////FISSATO PER CHECK///////////////
-            // hymodInputs.pAlpha=0.323;
-            // hymodInputs.pCmax=999.0;
-            // hymodInputs.pB=0.515;
-            // hymodInputs.pRq=0.135;
-            // hymodInputs.pRs=0.0091;
-            // /////////////FISSATO PER CHECK///////////////
-
-            double rain = rainArray[i];
-            double etp = etpArray[i];
-            // funziona
-            // if (rain == -999 || etp ==-999) {
-            // rain=0;etp=0;
-            // }
-            // modificato
-            // System.out.println("rain= "+rain+" etp= "+etp);
-            // if (isNovalue(rain) || isNovalue(etp)) {
-            // rain=0;
-            // etp=0;
-            // }
-            //
-            //
-            // /*
-            // * sum together the discharge contributed by the current
-            // * hillslope plus the contributions coming from upstream
-            // */
-            //
-            // PfafstetterNumber pfaf = hillSlope.getPfafstetterNumber();
-            // if (pfaffsList.contains(pfaf.toString())) {
-            // outDischarge.put(basinId, new double[] { -999 });
-            // outSubDischarge.put(basinId, new double[] { -999 });
-            // }
-            //
-            // outDischargeInternal.put(basinId,
-            // new double[] { -999 });
-            // System.out.println(basinId+" rain= "+rain+" etp="+etp+ "outDischargeInternal="+
-            // outDischargeInternal.get(basinId));
-            // // if (i == 2) {
-            // // //
-            // // System.out.println(conta+" basinDischarge"+(-999)
-            // // +" xloss="+xLoss[i]);
-            // // conta++;
-            // // }
-
-            // } else {
-
-            double[] out_excess = excess(xLoss[i], rain, etp);
-            double UT1 = out_excess[0];
-            double UT2 = out_excess[1];
-            xLoss[i] = out_excess[2];
-
-            double UQ = hymodInputs.pAlpha * UT2 + UT1;
-            double US = (1.0 - hymodInputs.pAlpha) * UT2;
-
-            double inflow = US;
-            double[] out_linres1 = linres(xSlow[i], inflow, hymodInputs.pRs, 1);
-
-            xSlow[i] = out_linres1[0];
-            double outflow1 = out_linres1[1];
-            double QS = outflow1;
-            inflow = UQ;
-            double outflow2 = 0;
-
-            for( int k = 0; k < 3; k++ ) {
-                double[] out_linres2 = linres(xQuick[k][i], inflow, hymodInputs.pRq, 1);
-                xQuick[k][i] = out_linres2[0];
-                outflow2 = out_linres2[1];
-                inflow = outflow2;
+        if (subNetworks == null) {
+            for( int i = orderedHillslopes.size() - 1; i >= 0; i-- ) {
+                solveHillslope(i, rainArray, etpArray, initialConditions);
+            }
+        } else {
+            final double[] finalRainArray = rainArray;
+            final double[] finalEtpArray = etpArray;
+            final double[] finalConditions = initialConditions;
+            try {
+                subNetworks.solve(threadsNum, pm, new ISubNetworkSolver(){
+                    public void solve( int[] hillslopeIndexes ) throws Exception {
+                        for( int i : hillslopeIndexes ) {
+                            solveHillslope(i, finalRainArray, finalEtpArray, finalConditions);
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
             }
+        }
 
-            Integer basinId = index2Basinid.get(i);
-            double basinDischarge = (QS + outflow2) / coeffs[i];
-            double basinSubDischarge = QS / coeffs[i];
+        // System.out.println("out=" + outDischarge.get(basinId)[0] + " x_slow="
+        // + xSlow[0] + "rain=" + rainArray[0] + " etp="
+        // + etpArray[0]);
+        return initialConditions;
+    }
 
-            double allContributionsDischarge = handleContributors(hillSlope, basinDischarge);
+    /**
+     * Solve a hillslope, after the ones upstream of it.
+     */
+    private void solveHillslope( int i, double[] rainArray, double[] etpArray, double[] initialConditions ) {
+        IHillSlope hillSlope = orderedHillslopes.get(i);
+
+        // /////////////FISSATO PER CHECK///////////////
+        // hymodInputs.pAlpha=0.323;
+        // hymodInputs.pCmax=999.0;
+        // hymodInputs.pB=0.515;
+        // hymodInputs.pRq=0.135;
+        // hymodInputs.pRs=0.0091;
+        // /////////////FISSATO PER CHECK///////////////
+
+        double rain = rainArray[i];
+        double etp = etpArray[i];
+        // funziona
+        // if (rain == -999 || etp ==-999) {
+        // rain=0;etp=0;
+        // }
+        // modificato
+        // System.out.println("rain= "+rain+" etp= "+etp);
+        // if (isNovalue(rain) || isNovalue(etp)) {
+        // rain=0;
+        // etp=0;
+        // }
+        //
+        //
+        // /*
+        // * sum together the discharge contributed by the current
+        // * hillslope plus the contributions coming from upstream
+        // */
+        //
+        // PfafstetterNumber pfaf = hillSlope.getPfafstetterNumber();
+        // if (pfaffsList.contains(pfaf.toString())) {
+        // outDischarge.put(basinId, new double[] { -999 });
+        // outSubDischarge.put(basinId, new double[] { -999 });
+        // }
+        //
+        // outDischargeInternal.put(basinId,
+        // new double[] { -999 });
+        // System.out.println(basinId+" rain= "+rain+" etp="+etp+ "outDischargeInternal="+
+        // outDischargeInternal.get(basinId));
+        // // if (i == 2) {
+        // // //
+        // // System.out.println(conta+" basinDischarge"+(-999)
+        // // +" xloss="+xLoss[i]);
+        // // conta++;
+        // // }
+
+        // } else {
+
+        double[] out_excess = excess(xLoss[i], rain, etp);
+        double UT1 = out_excess[0];
+        double UT2 = out_excess[1];
+        xLoss[i] = out_excess[2];
+
+        double UQ = hymodInputs.pAlpha * UT2 + UT1;
+        double US = (1.0 - hymodInputs.pAlpha) * UT2;
+
+        double inflow = US;
+        double[] out_linres1 = linres(xSlow[i], inflow, hymodInputs.pRs, 1);
+
+        xSlow[i] = out_linres1[0];
+        double outflow1 = out_linres1[1];
+        double QS = outflow1;
+        inflow = UQ;
+        double outflow2 = 0;
+
+        for( int k = 0; k < 3; k++ ) {
+            double[] out_linres2 = linres(xQuick[k][i], inflow, hymodInputs.pRq, 1);
+            xQuick[k][i] = out_linres2[0];
+            outflow2 = out_linres2[1];
+            inflow = outflow2;
+        }
+
+        Integer basinId = index2Basinid.get(i);
+        double basinDischarge = (QS + outflow2) / coeffs[i];
+        double basinSubDischarge = QS / coeffs[i];
 
-            /*
-             * sum together the discharge contributed by the current
-             * hillslope plus the contributions coming from upstream
-             */
-            basinDischarge = basinDischarge + allContributionsDischarge;
+        double allContributionsDischarge = handleContributors(hillSlope, basinDischarge);
 
-            PfafstetterNumber pfaf = hillSlope.getPfafstetterNumber();
-            if (pfaffsList.contains(pfaf.toString())) {
+        /*
+         * sum together the discharge contributed by the current
+         * hillslope plus the contributions coming from upstream
+         */
+        basinDischarge = basinDischarge + allContributionsDischarge;
+
+        PfafstetterNumber pfaf = hillSlope.getPfafstetterNumber();
+        if (pfaffsList.contains(pfaf.toString())) {
+            synchronized (outDischarge) {
                 outDischarge.put(basinId, new double[]{basinDischarge});
                 outSubDischarge.put(basinId, new double[]{basinSubDischarge});
             }
-            initialConditions[i] = xLoss[i];
-            initialConditions[i + orderedHillslopes.size()] = xSlow[i];
-            initialConditions[i + 2 * orderedHillslopes.size()] = xQuick[0][i];
-            initialConditions[i + 3 * orderedHillslopes.size()] = xQuick[1][i];
-            initialConditions[i + 4 * orderedHillslopes.size()] = xQuick[2][i];
-
-            outDischargeInternal.put(basinId, new double[]{basinDischarge});
-            // System.out.println(basinId+" rain= "+rain+" etp="+etp+ "outDischargeInternal="+
-            // outDischargeInternal.get(basinId));
-            // if (i == 61) {
-            // System.out.println("rain= "+rain+" etp= "+etp+" basinId= "+basinId+
-            // " basinDischarge"+basinDischarge+" allcontributions= "+allContributionsDischarge+" xloss= "+xLoss[i]);
-            // }
-            // if (i == 61) {
-            // //
-            // System.out.println(conta+"rain= "+rain+" etp= "+etp+" basinDischarge"+(basinDischarge-allContributionsDischarge)
-            // +" xloss="+xLoss[i]);
-            // conta++;
-            // }
-            // }
         }
-
-        // System.out.println("out=" + outDischarge.get(basinId)[0] + " x_slow="
-        // + xSlow[0] + "rain=" + rainArray[0] + " etp="
-        // + etpArray[0]);
-        return initialConditions;
+        initialConditions[i] = xLoss[i];
+        initialConditions[i + orderedHillslopes.size()] = xSlow[i];
+        initialConditions[i + 2 * orderedHillslopes.size()] = xQuick[0][i];
+        initialConditions[i + 3 * orderedHillslopes.size()] = xQuick[1][i];
+        initialConditions[i + 4 * orderedHillslopes.size()] = xQuick[2][i];
+
+        dischargeInternal[i] = basinDischarge;
+        // System.out.println(basinId+" rain= "+rain+" etp="+etp+ "outDischargeInternal="+
+        // outDischargeInternal.get(basinId));
+        // if (i == 61) {
+        // System.out.println("rain= "+rain+" etp= "+etp+" basinId= "+basinId+
+        // " basinDischarge"+basinDischarge+" allcontributions= "+allContributionsDischarge+" xloss= "+xLoss[i]);
+        // }
+        // if (i == 61) {
+        // //
+        // System.out.println(conta+"rain= "+rain+" etp= "+etp+" basinDischarge"+(basinDischarge-allContributionsDischarge)
+        // +" xloss="+xLoss[i]);
+        // conta++;
+        // }
+        // }
     }
 
     private double handleContributors( IHillSlope hillSlope, final double basinDischarge ) {
@@ -253,7 +309,7 @@ public class HymodAdigeEngine implements IAdigeEngine {
                 /*
                  * get the inflow from upstream basins
                  */
-                double upstreamDischarge = outDischargeInternal.get(hillslopeId)[0];
+                double upstreamDischarge = dischargeInternal[basinid2Index.get(hillslopeId)];
 
                 /*
                  * handle the contributors
@@ -285,7 +341,8 @@ public class HymodAdigeEngine implements IAdigeEngine {
 
                         // modificato
                         if (!isNovalue(contributedDischarge)) {
-                            upstreamDischarge = dContributor.mergeWithDischarge(contributedDischarge, upstreamDischarge);
+                            upstreamDischarge = dContributor.mergeWithDischarge(pNum.toString(), contributedDischarge,
+                                    upstreamDischarge);
                         }
 
                     }
@@ -0,0 +1,230 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IHillSlope;
+
+/**
+ * A split of the hillslopes network in sub-networks that can be solved in parallel.
+ *
+ * <p>The network is cut at the monitoring points (hydrometers, tributaries, dams, offtakes)
+ * and wherever the hillslopes upstream of a point reach a target size. Every sub-network
+ * is a connected piece of the network draining into a single hillslope, its root. A
+ * sub-network can be solved once all the sub-networks draining into it are done, so
+ * the sub-networks of different branches are solved at the same time.</p>
+ *
+ * <p>The hillslopes are addressed by their index in the ordered list of the network,
+ * in which every hillslope comes before the ones upstream of it (see
+ * {@link AdigeUtilities#generateHillSlopes}).</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class SubNetworks {
+
+    /**
+     * The solver of the hillslopes of a sub-network.
+     */
+    public static interface ISubNetworkSolver {
+        /**
+         * Solve the hillslopes of a sub-network.
+         *
+         * @param hillslopeIndexes the indexes of the hillslopes, every hillslope after the ones
+         *              upstream of it.
+         * @throws Exception
+         */
+        public void solve( int[] hillslopeIndexes ) throws Exception;
+    }
+
+    private final int[][] subNetworks;
+    /**
+     * The sub-network every sub-network drains into, -1 for the most downstream ones.
+     */
+    private final int[] downstreamSubNetworks;
+    /**
+     * The number of sub-networks draining into every sub-network.
+     */
+    private final int[] upstreamCounts;
+
+    /**
+     * Split a network.
+     *
+     * @param orderedHillslopes the hillslopes, every hillslope before the ones upstream of it.
+     * @param boundaryPfafs the pfafstetter numbers of the hillslopes at which the network has to be cut.
+     * @param targetSize the number of hillslopes at which a sub-network is closed.
+     */
+    public SubNetworks( List<IHillSlope> orderedHillslopes, Collection<String> boundaryPfafs, int targetSize ) {
+        int hillslopesNum = orderedHillslopes.size();
+        HashMap<Integer, Integer> id2Index = new HashMap<Integer, Integer>();
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            id2Index.put(orderedHillslopes.get(i).getHillslopeId(), i);
+        }
+        int[] downstream = new int[hillslopesNum];
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            IHillSlope downstreamHillslope = orderedHillslopes.get(i).getConnectedDownstreamElement();
+            Integer index = downstreamHillslope != null ? id2Index.get(downstreamHillslope.getHillslopeId()) : null;
+            downstream[i] = index != null ? index : -1;
+        }
+
+        // close the sub-networks going downstream
+        boolean[] isRoot = new boolean[hillslopesNum];
+        int[] pendingSizes = new int[hillslopesNum];
+        for( int i = hillslopesNum - 1; i >= 0; i-- ) {
+            pendingSizes[i]++;
+            String pfaf = orderedHillslopes.get(i).getPfafstetterNumber().toString();
+            isRoot[i] = downstream[i] < 0 || downstream[i] > i || pendingSizes[i] >= targetSize
+                    || (boundaryPfafs != null && boundaryPfafs.contains(pfaf));
+            if (!isRoot[i]) {
+                pendingSizes[downstream[i]] += pendingSizes[i];
+            }
+        }
+
+        int subNetworksNum = 0;
+        int[] subNetworkOfHillslope = new int[hillslopesNum];
+        int[] rootOfSubNetwork = new int[hillslopesNum];
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            if (isRoot[i]) {
+                rootOfSubNetwork[subNetworksNum] = i;
+                subNetworkOfHillslope[i] = subNetworksNum++;
+            } else {
+                subNetworkOfHillslope[i] = subNetworkOfHillslope[downstream[i]];
+            }
+        }
+
+        int[] sizes = new int[subNetworksNum];
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            sizes[subNetworkOfHillslope[i]]++;
+        }
+        subNetworks = new int[subNetworksNum][];
+        for( int s = 0; s < subNetworksNum; s++ ) {
+            subNetworks[s] = new int[sizes[s]];
+            sizes[s] = 0;
+        }
+        // upstream hillslopes first
+        for( int i = hillslopesNum - 1; i >= 0; i-- ) {
+            int s = subNetworkOfHillslope[i];
+            subNetworks[s][sizes[s]++] = i;
+        }
+
+        downstreamSubNetworks = new int[subNetworksNum];
+        upstreamCounts = new int[subNetworksNum];
+        for( int s = 0; s < subNetworksNum; s++ ) {
+            int rootDownstream = downstream[rootOfSubNetwork[s]];
+            if (rootDownstream < 0) {
+                downstreamSubNetworks[s] = -1;
+            } else {
+                downstreamSubNetworks[s] = subNetworkOfHillslope[rootDownstream];
+                upstreamCounts[downstreamSubNetworks[s]]++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of sub-networks.
+     */
+    public int getSubNetworksCount() {
+        return subNetworks.length;
+    }
+
+    /**
+     * Get the hillslopes of a sub-network.
+     *
+     * @param subNetwork the index of the sub-network.
+     * @return the indexes of the hillslopes, every hillslope after the ones upstream of it.
+     */
+    public int[] getHillslopeIndexes( int subNetwork ) {
+        return subNetworks[subNetwork].clone();
+    }
+
+    /**
+     * Get the sub-network a sub-network drains into.
+     *
+     * @param subNetwork the index of the sub-network.
+     * @return the index of the downstream sub-network or -1.
+     */
+    public int getDownstreamSubNetwork( int subNetwork ) {
+        return downstreamSubNetworks[subNetwork];
+    }
+
+    /**
+     * Solve all the sub-networks, every one after the ones draining into it.
+     *
+     * @param threadsNum the number of threads to use.
+     * @param pm the progress monitor.
+     * @param solver the solver of the sub-networks.
+     * @throws Exception the first exception thrown by the solver.
+     */
+    public void solve( int threadsNum, IJGTProgressMonitor pm, ISubNetworkSolver solver ) throws Exception {
+        SolveRun run = new SolveRun(JGTModel.newTaskGroup(threadsNum, pm), solver);
+        for( int s = 0; s < subNetworks.length; s++ ) {
+            if (upstreamCounts[s] == 0) {
+                run.submit(s);
+            }
+        }
+        run.taskGroup.await();
+        if (run.error != null) {
+            throw run.error;
+        }
+    }
+
+    /**
+     * The state of a single {@link SubNetworks#solve(int, IJGTProgressMonitor, ISubNetworkSolver)}.
+     */
+    private class SolveRun {
+        private final JGTTaskGroup taskGroup;
+        private final ISubNetworkSolver solver;
+        private final AtomicIntegerArray remainingUpstream;
+        private volatile Exception error;
+
+        private SolveRun( JGTTaskGroup taskGroup, ISubNetworkSolver solver ) {
+            this.taskGroup = taskGroup;
+            this.solver = solver;
+            remainingUpstream = new AtomicIntegerArray(upstreamCounts);
+        }
+
+        private void submit( final int subNetwork ) {
+            taskGroup.execute(new Runnable(){
+                public void run() {
+                    try {
+                        solver.solve(subNetworks[subNetwork]);
+                    } catch (Exception e) {
+                        synchronized (SolveRun.this) {
+                            if (error == null) {
+                                error = e;
+                            }
+                        }
+                        taskGroup.cancel();
+                        return;
+                    }
+                    // the downstream sub-network is queued before this task is done
+                    int downstream = downstreamSubNetworks[subNetwork];
+                    if (downstream >= 0 && remainingUpstream.decrementAndGet(downstream) == 0) {
+                        submit(downstream);
+                    }
+                }
+            });
+        }
+    }
+}
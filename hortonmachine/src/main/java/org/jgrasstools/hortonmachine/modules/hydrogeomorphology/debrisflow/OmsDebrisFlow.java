@@ -51,7 +51,6 @@ import java.util.Random;
 import java.util.TreeSet;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -154,7 +153,7 @@ public class OmsDebrisFlow extends JGTModel {
         }
 
         WritableRaster mcsWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter probIter = RandomIterFactory.createWritable(mcsWR, null);
+        WritableRandomIter probIter = CoverageUtilities.getWritableRandomIterator(mcsWR);
 
         Random flatRnd = new Random();
         int processedMc = 0;
@@ -349,7 +348,7 @@ public class OmsDebrisFlow extends JGTModel {
         double avgHeight = pDcoeff * pow(pVolume, 1.0 / 3.0);
 
         WritableRaster depoWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter depoIter = RandomIterFactory.createWritable(depoWR, null);
+        WritableRandomIter depoIter = CoverageUtilities.getWritableRandomIterator(depoWR);
 
         for( int c = 0; c < cols; c++ ) {
             for( int r = 0; r < rows; r++ ) {
@@ -142,7 +142,7 @@ public class OmsDebrisTriggerCnr extends JGTModel {
 
         WritableRaster outputWR = CoverageUtilities
                 .createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter outputIter = RandomIterFactory.createWritable(outputWR, null);
+        WritableRandomIter outputIter = CoverageUtilities.getWritableRandomIterator(outputWR);
 
         pm.beginTask("Extracting trigger points...", cols);
         for( int c = 0; c < cols; c++ ) {
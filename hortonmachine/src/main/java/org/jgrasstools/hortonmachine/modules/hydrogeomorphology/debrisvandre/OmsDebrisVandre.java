@@ -210,7 +210,7 @@ public class OmsDebrisVandre extends JGTModel {
                 throw new ModelsIllegalargumentException("If the soil map is supplied also the network map is needed.", this, pm);
             }
             outSoilWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, Double.NaN);
-            outSoilIter = RandomIterFactory.createWritable(outSoilWR, null);
+            outSoilIter = CoverageUtilities.getWritableRandomIterator(outSoilWR);
 
             RenderedImage soilRI = inSoil.getRenderedImage();
             soilIter = RandomIterFactory.create(soilRI, null);
@@ -248,7 +248,7 @@ public class OmsDebrisVandre extends JGTModel {
 
         RenderedImage flowRI = inFlow.getRenderedImage();
         WritableRaster flowWR = CoverageUtilities.renderedImage2WritableRaster(flowRI, false);
-        flowIter = RandomIterFactory.createWritable(flowWR, null);
+        flowIter = CoverageUtilities.getWritableRandomIterator(flowWR);
 
         RenderedImage triggerRI = inTriggers.getRenderedImage();
         RandomIter triggerIter = RandomIterFactory.create(triggerRI, null);
@@ -30,19 +30,21 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_LIC
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_inElev_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_inHorizon_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_outHill_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_pAzimuth_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_pElev_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_pHorizonSectors_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_pMinDiffuse_DESCRIPTION;
 
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.io.File;
 import java.util.HashMap;
 
 import javax.media.jai.RasterFactory;
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -55,8 +57,10 @@ import oms3.annotations.License;
 import oms3.annotations.Name;
 import oms3.annotations.Out;
 import oms3.annotations.Status;
+import oms3.annotations.UI;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
@@ -87,6 +91,15 @@ public class OmsHillshade extends JGTModel {
     @In
     public double pElev = 90;
 
+    @Description(OMSHILLSHADE_pHorizonSectors_DESCRIPTION)
+    @In
+    public int pHorizonSectors = 0;
+
+    @Description(OMSHILLSHADE_inHorizon_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inHorizon = null;
+
     @Description(OMSHILLSHADE_outHill_DESCRIPTION)
     @Out
     public GridCoverage2D outHill;
@@ -113,8 +126,7 @@ public class OmsHillshade extends JGTModel {
         int height = pitRI.getHeight();
         pitRI = null;
 
-        WritableRaster hillshadeWR = CoverageUtilities.createDoubleWritableRaster(width, height, null, pitWR.getSampleModel(),
-                0.0);
+        WritableRaster hillshadeWR = CoverageUtilities.createDoubleWritableRaster(width, height, null, null, 0.0);
         WritableRaster gradientWR = normalVector(pitWR, dx);
 
         calchillshade(pitWR, hillshadeWR, gradientWR, dx);
@@ -166,7 +178,8 @@ public class OmsHillshade extends JGTModel {
      * @param dx
      *            the resolution of the dem. .
      */
-    private void calchillshade( WritableRaster pitWR, WritableRaster hillshadeWR, WritableRaster gradientWR, double dx ) {
+    private void calchillshade( WritableRaster pitWR, WritableRaster hillshadeWR, WritableRaster gradientWR, double dx )
+            throws Exception {
 
         pAzimuth = Math.toRadians(pAzimuth);
         pElev = Math.toRadians(pElev);
@@ -176,17 +189,29 @@ public class OmsHillshade extends JGTModel {
         double[] inverseSunVector = calcInverseSunVector(sunVector);
         int rows = pitWR.getHeight();
         int cols = pitWR.getWidth();
-        WritableRaster sOmbraWR = calculateFactor(rows, cols, sunVector, inverseSunVector, normalSunVector, pitWR, dx);
+        WritableRaster sOmbraWR = null;
+        HorizonEngine horizonEngine = null;
+        if (pHorizonSectors > 0) {
+            File horizonFile = inHorizon != null ? new File(inHorizon) : null;
+            horizonEngine = HorizonEngine.create(pitWR, dx, pHorizonSectors, horizonFile, getDefaultThreadsNum(), pm);
+        } else {
+            sOmbraWR = calculateFactor(rows, cols, sunVector, inverseSunVector, normalSunVector, pitWR, dx);
+        }
         pm.beginTask(msg.message("hillshade.calculating"), rows * cols);
         for( int j = 1; j < rows - 1; j++ ) {
             for( int i = 1; i < cols - 1; i++ ) {
 
                 double[] ng = gradientWR.getPixel(i, j, new double[3]);
                 double cosinc = scalarProduct(sunVector, ng);
+                int sOmbra;
                 if (cosinc < 0) {
-                    sOmbraWR.setSample(i, j, 0, 0);
+                    sOmbra = 0;
+                } else if (horizonEngine != null) {
+                    sOmbra = (int) horizonEngine.getShadowFactor(i, j, sunVector);
+                } else {
+                    sOmbra = sOmbraWR.getSample(i, j, 0);
                 }
-                hillshadeWR.setSample(i, j, 0, (int) (212.5 * (cosinc * sOmbraWR.getSample(i, j, 0) + pMinDiffuse)));
+                hillshadeWR.setSample(i, j, 0, (int) (212.5 * (cosinc * sOmbra + pMinDiffuse)));
                 pm.worked(1);
             }
         }
@@ -208,14 +233,14 @@ public class OmsHillshade extends JGTModel {
         int rows = pitWR.getHeight();
         int cols = pitWR.getWidth();
 
-        RandomIter pitIter = RandomIterFactory.create(pitWR, null);
+        RandomIter pitIter = CoverageUtilities.getRandomIterator(pitWR);
         /*
          * Initialize the Image of the normal vector in the central point of the
          * cells, which have 3 components so the Image have 3 bands..
          */
         SampleModel sm = RasterFactory.createBandedSampleModel(5, cols, rows, 3);
         WritableRaster tmpNormalVectorWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, sm, 0.0);
-        WritableRandomIter tmpNormaIter = RandomIterFactory.createWritable(tmpNormalVectorWR, null);
+        WritableRandomIter tmpNormaIter = CoverageUtilities.getWritableRandomIterator(tmpNormalVectorWR);
         /*
          * apply the corripio's formula (is the formula (3) in the article)
          */
@@ -30,18 +30,20 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_LI
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_inElev_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_inHorizon_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_outIns_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_pHorizonSectors_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_tEndDate_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_tStartDate_DESCRIPTION;
 
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.io.File;
 import java.util.HashMap;
 
 import javax.media.jai.RasterFactory;
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -54,10 +56,14 @@ import oms3.annotations.License;
 import oms3.annotations.Name;
 import oms3.annotations.Out;
 import oms3.annotations.Status;
+import oms3.annotations.UI;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
 import org.jgrasstools.gears.utils.CrsUtilities;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
@@ -92,6 +98,15 @@ public class OmsInsolation extends JGTModel {
     @In
     public String tEndDate = null;
 
+    @Description(OMSINSOLATION_pHorizonSectors_DESCRIPTION)
+    @In
+    public int pHorizonSectors = 0;
+
+    @Description(OMSINSOLATION_inHorizon_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inHorizon = null;
+
     @Description(OMSINSOLATION_outIns_DESCRIPTION)
     @Out
     public GridCoverage2D outIns;
@@ -114,12 +129,19 @@ public class OmsInsolation extends JGTModel {
      */
     private static final double ATM = 1013.25;
 
+    /**
+     * The number of rows of the radiation evaluated by a single task.
+     */
+    private static final int ROWS_PER_TASK = 16;
+
     private double lambda;
 
     private double delta;
 
     private double omega;
 
+    private HorizonEngine horizonEngine;
+
     private HortonMessageHandler msg = HortonMessageHandler.getInstance();
 
     @Execute
@@ -161,12 +183,18 @@ public class OmsInsolation extends JGTModel {
         WritableRaster pitWR = CoverageUtilities.replaceNovalue(pitTmpRI, -9999.0);
         pitTmpRI = null;
 
-        WritableRaster insolationWR = CoverageUtilities.createDoubleWritableRaster(width, height, null, pitWR.getSampleModel(),
-                0.0);
-        WritableRandomIter insolationIterator = RandomIterFactory.createWritable(insolationWR, null);
+        WritableRaster insolationWR = CoverageUtilities.createDoubleWritableRaster(width, height, null, null, 0.0);
+        WritableRandomIter insolationIterator = CoverageUtilities.getWritableRandomIterator(insolationWR);
 
         WritableRaster gradientWR = normalVector(pitWR, dx);
 
+        if (pHorizonSectors > 0) {
+            File horizonFile = inHorizon != null ? new File(inHorizon) : null;
+            horizonEngine = HorizonEngine.create(pitWR, dx, pHorizonSectors, horizonFile, getDefaultThreadsNum(), pm);
+        } else {
+            horizonEngine = null;
+        }
+
         pm.beginTask(msg.message("insolation.calculating"), endDay - startDay);
 
         for( int i = startDay; i <= endDay; i++ ) {
@@ -174,6 +202,7 @@ public class OmsInsolation extends JGTModel {
             pm.worked(i - startDay);
         }
         pm.done();
+        horizonEngine = null;
         for( int y = 2; y < height - 2; y++ ) {
             for( int x = 2; x < width - 2; x++ ) {
                 if (pitWR.getSampleDouble(x, y, 0) == -9999.0) {
@@ -201,8 +230,8 @@ public class OmsInsolation extends JGTModel {
      *            day in the year.
      * @paradx the resolutiono of the dem.
      */
-    private void calcInsolation( double lambda, WritableRaster demWR, WritableRaster gradientWR, WritableRaster insolationWR,
-            int day, double dx ) {
+    private void calcInsolation( double lambda, final WritableRaster demWR, final WritableRaster gradientWR,
+            final WritableRaster insolationWR, int day, double dx ) {
         // calculating the day angle
         // double dayang = 2 * Math.PI * (day - 1) / 365.0;
         double dayangb = (360 / 365.25) * (day - 79.436);
@@ -215,21 +244,42 @@ public class OmsInsolation extends JGTModel {
         while( hour <= ss - (Math.PI / 48) ) {
             omega = hour;
             // calculating the vector related to the sun
-            double sunVector[] = calcSunVector();
+            final double sunVector[] = calcSunVector();
             double zenith = calcZenith(sunVector[2]);
             double[] inverseSunVector = calcInverseSunVector(sunVector);
             double[] normalSunVector = calcNormalSunVector(sunVector);
 
-            int height = demWR.getHeight();
-            int width = demWR.getWidth();
-            WritableRaster sOmbraWR = calculateFactor(height, width, sunVector, inverseSunVector, normalSunVector, demWR, dx);
-            double mr = 1 / (sunVector[2] + 0.15 * Math.pow((93.885 - zenith), (-1.253)));
-            for( int j = 0; j < height; j++ ) {
-                for( int i = 0; i < width; i++ ) {
-                    // evaluate the radiation.
-                    calcRadiation(i, j, demWR, sOmbraWR, insolationWR, sunVector, gradientWR, mr);
-                }
+            final int height = demWR.getHeight();
+            final int width = demWR.getWidth();
+            final WritableRaster sOmbraWR;
+            if (horizonEngine == null) {
+                sOmbraWR = calculateFactor(height, width, sunVector, inverseSunVector, normalSunVector, demWR, dx);
+            } else {
+                sOmbraWR = null;
+            }
+            final double mr = 1 / (sunVector[2] + 0.15 * Math.pow((93.885 - zenith), (-1.253)));
+            JGTTaskGroup taskGroup = newTaskGroup(getDefaultThreadsNum(), pm);
+            for( int fromRow = 0; fromRow < height; fromRow += ROWS_PER_TASK ) {
+                final int from = fromRow;
+                final int to = Math.min(height, fromRow + ROWS_PER_TASK);
+                taskGroup.execute(new Runnable(){
+                    public void run() {
+                        for( int j = from; j < to; j++ ) {
+                            for( int i = 0; i < width; i++ ) {
+                                double sOmbra;
+                                if (sOmbraWR != null) {
+                                    sOmbra = sOmbraWR.getSampleDouble(i, j, 0);
+                                } else {
+                                    sOmbra = horizonEngine.getShadowFactor(i, j, sunVector);
+                                }
+                                // evaluate the radiation.
+                                calcRadiation(i, j, demWR, sOmbra, insolationWR, sunVector, gradientWR, mr);
+                            }
+                        }
+                    }
+                });
             }
+            taskGroup.await();
             hour = hour + Math.PI / 24.0;
         }
     }
@@ -247,7 +297,7 @@ public class OmsInsolation extends JGTModel {
      * evaluate several component of the radiation and then multiply by the
      * sOmbra factor.
      */
-    private void calcRadiation( int i, int j, WritableRaster demWR, WritableRaster sOmbraWR, WritableRaster insolationWR,
+    private void calcRadiation( int i, int j, WritableRaster demWR, double sOmbra, WritableRaster insolationWR,
             double[] sunVector, WritableRaster gradientWR, double mr ) {
         double z = demWR.getSampleDouble(i, j, 0);
         double pressure = ATM * Math.exp(-0.0001184 * z);
@@ -271,7 +321,7 @@ public class OmsInsolation extends JGTModel {
             cosinc = 0;
         }
         double tmp = insolationWR.getSampleDouble(i, j, 0);
-        insolationWR.setSample(i, j, 0, In * cosinc * sOmbraWR.getSampleDouble(i, j, 0) / 1000 + tmp);
+        insolationWR.setSample(i, j, 0, In * cosinc * sOmbra / 1000 + tmp);
     }
 
     protected double[] calcSunVector() {
@@ -291,14 +341,14 @@ public class OmsInsolation extends JGTModel {
         int rows = pitWR.getHeight();
         int cols = pitWR.getWidth();
 
-        RandomIter pitIter = RandomIterFactory.create(pitWR, null);
+        RandomIter pitIter = CoverageUtilities.getRandomIterator(pitWR);
         /*
          * Initializa the Image of the normal vector in the central point of the
          * cells, which have 3 components so the Image have 3 bands..
          */
         SampleModel sm = RasterFactory.createBandedSampleModel(5, cols, rows, 3);
         WritableRaster tmpNormalVectorWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, sm, 0.0);
-        WritableRandomIter tmpNormalIter = RandomIterFactory.createWritable(tmpNormalVectorWR, null);
+        WritableRandomIter tmpNormalIter = CoverageUtilities.getWritableRandomIterator(tmpNormalVectorWR);
         /*
          * apply the corripio's formula (is the formula (3) in the article)
          */
@@ -24,7 +24,6 @@ import static org.jgrasstools.gears.utils.math.NumericsUtilities.dEq;
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -107,9 +106,9 @@ public class OmsHazardClassifier extends JGTModel {
         RandomIter tr30Iter = CoverageUtilities.getRandomIterator(inIntensityTr30);
 
         WritableRaster outIP1WR = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, doubleNovalue);
-        WritableRandomIter outIP1Iter = RandomIterFactory.createWritable(outIP1WR, null);
+        WritableRandomIter outIP1Iter = CoverageUtilities.getWritableRandomIterator(outIP1WR);
         WritableRaster outIP2WR = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, doubleNovalue);
-        WritableRandomIter outIP2Iter = RandomIterFactory.createWritable(outIP2WR, null);
+        WritableRandomIter outIP2Iter = CoverageUtilities.getWritableRandomIterator(outIP2WR);
 
         pm.beginTask("Processing map...", nRows);
         for( int r = 0; r < nRows; r++ ) {
@@ -26,7 +26,6 @@ import static org.jgrasstools.hortonmachine.modules.hydrogeomorphology.intensity
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -181,7 +180,7 @@ public class OmsIntensityClassifierDebrisFlowTN extends JGTModel {
         RandomIter depositThicknessIter = CoverageUtilities.getRandomIterator(inDepositsThickness);
 
         WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         pm.beginTask("Processing map...", nRows);
         for( int r = 0; r < nRows; r++ ) {
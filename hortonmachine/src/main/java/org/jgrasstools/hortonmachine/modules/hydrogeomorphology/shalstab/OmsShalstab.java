@@ -242,9 +242,9 @@ public class OmsShalstab extends JGTModel {
         RandomIter abRI = RandomIterFactory.create(ab, null);
 
         WritableRaster qcritWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
-        WritableRandomIter qcritIter = RandomIterFactory.createWritable(qcritWR, null);
+        WritableRandomIter qcritIter = CoverageUtilities.getWritableRandomIterator(qcritWR);
         WritableRaster classiWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
-        WritableRandomIter classiIter = RandomIterFactory.createWritable(classiWR, null);
+        WritableRandomIter classiIter = CoverageUtilities.getWritableRandomIterator(classiWR);
 
         pm.beginTask("Creating qcrit map...", rows);
         for( int j = 0; j < rows; j++ ) {
@@ -33,11 +33,14 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_LICEN
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_inElev_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_inHorizon_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_outSky_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_pHorizonSectors_DESCRIPTION;
 
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.io.File;
 import java.util.HashMap;
 
 import javax.media.jai.RasterFactory;
@@ -52,8 +55,11 @@ import oms3.annotations.License;
 import oms3.annotations.Name;
 import oms3.annotations.Out;
 import oms3.annotations.Status;
+import oms3.annotations.UI;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
@@ -71,6 +77,15 @@ public class OmsSkyview extends JGTModel {
     @In
     public GridCoverage2D inElev = null;
 
+    @Description(OMSSKYVIEW_pHorizonSectors_DESCRIPTION)
+    @In
+    public int pHorizonSectors = 0;
+
+    @Description(OMSSKYVIEW_inHorizon_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inHorizon = null;
+
     @Description(OMSSKYVIEW_outSky_DESCRIPTION)
     @Out
     public GridCoverage2D outSky;
@@ -102,7 +117,12 @@ public class OmsSkyview extends JGTModel {
         rows = pitWR.getHeight();
         cols = pitWR.getWidth();
 
-        WritableRaster skyWR = skyviewfactor(pitWR, dx);
+        WritableRaster skyWR;
+        if (pHorizonSectors > 0) {
+            skyWR = horizonSkyviewfactor(pitWR, dx);
+        } else {
+            skyWR = skyviewfactor(pitWR, dx);
+        }
 
         int maxY = minY + rows;
         int maxX = minX + cols;
@@ -234,12 +254,11 @@ public class OmsSkyview extends JGTModel {
 
         normalVectorWR = normalVector(pitWR, res);
 
-        WritableRaster skyviewFactorWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, pitWR.getSampleModel(),
-                0.0);
+        WritableRaster skyviewFactorWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, 0.0);
         pm.beginTask(msg.message("skyview.calculating"), 35);
         for( int i = 0; i < 360 - 10; i = i + 10 ) {
             azimuth = Math.toRadians(i * 1.0);
-            WritableRaster skyViewWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, pitWR.getSampleModel(),
+            WritableRaster skyViewWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null,
                     Math.toRadians(maxSlope));
             for( int j = (int) maxSlope; j >= 0; j-- ) {
 
@@ -269,6 +288,28 @@ public class OmsSkyview extends JGTModel {
         return skyviewFactorWR;
     }
 
+    /**
+     * Calculate the skyview factor from the horizon angles of the dem.
+     * 
+     * @param pitWR
+     *            the dem ( the map of elevation).
+     * @param res the resolution of the map.
+     * @return the map of sky view factor.
+     * @throws Exception
+     */
+    private WritableRaster horizonSkyviewfactor( WritableRaster pitWR, double res ) throws Exception {
+        File horizonFile = inHorizon != null ? new File(inHorizon) : null;
+        HorizonEngine horizonEngine = HorizonEngine.create(pitWR, res, pHorizonSectors, horizonFile, getDefaultThreadsNum(),
+                pm);
+        WritableRaster skyviewFactorWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, 0.0);
+        for( int y = 0; y < rows; y++ ) {
+            for( int x = 0; x < cols; x++ ) {
+                skyviewFactorWR.setSample(x, y, 0, horizonEngine.getSkyviewFactor(x, y));
+            }
+        }
+        return skyviewFactorWR;
+    }
+
     /**
      * Calculate the angle.
      * 
@@ -158,7 +158,7 @@ public class OmsExtractNetwork extends JGTModel {
     private WritableRaster extractNetTcaThreshold( RenderedImage tcaRI ) {
         RandomIter tcaIter = RandomIterFactory.create(tcaRI, null);
         WritableRaster netWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter netIter = RandomIterFactory.createWritable(netWR, null);
+        WritableRandomIter netIter = CoverageUtilities.getWritableRandomIterator(netWR);
 
         pm.beginTask(msg.message("extractnetwork.extracting"), rows); //$NON-NLS-1$
         for( int r = 0; r < rows; r++ ) {
@@ -193,7 +193,7 @@ public class OmsExtractNetwork extends JGTModel {
         // create new RasterData for the network matrix
         WritableRaster networkWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null,
                 JGTConstants.doubleNovalue);
-        WritableRandomIter netRandomIter = RandomIterFactory.createWritable(networkWR, null);
+        WritableRandomIter netRandomIter = CoverageUtilities.getWritableRandomIterator(networkWR);
 
         pm.beginTask(msg.message("extractnetwork.extracting"), rows); //$NON-NLS-1$
         for( int r = 0; r < rows; r++ ) {
@@ -254,7 +254,7 @@ public class OmsExtractNetwork extends JGTModel {
 
         // try the operation!!
 
-        WritableRandomIter netRandomIter = RandomIterFactory.createWritable(netImage, null);
+        WritableRandomIter netRandomIter = CoverageUtilities.getWritableRandomIterator(netImage);
 
         pm.beginTask(msg.message("extractnetwork.extracting"), rows); //$NON-NLS-1$
         for( int r = 0; r < rows; r++ ) {
@@ -38,7 +38,6 @@ import java.awt.image.WritableRaster;
 import java.util.List;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -116,7 +115,7 @@ public class OmsHackLength extends JGTModel {
 
         RenderedImage flowRI = inFlow.getRenderedImage();
         WritableRaster flowWR = CoverageUtilities.renderedImage2WritableRaster(flowRI, true);
-        WritableRandomIter flowIter = RandomIterFactory.createWritable(flowWR, null);
+        WritableRandomIter flowIter = CoverageUtilities.getWritableRandomIterator(flowWR);
 
         // if inElevation isn't null then work in 3d.
         RandomIter elevIter = null;
@@ -140,7 +139,7 @@ public class OmsHackLength extends JGTModel {
         double maxTca = 0.0;
 
         WritableRaster hacklengthWR = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, doubleNovalue);
-        WritableRandomIter hacklengthIter = RandomIterFactory.createWritable(hacklengthWR, null);
+        WritableRandomIter hacklengthIter = CoverageUtilities.getWritableRandomIterator(hacklengthWR);
 
         pm.beginTask(msg.message("hacklength.calculating"), nRows); //$NON-NLS-1$
         for( int r = 0; r < nRows; r++ ) {
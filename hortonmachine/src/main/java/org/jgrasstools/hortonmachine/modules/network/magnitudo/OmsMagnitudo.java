@@ -103,7 +103,7 @@ public class OmsMagnitudo extends JGTModel {
         // get rows and cols from the active region
         int cols = width;
         int rows = height;
-        RandomIter magIter = RandomIterFactory.create(magWR, null);
+        RandomIter magIter = CoverageUtilities.getRandomIterator(magWR);
         pm.beginTask(msg.message("magnitudo.workingon"), rows * 2); //$NON-NLS-1$
 
         for( int j = 0; j < rows; j++ ) {
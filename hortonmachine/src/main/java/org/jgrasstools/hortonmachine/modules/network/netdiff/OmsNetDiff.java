@@ -36,7 +36,6 @@ import java.awt.image.WritableRaster;
 import java.util.HashMap;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -150,9 +149,8 @@ public class OmsNetDiff extends JGTModel {
             }
             pm.worked(1);
         }
-        WritableRaster diffImage = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, inFlow.getRenderedImage()
-                .getSampleModel(), null);
-        WritableRandomIter diffIter = RandomIterFactory.createWritable(diffImage, null);
+        WritableRaster diffImage = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
+        WritableRandomIter diffIter = CoverageUtilities.getWritableRandomIterator(diffImage);
         // Second step: It calculate the difference among the first and the last
         // point of a link
         for( int j = 0; j < rows; j++ ) {
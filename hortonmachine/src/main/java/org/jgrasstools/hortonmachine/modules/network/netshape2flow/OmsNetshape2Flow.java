@@ -40,7 +40,6 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -131,8 +130,8 @@ public class OmsNetshape2Flow extends JGTModel {
         WritableRaster flowWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
         WritableRaster netWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
 
-        WritableRandomIter flowIter = RandomIterFactory.createWritable(flowWR, null);
-        WritableRandomIter netIter = RandomIterFactory.createWritable(netWR, null);
+        WritableRandomIter flowIter = CoverageUtilities.getWritableRandomIterator(flowWR);
+        WritableRandomIter netIter = CoverageUtilities.getWritableRandomIterator(netWR);
 
         int activeFieldPosition = -1;
         // if a field for active reach parts was passed
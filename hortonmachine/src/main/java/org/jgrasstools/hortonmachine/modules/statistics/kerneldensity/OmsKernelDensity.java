@@ -131,7 +131,7 @@ public class OmsKernelDensity extends JGTModel {
         RandomIter inIter = RandomIterFactory.create(inImg, null);
 
         WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         float[] kernelData = kernel.getKernelData();
 
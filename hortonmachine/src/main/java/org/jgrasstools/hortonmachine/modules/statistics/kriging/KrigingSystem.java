@@ -0,0 +1,185 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.statistics.kriging;
+
+import org.jgrasstools.gears.utils.math.matrixes.LinearSystem;
+import org.jgrasstools.gears.utils.math.matrixes.MatrixException;
+
+/**
+ * The LU factorization of a kriging matrix, to solve it for many known terms.
+ *
+ * <p>The matrix is decomposed once, with the same scaled partial pivoting and
+ * iterative improvement of {@link LinearSystem}, so that every solution costs
+ * O(n<sup>2</sup>) instead of O(n<sup>3</sup>).</p>
+ *
+ * <p>After construction the object is only read, so it can be used by
+ * several threads at the same time.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+class KrigingSystem {
+    private static final double TOLERANCE = 10E-6;
+    /**
+     * Max iterations for the improvement, twice the number of significant digits.
+     */
+    private static final int MAX_ITER = 10;
+
+    private final int n;
+    private final double[][] matrix;
+    private final double[][] lu;
+    private final int[] permutation;
+
+    /**
+     * Factorize a matrix.
+     *
+     * @param matrix the square matrix, it is not copied and must not be modified.
+     * @throws MatrixException for a zero row or a singular matrix.
+     */
+    KrigingSystem( double[][] matrix ) throws MatrixException {
+        this.matrix = matrix;
+        n = matrix.length;
+        lu = new double[n][];
+        permutation = new int[n];
+        double[] scales = new double[n];
+        for( int r = 0; r < n; r++ ) {
+            lu[r] = matrix[r].clone();
+            permutation[r] = r;
+            double largestRowElmt = 0;
+            for( int c = 0; c < n; c++ ) {
+                largestRowElmt = Math.max(largestRowElmt, Math.abs(lu[r][c]));
+            }
+            if (largestRowElmt == 0) {
+                throw new MatrixException(MatrixException.ZERO_ROW);
+            }
+            scales[r] = 1 / largestRowElmt;
+        }
+
+        for( int rPivot = 0; rPivot < n - 1; rPivot++ ) {
+            double largestScaledElmt = 0;
+            int rLargest = 0;
+            for( int r = rPivot; r < n; r++ ) {
+                int pr = permutation[r];
+                double scaledElmt = Math.abs(lu[pr][rPivot]) * scales[pr];
+                if (largestScaledElmt < scaledElmt) {
+                    largestScaledElmt = scaledElmt;
+                    rLargest = r;
+                }
+            }
+            if (largestScaledElmt == 0) {
+                throw new MatrixException(MatrixException.SINGULAR);
+            }
+            if (rLargest != rPivot) {
+                int tmp = permutation[rPivot];
+                permutation[rPivot] = permutation[rLargest];
+                permutation[rLargest] = tmp;
+            }
+
+            double[] pivotRow = lu[permutation[rPivot]];
+            double pivotElmt = pivotRow[rPivot];
+            for( int r = rPivot + 1; r < n; r++ ) {
+                double[] row = lu[permutation[r]];
+                double multiple = row[rPivot] / pivotElmt;
+                row[rPivot] = multiple;
+                if (multiple != 0) {
+                    for( int c = rPivot + 1; c < n; c++ ) {
+                        row[c] -= multiple * pivotRow[c];
+                    }
+                }
+            }
+        }
+        if (lu[permutation[n - 1]][n - 1] == 0) {
+            throw new MatrixException(MatrixException.SINGULAR);
+        }
+    }
+
+    /**
+     * @return the size of the system.
+     */
+    int size() {
+        return n;
+    }
+
+    /**
+     * Solve the system for a known term.
+     *
+     * @param b the known term.
+     * @param x the array to put the solution in.
+     * @param work a work array of the size of the system.
+     * @throws MatrixException if the improvement of the solution doesn't converge.
+     */
+    void solve( double[] b, double[] x, double[] work ) throws MatrixException {
+        substitute(b, x);
+
+        double largestX = 0;
+        for( int r = 0; r < n; r++ ) {
+            largestX = Math.max(largestX, Math.abs(x[r]));
+        }
+        if (largestX == 0) {
+            return;
+        }
+
+        // iteratively improve the solution, through the residuals b - Ax
+        double[] residuals = new double[n];
+        for( int iter = 0; iter < MAX_ITER; iter++ ) {
+            for( int r = 0; r < n; r++ ) {
+                double[] row = matrix[r];
+                double dot = 0;
+                for( int c = 0; c < n; c++ ) {
+                    dot += row[c] * x[c];
+                }
+                residuals[r] = b[r] - dot;
+            }
+            substitute(residuals, work);
+
+            double largestDiff = 0;
+            for( int r = 0; r < n; r++ ) {
+                double oldX = x[r];
+                x[r] = oldX + work[r];
+                largestDiff = Math.max(largestDiff, Math.abs(x[r] - oldX));
+            }
+            if (largestDiff < largestX * TOLERANCE) {
+                return;
+            }
+        }
+        throw new MatrixException(MatrixException.NO_CONVERGENCE);
+    }
+
+    /**
+     * Forward and back substitution.
+     */
+    private void substitute( double[] b, double[] x ) {
+        // Ly = b, y is kept in x
+        for( int r = 0; r < n; r++ ) {
+            double[] row = lu[permutation[r]];
+            double dot = 0;
+            for( int c = 0; c < r; c++ ) {
+                dot += row[c] * x[c];
+            }
+            x[r] = b[permutation[r]] - dot;
+        }
+        // Ux = y
+        for( int r = n - 1; r >= 0; r-- ) {
+            double[] row = lu[permutation[r]];
+            double dot = 0;
+            for( int c = r + 1; c < n; c++ ) {
+                dot += row[c] * x[c];
+            }
+            x[r] = (x[r] - dot) / row[r];
+        }
+    }
+}
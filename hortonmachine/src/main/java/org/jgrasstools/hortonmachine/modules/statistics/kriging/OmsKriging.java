@@ -39,6 +39,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_outDa
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_outGrid_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pA_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pIntegralscale_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pMaxNeighbours_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pMode_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pNug_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pS_DESCRIPTION;
@@ -47,6 +48,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pVari
 
 import java.awt.image.WritableRaster;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -54,7 +56,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -78,11 +79,11 @@ import org.geotools.feature.SchemaException;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
 import org.jgrasstools.gears.libs.modules.ModelsEngine;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
-import org.jgrasstools.gears.utils.math.matrixes.ColumnVector;
-import org.jgrasstools.gears.utils.math.matrixes.LinearSystem;
+import org.jgrasstools.gears.utils.math.matrixes.MatrixException;
 import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.geometry.MismatchedDimensionException;
@@ -207,6 +208,10 @@ public class OmsKriging extends JGTModel {
     @In
     public double pNug;
 
+    @Description(OMSKRIGING_pMaxNeighbours_DESCRIPTION)
+    @In
+    public int pMaxNeighbours = 0;
+
     @Description(OMSKRIGING_outGrid_DESCRIPTION)
     @Out
     public GridCoverage2D outGrid = null;
@@ -220,6 +225,11 @@ public class OmsKriging extends JGTModel {
      */
     private static final double TOLL = 1.0d * 10E-8;
 
+    /**
+     * The number of points interpolated by a single task.
+     */
+    private static final int POINTS_PER_TASK = 512;
+
     private HortonMessageHandler msg = HortonMessageHandler.getInstance();
 
     private WritableRaster outWR = null;
@@ -413,48 +423,20 @@ public class OmsKriging extends JGTModel {
              */
 
             if (!areAllEquals && n1 > 1) {
-                // pm.beginTask(msg.message("kriging.working"),inInterpolate.size());
+                int pointsNum = pointIdToGridPoint.size();
+                double[] xPoints = new double[pointsNum];
+                double[] yPoints = new double[pointsNum];
+                double[] zPoints = new double[pointsNum];
                 while( idIterator.hasNext() ) {
-                    double sum = 0.;
                     int id = idIterator.next();
                     idArray[j] = id;
                     Coordinate coordinate = (Coordinate) pointIdToGridPoint.get(id).getWorldCoordinates();
-                    xStation[n1] = coordinate.x;
-                    yStation[n1] = coordinate.y;
-                    zStation[n1] = coordinate.z;
-                    /*
-                     * calculating the right hand side of the kriging linear
-                     * system.
-                     */
-                    double[] knownTerm = knownTermsCalculation(xStation, yStation, zStation, n1);
-
-                    /*
-                     * solve the linear system, where the result is the weight.
-                     */
-                    ColumnVector knownTermColumn = new ColumnVector(knownTerm);
-                    LinearSystem linearSystem = new LinearSystem(covarianceMatrix);
-                    ColumnVector solution = linearSystem.solve(knownTermColumn, true);
-                    // Matrix a = new Matrix(covarianceMatrix);
-                    // Matrix b = new Matrix(knownTerm, knownTerm.length);
-                    // Matrix x = a.solve(b);
-                    double[] moltiplicativeFactor = solution.copyValues1D();
-
-                    double h0 = 0.0;
-                    for( int k = 0; k < n1; k++ ) {
-                        h0 = h0 + moltiplicativeFactor[k] * hStation[k];
-                        sum = sum + moltiplicativeFactor[k];
-                    }
-
-                    if (doLogarithmic) {
-                        h0 = Math.exp(h0);
-                    }
-                    result[j] = h0;
+                    xPoints[j] = coordinate.x;
+                    yPoints[j] = coordinate.y;
+                    zPoints[j] = coordinate.z;
                     j++;
-                    if (Math.abs(sum - 1) >= TOLL) {
-                        throw new ModelsRuntimeException("Error in the coffeicients calculation", this.getClass().getSimpleName());
-                    }
-
                 }
+                interpolate(covarianceMatrix, xStation, yStation, zStation, hStation, n1, xPoints, yPoints, zPoints, result);
             } else if (n1 == 1 || areAllEquals) {
                 double tmp = hStation[0];
                 int k = 0;
@@ -490,6 +472,135 @@ public class OmsKriging extends JGTModel {
         }
     }
 
+    /**
+     * Interpolate the points, in parallel chunks.
+     * 
+     * <p>With global kriging the covariance matrix is factorized once and the
+     * factorization is used for all the points. With local kriging the system of
+     * the nearest stations is factorized, and reused by the following points
+     * as long as they have the same nearest stations. If there are less stations
+     * than the requested neighbours, global kriging is used.</p>
+     */
+    private void interpolate( final double[][] covarianceMatrix, final double[] xStation, final double[] yStation,
+            final double[] zStation, final double[] hStation, final int n1, final double[] xPoints, final double[] yPoints,
+            final double[] zPoints, final double[] result ) throws Exception {
+        final int pointsNum = xPoints.length;
+        final KrigingSystem globalSystem;
+        final StationsNeighbourhood neighbourhood;
+        if (pMaxNeighbours > 0 && pMaxNeighbours <= n1) {
+            globalSystem = null;
+            neighbourhood = new StationsNeighbourhood(xStation, yStation, n1);
+        } else {
+            globalSystem = new KrigingSystem(covarianceMatrix);
+            neighbourhood = null;
+        }
+
+        final Exception[] error = new Exception[1];
+        JGTTaskGroup taskGroup = newTaskGroup(getDefaultThreadsNum(), pm);
+        for( int from = 0; from < pointsNum; from += POINTS_PER_TASK ) {
+            final int fromPoint = from;
+            final int toPoint = Math.min(pointsNum, from + POINTS_PER_TASK);
+            taskGroup.execute(new Runnable(){
+                public void run() {
+                    try {
+                        if (globalSystem != null) {
+                            interpolateGlobal(globalSystem, xStation, yStation, zStation, hStation, n1, xPoints, yPoints,
+                                    zPoints, result, fromPoint, toPoint);
+                        } else {
+                            interpolateLocal(neighbourhood, covarianceMatrix, xStation, yStation, zStation, hStation, xPoints,
+                                    yPoints, zPoints, result, fromPoint, toPoint);
+                        }
+                    } catch (Exception e) {
+                        synchronized (error) {
+                            if (error[0] == null) {
+                                error[0] = e;
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        taskGroup.await();
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    private void interpolateGlobal( KrigingSystem system, double[] xStation, double[] yStation, double[] zStation,
+            double[] hStation, int n1, double[] xPoints, double[] yPoints, double[] zPoints, double[] result, int fromPoint,
+            int toPoint ) throws MatrixException {
+        double[] knownTerm = new double[n1 + 1];
+        double[] weights = new double[n1 + 1];
+        double[] work = new double[n1 + 1];
+        for( int p = fromPoint; p < toPoint; p++ ) {
+            /*
+             * calculating the right hand side of the kriging linear
+             * system.
+             */
+            knownTermsCalculation(xStation, yStation, zStation, null, n1, xPoints[p], yPoints[p], zPoints[p], knownTerm);
+            /*
+             * solve the linear system, where the result is the weight.
+             */
+            system.solve(knownTerm, weights, work);
+
+            double h0 = 0.0;
+            double sum = 0.;
+            for( int k = 0; k < n1; k++ ) {
+                h0 = h0 + weights[k] * hStation[k];
+                sum = sum + weights[k];
+            }
+            result[p] = checkedResult(h0, sum);
+        }
+    }
+
+    private void interpolateLocal( StationsNeighbourhood neighbourhood, double[][] covarianceMatrix, double[] xStation,
+            double[] yStation, double[] zStation, double[] hStation, double[] xPoints, double[] yPoints, double[] zPoints,
+            double[] result, int fromPoint, int toPoint ) throws MatrixException {
+        int k = pMaxNeighbours;
+        int[] nearest = new int[k];
+        int[] previousNearest = new int[k];
+        double[] distances = new double[k];
+        double[] knownTerm = new double[k + 1];
+        double[] weights = new double[k + 1];
+        double[] work = new double[k + 1];
+        KrigingSystem system = null;
+        for( int p = fromPoint; p < toPoint; p++ ) {
+            neighbourhood.nearest(xPoints[p], yPoints[p], k, nearest, distances);
+            if (system == null || !Arrays.equals(nearest, previousNearest)) {
+                double[][] localMatrix = new double[k + 1][k + 1];
+                for( int a = 0; a < k; a++ ) {
+                    for( int b = 0; b < k; b++ ) {
+                        localMatrix[a][b] = covarianceMatrix[nearest[a]][nearest[b]];
+                    }
+                    localMatrix[a][k] = 1.0;
+                    localMatrix[k][a] = 1.0;
+                }
+                system = new KrigingSystem(localMatrix);
+                System.arraycopy(nearest, 0, previousNearest, 0, k);
+            }
+            knownTermsCalculation(xStation, yStation, zStation, nearest, k, xPoints[p], yPoints[p], zPoints[p], knownTerm);
+            system.solve(knownTerm, weights, work);
+
+            double h0 = 0.0;
+            double sum = 0.;
+            for( int a = 0; a < k; a++ ) {
+                h0 = h0 + weights[a] * hStation[nearest[a]];
+                sum = sum + weights[a];
+            }
+            result[p] = checkedResult(h0, sum);
+        }
+    }
+
+    private double checkedResult( double h0, double sum ) {
+        if (Math.abs(sum - 1) >= TOLL) {
+            throw new ModelsRuntimeException("Error in the coffeicients calculation", this.getClass().getSimpleName());
+        }
+        if (doLogarithmic) {
+            h0 = Math.exp(h0);
+        }
+        return h0;
+    }
+
     /**
      * Verify the input of the model.
      */
@@ -550,7 +661,7 @@ public class OmsKriging extends JGTModel {
     private void storeResult( double[] interpolatedValues )
             throws MismatchedDimensionException, Exception {
 
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         Set<Integer> pointsToInterpolateIdSet = pointIdToGridPoint.keySet();
         Iterator<Integer> idIterator = pointsToInterpolateIdSet.iterator();
@@ -791,32 +902,33 @@ public class OmsKriging extends JGTModel {
      *            the y coordinates.
      * @param z
      *            the z coordinates.
+     * @param stations
+     *            the indexes of the stations to use, or <code>null</code> to use the first n.
      * @param n
      *            the number of the stations points.
-     * @return
+     * @param xPoint
+     *            the x coordinate of the point to interpolate.
+     * @param yPoint
+     *            the y coordinate of the point to interpolate.
+     * @param zPoint
+     *            the z coordinate of the point to interpolate.
+     * @param gamma
+     *            the array of size n + 1 to put the known terms in.
      */
-    private double[] knownTermsCalculation( double[] x, double[] y, double[] z, int n ) {
-
-        double[] gamma = new double[n + 1];
-        if (defaultVariogramMode == 0) {
-            for( int i = 0; i < n; i++ ) {
-                double rx = x[i] - x[n];
-                double ry = y[i] - y[n];
-                double rz = z[i] - z[n];
-                gamma[i] = variogram(rx, ry, rz);
+    private void knownTermsCalculation( double[] x, double[] y, double[] z, int[] stations, int n, double xPoint,
+            double yPoint, double zPoint, double[] gamma ) {
+        for( int k = 0; k < n; k++ ) {
+            int i = stations != null ? stations[k] : k;
+            double rx = x[i] - xPoint;
+            double ry = y[i] - yPoint;
+            double rz = z[i] - zPoint;
+            if (defaultVariogramMode == 0) {
+                gamma[k] = variogram(rx, ry, rz);
+            } else if (defaultVariogramMode == 1) {
+                gamma[k] = variogram(pNug, pA, pS, rx, ry, rz);
             }
-        } else if (defaultVariogramMode == 1) {
-            for( int i = 0; i < n; i++ ) {
-                double rx = x[i] - x[n];
-                double ry = y[i] - y[n];
-                double rz = z[i] - z[n];
-                gamma[i] = variogram(pNug, pA, pS, rx, ry, rz);
-            }
-
         }
         gamma[n] = 1.0;
-        return gamma;
-
     }
 
 }
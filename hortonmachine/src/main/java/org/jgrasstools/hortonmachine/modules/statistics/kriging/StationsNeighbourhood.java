@@ -0,0 +1,176 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.statistics.kriging;
+
+import java.util.Arrays;
+
+/**
+ * A spatial index of the stations, to find the nearest ones to a point.
+ *
+ * <p>The stations are bucketed on a regular grid and the cells are visited in
+ * rings around the point, until no unvisited cell can contain a nearer station.
+ * The index is only read after construction, so it can be shared by threads.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+class StationsNeighbourhood {
+    private static final int STATIONS_PER_CELL = 2;
+
+    private final double[] x;
+    private final double[] y;
+    private final int cols;
+    private final int rows;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int[] cellStarts;
+    private final int[] cellStations;
+
+    /**
+     * @param x the x coordinates of the stations.
+     * @param y the y coordinates of the stations.
+     * @param n the number of stations.
+     */
+    StationsNeighbourhood( double[] x, double[] y, int n ) {
+        this.x = x;
+        this.y = y;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for( int i = 0; i < n; i++ ) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        this.minX = minX;
+        this.minY = minY;
+        double side = Math.max(maxX - minX, maxY - minY);
+        int cellsPerSide = Math.max(1, (int) Math.sqrt(n / (double) STATIONS_PER_CELL));
+        double size = side / cellsPerSide;
+        cellSize = size > 0 ? size : 1;
+        cols = Math.max(1, Math.min(cellsPerSide, (int) ((maxX - minX) / cellSize) + 1));
+        rows = Math.max(1, Math.min(cellsPerSide, (int) ((maxY - minY) / cellSize) + 1));
+
+        cellStarts = new int[cols * rows + 1];
+        for( int i = 0; i < n; i++ ) {
+            cellStarts[getCell(x[i], y[i]) + 1]++;
+        }
+        for( int c = 0; c < cols * rows; c++ ) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+        cellStations = new int[n];
+        int[] positions = Arrays.copyOf(cellStarts, cols * rows);
+        for( int i = 0; i < n; i++ ) {
+            cellStations[positions[getCell(x[i], y[i])]++] = i;
+        }
+    }
+
+    private int getCol( double px ) {
+        return Math.max(0, Math.min(cols - 1, (int) ((px - minX) / cellSize)));
+    }
+
+    private int getRow( double py ) {
+        return Math.max(0, Math.min(rows - 1, (int) ((py - minY) / cellSize)));
+    }
+
+    private int getCell( double px, double py ) {
+        return getRow(py) * cols + getCol(px);
+    }
+
+    /**
+     * Find the nearest stations to a point.
+     *
+     * @param px the x coordinate of the point.
+     * @param py the y coordinate of the point.
+     * @param k the number of stations to find, at most the number of stations.
+     * @param nearest the array to put the indexes of the found stations in,
+     *              sorted by index.
+     * @param distances a work array of size k.
+     */
+    void nearest( double px, double py, int k, int[] nearest, double[] distances ) {
+        int found = 0;
+        int col = getCol(px);
+        int row = getRow(py);
+        for( int ring = 0;; ring++ ) {
+            int fromCol = col - ring;
+            int toCol = col + ring;
+            int fromRow = row - ring;
+            int toRow = row + ring;
+            for( int r = Math.max(0, fromRow); r <= Math.min(rows - 1, toRow); r++ ) {
+                boolean isRingRow = r == fromRow || r == toRow;
+                for( int c = Math.max(0, fromCol); c <= Math.min(cols - 1, toCol); c++ ) {
+                    if (!isRingRow && c != fromCol && c != toCol) {
+                        continue;
+                    }
+                    int cell = r * cols + c;
+                    for( int s = cellStarts[cell]; s < cellStarts[cell + 1]; s++ ) {
+                        int station = cellStations[s];
+                        double dx = x[station] - px;
+                        double dy = y[station] - py;
+                        found = insert(station, dx * dx + dy * dy, k, found, nearest, distances);
+                    }
+                }
+            }
+
+            boolean coversGrid = fromCol <= 0 && fromRow <= 0 && toCol >= cols - 1 && toRow >= rows - 1;
+            if (coversGrid) {
+                break;
+            }
+            if (found == k) {
+                // the stations in the unvisited cells are farther than this
+                double bound = Double.POSITIVE_INFINITY;
+                if (fromCol > 0) {
+                    bound = Math.min(bound, px - (minX + fromCol * cellSize));
+                }
+                if (toCol < cols - 1) {
+                    bound = Math.min(bound, minX + (toCol + 1) * cellSize - px);
+                }
+                if (fromRow > 0) {
+                    bound = Math.min(bound, py - (minY + fromRow * cellSize));
+                }
+                if (toRow < rows - 1) {
+                    bound = Math.min(bound, minY + (toRow + 1) * cellSize - py);
+                }
+                if (bound >= 0 && distances[k - 1] <= bound * bound) {
+                    break;
+                }
+            }
+        }
+        Arrays.sort(nearest, 0, found);
+    }
+
+    /**
+     * Insert a station in the list of the nearest, sorted by distance.
+     */
+    private static int insert( int station, double distance, int k, int found, int[] nearest, double[] distances ) {
+        if (found == k && distance >= distances[k - 1]) {
+            return found;
+        }
+        int i = found == k ? k - 1 : found;
+        while( i > 0 && distances[i - 1] > distance ) {
+            distances[i] = distances[i - 1];
+            nearest[i] = nearest[i - 1];
+            i--;
+        }
+        distances[i] = distance;
+        nearest[i] = station;
+        return found == k ? k : found + 1;
+    }
+}
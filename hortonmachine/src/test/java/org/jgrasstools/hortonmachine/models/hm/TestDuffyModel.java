@@ -0,0 +1,249 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlope;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlopeDuffy;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IHillSlope;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy.DuffyInputs;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy.DuffyModel;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy.RungeKuttaFelberg;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.AdigeUtilities;
+import org.jgrasstools.hortonmachine.modules.network.PfafstetterNumber;
+import org.jgrasstools.hortonmachine.modules.network.networkattributes.NetworkChannel;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.joda.time.DateTime;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Test the routing and the multirate integration of the {@link DuffyModel}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestDuffyModel extends HMTestCase {
+
+    private static final String[] PFAFS = {"1", "2", "3", "4", "5", "6", "7"};
+    /*
+     * the hillslope with a very short link, that needs much smaller timesteps
+     * than the rest of the basin.
+     */
+    private static final String FAST_PFAF = "6";
+    /*
+     * the hillslope without rain that evapotranspiration dries out.
+     */
+    private static final String DRY_PFAF = "2";
+
+    private int evaluatedHillslopes;
+
+    public void testRoutingAgainstAdigeUtilities() throws Exception {
+        List<IHillSlope> hillslopes = createNetwork();
+        int n = hillslopes.size();
+
+        int[] routingTypes = {DuffyModel.ROUTING_CHEZY_NONEXPL, DuffyModel.ROUTING_CHEZY, DuffyModel.ROUTING_MANNING};
+        for( int routingType : routingTypes ) {
+            DuffyModel duffy = new DuffyModel(hillslopes, routingType, pm, false);
+            double[] input = new double[4 * n];
+            for( int i = 0; i < n; i++ ) {
+                HillSlopeDuffy.Parameters parameters = ((HillSlopeDuffy) hillslopes.get(i)).getParameters();
+                input[i] = 0.05 + 0.01 * i;
+                input[i + n] = 0.02 + 0.005 * i;
+                input[i + 2 * n] = 2 * parameters.getS1residual();
+                input[i + 3 * n] = 2 * parameters.getS2residual();
+            }
+            // without rain and evapotranspiration the links get only the inflow from upstream
+            double[] output = duffy.eval(0, input, new double[n], new double[n], false);
+
+            for( int i = 0; i < n; i++ ) {
+                IHillSlope hillslope = hillslopes.get(i);
+                double qTrib = 0;
+                double qsTrib = 0;
+                List<IHillSlope> upstreamHillslopes = hillslope.getConnectedUpstreamElements();
+                if (upstreamHillslopes != null) {
+                    for( IHillSlope upstream : upstreamHillslopes ) {
+                        int index = indexOf(hillslopes, upstream);
+                        qTrib += input[index];
+                        qsTrib += input[index + n];
+                    }
+                }
+                double kq = AdigeUtilities.doRouting(input[i], hillslope, routingType);
+                double qs = ((HillSlopeDuffy) hillslope).getParameters().getRecParam() * input[i + 3 * n];
+
+                double expectedQ = 60.0 * kq * (qTrib - input[i]);
+                double expectedQs = 60.0 * kq * ((1.0 / 3600.) * qs + qsTrib - input[i + n]);
+                assertEquals(routingType + " " + i, expectedQ, output[i], Math.abs(expectedQ) * 1E-12);
+                assertEquals(routingType + " " + i, expectedQs, output[i + n], Math.abs(expectedQs) * 1E-12);
+            }
+        }
+    }
+
+    public void testMultirate() throws Exception {
+        List<IHillSlope> hillslopes = createNetwork();
+        int n = hillslopes.size();
+
+        double[] single = solve(hillslopes, 1, null);
+        int singleEvaluated = evaluatedHillslopes;
+        double[] multirate = solve(hillslopes, 4, null);
+        int multirateEvaluated = evaluatedHillslopes;
+
+        for( int i = 0; i < 2 * n; i++ ) {
+            assertEquals(String.valueOf(i), single[i], multirate[i], single[i] * 0.02);
+        }
+        assertTrue(multirateEvaluated < singleEvaluated);
+    }
+
+    public void testMultirateWithDryHillslope() throws Exception {
+        List<IHillSlope> hillslopes = createNetwork();
+        int n = hillslopes.size();
+
+        double[] single = solve(hillslopes, 1, DRY_PFAF);
+        double[] multirate = solve(hillslopes, 4, DRY_PFAF);
+
+        for( int i = 0; i < 2 * n; i++ ) {
+            assertEquals(String.valueOf(i), single[i], multirate[i], single[i] * 0.02);
+        }
+        // the storages of the dry hillslope are drained down to the residual ones
+        for( int i = 0; i < n; i++ ) {
+            if (hillslopes.get(i).getPfafstetterNumber().toString().equals(DRY_PFAF)) {
+                HillSlopeDuffy.Parameters parameters = ((HillSlopeDuffy) hillslopes.get(i)).getParameters();
+                assertEquals(parameters.getS1residual(), multirate[i + 2 * n], parameters.getS1residual() * 0.01);
+                assertEquals(parameters.getS2residual(), multirate[i + 3 * n], parameters.getS2residual() * 0.01);
+            }
+        }
+    }
+
+    private double[] solve( List<IHillSlope> hillslopes, int maxSubsteps, String dryPfaf ) throws Exception {
+        final int n = hillslopes.size();
+        evaluatedHillslopes = 0;
+        DuffyModel duffy = new DuffyModel(hillslopes, DuffyModel.ROUTING_CHEZY, pm, false){
+            @Override
+            public void eval( double currentTimeInMinutes, double[] input, double[] rainArray, double[] etpArray,
+                    boolean isAtFinalSubtimestep, double[] output, boolean[] hillslopesMask ) {
+                for( int i = 0; i < n; i++ ) {
+                    if (hillslopesMask == null || hillslopesMask[i]) {
+                        evaluatedHillslopes++;
+                    }
+                }
+                super.eval(currentTimeInMinutes, input, rainArray, etpArray, isAtFinalSubtimestep, output, hillslopesMask);
+            }
+        };
+        RungeKuttaFelberg rkf = new RungeKuttaFelberg(duffy, 1e-2, 10 / 60., pm, false);
+        rkf.setMaxSubsteps(maxSubsteps);
+
+        double[] initialConditions = new double[4 * n];
+        double[] rain = new double[n];
+        double[] etp = new double[n];
+        for( int i = 0; i < n; i++ ) {
+            HillSlopeDuffy.Parameters parameters = ((HillSlopeDuffy) hillslopes.get(i)).getParameters();
+            initialConditions[i] = 0.05;
+            initialConditions[i + n] = 0.02;
+            initialConditions[i + 2 * n] = 3 * parameters.getS1residual();
+            initialConditions[i + 3 * n] = 3 * parameters.getS2residual();
+            rain[i] = 5.0;
+            if (hillslopes.get(i).getPfafstetterNumber().toString().equals(dryPfaf)) {
+                rain[i] = 0.0;
+                etp[i] = 20000.0;
+            }
+        }
+
+        DateTime timestamp = new DateTime(2000, 1, 1, 0, 0, 0, 0);
+        for( int t = 0; t < 6; t++ ) {
+            rkf.solve(timestamp.plusHours(t), 60, 60, initialConditions, rain, etp);
+            initialConditions = rkf.getFinalCond().clone();
+        }
+        return initialConditions;
+    }
+
+    private int indexOf( List<IHillSlope> hillslopes, IHillSlope hillslope ) {
+        String pfaf = hillslope.getPfafstetterNumber().toString();
+        for( int i = 0; i < hillslopes.size(); i++ ) {
+            if (hillslopes.get(i).getPfafstetterNumber().toString().equals(pfaf)) {
+                return i;
+            }
+        }
+        fail("hillslope not found: " + pfaf);
+        return -1;
+    }
+
+    /**
+     * A small network of hillslopes below the area for which the discharge is distributed.
+     */
+    private List<IHillSlope> createNetwork() {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("hillslopes");
+        b.add("the_geom", Polygon.class);
+        SimpleFeatureType basinType = b.buildFeatureType();
+        b = new SimpleFeatureTypeBuilder();
+        b.setName("network");
+        b.add("the_geom", LineString.class);
+        b.add(NetworkChannel.STARTELEVNAME, Double.class);
+        b.add(NetworkChannel.ENDELEVNAME, Double.class);
+        SimpleFeatureType linkType = b.buildFeatureType();
+        GeometryFactory gf = GeometryUtilities.gf();
+
+        List<IHillSlope> hillslopes = new ArrayList<IHillSlope>();
+        for( int i = 0; i < PFAFS.length; i++ ) {
+            // squares of growing area, side in meters
+            double side = 500.0 + 10.0 * i;
+            Coordinate[] coordinates = new Coordinate[]{new Coordinate(0, 0), new Coordinate(side, 0),
+                    new Coordinate(side, side), new Coordinate(0, side), new Coordinate(0, 0)};
+            Polygon polygon = gf.createPolygon(gf.createLinearRing(coordinates), null);
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(basinType);
+            builder.addAll(new Object[]{polygon});
+            SimpleFeature basinFeature = builder.buildFeature(null);
+
+            double length = PFAFS[i].equals(FAST_PFAF) ? 5.0 : 200.0 + 20.0 * i;
+            double slope = 0.01 + 0.002 * i;
+            LineString line = gf.createLineString(new Coordinate[]{new Coordinate(0, 0), new Coordinate(length, 0)});
+            builder = new SimpleFeatureBuilder(linkType);
+            builder.addAll(new Object[]{line, slope * length, 0.0});
+            SimpleFeature linkFeature = builder.buildFeature(null);
+
+            hillslopes.add(new HillSlope(linkFeature, basinFeature, new PfafstetterNumber(PFAFS[i]), i + 1));
+        }
+        HillSlope.connectElements(hillslopes);
+
+        IHillSlope outlet = null;
+        for( IHillSlope hillslope : hillslopes ) {
+            if (hillslope.getConnectedDownstreamElement() == null) {
+                assertNull("only one outlet expected", outlet);
+                outlet = hillslope;
+            }
+        }
+        List<IHillSlope> orderedHillslopes = new ArrayList<IHillSlope>();
+        outlet.getAllUpstreamElements(orderedHillslopes, null);
+
+        DuffyInputs duffyInputs = new DuffyInputs();
+        List<IHillSlope> duffyHillslopes = new ArrayList<IHillSlope>();
+        for( IHillSlope hillslope : orderedHillslopes ) {
+            duffyHillslopes.add(new HillSlopeDuffy(hillslope, duffyInputs));
+        }
+        return duffyHillslopes;
+    }
+}
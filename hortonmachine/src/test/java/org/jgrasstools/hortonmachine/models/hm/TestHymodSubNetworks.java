@@ -0,0 +1,176 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com 
+ * 
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlope;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IHillSlope;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.Offtakes;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.hymod.HymodAdigeEngine;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.hymod.HymodInputs;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.SubNetworks;
+import org.jgrasstools.hortonmachine.modules.network.PfafstetterNumber;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.joda.time.DateTime;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Test the parallel solution of the {@link HymodAdigeEngine} on {@link SubNetworks}.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestHymodSubNetworks extends HMTestCase {
+
+    private static final String[] PFAFS = {"1", "2.1", "2.2", "2.3", "2.4", "2.5", "3", "4.1", "4.2", "4.3", "5", "6", "7",
+            "8", "9"};
+    private static final String OFFTAKE_PFAF = "4.3";
+
+    public void testSubNetworks() throws Exception {
+        List<IHillSlope> orderedHillslopes = createNetwork();
+        assertEquals(PFAFS.length, orderedHillslopes.size());
+
+        SubNetworks subNetworks = new SubNetworks(orderedHillslopes, Arrays.asList(OFFTAKE_PFAF), 2);
+        assertTrue(subNetworks.getSubNetworksCount() > 1);
+        int[] covered = new int[orderedHillslopes.size()];
+        for( int s = 0; s < subNetworks.getSubNetworksCount(); s++ ) {
+            for( int index : subNetworks.getHillslopeIndexes(s) ) {
+                covered[index]++;
+            }
+        }
+        for( int count : covered ) {
+            assertEquals(1, count);
+        }
+    }
+
+    public void testParallelHymod() throws Exception {
+        List<IHillSlope> orderedHillslopes = createNetwork();
+        int timesteps = 20;
+
+        List<HashMap<Integer, double[]>> sequential = runHymod(orderedHillslopes, null, timesteps);
+        SubNetworks subNetworks = new SubNetworks(orderedHillslopes, Arrays.asList(OFFTAKE_PFAF), 2);
+        List<HashMap<Integer, double[]>> parallel = runHymod(orderedHillslopes, subNetworks, timesteps);
+
+        for( int t = 0; t < timesteps; t++ ) {
+            HashMap<Integer, double[]> expected = sequential.get(t);
+            HashMap<Integer, double[]> result = parallel.get(t);
+            assertEquals(expected.size(), result.size());
+            for( Integer basinId : expected.keySet() ) {
+                assertEquals(t + " " + basinId, expected.get(basinId)[0], result.get(basinId)[0], 0.0);
+            }
+        }
+    }
+
+    private List<HashMap<Integer, double[]>> runHymod( List<IHillSlope> orderedHillslopes, SubNetworks subNetworks,
+            int timesteps ) throws Exception {
+        int hillslopesNum = orderedHillslopes.size();
+        HashMap<Integer, Integer> index2Basinid = new HashMap<Integer, Integer>();
+        List<String> pfaffsList = new ArrayList<String>();
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            index2Basinid.put(i, orderedHillslopes.get(i).getHillslopeId());
+            pfaffsList.add(orderedHillslopes.get(i).getPfafstetterNumber().toString());
+        }
+
+        HymodInputs hymodInputs = new HymodInputs();
+        hymodInputs.pCmax = 250.0;
+        hymodInputs.pB = 0.5;
+        hymodInputs.pAlpha = 0.7;
+        hymodInputs.pRs = 0.01;
+        hymodInputs.pRq = 0.4;
+        hymodInputs.pQ0 = 1.0;
+
+        HashMap<Integer, double[]> outDischarge = new HashMap<Integer, double[]>();
+        HashMap<Integer, double[]> outSubDischarge = new HashMap<Integer, double[]>();
+        HymodAdigeEngine engine = new HymodAdigeEngine(hymodInputs, orderedHillslopes, index2Basinid, outDischarge,
+                outSubDischarge, pfaffsList, false, false, pm);
+        if (subNetworks != null) {
+            engine.setSubNetworks(subNetworks, 4);
+        }
+
+        HashMap<String, Integer> offtakesPfaff2Id = new HashMap<String, Integer>();
+        offtakesPfaff2Id.put(OFFTAKE_PFAF, 1);
+        Offtakes offtakes = new Offtakes(offtakesPfaff2Id, pm);
+        HashMap<Integer, double[]> offtakesData = new HashMap<Integer, double[]>();
+        offtakesData.put(1, new double[]{0.001});
+        offtakes.setCurrentData(offtakesData);
+        engine.addDischargeContributor(offtakes);
+
+        List<HashMap<Integer, double[]>> results = new ArrayList<HashMap<Integer, double[]>>();
+        DateTime timestamp = new DateTime(2000, 1, 1, 0, 0, 0, 0);
+        double[] initialConditions = null;
+        for( int t = 0; t < timesteps; t++ ) {
+            double[] rain = new double[hillslopesNum];
+            double[] etp = new double[hillslopesNum];
+            for( int i = 0; i < hillslopesNum; i++ ) {
+                // a storm in the first steps, different on every hillslope
+                rain[i] = t < 5 ? 2.0 + i % 3 : 0.0;
+                etp[i] = 0.1;
+            }
+            initialConditions = engine.solve(timestamp.plusHours(t), 60, 60, initialConditions, rain, etp);
+            results.add(new HashMap<Integer, double[]>(outDischarge));
+        }
+        return results;
+    }
+
+    /**
+     * A network with two subdivided tributaries and an offtake.
+     */
+    private List<IHillSlope> createNetwork() {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("hillslopes");
+        b.add("the_geom", Polygon.class);
+        SimpleFeatureType type = b.buildFeatureType();
+        GeometryFactory gf = GeometryUtilities.gf();
+
+        List<IHillSlope> hillslopes = new ArrayList<IHillSlope>();
+        for( int i = 0; i < PFAFS.length; i++ ) {
+            // squares of growing area, side in meters
+            double side = 1000.0 + 100.0 * i;
+            Coordinate[] coordinates = new Coordinate[]{new Coordinate(0, 0), new Coordinate(side, 0),
+                    new Coordinate(side, side), new Coordinate(0, side), new Coordinate(0, 0)};
+            Polygon polygon = gf.createPolygon(gf.createLinearRing(coordinates), null);
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+            builder.addAll(new Object[]{polygon});
+            SimpleFeature feature = builder.buildFeature(null);
+            hillslopes.add(new HillSlope(null, feature, new PfafstetterNumber(PFAFS[i]), i + 1));
+        }
+        HillSlope.connectElements(hillslopes);
+
+        IHillSlope outlet = null;
+        for( IHillSlope hillslope : hillslopes ) {
+            if (hillslope.getConnectedDownstreamElement() == null) {
+                assertNull("only one outlet expected", outlet);
+                outlet = hillslope;
+            }
+        }
+        List<IHillSlope> orderedHillslopes = new ArrayList<IHillSlope>();
+        outlet.getAllUpstreamElements(orderedHillslopes, null);
+        return orderedHillslopes;
+    }
+}
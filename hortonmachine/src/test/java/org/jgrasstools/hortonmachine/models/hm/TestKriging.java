@@ -24,20 +24,27 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.filter.text.cql2.CQL;
 import org.geotools.gce.geotiff.GeoTiffWriter;
 import org.jgrasstools.gears.io.shapefile.OmsShapefileFeatureReader;
 import org.jgrasstools.gears.io.timedependent.OmsTimeSeriesIteratorReader;
 import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
 import org.jgrasstools.hortonmachine.modules.statistics.kriging.OmsKriging;
 import org.jgrasstools.hortonmachine.utils.HMTestMaps;
 import org.junit.Test;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
 
 /**
  * Test the kriging model.
@@ -143,6 +150,112 @@ public class TestKriging {
         reader.close();
     }
     
+    @Test
+    public void testLocalKrigingWithAllStations() throws Exception {
+        SimpleFeatureCollection stations = createPoints(STATIONS);
+        SimpleFeatureCollection points = createPoints(POINTS);
+
+        HashMap<Integer, double[]> global = runPointsKriging(stations, points, 0);
+        // as many neighbours as stations, solved through the local systems
+        HashMap<Integer, double[]> local = runPointsKriging(stations, points, STATIONS.length);
+        // more neighbours than stations, falls back to global kriging
+        HashMap<Integer, double[]> moreThanStations = runPointsKriging(stations, points, STATIONS.length + 4);
+
+        assertEquals(POINTS.length, global.size());
+        for( double[] point : POINTS ) {
+            int id = (int) point[0];
+            assertEquals(global.get(id)[0], local.get(id)[0], 1E-9);
+            assertEquals(global.get(id)[0], moreThanStations.get(id)[0], 1E-9);
+        }
+    }
+
+    @Test
+    public void testLocalKrigingNeighbourhood() throws Exception {
+        SimpleFeatureCollection stations = createPoints(STATIONS);
+        SimpleFeatureCollection points = createPoints(POINTS);
+
+        /*
+         * with a single neighbour the weight has to be 1, so every point
+         * gets the value of its nearest station.
+         */
+        HashMap<Integer, double[]> nearest = runPointsKriging(stations, points, 1);
+        assertEquals(1.0, nearest.get(101)[0], 1E-9);
+        assertEquals(2.0, nearest.get(102)[0], 1E-9);
+        assertEquals(6.0, nearest.get(103)[0], 1E-9);
+        assertEquals(5.0, nearest.get(104)[0], 1E-9);
+
+        /*
+         * point 105 is between stations 1 and 2, which are nearer than the others
+         * and have the same covariance, so the weights are 0.5 each.
+         */
+        HashMap<Integer, double[]> two = runPointsKriging(stations, points, 2);
+        assertEquals(1.5, two.get(105)[0], 1E-9);
+    }
+
+    /**
+     * The stations of the neighbourhood tests: id, x, y, value.
+     */
+    private static final double[][] STATIONS = {//
+            {1, 0, 0, 1.0}, //
+            {2, 1000, 0, 2.0}, //
+            {3, 0, 1000, 3.0}, //
+            {4, 1000, 1000, 4.0}, //
+            {5, 500, 2000, 5.0}, //
+            {6, 2000, 500, 6.0} //
+    };
+
+    /**
+     * The points of the neighbourhood tests: id, x, y.
+     */
+    private static final double[][] POINTS = {//
+            {101, 100, 100}, //
+            {102, 900, 150}, //
+            {103, 1900, 600}, //
+            {104, 550, 1800}, //
+            {105, 500, 0} //
+    };
+
+    private SimpleFeatureCollection createPoints( double[][] points ) {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("points");
+        b.add("the_geom", Point.class);
+        b.add("id", Integer.class);
+        SimpleFeatureType type = b.buildFeatureType();
+        GeometryFactory gf = GeometryUtilities.gf();
+        DefaultFeatureCollection collection = new DefaultFeatureCollection();
+        for( double[] point : points ) {
+            SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+            builder.addAll(new Object[]{gf.createPoint(new Coordinate(point[1], point[2])), (int) point[0]});
+            collection.add(builder.buildFeature(null));
+        }
+        return collection;
+    }
+
+    private HashMap<Integer, double[]> runPointsKriging( SimpleFeatureCollection stations, SimpleFeatureCollection points,
+            int maxNeighbours ) throws Exception {
+        HashMap<Integer, double[]> data = new HashMap<Integer, double[]>();
+        for( double[] station : STATIONS ) {
+            data.put((int) station[0], new double[]{station[3]});
+        }
+
+        OmsKriging kriging = new OmsKriging();
+        kriging.pm = new DummyProgressMonitor();
+        kriging.pMode = 0;
+        kriging.inStations = stations;
+        kriging.fStationsid = "id";
+        kriging.inInterpolate = points;
+        kriging.fInterpolateid = "id";
+        kriging.inData = data;
+        kriging.defaultVariogramMode = 1;
+        kriging.pSemivariogramType = 1;
+        kriging.pA = 1500.0;
+        kriging.pNug = 0.0;
+        kriging.pS = 2.0;
+        kriging.pMaxNeighbours = maxNeighbours;
+        kriging.process();
+        return kriging.outData;
+    }
+
     /**
 	 * Creates a GeoTIFF file representing the input coverage and returns
 	 * it as a byte array. It can then be persisted to disk (usually with
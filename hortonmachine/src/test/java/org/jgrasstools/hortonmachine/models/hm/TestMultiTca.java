@@ -3,6 +3,8 @@ package org.jgrasstools.hortonmachine.models.hm;
 import java.util.HashMap;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.modules.geomorphology.multitca.OmsMultiTca;
 import org.jgrasstools.hortonmachine.utils.HMTestCase;
@@ -32,6 +34,51 @@ public class TestMultiTca extends HMTestCase {
         tca.pm = pm;
         tca.process();
         GridCoverage2D tcaCoverage = tca.outMultiTca;
- //       checkMatrixEqual(tcaCoverage.getRenderedImage(), HMTestMaps.multiTcaData);
+        checkMatrixEqual(tcaCoverage.getRenderedImage(), HMTestMaps.multiTcaData, 0.001);
+    }
+
+    /**
+     * A flat cell drains along its own flow direction, the others into their lower neighbours.
+     */
+    public void testFlatRouting() throws Exception {
+        double N = JGTConstants.doubleNovalue;
+        double[][] pitData = new double[][]{//
+        /*    */{10, 10, 10, 10, 10}, //
+                {10, 5, 5, 4, 10}, //
+                {10, 9, 9, 3, 10}, //
+                {10, 10, 10, 10, 10} //
+        };
+        double[][] flowData = new double[][]{//
+        /*    */{N, N, N, N, N}, //
+                {N, 1, 1, 7, N}, //
+                {N, 3, 3, 10, N}, //
+                {N, N, N, N, N} //
+        };
+        double[][] cp9Data = new double[][]{//
+        /*    */{N, N, N, N, N}, //
+                {N, 10, 10, 10, N}, //
+                {N, 70, 70, 10, N}, //
+                {N, N, N, N, N} //
+        };
+        /*
+         * (1,2) and (2,2) follow their flow direction into (1,1) and (2,1). The flat (1,1)
+         * drains into (2,1), which splits 1/3 into (3,1) and 2/3 into (3,2).
+         */
+        double[][] expected = new double[][]{//
+        /*    */{N, N, N, N, N}, //
+                {N, 2, 4, 1 + 4.0 / 3.0, N}, //
+                {N, 1, 1, 6, N}, //
+                {N, N, N, N, N} //
+        };
+
+        RegionMap envelopeParams = CoverageUtilities.makeRegionParamsMap(4, 0, 0, 5, 1, 1, 5, 4);
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        OmsMultiTca tca = new OmsMultiTca();
+        tca.inPit = CoverageUtilities.buildCoverage("pit", pitData, envelopeParams, crs, true);
+        tca.inFlow = CoverageUtilities.buildCoverage("flow", flowData, envelopeParams, crs, true);
+        tca.inCp9 = CoverageUtilities.buildCoverage("cp9", cp9Data, envelopeParams, crs, true);
+        tca.pm = pm;
+        tca.process();
+        checkMatrixEqual(tca.outMultiTca.getRenderedImage(), expected, 1E-9);
     }
 }
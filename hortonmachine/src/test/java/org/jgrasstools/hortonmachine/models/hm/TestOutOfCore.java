@@ -0,0 +1,90 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.util.HashMap;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.coverage.DiskTiledImage;
+import org.jgrasstools.gears.utils.coverage.DiskTiledRaster;
+import org.jgrasstools.hortonmachine.modules.geomorphology.flow.OmsFlowDirections;
+import org.jgrasstools.hortonmachine.modules.geomorphology.multitca.OmsMultiTca;
+import org.jgrasstools.hortonmachine.modules.geomorphology.tca.OmsTca;
+import org.jgrasstools.hortonmachine.modules.network.magnitudo.OmsMagnitudo;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.jgrasstools.hortonmachine.utils.HMTestMaps;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Test a chain of modules with all the rasters kept on disk.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestOutOfCore extends HMTestCase {
+
+    private long threshold;
+
+    protected void setUp() throws Exception {
+        threshold = DiskTiledRaster.getOutOfCoreThreshold();
+        DiskTiledRaster.setOutOfCoreThreshold(0);
+    }
+
+    protected void tearDown() throws Exception {
+        DiskTiledRaster.setOutOfCoreThreshold(threshold);
+    }
+
+    public void testModulesOnDisk() throws Exception {
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+
+        GridCoverage2D pitCoverage = CoverageUtilities.buildCoverage("pit", HMTestMaps.pitData, envelopeParams, crs, true);
+        assertTrue(pitCoverage.getRenderedImage() instanceof DiskTiledImage);
+
+        OmsFlowDirections flowDirections = new OmsFlowDirections();
+        flowDirections.inPit = pitCoverage;
+        flowDirections.pm = pm;
+        flowDirections.process();
+        GridCoverage2D newFlowCoverage = flowDirections.outFlow;
+        assertTrue(newFlowCoverage.getRenderedImage() instanceof DiskTiledImage);
+        checkMatrixEqual(newFlowCoverage.getRenderedImage(), HMTestMaps.newFlowData, 0);
+
+        GridCoverage2D flowCoverage = CoverageUtilities.buildCoverage("flow", HMTestMaps.flowData, envelopeParams, crs, true);
+        OmsTca tca = new OmsTca();
+        tca.inFlow = flowCoverage;
+        tca.pm = pm;
+        tca.process();
+        assertTrue(tca.outTca.getRenderedImage() instanceof DiskTiledImage);
+        checkMatrixEqual(tca.outTca.getRenderedImage(), HMTestMaps.tcaData);
+
+        OmsMagnitudo magnitudo = new OmsMagnitudo();
+        magnitudo.inFlow = flowCoverage;
+        magnitudo.pm = pm;
+        magnitudo.process();
+        checkMatrixEqual(magnitudo.outMag.getRenderedImage(), HMTestMaps.magnitudoData);
+
+        OmsMultiTca multiTca = new OmsMultiTca();
+        multiTca.inPit = pitCoverage;
+        multiTca.inFlow = CoverageUtilities.buildCoverage("flow", HMTestMaps.drainData1, envelopeParams, crs, true);
+        multiTca.inCp9 = CoverageUtilities.buildCoverage("cp9", HMTestMaps.cp9Data, envelopeParams, crs, true);
+        multiTca.pm = pm;
+        multiTca.process();
+        checkMatrixEqual(multiTca.outMultiTca.getRenderedImage(), HMTestMaps.multiTcaData, 0.001);
+    }
+
+}
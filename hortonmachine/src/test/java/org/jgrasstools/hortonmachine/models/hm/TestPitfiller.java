@@ -17,6 +17,7 @@
  */
 package org.jgrasstools.hortonmachine.models.hm;
 
+import java.awt.image.Raster;
 import java.util.HashMap;
 
 import org.geotools.coverage.grid.GridCoverage2D;
@@ -49,4 +50,80 @@ public class TestPitfiller extends HMTestCase {
 
         checkMatrixEqual(pitfillerCoverage.getRenderedImage(), HMTestMaps.outPitData, 0);
     }
+
+    public void testPriorityFlood() throws Exception {
+        double[][] elevationData = HMTestMaps.mapData;
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        GridCoverage2D elevationCoverage = CoverageUtilities.buildCoverage("elevation", elevationData, envelopeParams, crs, true);
+
+        OmsPitfiller pitfiller = new OmsPitfiller();
+        pitfiller.inElev = elevationCoverage;
+        pitfiller.pMode = 1;
+        pitfiller.pm = pm;
+        pitfiller.process();
+
+        // same as the legacy filler, also for the novalue inside the region
+        checkMatrixEqual(pitfiller.outPit.getRenderedImage(), HMTestMaps.outPitData, 0);
+    }
+
+    public void testPriorityFloodEpsilon() throws Exception {
+        double[][] elevationData = HMTestMaps.mapData;
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        GridCoverage2D elevationCoverage = CoverageUtilities.buildCoverage("elevation", elevationData, envelopeParams, crs, true);
+
+        OmsPitfiller pitfiller = new OmsPitfiller();
+        pitfiller.inElev = elevationCoverage;
+        pitfiller.pMode = 2;
+        pitfiller.pm = pm;
+        pitfiller.process();
+        GridCoverage2D epsilonCoverage = pitfiller.outPit;
+
+        // the gradient is only a few ulps
+        checkMatrixEqual(epsilonCoverage.getRenderedImage(), HMTestMaps.outPitData, 1E-6);
+
+        // but the filled cells have to drain
+        double[][] epsilon = toMatrix(epsilonCoverage);
+        assertTrue(epsilon[1][1] > epsilon[2][0]);
+        assertTrue(epsilon[3][7] > epsilon[4][6]);
+        assertTrue(epsilon[3][8] > epsilon[3][7]);
+    }
+
+    public void testPriorityFloodTiled() throws Exception {
+        double[][] elevationData = HMTestMaps.mapData;
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        GridCoverage2D elevationCoverage = CoverageUtilities.buildCoverage("elevation", elevationData, envelopeParams, crs, true);
+
+        OmsPitfiller pitfiller = new OmsPitfiller();
+        pitfiller.inElev = elevationCoverage;
+        pitfiller.pMode = 1;
+        pitfiller.pm = pm;
+        pitfiller.process();
+        GridCoverage2D floodCoverage = pitfiller.outPit;
+
+        pitfiller = new OmsPitfiller();
+        pitfiller.inElev = elevationCoverage;
+        pitfiller.pMode = 1;
+        pitfiller.pTileSize = 3;
+        pitfiller.pm = pm;
+        pitfiller.process();
+        GridCoverage2D tiledCoverage = pitfiller.outPit;
+
+        // the tiled version has to give the same result as the in memory one
+        checkMatrixEqual(tiledCoverage.getRenderedImage(), toMatrix(floodCoverage), 0);
+        checkMatrixEqual(tiledCoverage.getRenderedImage(), HMTestMaps.outPitData, 0);
+    }
+
+    private double[][] toMatrix( GridCoverage2D coverage ) {
+        Raster raster = coverage.getRenderedImage().getData();
+        double[][] matrix = new double[raster.getHeight()][raster.getWidth()];
+        for( int r = 0; r < matrix.length; r++ ) {
+            for( int c = 0; c < matrix[0].length; c++ ) {
+                matrix[r][c] = raster.getSampleDouble(c, r, 0);
+            }
+        }
+        return matrix;
+    }
 }
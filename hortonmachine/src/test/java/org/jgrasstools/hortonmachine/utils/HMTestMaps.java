@@ -26,6 +26,7 @@ import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller.OmsPitfiller;
 import org.jgrasstools.hortonmachine.modules.geomorphology.draindir.OmsDrainDir;
 import org.jgrasstools.hortonmachine.modules.geomorphology.flow.OmsFlowDirections;
+import org.jgrasstools.hortonmachine.modules.geomorphology.multitca.OmsMultiTca;
 import org.jgrasstools.hortonmachine.modules.network.extractnetwork.OmsExtractNetwork;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
@@ -399,14 +400,20 @@ public class HMTestMaps {
             {N, N, N, N, N, N, N, N, N, N} //
     };
 
+    /**
+     * Output data of the {@link OmsMultiTca} module on {@link #pitData}, {@link #drainData1} and {@link #cp9Data}.
+     * 
+     * <p>Computed with the elevation sorted algorithm the module used before the topological
+     * accumulation, with flat cells draining along their own flow direction.</p>
+     */
     public static double[][] multiTcaData = new double[][]{ //
     /*    */{N, N, N, N, N, N, N, N, N, N}, //
-            {N, N, N, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, N}, //
-            {N, N, N, 2.25, 2.125, 2.0, 2.0, 2.0, 1.0, N}, //
-            {N, 33.87, 3.25, 3.47, 3.45, 3.14, 1.0, 5.14, 2.0, N}, //
-            {N, 1.82, 31.5, 26.14, 15.13, 8.35, 7.43, 5.14, 2.0, N}, //
-            {N, 2.28, 2.0, 2.06, 3.0, 2.0, 2.0, 2.0, 1.0, N}, //
-            {N, 1.0, 1.0, 1.0, 1.0, 2.0, 1.0, 1.0, 1.0, N}, //
+            {N, N, N, 1.0677, 1.2857, 1.3571, 1.25, 1.0, 1.0, N}, //
+            {N, N, N, 2.7192, 2.8315, 2.311, 2.103, 2.4107, 1.125, N}, //
+            {N, 39.1597, 2.6353, 3.4183, 3.2278, 2.5512, 1.9068, 5.4212, 2.2239, N}, //
+            {N, 1.929, 36.8966, 31.0584, 23.9795, 17.0783, 12.2752, 4.636, 2.0292, N}, //
+            {N, 2.2667, 1.74, 1.8002, 3.4044, 2.1491, 2.3805, 2.4012, 1.0, N}, //
+            {N, 1.2385, 1.1923, 1.0, 1.0769, 1.8057, 1.2346, 1.0556, 1.0, N}, //
             {N, N, N, N, N, N, N, N, N, N} //
     };
 
@@ -159,6 +159,7 @@ public class GearsMessages {
     public static final String OMSGRASSLEGACYREADER_file_DESCRIPTION = "The file to the map to be read (the cell file).";
     public static final String OMSGRASSLEGACYREADER_doActive_DESCRIPTION = "Flag that defines if the map should be read as a whole (false) or on the active region (true and default).";
     public static final String OMSGRASSLEGACYREADER_inWindow_DESCRIPTION = "The region to read.";
+    public static final String OMSGRASSLEGACYREADER_pMaxThreads_DESCRIPTION = "Max threads to use to decode the rows (default 1)";
     public static final String OMSGRASSLEGACYREADER_outGC_DESCRIPTION = "The read output map as limited coverage version.";
     public static final String OMSGRASSLEGACYREADER_geodata_DESCRIPTION = "The read output map data.";
 
@@ -1483,7 +1484,7 @@ public class GearsMessages {
     public static final String OMSTIMESERIESITERATORREADER_LICENSE = "General Public License Version 3 (GPLv3)";
     public static final String OMSTIMESERIESITERATORREADER_AUTHORNAMES = "Andrea Antonello";
     public static final String OMSTIMESERIESITERATORREADER_AUTHORCONTACTS = "http://www.hydrologis.com";
-    public static final String OMSTIMESERIESITERATORREADER_file_DESCRIPTION = "The csv file to read from.";
+    public static final String OMSTIMESERIESITERATORREADER_file_DESCRIPTION = "The csv file to read from, or a binary time series file (.tsb) created from it, which is read without parsing.";
     public static final String OMSTIMESERIESITERATORREADER_idfield_DESCRIPTION = "The id metadata field.";
     public static final String OMSTIMESERIESITERATORREADER_fileNovalue_DESCRIPTION = "The file novalue to be translated into the internal novalue. Can be a string also";
     public static final String OMSTIMESERIESITERATORREADER_novalue_DESCRIPTION = "The internal novalue to use (usually not changed).";
@@ -1491,7 +1492,7 @@ public class GearsMessages {
     public static final String OMSTIMESERIESITERATORREADER_pAggregation_DESCRIPTION = "The aggregation type to use (0 = sum, 1 = avg).";
     public static final String OMSTIMESERIESITERATORREADER_tCurrent_DESCRIPTION = "The current time read (format: yyyy-MM-dd HH:mm ).";
     public static final String OMSTIMESERIESITERATORREADER_tPrevious_DESCRIPTION = "The previous time read (format: yyyy-MM-dd HH:mm ).";
-    public static final String OMSTIMESERIESITERATORREADER_outData_DESCRIPTION = "The read map of ids and values.";
+    public static final String OMSTIMESERIESITERATORREADER_outData_DESCRIPTION = "The read map of ids and values (for binary files the same arrays are reused at every timestep).";
     public static final String OMSTIMESERIESITERATORREADER_tStart_DESCRIPTION = "The optional time at which start to read (format: yyyy-MM-dd HH:mm ).";
     public static final String OMSTIMESERIESITERATORREADER_tEnd_DESCRIPTION = "The optional time at which end to read (format: yyyy-MM-dd HH:mm ).";
     public static final String OMSTIMESERIESITERATORREADER_tTimestep_DESCRIPTION = "The reading timestep in minutes.";
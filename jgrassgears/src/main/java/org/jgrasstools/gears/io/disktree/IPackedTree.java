@@ -0,0 +1,111 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.disktree;
+
+/**
+ * Interface for the packed disk tree I/O modules.
+ *
+ * <p>
+ * The packed tree is a Sort-Tile-Recursive packed R-tree that is queried directly
+ * from the file, without reading it in memory. The binary file is defined as follows
+ * (all numbers big endian):
+ *
+ * <ul>
+ *  <li>the header of {@link #HEADER_SIZE} bytes:
+ *      <ul>
+ *          <li>4 bytes containing the chars 'JGPT'</li>
+ *          <li>4 bytes for the format version</li>
+ *          <li>4 bytes for the maximum number of entries of a node</li>
+ *          <li>8 bytes for the number of geometries</li>
+ *          <li>8 bytes for the address at which the nodes start</li>
+ *          <li>8 bytes for the address of the root node, -1 if there are no geometries</li>
+ *          <li>4 doubles for the bounds (minx, miny, maxx, maxy) of all the geometries</li>
+ *      </ul>
+ *  </li>
+ *  <li>then the geometry records, each made of:
+ *      <ul>
+ *          <li>4 bytes for the size of the WKB</li>
+ *          <li>the WKB of the geometry</li>
+ *          <li>4 bytes for the size of the user data, -1 if there are none</li>
+ *          <li>the UTF-8 bytes of the string of the user data</li>
+ *      </ul>
+ *  </li>
+ *  <li>then the nodes, all of the same size, from the leaves up to the root. A node is made of:
+ *      <ul>
+ *          <li>4 bytes for the number of entries</li>
+ *          <li>4 bytes set to 1 for a leaf and to 0 for an inner node</li>
+ *          <li>the entries of {@link #ENTRY_SIZE} bytes, each made of 4 doubles for the
+ *          envelope, 8 bytes for the address of the geometry record (leaves) or of the child
+ *          node (inner nodes), 4 bytes for the size of the geometry record and 4 bytes of padding</li>
+ *      </ul>
+ *  </li>
+ * </ul>
+ * </p>
+ *
+ * <p>Example write usage:
+ *
+ * <pre>
+ * PackedTreeWriter writer = new PackedTreeWriter("/home/moovida/TMP/index.jgpt");
+ * writer.writeGeometries(geometriesIterator);
+ * </pre>
+ * </p>
+ *
+ * <p>Example read usage:
+ * <pre>
+ * try (PackedTreeReader reader = new PackedTreeReader("/home/moovida/TMP/index.jgpt")) {
+ *     for( long[] posSize : reader.queryPositions(envelope) ) {
+ *         Geometry geom = reader.pickGeometry(posSize[0], posSize[1]);
+ *         System.out.println(geom.toText());
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @see IDiskTree
+ */
+public interface IPackedTree {
+    /**
+     * The file signature.
+     */
+    byte[] MAGIC = {'J', 'G', 'P', 'T'};
+
+    /**
+     * The format version.
+     */
+    int VERSION = 1;
+
+    /**
+     * Byte size of the header.
+     */
+    int HEADER_SIZE = 68;
+
+    /**
+     * Byte size of the node header.
+     */
+    int NODE_HEADER_SIZE = 8;
+
+    /**
+     * Byte size of a node entry.
+     */
+    int ENTRY_SIZE = 48;
+
+    /**
+     * The default maximum number of entries of a node, that makes nodes of about 4 KiB.
+     */
+    int DEFAULT_NODE_CAPACITY = 85;
+}
@@ -0,0 +1,224 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.disktree;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+
+/**
+ * Reader for the packed disk tree.
+ *
+ * <p>The nodes of the tree are memory mapped and visited in place, so opening the
+ * index costs only the read of the header and a query touches only the nodes
+ * it needs. The reader can be used by several threads at the same time.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @see IPackedTree
+ */
+public class PackedTreeReader implements IPackedTree, AutoCloseable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long itemsNum;
+    private final long nodesStart;
+    private final long rootAddress;
+    private final Envelope bounds;
+    private final MappedByteBuffer nodes;
+
+    /**
+     * Open an index.
+     *
+     * @param path the path from which to read.
+     * @throws IOException if the file is not a packed tree.
+     */
+    public PackedTreeReader( String path ) throws IOException {
+        raf = new RandomAccessFile(path, "r");
+        try {
+            channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0);
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            for( int i = 0; i < magic.length; i++ ) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("The file is not a packed tree: " + path);
+                }
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported packed tree version: " + version);
+            }
+            header.getInt(); // the node capacity
+            itemsNum = header.getLong();
+            nodesStart = header.getLong();
+            rootAddress = header.getLong();
+            double minX = header.getDouble();
+            double minY = header.getDouble();
+            double maxX = header.getDouble();
+            double maxY = header.getDouble();
+            bounds = itemsNum > 0 ? new Envelope(minX, maxX, minY, maxY) : new Envelope();
+
+            long nodesSize = channel.size() - nodesStart;
+            if (nodesSize > Integer.MAX_VALUE) {
+                throw new IOException("The nodes of the packed tree are too large to be mapped.");
+            }
+            nodes = channel.map(FileChannel.MapMode.READ_ONLY, nodesStart, nodesSize);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of geometries in the index.
+     */
+    public long getItemsNum() {
+        return itemsNum;
+    }
+
+    /**
+     * @return the bounds of all the geometries in the index.
+     */
+    public Envelope getBounds() {
+        return new Envelope(bounds);
+    }
+
+    /**
+     * Find the geometries with envelope intersecting a given envelope.
+     *
+     * @param envelope the envelope to query.
+     * @return the list of the [position, size] of the found geometries,
+     *              to read with {@link #pickGeometry(long, long)}.
+     */
+    public List<long[]> queryPositions( Envelope envelope ) {
+        List<long[]> result = new ArrayList<long[]>();
+        if (rootAddress < 0) {
+            return result;
+        }
+        double qMinX = envelope.getMinX();
+        double qMinY = envelope.getMinY();
+        double qMaxX = envelope.getMaxX();
+        double qMaxY = envelope.getMaxY();
+
+        long[] stack = new long[64];
+        int stackSize = 0;
+        stack[stackSize++] = rootAddress;
+        while( stackSize > 0 ) {
+            // absolute reads leave the buffer untouched, so that queries can run in parallel
+            int node = (int) (stack[--stackSize] - nodesStart);
+            int count = nodes.getInt(node);
+            boolean isLeaf = nodes.getInt(node + 4) == 1;
+            int entry = node + NODE_HEADER_SIZE;
+            for( int i = 0; i < count; i++, entry += ENTRY_SIZE ) {
+                if (nodes.getDouble(entry) > qMaxX || nodes.getDouble(entry + 16) < qMinX
+                        || nodes.getDouble(entry + 8) > qMaxY || nodes.getDouble(entry + 24) < qMinY) {
+                    continue;
+                }
+                long address = nodes.getLong(entry + 32);
+                if (isLeaf) {
+                    result.add(new long[]{address, nodes.getInt(entry + 40)});
+                } else {
+                    if (stackSize == stack.length) {
+                        long[] newStack = new long[stack.length * 2];
+                        System.arraycopy(stack, 0, newStack, 0, stackSize);
+                        stack = newStack;
+                    }
+                    stack[stackSize++] = address;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find and read the geometries with envelope intersecting a given envelope.
+     *
+     * @param envelope the envelope to query.
+     * @return the found geometries.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public List<Geometry> query( Envelope envelope ) throws IOException, ParseException {
+        List<long[]> positions = queryPositions(envelope);
+        List<Geometry> geometries = new ArrayList<Geometry>(positions.size());
+        for( long[] posSize : positions ) {
+            geometries.add(pickGeometry(posSize[0], posSize[1]));
+        }
+        return geometries;
+    }
+
+    /**
+     * Reads a single geometry, using the info from {@link #queryPositions(Envelope)}.
+     *
+     * @param position the position of the geom to read.
+     * @param size the size of the geom to read.
+     * @return the read geometry, with the string of its user data, if any.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public Geometry pickGeometry( long position, long size ) throws IOException, ParseException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        readFully(buffer, position);
+        byte[] bytes = buffer.array();
+
+        int wkbSize = buffer.getInt(0);
+        byte[] wkb = new byte[wkbSize];
+        System.arraycopy(bytes, 4, wkb, 0, wkbSize);
+        Geometry geometry = new WKBReader().read(wkb);
+
+        int userDataSize = buffer.getInt(4 + wkbSize);
+        if (userDataSize >= 0) {
+            geometry.setUserData(new String(bytes, 8 + wkbSize, userDataSize, UTF8));
+        }
+        return geometry;
+    }
+
+    private void readFully( ByteBuffer buffer, long position ) throws IOException {
+        while( buffer.hasRemaining() ) {
+            // positional reads, so that geometries can be read in parallel
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * Closes the filehandle.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.disktree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Writer for the packed disk tree.
+ *
+ * <p>The geometries are written to the file while they are read from the source,
+ * keeping in memory only their envelopes and addresses. The tree is then packed
+ * bottom up with the Sort-Tile-Recursive algorithm.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @see IPackedTree
+ */
+public class PackedTreeWriter implements IPackedTree {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String path;
+    private final int nodeCapacity;
+
+    /*
+     * the entries of the level being packed.
+     */
+    private int entriesNum;
+    private double[] minXs;
+    private double[] minYs;
+    private double[] maxXs;
+    private double[] maxYs;
+    private long[] addresses;
+    private int[] sizes;
+
+    /**
+     * Constructor.
+     *
+     * @param path the path to which the index will be written.
+     */
+    public PackedTreeWriter( String path ) {
+        this(path, DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param path the path to which the index will be written.
+     * @param nodeCapacity the maximum number of entries of a node.
+     */
+    public PackedTreeWriter( String path, int nodeCapacity ) {
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("The node capacity has to be at least 2.");
+        }
+        this.path = path;
+        this.nodeCapacity = nodeCapacity;
+    }
+
+    /**
+     * Writes an array of {@link Geometry}s to the disk.
+     *
+     * @param geometries the array of geoms to write.
+     * @throws IOException
+     */
+    public void writeGeometries( Geometry[] geometries ) throws IOException {
+        writeGeometries(Arrays.asList(geometries).iterator());
+    }
+
+    /**
+     * Writes the {@link Geometry}s of a source to the disk.
+     *
+     * <p>Empty geometries are skipped. The user data of the geometries
+     * are kept as strings.</p>
+     *
+     * @param geometries the source of the geoms to write.
+     * @throws IOException
+     */
+    public void writeGeometries( Iterator<Geometry> geometries ) throws IOException {
+        entriesNum = 0;
+        int capacity = 1024;
+        minXs = new double[capacity];
+        minYs = new double[capacity];
+        maxXs = new double[capacity];
+        maxYs = new double[capacity];
+        addresses = new long[capacity];
+        sizes = new int[capacity];
+
+        Envelope bounds = new Envelope();
+        long nodesStart;
+        long rootAddress = -1;
+        long itemsNum;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+            // the header is written at the end
+            out.write(new byte[HEADER_SIZE]);
+            long address = HEADER_SIZE;
+
+            WKBWriter wkbWriter = new WKBWriter();
+            while( geometries.hasNext() ) {
+                Geometry geometry = geometries.next();
+                if (geometry == null || geometry.isEmpty()) {
+                    continue;
+                }
+                byte[] wkb = wkbWriter.write(geometry);
+                Object userData = geometry.getUserData();
+                byte[] userDataBytes = userData != null ? userData.toString().getBytes(UTF8) : null;
+
+                out.writeInt(wkb.length);
+                out.write(wkb);
+                if (userDataBytes != null) {
+                    out.writeInt(userDataBytes.length);
+                    out.write(userDataBytes);
+                } else {
+                    out.writeInt(-1);
+                }
+                int size = 8 + wkb.length + (userDataBytes != null ? userDataBytes.length : 0);
+
+                if (entriesNum == minXs.length) {
+                    grow();
+                }
+                Envelope envelope = geometry.getEnvelopeInternal();
+                minXs[entriesNum] = envelope.getMinX();
+                minYs[entriesNum] = envelope.getMinY();
+                maxXs[entriesNum] = envelope.getMaxX();
+                maxYs[entriesNum] = envelope.getMaxY();
+                addresses[entriesNum] = address;
+                sizes[entriesNum] = size;
+                entriesNum++;
+                bounds.expandToInclude(envelope);
+                address += size;
+            }
+            itemsNum = entriesNum;
+
+            nodesStart = address;
+            int nodeSize = NODE_HEADER_SIZE + nodeCapacity * ENTRY_SIZE;
+            boolean isLeaf = true;
+            while( entriesNum > 0 ) {
+                long levelStart = address;
+                int nodesNum = packLevel(out, isLeaf, levelStart, nodeSize);
+                address += (long) nodesNum * nodeSize;
+                isLeaf = false;
+                if (nodesNum == 1) {
+                    rootAddress = levelStart;
+                    break;
+                }
+            }
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            raf.write(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeInt(nodeCapacity);
+            raf.writeLong(itemsNum);
+            raf.writeLong(nodesStart);
+            raf.writeLong(rootAddress);
+            raf.writeDouble(bounds.getMinX());
+            raf.writeDouble(bounds.getMinY());
+            raf.writeDouble(bounds.getMaxX());
+            raf.writeDouble(bounds.getMaxY());
+        }
+    }
+
+    private void grow() {
+        int capacity = minXs.length * 2;
+        minXs = Arrays.copyOf(minXs, capacity);
+        minYs = Arrays.copyOf(minYs, capacity);
+        maxXs = Arrays.copyOf(maxXs, capacity);
+        maxYs = Arrays.copyOf(maxYs, capacity);
+        addresses = Arrays.copyOf(addresses, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+    }
+
+    /**
+     * Pack the current entries in nodes, write them and make the nodes the entries of the next level.
+     *
+     * @return the number of written nodes.
+     */
+    private int packLevel( DataOutputStream out, boolean isLeaf, long levelStart, int nodeSize ) throws IOException {
+        int nodesNum = (entriesNum + nodeCapacity - 1) / nodeCapacity;
+        int slicesNum = (int) Math.ceil(Math.sqrt(nodesNum));
+        int sliceSize = slicesNum * nodeCapacity;
+
+        int[] order = new int[entriesNum];
+        for( int i = 0; i < entriesNum; i++ ) {
+            order[i] = i;
+        }
+        double[] centersX = new double[entriesNum];
+        double[] centersY = new double[entriesNum];
+        for( int i = 0; i < entriesNum; i++ ) {
+            centersX[i] = (minXs[i] + maxXs[i]) / 2.0;
+            centersY[i] = (minYs[i] + maxYs[i]) / 2.0;
+        }
+        int[] tmp = new int[entriesNum];
+        sortByKey(order, tmp, 0, entriesNum, centersX);
+        for( int from = 0; from < entriesNum; from += sliceSize ) {
+            sortByKey(order, tmp, from, Math.min(entriesNum, from + sliceSize), centersY);
+        }
+
+        double[] nodeMinXs = new double[nodesNum];
+        double[] nodeMinYs = new double[nodesNum];
+        double[] nodeMaxXs = new double[nodesNum];
+        double[] nodeMaxYs = new double[nodesNum];
+        long[] nodeAddresses = new long[nodesNum];
+        int node = 0;
+        for( int from = 0; from < entriesNum; from += sliceSize ) {
+            int sliceEnd = Math.min(entriesNum, from + sliceSize);
+            for( int nodeFrom = from; nodeFrom < sliceEnd; nodeFrom += nodeCapacity ) {
+                int nodeEnd = Math.min(sliceEnd, nodeFrom + nodeCapacity);
+                double minX = Double.POSITIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                out.writeInt(nodeEnd - nodeFrom);
+                out.writeInt(isLeaf ? 1 : 0);
+                for( int k = nodeFrom; k < nodeEnd; k++ ) {
+                    int e = order[k];
+                    out.writeDouble(minXs[e]);
+                    out.writeDouble(minYs[e]);
+                    out.writeDouble(maxXs[e]);
+                    out.writeDouble(maxYs[e]);
+                    out.writeLong(addresses[e]);
+                    out.writeInt(sizes[e]);
+                    out.writeInt(0);
+                    minX = Math.min(minX, minXs[e]);
+                    minY = Math.min(minY, minYs[e]);
+                    maxX = Math.max(maxX, maxXs[e]);
+                    maxY = Math.max(maxY, maxYs[e]);
+                }
+                // fixed size nodes
+                out.write(new byte[(nodeCapacity - (nodeEnd - nodeFrom)) * ENTRY_SIZE]);
+
+                nodeMinXs[node] = minX;
+                nodeMinYs[node] = minY;
+                nodeMaxXs[node] = maxX;
+                nodeMaxYs[node] = maxY;
+                nodeAddresses[node] = levelStart + (long) node * nodeSize;
+                node++;
+            }
+        }
+
+        entriesNum = nodesNum;
+        minXs = nodeMinXs;
+        minYs = nodeMinYs;
+        maxXs = nodeMaxXs;
+        maxYs = nodeMaxYs;
+        addresses = nodeAddresses;
+        sizes = new int[nodesNum];
+        return nodesNum;
+    }
+
+    /**
+     * Merge sort a range of indexes by their keys.
+     */
+    private static void sortByKey( int[] order, int[] tmp, int from, int to, double[] keys ) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sortByKey(order, tmp, from, middle, keys);
+        sortByKey(order, tmp, middle, to, keys);
+        if (keys[order[middle - 1]] <= keys[order[middle]]) {
+            return;
+        }
+        System.arraycopy(order, from, tmp, from, to - from);
+        int i = from;
+        int j = middle;
+        for( int k = from; k < to; k++ ) {
+            if (j >= to || (i < middle && keys[tmp[i]] <= keys[tmp[j]])) {
+                order[k] = tmp[i++];
+            } else {
+                order[k] = tmp[j++];
+            }
+        }
+    }
+}
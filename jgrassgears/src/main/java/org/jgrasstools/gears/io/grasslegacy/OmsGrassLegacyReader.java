@@ -31,6 +31,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSGRASSLEGACYREADER_file
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSGRASSLEGACYREADER_geodata_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSGRASSLEGACYREADER_inWindow_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSGRASSLEGACYREADER_outGC_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSGRASSLEGACYREADER_pMaxThreads_DESCRIPTION;
 
 import java.io.File;
 
@@ -83,6 +84,10 @@ public class OmsGrassLegacyReader extends JGTModel {
     @In
     public Window inWindow = null;
 
+    @Description(OMSGRASSLEGACYREADER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSGRASSLEGACYREADER_outGC_DESCRIPTION)
     @Out
     public GridCoverage2D outGC = null;
@@ -113,6 +118,7 @@ public class OmsGrassLegacyReader extends JGTModel {
             reader.setReaderType(MapReader.RASTER_READER);
             reader.setOutputDataObject(new double[0][0]);
             reader.setDataWindow(inWindow);
+            reader.setParameter("threads", pMaxThreads);
 
             reader.open(mapEnvironment.getCELL().getAbsolutePath());
             if (reader.hasMoreData(pm)) {
@@ -24,21 +24,19 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.BitSet;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
 import org.jgrasstools.gears.i18n.GearsMessageHandler;
 import org.jgrasstools.gears.io.grasslegacy.map.attribute.AttributeTable;
 import org.jgrasstools.gears.io.grasslegacy.map.color.ColorMapBuffer;
-import org.jgrasstools.gears.io.grasslegacy.utils.FileUtilities;
 import org.jgrasstools.gears.io.grasslegacy.utils.GrassLegacyConstans;
 import org.jgrasstools.gears.io.grasslegacy.utils.JlsTokenizer;
 import org.jgrasstools.gears.io.grasslegacy.utils.Window;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 
 /**
@@ -47,6 +45,11 @@ import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
  * transformation of any of those into int, float and double matrixes, as well as in the ByteBuffers
  * of the same tipes.
  * </p>
+ * <p>
+ * The rows of the map are decoded in blocks, in parallel and with a cache of the last blocks (see
+ * {@link GrassRowBlockReader} and {@link #setParameter(String, Object)}). Integer and float maps can
+ * be read directly into <code>int[][]</code> and <code>float[][]</code> output data objects.
+ * </p>
  * 
  * @author Andrea Antonello - www.hydrologis.com
  * @since 1.1.0
@@ -103,10 +106,16 @@ public class GrassRasterReader extends MapReader {
 
     private boolean isOldIntegerMap = false;
 
-    // private ByteBuffer rowCache = null;
-    private int rowCacheRow = -1;
+    /*
+     * the decoder of the map rows, with the cache of the last decoded row blocks
+     */
+    private GrassRowBlockReader rowBlockReader = null;
 
-    private int firstDataRow = -1;
+    private int threads = 1;
+
+    private int blockRows = GrassRowBlockReader.DEFAULT_BLOCK_ROWS;
+
+    private int cachedBlocks = GrassRowBlockReader.DEFAULT_CACHED_BLOCKS;
 
     private final double[] range = new double[]{1000000.0, -1000000.0}; // min,
 
@@ -119,7 +128,7 @@ public class GrassRasterReader extends MapReader {
 
     private AttributeTable legendAttribTable = null;
 
-    private double[][] outputData;
+    private Object outputData;
 
     /** Creates a new instance of GrassRasterReader */
     public GrassRasterReader() {
@@ -184,6 +193,10 @@ public class GrassRasterReader extends MapReader {
     }
 
     public void close() {
+        if (rowBlockReader != null) {
+            rowBlockReader.close();
+            rowBlockReader = null;
+        }
         try {
             cellFile.close();
             if (nullFile != null)
@@ -255,103 +268,81 @@ public class GrassRasterReader extends MapReader {
     public boolean hasMoreData( IJGTProgressMonitor monitor ) throws Exception {
         try {
             if (dataWindow != null && moreData == true) {
-
-                outputData = new double[dataWindow.getRows()][dataWindow.getCols()];
-
-                /* Allocate the space for the map data. */
-                int bufferSize = dataWindow.getRows() * dataWindow.getCols() * numberOfBytesPerValue;
-
-                // System.out.println("retrieveing data in window: " +
-                // dataWindow.toString());
+                if (dataObject instanceof int[][] && rasterMapType < 0) {
+                    throw new IllegalArgumentException("Only integer maps can be read into an int matrix.");
+                }
+                int dataRows = dataWindow.getRows();
+                int dataCols = dataWindow.getCols();
+                if (dataObject instanceof int[][]) {
+                    outputData = new int[dataRows][dataCols];
+                } else if (dataObject instanceof float[][]) {
+                    outputData = new float[dataRows][dataCols];
+                } else {
+                    outputData = new double[dataRows][dataCols];
+                }
 
                 try {
-                    /* Byte array that will hold a complete null row */
-                    byte[] nullRow = null;
-                    /* The rowDataArray holds the unpacked row data */
-                    byte[] rowDataCache = new byte[dataWindow.getCols() * numberOfBytesPerValue];
-                    /* The rowColorDataArray holds the unpacked row color data */
-                    byte[] rowColorDataCache = new byte[dataWindow.getCols() * 4];
-                    /* Reset row cache */
-                    // rowCache = ByteBuffer.allocate(fileWindow.getCols() *
-                    // ((rasterMapType == -2) ? 8 : 4));
-                    // if (logger.isDebugEnabled())
-                    // logger.debug("allocating rowDataArray["+rowDataArray.length+
-                    // "], rowCache["+rowCache.limit()+"]");
-                    rowCacheRow = -1;
-                    firstDataRow = -1;
-                    int rowindex = -1;
-                    /* Get a local reference to speed things up */
+                    if (rowBlockReader == null) {
+                        rowBlockReader = new GrassRowBlockReader(cellFile, nullFile, rasterMapType, addressesofrows,
+                                fileWindow.getRows(), fileWindow.getCols(), isOldIntegerMap, reclassTable, blockRows,
+                                cachedBlocks);
+                    }
+
+                    /*
+                     * Calculate the map file rows and cols for the data window rows and cols, -1
+                     * if outside of the map.
+                     */
                     int filerows = fileWindow.getRows();
+                    int filecols = fileWindow.getCols();
                     double filenorth = fileWindow.getNorth();
                     double filensres = fileWindow.getNSResolution();
+                    double filewest = fileWindow.getWest();
+                    double fileewres = fileWindow.getWEResolution();
                     double datanorth = dataWindow.getNorth();
                     double datansres = dataWindow.getNSResolution();
-                    // double datansres2 = datansres / 2;
-                    /* Iterate through all the rows of the data window. */
-                    // int lastpos = 0;
-                    monitor.beginTask(GearsMessageHandler.getInstance().message("grass.legacy.reading") + filename, dataWindow //$NON-NLS-1$
-                            .getRows());
-                    int stepRowsForPercentage = dataWindow.getRows() / 100;
-                    for( double row = 0; row < dataWindow.getRows(); row++ ) {
-                        if (row % stepRowsForPercentage == 0.0)
-                            monitor.worked(stepRowsForPercentage);
-                        /*
-                         * Calculate the map file row for the current data window row.
-                         */
-                        double filerow = (filenorth - (datanorth - (row * datansres))) / filensres;
-                        filerow = Math.floor(filerow);
-                        // int filerow = (int) ((filenorth - (datanorth - (row *
-                        // datansres + datansres2))) / filensres);
-                        // System.out.print("FILENORTH="+filenorth+",
-                        // DATANORTH="+datanorth+", FILEROW="+row);
-                        if (filerow < 0 || filerow >= filerows) {
-                            // System.out.println(", NULL ROW");
-                            /*
-                             * If no data has been read yet, then increment first data row counter
-                             */
-                            if (firstDataRow == -1)
-                                rowindex++;
-                            /*
-                             * Write a null row to the raster buffer. To speed things up the first
-                             * time this is called it instantiates the buffer and fills it with null
-                             * values that are reused the other times.
-                             */
-                            if (nullRow == null)
-                                nullRow = initNullRow();
-                            ByteBuffer wrap = ByteBuffer.wrap(nullRow);
-                            for( int col = 0; col < dataWindow.getCols(); col++ ) {
-                                outputData[(int) row][col] = wrap.getDouble();
-                            }
-                        } else {
-                            // System.out.println(", DATA ROW");
-                            if (firstDataRow == -1)
-                                firstDataRow = rowindex + 1;
-                            /* Read row and put in raster buffer */
-                            if (filerow == rowCacheRow) {
-                                ByteBuffer wrap = ByteBuffer.wrap(rowDataCache);
-                                for( int col = 0; col < dataWindow.getCols(); col++ ) {
-                                    outputData[(int) row][col] = wrap.getDouble();
-                                }
-                            } else {
-                                readRasterRow((int) filerow, rowDataCache, rowColorDataCache);
-                                rowCacheRow = (int) filerow;
-                                ByteBuffer wrap = ByteBuffer.wrap(rowDataCache);
-                                for( int col = 0; col < dataWindow.getCols(); col++ ) {
-                                    outputData[(int) row][col] = wrap.getDouble();
-                                }
+                    double datawest = dataWindow.getWest();
+                    double dataewres = dataWindow.getWEResolution();
+                    int[] fileRowsIndexes = new int[dataRows];
+                    for( int row = 0; row < dataRows; row++ ) {
+                        double filerow = Math.floor((filenorth - (datanorth - (row * datansres))) / filensres);
+                        fileRowsIndexes[row] = filerow < 0 || filerow >= filerows ? -1 : (int) filerow;
+                    }
+                    int[] fileColsIndexes = new int[dataCols];
+                    for( int col = 0; col < dataCols; col++ ) {
+                        double filecol = Math.floor(((datawest + (col * dataewres)) - filewest) / fileewres);
+                        fileColsIndexes[col] = filecol < 0 || filecol >= filecols ? -1 : (int) filecol;
+                    }
+
+                    monitor.beginTask(GearsMessageHandler.getInstance().message("grass.legacy.reading") + filename, dataRows); //$NON-NLS-1$
+                    /*
+                     * Rows are read in batches of one block per thread, the blocks of a batch are
+                     * decoded in parallel.
+                     */
+                    int blockRowsNum = rowBlockReader.getBlockRows();
+                    int lastBlock = (filerows - 1) / blockRowsNum;
+                    int row = 0;
+                    while( row < dataRows ) {
+                        if (fileRowsIndexes[row] == -1) {
+                            fillNovalueRow(row);
+                            monitor.worked(1);
+                            row++;
+                            continue;
+                        }
+                        int fromBlock = fileRowsIndexes[row] / blockRowsNum;
+                        int toBlock = Math.min(lastBlock, fromBlock + threads - 1);
+                        Object[] blocks = rowBlockReader.getBlocks(fromBlock, toBlock, threads);
+                        while( row < dataRows && fileRowsIndexes[row] != -1 ) {
+                            int block = fileRowsIndexes[row] / blockRowsNum;
+                            if (block < fromBlock || block > toBlock) {
+                                break;
                             }
+                            int offset = (fileRowsIndexes[row] - block * blockRowsNum) * filecols;
+                            fillRow(row, blocks[block - fromBlock], offset, fileColsIndexes);
+                            monitor.worked(1);
+                            row++;
                         }
-                        // System.out.println("FILEROWS="+filerows+",
-                        // FILEROW="+filerow+", ROWCACHEROW="+rowCacheRow+",
-                        // ROW_COUNTER="+row);
                     }
                     monitor.done();
-
-                    rowDataCache = null;
-                    rowColorDataCache = null;
-                    rowCacheRow = -1;
-                    nullRow = null;
-                    System.gc();
                 } catch (IOException e) {
                     moreData = false;
                 } catch (DataFormatException e) {
@@ -367,6 +358,60 @@ public class GrassRasterReader extends MapReader {
         return moreData;
     }
 
+    /**
+     * Fill a row of the output data with the values of a decoded row of the map.
+     */
+    private void fillRow( int row, Object block, int offset, int[] fileColsIndexes ) {
+        if (outputData instanceof double[][]) {
+            double[] outputRow = ((double[][]) outputData)[row];
+            for( int col = 0; col < outputRow.length; col++ ) {
+                int filecol = fileColsIndexes[col];
+                if (filecol == -1) {
+                    outputRow[col] = JGTConstants.doubleNovalue;
+                } else if (block instanceof double[]) {
+                    outputRow[col] = ((double[]) block)[offset + filecol];
+                } else if (block instanceof float[]) {
+                    outputRow[col] = ((float[]) block)[offset + filecol];
+                } else {
+                    int value = ((int[]) block)[offset + filecol];
+                    outputRow[col] = value == JGTConstants.intNovalue ? JGTConstants.doubleNovalue : value;
+                }
+            }
+        } else if (outputData instanceof float[][]) {
+            float[] outputRow = ((float[][]) outputData)[row];
+            for( int col = 0; col < outputRow.length; col++ ) {
+                int filecol = fileColsIndexes[col];
+                if (filecol == -1) {
+                    outputRow[col] = JGTConstants.floatNovalue;
+                } else if (block instanceof double[]) {
+                    outputRow[col] = (float) ((double[]) block)[offset + filecol];
+                } else if (block instanceof float[]) {
+                    outputRow[col] = ((float[]) block)[offset + filecol];
+                } else {
+                    int value = ((int[]) block)[offset + filecol];
+                    outputRow[col] = value == JGTConstants.intNovalue ? JGTConstants.floatNovalue : value;
+                }
+            }
+        } else {
+            int[] outputRow = ((int[][]) outputData)[row];
+            int[] intBlock = (int[]) block;
+            for( int col = 0; col < outputRow.length; col++ ) {
+                int filecol = fileColsIndexes[col];
+                outputRow[col] = filecol == -1 ? JGTConstants.intNovalue : intBlock[offset + filecol];
+            }
+        }
+    }
+
+    private void fillNovalueRow( int row ) {
+        if (outputData instanceof double[][]) {
+            Arrays.fill(((double[][]) outputData)[row], JGTConstants.doubleNovalue);
+        } else if (outputData instanceof float[][]) {
+            Arrays.fill(((float[][]) outputData)[row], JGTConstants.floatNovalue);
+        } else {
+            Arrays.fill(((int[][]) outputData)[row], JGTConstants.intNovalue);
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -374,7 +419,7 @@ public class GrassRasterReader extends MapReader {
      */
     public Object getNextData() {
         moreData = false;
-        if (dataObject instanceof double[][]) {
+        if (dataObject instanceof double[][] || dataObject instanceof float[][] || dataObject instanceof int[][]) {
             return outputData;
         } else {
             throw new RuntimeException();
@@ -417,7 +462,10 @@ public class GrassRasterReader extends MapReader {
     }
 
     /**
-     * utility to set particular parameters
+     * utility to set particular parameters. Besides "novalue" and "matrixtype" the reading of the
+     * rows is tuned with "threads" (the threads decoding the rows, default 1), "blockrows" (the
+     * rows of a decoded block) and "cachedblocks" (the number of decoded blocks kept in memory).
+     * The tuning has to be set before the data are read.
      */
     public void setParameter( String key, Object obj ) {
         if (key.equals("novalue")) { //$NON-NLS-1$
@@ -425,6 +473,23 @@ public class GrassRasterReader extends MapReader {
         } else if (key.equals("matrixtype")) { //$NON-NLS-1$
             Integer dmtype = (Integer) obj;
             matrixType = dmtype.intValue();
+        } else if (key.equals("threads")) { //$NON-NLS-1$
+            threads = Math.max(1, ((Integer) obj).intValue());
+        } else if (key.equals("blockrows")) { //$NON-NLS-1$
+            blockRows = ((Integer) obj).intValue();
+        } else if (key.equals("cachedblocks")) { //$NON-NLS-1$
+            cachedBlocks = ((Integer) obj).intValue();
+        }
+    }
+
+    /**
+     * Set the active reader window. On an open map this enables a new read, so that several
+     * windows can be read reusing the cached rows.
+     */
+    public void setDataWindow( Window window ) {
+        super.setDataWindow(window);
+        if (cellFile != null) {
+            moreData = true;
         }
     }
 
@@ -791,531 +856,6 @@ public class GrassRasterReader extends MapReader {
         return true;
     }
 
-    /**
-     * reads a row of data from the file into a byte array.
-     * 
-     * @param currentfilerow the current row to be extracted from the file
-     * @param rowDataCache the byte array to store the unpacked row data
-     * @return boolean TRUE for success, FALSE for failure.
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private boolean readRasterRow( int currentfilerow, byte[] rowDataCache, byte[] rowColorDataCache ) throws IOException,
-            DataFormatException {
-        ByteBuffer rowBuffer = ByteBuffer.wrap(rowDataCache);
-        ByteBuffer rowColorBuffer = ByteBuffer.wrap(rowColorDataCache);
-        /*
-         * Read the correct approximated row from the file. The row contents as saved in a cache for
-         * along with the row number. If the row requested is the row in the cache then we do not
-         * ned to read from the file.
-         */
-
-        // int currentfilecol;
-        boolean iscompressed = (compressed == 1 ? true : false);
-
-        /* Data window geographic boundaries */
-        double activeewres = dataWindow.getWEResolution();
-        // double activeewres2 = activeewres / 2;
-        double activewest = dataWindow.getWest();
-
-        /* Map file geographic limits */
-        double filewest = fileWindow.getWest();
-        double fileewres = fileWindow.getWEResolution();
-
-        // System.out.println("currentfilerow="+currentfilerow+",
-        // fileWindow.getRows()="+fileWindow.getRows());
-
-        /* Reset row cache and read new row data */
-        ByteBuffer rowCache = ByteBuffer.allocate(fileWindow.getCols() * ((rasterMapType == -2) ? 8 : 4));
-        // rowCache.rewind();
-        getMapRow(currentfilerow, rowCache, iscompressed);
-        // rowCacheRow = currentfilerow;
-
-        // if the northing is inside the file boundaries, calculate the values
-        // for (double col = activewest; col < activeeast; col += activeewres)
-        for( double col = 0; col < dataWindow.getCols(); col++ ) {
-            /*
-             * Calculate the column value of the data to be extracted from the row
-             */
-            double x = (((activewest + (col * activeewres)) - filewest) / fileewres);
-            x = Math.floor(x);
-
-            // currentfilecol = (int) (((activewest + (col * activeewres +
-            // activeewres2)) - filewest) / fileewres);
-
-            if (x < 0 || x >= fileWindow.getCols()) {
-                // System.out.println("COL="+col+", X="+x+", NULL VALUE(1)");
-                /*
-                 * Depending on the map type we store a different 'NO VALUE' value.
-                 */
-                if (rasterMapType > 0) {
-                    /*
-                     * For integers the NaN pattern doesn't seem to so we we use the positive
-                     * infinite value.
-                     */
-                    rowBuffer.putInt(Integer.MAX_VALUE);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Integer.MAX_VALUE);
-                } else if (rasterMapType == -1) {
-                    /* For floats we use the Not A Number (NAN) value. */
-                    rowBuffer.putFloat(Float.NaN);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Float.NaN);
-                } else if (rasterMapType == -2) {
-                    /* For double values we use the NAN value. */
-                    rowBuffer.putDouble(Double.NaN);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Double.NaN);
-                } else {
-                    /* Don't know what to do. Probably throw some exception? */
-                }
-            } else if (readNullValueAtRowCol(currentfilerow, (int) x)) {
-                // System.out.println("COL="+col+", X="+x+", NULL VALUE(2)");
-                /*
-                 * Depending on the map type we store a different 'NO VALUE' value.
-                 */
-                if (rasterMapType > 0) {
-                    /*
-                     * For integers the NaN pattern doesn't seem to so we we use the positive
-                     * infinite value.
-                     */
-                    rowBuffer.putInt(Integer.MAX_VALUE);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Integer.MAX_VALUE);
-                } else if (rasterMapType == -1) {
-                    /* For floats we use the Not A Number (NAN) value. */
-                    rowBuffer.putFloat(Float.NaN);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Float.NaN);
-                } else if (rasterMapType == -2) {
-                    /* For double values we use the NAN value. */
-                    rowBuffer.putDouble(Double.NaN);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Double.NaN);
-                } else {
-                    /* Don't know what to do. Probably throw some exception? */
-                }
-            } else {
-                // System.out.println("COL="+col+", X="+x+", DATA VALUE");
-                rowCache.position((int) x * numberOfBytesPerValue);
-                if (rasterMapType > 0) {
-                    /* Integers */
-                    int cell = rowCache.getInt();
-                    // System.out.println("x="+easthing+", y="+northing+",
-                    // cell="+cell);
-                    // System.out.print(cell+" ");
-
-                    /* File is an integer map file with 0 = novalue */
-                    if (cell == 0 && isOldIntegerMap) {
-                        rowBuffer.putInt(Integer.MAX_VALUE);
-                        if (colorTable != null)
-                            colorTable.interpolateColorValue(rowColorBuffer, Integer.MAX_VALUE);
-                    } else {
-                        /* If map is a reclass then get the reclassed value */
-                        if (reclassTable != null) {
-                            cell = ((Integer) reclassTable.elementAt(cell)).intValue();
-                        }
-                        rowBuffer.putInt(cell);
-                        if (colorTable != null)
-                            colorTable.interpolateColorValue(rowColorBuffer, cell);
-                        /* Update data range value */
-                        if (cell < dataRange[0])
-                            dataRange[0] = cell;
-                        else if (cell > dataRange[1])
-                            dataRange[1] = cell;
-                    }
-                } else if (rasterMapType == -1) {
-                    /* Floating point map with float values. */
-                    float cell = rowCache.getFloat();
-                    if (reclassTable != null) {
-                        cell = ((Integer) reclassTable.elementAt((int) cell)).floatValue();
-                    }
-                    rowBuffer.putFloat(cell);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, cell);
-                    /* Update data range value */
-                    if (cell < dataRange[0])
-                        dataRange[0] = cell;
-                    else if (cell > dataRange[1])
-                        dataRange[1] = cell;
-                } else if (rasterMapType == -2) {
-                    /* Floating point map with double values. */
-                    /*
-                     * if (logger.isDebugEnabled()) logger.debug("RASTERREAD: rowCache size = " +
-                     * rowCache.capacity() / 8 + " position = " + rowCache.position() / 8 + " total
-                     * columns to read = " + dataWindow.getCols() + " actual column = " + col);
-                     */
-                    double cell = rowCache.getDouble();
-                    /*
-                     * if (logger.isDebugEnabled()) logger.debug("RASTERREAD: cell = " + cell);
-                     */
-                    if (reclassTable != null) {
-                        cell = ((Integer) reclassTable.elementAt((int) cell)).doubleValue();
-                    }
-                    rowBuffer.putDouble(cell);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, cell);
-                    /* Update data range value */
-                    if (cell < dataRange[0])
-                        dataRange[0] = cell;
-                    else if (cell > dataRange[1])
-                        dataRange[1] = cell;
-                } else {
-                    /* Don't know what to do. Probably throw some exception? */
-                }
-            }
-        }
-        // System.out.println();
-
-        return true;
-    }
-
-    /**
-     * SwingUtilities
-     */
-    private byte[] initNullRow() {
-        int len = dataWindow.getCols() * numberOfBytesPerValue;
-        byte[] nrow = new byte[len];
-
-        if (rasterMapType > 0) {
-            ByteBuffer src = ByteBuffer.allocate(4);
-            src.putInt(Integer.MAX_VALUE);
-            byte[] arr = src.array();
-            for( int i = 0; i < len; i += 4 )
-                System.arraycopy(arr, 0, nrow, i, 4);
-        } else if (rasterMapType == -1) {
-            ByteBuffer src = ByteBuffer.allocate(4);
-            src.putFloat(Float.NaN);
-            byte[] arr = src.array();
-            for( int i = 0; i < len; i += 4 )
-                System.arraycopy(arr, 0, nrow, i, 4);
-        } else if (rasterMapType == -2) {
-            ByteBuffer src = ByteBuffer.allocate(8);
-            src.putDouble(Double.NaN);
-            byte[] arr = src.array();
-            for( int i = 0; i < len; i += 8 )
-                System.arraycopy(arr, 0, nrow, i, 8);
-        }
-
-        return nrow;
-    }
-
-    /**
-     * read a row of the map from the active region
-     * 
-     * @param currentrow
-     * @param iscompressed
-     * @return
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private void getMapRow( int currentrow, ByteBuffer rowdata, boolean iscompressed ) throws IOException, DataFormatException {
-        // if (logger.isDebugEnabled())
-        // {
-        // logger.debug("ACCESSING THE FILE at row: " + currentrow +
-        // ", rasterMapType = " + rasterMapType +
-        // ", numberOfBytesPerValue = " + numberOfBytesPerValue +
-        // ", iscompressed = " + iscompressed);
-        // }
-
-        if (iscompressed) {
-            /* Compressed maps */
-            if (rasterMapType == -2) {
-                /* Compressed double map */
-                readCompressedFPRowByNumber(rowdata, currentrow, addressesofrows, cellFile, numberOfBytesPerValue);
-            } else if (rasterMapType == -1) {
-                /* Compressed floating point map */
-                readCompressedFPRowByNumber(rowdata, currentrow, addressesofrows, cellFile, numberOfBytesPerValue);
-            } else if (rasterMapType > 0) {
-                /* Compressed integer map */
-                readCompressedIntegerRowByNumber(rowdata, currentrow, addressesofrows, cellFile);
-            } else {
-                // if (logger.isDebugEnabled())
-                // logger.error("format not double nor float");
-            }
-        } else {
-            if (rasterMapType < 0) {
-                /* Uncompressed floating point map */
-                readUncompressedFPRowByNumber(rowdata, currentrow, cellFile, numberOfBytesPerValue);
-            } else if (rasterMapType > 0) {
-                /* Uncompressed integer map */
-                readUncompressedIntegerRowByNumber(rowdata, currentrow, cellFile);
-            } else {
-                // if (logger.isDebugEnabled())
-                // logger.error("Unknown case, iscompressed=" + iscompressed
-                // + ", compressed=" + compressed + ", rasterMapType="
-                // + rasterMapType);
-            }
-        }
-        return;
-    }
-
-    /**
-     * read a row of data from a compressed floating point map
-     * 
-     * @param rn
-     * @param adrows
-     * @param outFile
-     * @param typeBytes
-     * @return the ByteBuffer containing the data
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private void readCompressedFPRowByNumber( ByteBuffer rowdata, int rn, long[] adrows, RandomAccessFile thefile, int typeBytes )
-            throws DataFormatException, IOException {
-        int offset = (int) (adrows[rn + 1] - adrows[rn]);
-        /*
-         * The fact that the file is compressed does not mean that the row is compressed. If the
-         * first byte is 0 (49), then the row is compressed, otherwise (first byte = 48) the row has
-         * to be read in simple XDR uncompressed format.
-         */
-        byte[] tmp = new byte[offset - 1];
-        thefile.seek(adrows[rn]);
-        int firstbyte = (thefile.read() & 0xff);
-        if (firstbyte == 49) {
-            /* The row is compressed. */
-            // thefile.seek((long) adrows[rn] + 1);
-            thefile.read(tmp, 0, offset - 1);
-            Inflater decompresser = new Inflater();
-            decompresser.setInput(tmp, 0, tmp.length);
-            decompresser.inflate(rowdata.array());
-            decompresser.end();
-        } else if (firstbyte == 48) {
-            /* The row is NOT compressed */
-            // thefile.seek((long) (adrows[rn]));
-            // if (thefile.read() == 48)
-            // {
-            // thefile.seek((long) (adrows[rn] + 1));
-            thefile.read(rowdata.array(), 0, offset - 1);
-            // }
-        }
-    }
-
-    /**
-     * read a row of data from an uncompressed floating point map
-     * 
-     * @param rn
-     * @param outFile
-     * @param typeBytes
-     * @return the ByteBuffer containing the data
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private void readUncompressedFPRowByNumber( ByteBuffer rowdata, int rn, RandomAccessFile thefile, int typeBytes )
-            throws IOException, DataFormatException {
-        int datanumber = fileWindow.getCols() * typeBytes;
-        thefile.seek((rn * datanumber));
-
-        thefile.read(rowdata.array());
-    }
-
-    /**
-     * read a row of data from a compressed integer point map
-     * 
-     * @param rn
-     * @param adrows
-     * @param outFile
-     * @return the ByteBuffer containing the data
-     * @throws IOException
-     */
-    private void readCompressedIntegerRowByNumber( ByteBuffer rowdata, int rn, long[] adrows, RandomAccessFile thefile )
-            throws IOException, DataFormatException {
-        int offset = (int) (adrows[rn + 1] - adrows[rn]);
-
-        thefile.seek(adrows[rn]);
-        /*
-         * Read how many bytes the values are ex 1 => if encoded: 1 byte for the value and one byte
-         * for the count = 2 2 => if encoded: 2 bytes for the value and one byte for the count = 3
-         * etc... etc
-         */
-        int bytespervalue = (thefile.read() & 0xff);
-        ByteBuffer cell = ByteBuffer.allocate(bytespervalue);
-        int cellValue = 0;
-
-        /* Create the buffer in which read the compressed row */
-        byte[] tmp = new byte[offset - 1];
-        thefile.read(tmp);
-        ByteBuffer tmpBuffer = ByteBuffer.wrap(tmp);
-        tmpBuffer.order(ByteOrder.nativeOrder());
-
-        /*
-         * Create the buffer in which read the decompressed row. The final decompressed row will
-         * always contain 4-byte integer values
-         */
-        if ((offset - 1) == (bytespervalue * fileWindow.getCols())) {
-            /* There is no compression in this row */
-            for( int i = 0; i < offset - 1; i = i + bytespervalue ) {
-                /* Read the value */
-                tmpBuffer.get(cell.array());
-
-                /*
-                 * Integers can be of 1, 2, or 4 bytes. As rasterBuffer expects 4 byte integers we
-                 * need to pad them with 0's. The order of the padding is determined by the
-                 * ByteOrder of the buffer.
-                 */
-                if (bytespervalue == 1) {
-                    cellValue = (cell.get(0) & 0xff);
-                } else if (bytespervalue == 2) {
-                    cellValue = cell.getShort(0);
-                } else if (bytespervalue == 4) {
-                    cellValue = cell.getInt(0);
-                }
-                // if (logger.isDebugEnabled()) logger.debug("tmpint=" + tmpint
-                // );
-                rowdata.putInt(cellValue);
-            }
-        } else {
-            /*
-             * If the row is compressed, then the values appear in pairs (like couples a party). The
-             * couple is composed of the count and the value value (WARNING: this can be more than
-             * one byte). Therefore, knowing the length of the compressed row we can calculate the
-             * number of couples.
-             */
-            int couples = (offset - 1) / (1 + bytespervalue);
-
-            for( int i = 0; i < couples; i++ ) {
-                /* Read the count of values */
-                int count = (tmpBuffer.get() & 0xff);
-
-                /* Read the value */
-                tmpBuffer.get(cell.array());
-
-                /*
-                 * Integers can be of 1, 2, or 4 bytes. As rasterBuffer expects 4 byte integers we
-                 * need to pad them with 0's. The order of the padding is determined by the
-                 * ByteOrder of the buffer.
-                 */
-                if (bytespervalue == 1) {
-                    cellValue = (cell.get(0) & 0xff);
-                } else if (bytespervalue == 2) {
-                    cellValue = cell.getShort(0);
-                } else if (bytespervalue == 4) {
-                    cellValue = cell.getInt(0);
-                }
-                /*
-                 * Now write the cell value the required number of times to the raster row data
-                 * buffer.
-                 */
-                for( int j = 0; j < count; j++ ) {
-                    // // if (logger.isDebugEnabled()) logger.debug(" " +
-                    // tmpint);
-                    rowdata.putInt(cellValue);
-                }
-            }
-        }
-    }
-
-    /**
-     * read a row of data from an uncompressed integer map
-     * 
-     * @param rn
-     * @param thefile
-     * @return
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private void readUncompressedIntegerRowByNumber( ByteBuffer rowdata, int rn, RandomAccessFile thefile ) throws IOException,
-            DataFormatException {
-        int cellValue = 0;
-        ByteBuffer cell = ByteBuffer.allocate(rasterMapType);
-
-        /* The number of bytes that are inside a row in the file. */
-        int filerowsize = fileWindow.getCols() * rasterMapType;
-
-        /* Position the file pointer to read the row */
-        thefile.seek((rn * filerowsize));
-
-        /* Read the row of data from the file */
-        ByteBuffer tmpBuffer = ByteBuffer.allocate(filerowsize);
-        thefile.read(tmpBuffer.array());
-
-        /*
-         * Transform the rasterMapType-size-values to a standard 4 bytes integer value
-         */
-        while( tmpBuffer.hasRemaining() ) {
-            // read the value
-            tmpBuffer.get(cell.array());
-
-            /*
-             * Integers can be of 1, 2, or 4 bytes. As rasterBuffer expects 4 byte integers we need
-             * to pad them with 0's. The order of the padding is determined by the ByteOrder of the
-             * buffer.
-             */
-            if (rasterMapType == 1) {
-                cellValue = (cell.get(0) & 0xff);
-            } else if (rasterMapType == 2) {
-                cellValue = cell.getShort(0);
-            } else if (rasterMapType == 4) {
-                cellValue = cell.getInt(0);
-            }
-            // if (logger.isDebugEnabled()) logger.debug("tmpint=" + cellValue
-            // );
-            rowdata.putInt(cellValue);
-        }
-    }
-
-    /**
-     * read the null value from the null file (if it exists) and returns the information about the
-     * particular cell (true if it is novalue, false if it is not a novalue
-     * 
-     * @param currentfilerow
-     * @param currentfilecol
-     * @return
-     */
-    private boolean readNullValueAtRowCol( int currentfilerow, int currentfilecol ) throws IOException {
-        /*
-         * If the null file doesn't exist and the map is an integer, than it is an old integer-map
-         * format, where the novalues are the cells that contain the values 0
-         */
-        if (nullFile != null) {
-            long byteperrow = (long) Math.ceil(fileWindow.getCols() / 8.0); // in the
-            // null
-            // map of
-            // cell_misc
-            long currentByte = (long) Math.ceil((currentfilecol + 1) / 8.0); // in the
-            // null
-            // map
-
-            // currentfilerow starts from 0, so it is the row before the one we
-            // need
-            long byteToRead = (byteperrow * currentfilerow) + currentByte;
-
-            nullFile.seek(byteToRead - 1);
-
-            int bitposition = (currentfilecol) % 8;
-
-            byte[] thetmp = new byte[1];
-            thetmp[0] = nullFile.readByte();
-            BitSet tmp = FileUtilities.fromByteArray(thetmp);
-
-            boolean theBit = tmp.get(7 - bitposition);
-            /*
-             * if (theBit) { System.out.println("1 at position: " + (7-bitposition) + " due to
-             * bitposition: " + bitposition); } else { System.out.println("0 at position: " +
-             * (7-bitposition) + " due to bitposition: " + bitposition); }
-             */
-            return theBit;
-
-        }
-        // else
-        // {
-        // /* There is no null file around */
-        // if (rasterMapType > 0)
-        // {
-        // // isOldIntegerMap = true;
-        // return false;
-        // }
-        // else
-        // {
-        // //throw some exception
-        // return false;
-        // }
-        //
-        // }
-        return false;
-
-    }
-
     /**
      * @param tmp
      */
@@ -0,0 +1,447 @@
+/*
+ * JGrass - Free Open Source Java GIS http://www.jgrass.org
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.grasslegacy.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.modules.JGTExecutionService;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
+
+/**
+ * Reads the rows of a native GRASS raster map in blocks of rows.
+ *
+ * <p>
+ * The cell and null files are memory mapped, the compressed rows are inflated with
+ * pooled {@link Inflater}s and the blocks are decoded in parallel. The last used blocks
+ * are kept in a cache, so that windowed and resampled reads touching the same rows do
+ * not decode them again.
+ * </p>
+ * <p>
+ * The decoded blocks keep the type of the map: an <code>int[]</code> for integer maps, a
+ * <code>float[]</code> for float maps and a <code>double[]</code> for double maps, with the
+ * novalues set to {@link JGTConstants#intNovalue}, {@link JGTConstants#floatNovalue} and
+ * {@link JGTConstants#doubleNovalue}.
+ * </p>
+ *
+ * @author Andrea Antonello - www.hydrologis.com
+ */
+class GrassRowBlockReader {
+
+    /**
+     * The default number of rows of a block.
+     */
+    public static final int DEFAULT_BLOCK_ROWS = 32;
+
+    /**
+     * The default number of blocks kept in the cache.
+     */
+    public static final int DEFAULT_CACHED_BLOCKS = 16;
+
+    /*
+     * the first byte of a compressed floating point row tells if it is deflated (49) or not (48)
+     */
+    private static final int DEFLATED_ROW = 49;
+
+    private final int rasterMapType;
+    private final int fileBytesPerValue;
+    private final int rows;
+    private final int cols;
+    private final long[] rowAddresses;
+    private final boolean zeroIsNovalue;
+    private final int[] reclassTable;
+
+    private final FileChannel cellChannel;
+    private final FileChannel nullChannel;
+    private final ByteBuffer cellMap;
+    private final ByteBuffer nullMap;
+    private final int nullBytesPerRow;
+
+    private final int blockRows;
+    private final int cachedBlocks;
+    private final LinkedHashMap<Integer, Object> blocksCache;
+    private final ConcurrentLinkedQueue<Inflater> inflatersPool = new ConcurrentLinkedQueue<Inflater>();
+
+    /**
+     * Constructor.
+     *
+     * @param cellFile the cell file of the map.
+     * @param nullFile the null file of the map or <code>null</code>.
+     * @param rasterMapType the type of map, 1 to 4 for the bytes of integer maps, -1 for float
+     *        and -2 for double.
+     * @param rowAddresses the addresses of the rows in the cell file for compressed maps, else
+     *        <code>null</code>.
+     * @param rows the rows of the map.
+     * @param cols the columns of the map.
+     * @param zeroIsNovalue if <code>true</code>, the 0 values of integer maps are novalues.
+     * @param reclassTable the reclass table of the map or <code>null</code>.
+     * @param blockRows the number of rows of a block.
+     * @param cachedBlocks the number of blocks to keep in the cache.
+     * @throws IOException
+     */
+    GrassRowBlockReader( RandomAccessFile cellFile, RandomAccessFile nullFile, int rasterMapType, long[] rowAddresses, int rows,
+            int cols, boolean zeroIsNovalue, List<Object> reclassTable, int blockRows, int cachedBlocks ) throws IOException {
+        this.rasterMapType = rasterMapType;
+        this.rowAddresses = rowAddresses;
+        this.rows = rows;
+        this.cols = cols;
+        this.zeroIsNovalue = zeroIsNovalue;
+        this.blockRows = Math.max(1, blockRows);
+        this.cachedBlocks = Math.max(0, cachedBlocks);
+        if (rasterMapType == -2) {
+            fileBytesPerValue = 8;
+        } else if (rasterMapType == -1) {
+            fileBytesPerValue = 4;
+        } else {
+            fileBytesPerValue = rasterMapType;
+        }
+
+        if (reclassTable != null) {
+            /*
+             * the categories without a reclassed value become novalues
+             */
+            this.reclassTable = new int[reclassTable.size()];
+            for( int i = 0; i < this.reclassTable.length; i++ ) {
+                Object value = reclassTable.get(i);
+                this.reclassTable[i] = value instanceof Integer ? (Integer) value : JGTConstants.intNovalue;
+            }
+        } else {
+            this.reclassTable = null;
+        }
+
+        cellChannel = cellFile.getChannel();
+        cellMap = map(cellChannel);
+        if (nullFile != null) {
+            nullChannel = nullFile.getChannel();
+            nullMap = map(nullChannel);
+        } else {
+            nullChannel = null;
+            nullMap = null;
+        }
+        nullBytesPerRow = (cols + 7) / 8;
+
+        blocksCache = new LinkedHashMap<Integer, Object>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry( Map.Entry<Integer, Object> eldest ) {
+                return size() > GrassRowBlockReader.this.cachedBlocks;
+            }
+        };
+    }
+
+    /**
+     * Maps a whole file, if it fits in a buffer. Larger files are read through the channel.
+     */
+    private static ByteBuffer map( FileChannel channel ) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    /**
+     * @return the number of rows of a block.
+     */
+    public int getBlockRows() {
+        return blockRows;
+    }
+
+    /**
+     * Get a range of blocks, decoding in parallel the ones that are not in the cache.
+     *
+     * @param fromBlock the first block.
+     * @param toBlock the last block, inclusive.
+     * @param threadsNum the number of threads to use for the decoding.
+     * @return the blocks, each of <code>blockRows * cols</code> values (less for the last block of the map).
+     * @throws IOException
+     * @throws DataFormatException
+     */
+    public Object[] getBlocks( int fromBlock, int toBlock, int threadsNum ) throws IOException, DataFormatException {
+        final Object[] blocks = new Object[toBlock - fromBlock + 1];
+        int missing = 0;
+        synchronized (blocksCache) {
+            for( int i = 0; i < blocks.length; i++ ) {
+                blocks[i] = blocksCache.get(fromBlock + i);
+                if (blocks[i] == null) {
+                    missing++;
+                }
+            }
+        }
+
+        if (missing == 1 || (missing > 0 && threadsNum <= 1)) {
+            for( int i = 0; i < blocks.length; i++ ) {
+                if (blocks[i] == null) {
+                    blocks[i] = decodeBlock(fromBlock + i);
+                }
+            }
+        } else if (missing > 1) {
+            final Exception[] error = new Exception[1];
+            JGTTaskGroup taskGroup = JGTExecutionService.newTaskGroup(threadsNum, null);
+            for( int i = 0; i < blocks.length; i++ ) {
+                if (blocks[i] == null) {
+                    final int index = i;
+                    final int block = fromBlock + i;
+                    taskGroup.execute(new Runnable(){
+                        public void run() {
+                            try {
+                                blocks[index] = decodeBlock(block);
+                            } catch (Exception e) {
+                                synchronized (error) {
+                                    error[0] = e;
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+            taskGroup.await();
+            synchronized (error) {
+                if (error[0] instanceof IOException) {
+                    throw (IOException) error[0];
+                } else if (error[0] instanceof DataFormatException) {
+                    throw (DataFormatException) error[0];
+                } else if (error[0] != null) {
+                    throw new RuntimeException(error[0]);
+                }
+            }
+        }
+
+        if (missing > 0) {
+            synchronized (blocksCache) {
+                for( int i = 0; i < blocks.length; i++ ) {
+                    blocksCache.put(fromBlock + i, blocks[i]);
+                }
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Decode a block of rows.
+     */
+    private Object decodeBlock( int block ) throws IOException, DataFormatException {
+        int fromRow = block * blockRows;
+        int toRow = Math.min(rows, fromRow + blockRows);
+        int valuesNum = (toRow - fromRow) * cols;
+
+        Object values;
+        if (rasterMapType == -2) {
+            values = new double[valuesNum];
+        } else if (rasterMapType == -1) {
+            values = new float[valuesNum];
+        } else {
+            values = new int[valuesNum];
+        }
+
+        byte[] rowBytes = new byte[cols * Math.max(fileBytesPerValue, 4)];
+        byte[] compressedBytes = null;
+        byte[] nullBytes = nullChannel != null ? new byte[nullBytesPerRow] : null;
+        for( int row = fromRow; row < toRow; row++ ) {
+            int offset = (row - fromRow) * cols;
+            if (rowAddresses != null) {
+                int size = (int) (rowAddresses[row + 1] - rowAddresses[row]);
+                if (compressedBytes == null || compressedBytes.length < size) {
+                    compressedBytes = new byte[size];
+                }
+                read(cellChannel, cellMap, rowAddresses[row], compressedBytes, size);
+                if (rasterMapType > 0) {
+                    decodeCompressedIntegerRow(compressedBytes, size, (int[]) values, offset);
+                } else {
+                    inflateFPRow(compressedBytes, size, rowBytes);
+                    decodeFPRow(rowBytes, values, offset);
+                }
+            } else {
+                int size = cols * fileBytesPerValue;
+                read(cellChannel, cellMap, (long) row * size, rowBytes, size);
+                if (rasterMapType > 0) {
+                    decodeIntegerValues(rowBytes, 0, fileBytesPerValue, cols, (int[]) values, offset);
+                } else {
+                    decodeFPRow(rowBytes, values, offset);
+                }
+            }
+            if (nullBytes != null) {
+                read(nullChannel, nullMap, (long) row * nullBytesPerRow, nullBytes, nullBytesPerRow);
+            }
+            applyNovalues(values, offset, nullBytes);
+        }
+        return values;
+    }
+
+    /**
+     * Read bytes from the mapped file or, if it is too large to be mapped, from the channel.
+     */
+    private static void read( FileChannel channel, ByteBuffer map, long position, byte[] bytes, int length ) throws IOException {
+        if (map != null) {
+            // a duplicate has its own position, so that the blocks can be read in parallel
+            ByteBuffer buffer = map.duplicate();
+            buffer.position((int) position);
+            buffer.get(bytes, 0, length);
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+            while( buffer.hasRemaining() ) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+        }
+    }
+
+    private void inflateFPRow( byte[] compressedBytes, int size, byte[] rowBytes ) throws DataFormatException {
+        int rowSize = cols * fileBytesPerValue;
+        if ((compressedBytes[0] & 0xff) == DEFLATED_ROW) {
+            Inflater inflater = inflatersPool.poll();
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+            try {
+                inflater.setInput(compressedBytes, 1, size - 1);
+                inflater.inflate(rowBytes, 0, rowSize);
+            } finally {
+                inflater.reset();
+                inflatersPool.offer(inflater);
+            }
+        } else {
+            System.arraycopy(compressedBytes, 1, rowBytes, 0, Math.min(size - 1, rowSize));
+        }
+    }
+
+    private void decodeFPRow( byte[] rowBytes, Object values, int offset ) {
+        ByteBuffer buffer = ByteBuffer.wrap(rowBytes);
+        if (rasterMapType == -2) {
+            double[] doubleValues = (double[]) values;
+            for( int col = 0; col < cols; col++ ) {
+                doubleValues[offset + col] = buffer.getDouble(col * 8);
+            }
+        } else {
+            float[] floatValues = (float[]) values;
+            for( int col = 0; col < cols; col++ ) {
+                floatValues[offset + col] = buffer.getFloat(col * 4);
+            }
+        }
+    }
+
+    /**
+     * Decode a row of a compressed integer map.
+     *
+     * <p>The first byte is the number of bytes of a value. If the row is not
+     * run length encoded the values follow, else a sequence of (count, value) couples.</p>
+     */
+    private void decodeCompressedIntegerRow( byte[] compressedBytes, int size, int[] values, int offset ) {
+        int bytesPerValue = compressedBytes[0] & 0xff;
+        if (size - 1 == bytesPerValue * cols) {
+            decodeIntegerValues(compressedBytes, 1, bytesPerValue, cols, values, offset);
+        } else {
+            int couples = (size - 1) / (1 + bytesPerValue);
+            int position = 1;
+            int col = 0;
+            for( int i = 0; i < couples && col < cols; i++ ) {
+                int count = compressedBytes[position] & 0xff;
+                int value = decodeInteger(compressedBytes, position + 1, bytesPerValue);
+                position += 1 + bytesPerValue;
+                for( int j = 0; j < count && col < cols; j++ ) {
+                    values[offset + col++] = value;
+                }
+            }
+        }
+    }
+
+    private static void decodeIntegerValues( byte[] bytes, int position, int bytesPerValue, int num, int[] values, int offset ) {
+        for( int i = 0; i < num; i++ ) {
+            values[offset + i] = decodeInteger(bytes, position + i * bytesPerValue, bytesPerValue);
+        }
+    }
+
+    /**
+     * Integers can be of 1 (unsigned), 2 (signed) or 4 bytes, big endian.
+     */
+    private static int decodeInteger( byte[] bytes, int position, int bytesPerValue ) {
+        switch( bytesPerValue ) {
+        case 1:
+            return bytes[position] & 0xff;
+        case 2:
+            return (short) (((bytes[position] & 0xff) << 8) | (bytes[position + 1] & 0xff));
+        default:
+            int value = 0;
+            for( int i = 0; i < bytesPerValue; i++ ) {
+                value = (value << 8) | (bytes[position + i] & 0xff);
+            }
+            return value;
+        }
+    }
+
+    private void applyNovalues( Object values, int offset, byte[] nullBytes ) {
+        for( int col = 0; col < cols; col++ ) {
+            boolean isNull = nullBytes != null && ((nullBytes[col >> 3] >> (7 - (col & 7))) & 1) == 1;
+            if (rasterMapType > 0) {
+                int[] intValues = (int[]) values;
+                int value = intValues[offset + col];
+                if (isNull || (value == 0 && zeroIsNovalue)) {
+                    intValues[offset + col] = JGTConstants.intNovalue;
+                } else if (reclassTable != null) {
+                    intValues[offset + col] = reclass(value);
+                }
+            } else if (rasterMapType == -1) {
+                float[] floatValues = (float[]) values;
+                if (isNull) {
+                    floatValues[offset + col] = JGTConstants.floatNovalue;
+                } else if (reclassTable != null) {
+                    int value = reclass((int) floatValues[offset + col]);
+                    floatValues[offset + col] = value == JGTConstants.intNovalue ? JGTConstants.floatNovalue : value;
+                }
+            } else {
+                double[] doubleValues = (double[]) values;
+                if (isNull) {
+                    doubleValues[offset + col] = JGTConstants.doubleNovalue;
+                } else if (reclassTable != null) {
+                    int value = reclass((int) doubleValues[offset + col]);
+                    doubleValues[offset + col] = value == JGTConstants.intNovalue ? JGTConstants.doubleNovalue : value;
+                }
+            }
+        }
+    }
+
+    private int reclass( int category ) {
+        if (category < 0 || category >= reclassTable.length) {
+            return JGTConstants.intNovalue;
+        }
+        return reclassTable[category];
+    }
+
+    /**
+     * Release the cache and the inflaters. The files are closed by the owner.
+     */
+    public void close() {
+        synchronized (blocksCache) {
+            blocksCache.clear();
+        }
+        Inflater inflater;
+        while( (inflater = inflatersPool.poll()) != null ) {
+            inflater.end();
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
+import org.jgrasstools.gears.io.las.core.LasPointBlock;
 import org.jgrasstools.gears.io.las.core.LasRecord;
 import org.jgrasstools.gears.io.las.index.LasIndexer;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
@@ -122,12 +123,27 @@ public abstract class ALasDataManager implements AutoCloseable {
     /**
      * Get points inside a given geometry boundary.
      *
+     * <p>This creates a {@link LasRecord} per point, for large areas
+     * {@link #getPointBatchInGeometry(Geometry, boolean)} should be preferred.</p>
+     *
      * @param checkGeom the {@link com.vividsolutions.jts.geom.Geometry} to use to check.
      * @param doOnlyEnvelope check for the geom envelope instead of a intersection with it.
      * @return the list of points contained in the supplied geometry.
      * @throws Exception
      */
-    public abstract List<LasRecord> getPointsInGeometry( Geometry checkGeom, boolean doOnlyEnvelope ) throws Exception;
+    public List<LasRecord> getPointsInGeometry( Geometry checkGeom, boolean doOnlyEnvelope ) throws Exception {
+        return getPointBatchInGeometry(checkGeom, doOnlyEnvelope).toRecords();
+    }
+
+    /**
+     * Get points inside a given geometry boundary as a batch of points.
+     *
+     * @param checkGeom the {@link com.vividsolutions.jts.geom.Geometry} to use to check.
+     * @param doOnlyEnvelope check for the geom envelope instead of a intersection with it.
+     * @return the batch of points contained in the supplied geometry, all selected.
+     * @throws Exception
+     */
+    public abstract LasPointBatch getPointBatchInGeometry( Geometry checkGeom, boolean doOnlyEnvelope ) throws Exception;
 
     /**
      * Retrieve all the trees envelopes that intersect the geometry.
@@ -258,12 +274,27 @@ public abstract class ALasDataManager implements AutoCloseable {
      * @return <code>true</code> if the point is accepted.
      */
     protected boolean doAccept( LasRecord lasDot ) {
+        return doAccept(lasDot.intensity, lasDot.returnNumber, lasDot.numberOfReturns, lasDot.classification);
+    }
+
+    /**
+     * Check the point for constraints.
+     *
+     * @param block the block of read points.
+     * @param index the position of the point to check in the block.
+     * @return <code>true</code> if the point is accepted.
+     */
+    protected boolean doAccept( LasPointBlock block, int index ) {
+        return doAccept(block.intensity[index], block.returnNumber[index], block.numberOfReturns[index],
+                block.classification[index]);
+    }
+
+    private boolean doAccept( short intensity, int impulse, int numOfReturns, int classification ) {
         if (!hasConstraint) {
             return true;
         }
         boolean takeIt = true;
         if (intensityRange != null) {
-            short intensity = lasDot.intensity;
             if (intensity >= intensityRange[0] && intensity <= intensityRange[1]) {
                 takeIt = true;
             } else {
@@ -271,7 +302,6 @@ public abstract class ALasDataManager implements AutoCloseable {
             }
         }
         if (impulses != null) {
-            int impulse = lasDot.returnNumber;
             takeIt = false;
             for( final double imp : impulses ) {
                 if (impulse == (int) imp) {
@@ -283,13 +313,11 @@ public abstract class ALasDataManager implements AutoCloseable {
                 return false;
         }
         if (impulsesNum != -1) {
-            int numOfReturns = lasDot.numberOfReturns;
             if (numOfReturns != (int) impulsesNum) {
                 return false;
             }
         }
         if (classes != null) {
-            int classification = lasDot.classification;
             takeIt = false;
             for( final double classs : classes ) {
                 if (classification == (int) classs) {
@@ -19,6 +19,7 @@ package org.jgrasstools.gears.io.las;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.geotools.coverage.grid.GridCoverage2D;
@@ -30,23 +31,20 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
 import org.jgrasstools.gears.io.las.core.ALasReader;
 import org.jgrasstools.gears.io.las.core.ILasHeader;
-import org.jgrasstools.gears.io.las.core.LasRecord;
+import org.jgrasstools.gears.io.las.core.LasPointBlock;
 import org.jgrasstools.gears.io.las.index.LasIndexer;
 import org.jgrasstools.gears.io.las.index.OmsLasIndexReader;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.utils.CrsUtilities;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.geometry.PointInPolygonChecker;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Polygon;
-import com.vividsolutions.jts.geom.prep.PreparedGeometry;
-import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
-import com.vividsolutions.jts.index.strtree.STRtree;
 
 /**
  * A class that manages las folder data.
@@ -54,6 +52,9 @@ import com.vividsolutions.jts.index.strtree.STRtree;
  * @author Andrea Antonello (www.hydrologis.com)
  */
 class LasFileDataManager extends ALasDataManager {
+    private static final int READ_BLOCK_SIZE = 10000;
+    private static final int POINTS_PER_GRID_CELL = 64;
+
     private File lasFile;
     private GridCoverage2D inDem;
     private double elevThreshold;
@@ -66,7 +67,25 @@ class LasFileDataManager extends ALasDataManager {
     private ALasReader lasReader;
     private ILasHeader lasHeader;
     private boolean isOpen;
-    private STRtree pointsTree;
+
+    /**
+     * The accepted points of the file, read at the first query and only read afterwards,
+     * so that queries can run concurrently. Set after the grid.
+     */
+    private volatile LasPointBatch filePoints;
+    /**
+     * The grid the points are indexed on: the points of cell <code>c</code>
+     * are the ones from <code>gridCellStarts[c]</code> to <code>gridCellStarts[c + 1]</code>
+     * in <code>gridCellPoints</code>.
+     */
+    private int[] gridCellStarts;
+    private int[] gridCellPoints;
+    private int gridCols;
+    private int gridRows;
+    private double gridMinX;
+    private double gridMinY;
+    private double gridCellWidth;
+    private double gridCellHeight;
 
     /**
      * Constructor.
@@ -116,87 +135,140 @@ class LasFileDataManager extends ALasDataManager {
         isOpen = true;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public synchronized List<LasRecord> getPointsInGeometry( Geometry checkGeom, boolean doOnlyEnvelope ) throws Exception {
-        checkOpen();
+    public LasPointBatch getPointBatchInGeometry( Geometry checkGeom, boolean doOnlyEnvelope ) throws Exception {
+        LasPointBatch filePoints = this.filePoints;
+        if (filePoints == null) {
+            filePoints = readFilePoints();
+        }
 
-        ArrayList<LasRecord> pointsListForTile = new ArrayList<LasRecord>();
-        Envelope checkEnvelope = checkGeom.getEnvelopeInternal();
-        if (pointsTree != null) {
-            List<LasRecord> pointsList = pointsTree.query(checkEnvelope);
-            PreparedGeometry preparedGeometry = null;
-            if (!doOnlyEnvelope) {
-                preparedGeometry = PreparedGeometryFactory.prepare(checkGeom);
+        Envelope env = checkGeom.getEnvelopeInternal();
+        PointInPolygonChecker checker = null;
+        if (!doOnlyEnvelope) {
+            checker = new PointInPolygonChecker(checkGeom);
+        }
+
+        /*
+         * collect the points of the grid cells covered by the geometry, in file order
+         */
+        int fromCol = getGridCol(env.getMinX());
+        int toCol = getGridCol(env.getMaxX());
+        int fromRow = getGridRow(env.getMinY());
+        int toRow = getGridRow(env.getMaxY());
+        int candidatesNum = 0;
+        for( int r = fromRow; r <= toRow; r++ ) {
+            candidatesNum += gridCellStarts[r * gridCols + toCol + 1] - gridCellStarts[r * gridCols + fromCol];
+        }
+        int[] candidates = new int[candidatesNum];
+        int position = 0;
+        for( int r = fromRow; r <= toRow; r++ ) {
+            int from = gridCellStarts[r * gridCols + fromCol];
+            int to = gridCellStarts[r * gridCols + toCol + 1];
+            System.arraycopy(gridCellPoints, from, candidates, position, to - from);
+            position += to - from;
+        }
+        Arrays.sort(candidates);
+
+        double[] xs = filePoints.getX();
+        double[] ys = filePoints.getY();
+        double[] zs = filePoints.getZ();
+        LasPointBatch pointsForTile = new LasPointBatch();
+        for( int i : candidates ) {
+            double x = xs[i];
+            double y = ys[i];
+            if (!env.contains(x, y)) {
+                continue;
             }
-            for( LasRecord lasDot : pointsList ) {
-                Coordinate c = new Coordinate(lasDot.x, lasDot.y);
-                if (!checkEnvelope.contains(c)) {
-                    continue;
-                }
-                if (!doOnlyEnvelope && !preparedGeometry.contains(gf.createPoint(c))) {
+            if (checker != null && !checker.contains(x, y)) {
+                continue;
+            }
+            if (inDem != null) {
+                double value = CoverageUtilities.getValue(inDem, x, y);
+                if (JGTConstants.isNovalue(value)) {
                     continue;
                 }
-                pointsListForTile.add(lasDot);
-            }
-        } else {
-            pointsTree = new STRtree();
-            ReferencedEnvelope overallEnvelope = getOverallEnvelope();
-            if (doOnlyEnvelope && checkEnvelope.covers(overallEnvelope)) {
-                // read it straight
-                while( lasReader.hasNextPoint() ) {
-                    LasRecord lasDot = lasReader.getNextPoint();
-                    if (!doAccept(lasDot)) {
-                        continue;
-                    }
-                    pointsTree.insert(new Envelope(new Coordinate(lasDot.x, lasDot.y)), lasDot);
-                    pointsListForTile.add(lasDot);
+                double height = zs[i] - value;
+                if (height > elevThreshold) {
+                    pointsForTile.add(filePoints, i, height);
                 }
             } else {
+                pointsForTile.add(filePoints, i, Double.NaN);
+            }
+        }
+        return pointsForTile;
+    }
 
-                Envelope env = checkGeom.getEnvelopeInternal();
-                PreparedGeometry preparedGeometry = null;
-                if (!doOnlyEnvelope) {
-                    preparedGeometry = PreparedGeometryFactory.prepare(checkGeom);
+    /**
+     * Read all the accepted points of the file and index them on a regular grid.
+     *
+     * @return the read points.
+     */
+    private synchronized LasPointBatch readFilePoints() throws Exception {
+        if (this.filePoints != null) {
+            return this.filePoints;
+        }
+        checkOpen();
+        LasPointBatch filePoints = new LasPointBatch((int) Math.min(lasHeader.getRecordsCount(), Integer.MAX_VALUE - 8));
+        LasPointBlock block = new LasPointBlock(READ_BLOCK_SIZE);
+        while( lasReader.readNextPoints(block) > 0 ) {
+            for( int i = 0; i < block.size(); i++ ) {
+                if (doAccept(block, i)) {
+                    filePoints.add(block, i, Double.NaN);
                 }
+            }
+        }
+        close();
 
-                while( lasReader.hasNextPoint() ) {
-                    LasRecord lasDot = lasReader.getNextPoint();
-                    if (!doAccept(lasDot)) {
-                        continue;
-                    }
-                    Coordinate c = new Coordinate(lasDot.x, lasDot.y);
-                    pointsTree.insert(new Envelope(c), lasDot);
-                    if (!env.contains(c)) {
-                        continue;
-                    }
-
-                    if (inDem != null) {
-                        // check geom instead of only envelope?
-                        if (!doOnlyEnvelope && !preparedGeometry.contains(gf.createPoint(c))) {
-                            continue;
-                        }
-                        double value = CoverageUtilities.getValue(inDem, lasDot.x, lasDot.y);
-                        if (JGTConstants.isNovalue(value)) {
-                            continue;
-                        }
-                        double height = lasDot.z - value;
-                        if (height > elevThreshold) {
-                            lasDot.groundElevation = height;
-                            pointsListForTile.add(lasDot);
-                        }
-                    } else {
-                        if (!doOnlyEnvelope && !preparedGeometry.contains(gf.createPoint(c))) {
-                            continue;
-                        }
-                        pointsListForTile.add(lasDot);
-                    }
-                }
+        int pointsNum = filePoints.size();
+        double[] xs = filePoints.getX();
+        double[] ys = filePoints.getY();
+        gridMinX = Double.POSITIVE_INFINITY;
+        gridMinY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for( int i = 0; i < pointsNum; i++ ) {
+            gridMinX = Math.min(gridMinX, xs[i]);
+            gridMinY = Math.min(gridMinY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        gridCols = Math.max(1, (int) Math.sqrt(pointsNum / (double) POINTS_PER_GRID_CELL));
+        gridRows = gridCols;
+        gridCellWidth = pointsNum > 0 ? (maxX - gridMinX) / gridCols : 0;
+        gridCellHeight = pointsNum > 0 ? (maxY - gridMinY) / gridRows : 0;
 
-            }
-            close();
+        gridCellStarts = new int[gridCols * gridRows + 1];
+        for( int i = 0; i < pointsNum; i++ ) {
+            gridCellStarts[getGridCell(xs[i], ys[i]) + 1]++;
+        }
+        for( int c = 0; c < gridCols * gridRows; c++ ) {
+            gridCellStarts[c + 1] += gridCellStarts[c];
+        }
+        gridCellPoints = new int[pointsNum];
+        int[] positions = Arrays.copyOf(gridCellStarts, gridCols * gridRows);
+        for( int i = 0; i < pointsNum; i++ ) {
+            gridCellPoints[positions[getGridCell(xs[i], ys[i])]++] = i;
+        }
+        this.filePoints = filePoints;
+        return filePoints;
+    }
+
+    private int getGridCell( double x, double y ) {
+        return getGridRow(y) * gridCols + getGridCol(x);
+    }
+
+    private int getGridCol( double x ) {
+        if (gridCellWidth <= 0) {
+            return 0;
+        }
+        return Math.max(0, Math.min(gridCols - 1, (int) ((x - gridMinX) / gridCellWidth)));
+    }
+
+    private int getGridRow( double y ) {
+        if (gridCellHeight <= 0) {
+            return 0;
         }
-        return pointsListForTile;
+        return Math.max(0, Math.min(gridRows - 1, (int) ((y - gridMinY) / gridCellHeight)));
     }
 
     @Override
@@ -18,9 +18,11 @@
 package org.jgrasstools.gears.io.las;
 
 import java.io.File;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -29,22 +31,23 @@ import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
-import org.geotools.util.WeakValueHashMap;
 import org.jgrasstools.gears.io.las.core.ALasReader;
 import org.jgrasstools.gears.io.las.core.ILasHeader;
-import org.jgrasstools.gears.io.las.core.LasRecord;
+import org.jgrasstools.gears.io.las.core.LasPointBlock;
 import org.jgrasstools.gears.io.las.index.OmsLasIndexReader;
 import org.jgrasstools.gears.io.las.index.LasIndexer;
 import org.jgrasstools.gears.io.las.index.strtree.STRtreeJGT;
+import org.jgrasstools.gears.io.las.utils.LasUtils;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.modules.JGTExecutionService;
 import org.jgrasstools.gears.utils.CrsUtilities;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.files.FileUtilities;
+import org.jgrasstools.gears.utils.geometry.PointInPolygonChecker;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Polygon;
@@ -59,13 +62,23 @@ import com.vividsolutions.jts.index.strtree.ItemBoundable;
  * @author Andrea Antonello (www.hydrologis.com)
  */
 class LasFolderIndexDataManager extends ALasDataManager implements AutoCloseable {
-    private WeakValueHashMap<String, Pair> fileName2LasReaderMap;
-    private WeakValueHashMap<String, STRtreeJGT> fileName2IndexMap;
-    private List<String> fileName4LasReaderMapSupport;
-    // private int READERCACHE = 5;
+    private static final int READ_BLOCK_SIZE = 10000;
+    /**
+     * Index ranges closer than this number of points are read as one.
+     */
+    private static final int MAX_MERGE_GAP = 512;
+
+    /**
+     * The indexes of the single las files, by index file path.
+     */
+    private final ConcurrentHashMap<String, SoftReference<STRtreeJGT>> fileName2IndexMap = new ConcurrentHashMap<String, SoftReference<STRtreeJGT>>();
+    /**
+     * The readers of the las files, each query takes its own.
+     */
+    private final LasReaderPool readersPool;
     private File lasFolderIndexFile;
     private File lasFolder;
-    private STRtreeJGT mainLasFolderIndex;
+    private volatile STRtreeJGT mainLasFolderIndex;
     private GridCoverage2D inDem;
     private double elevThreshold;
 
@@ -103,15 +116,8 @@ class LasFolderIndexDataManager extends ALasDataManager implements AutoCloseable
         } else {
             throw new IllegalArgumentException("The Crs can't be null.");
         }
-        // indexMap = new LinkedHashMap<String, Pair>() {
-        // @Override
-        // protected boolean removeEldestEntry(Entry<String, Pair> eldest) {
-        // return size() > READERCACHE;
-        // }
-        // };
-        fileName2LasReaderMap = new WeakValueHashMap<String, Pair>();
-        fileName2IndexMap = new WeakValueHashMap<String, STRtreeJGT>();
-        fileName4LasReaderMapSupport = new ArrayList<String>();
+        // two readers per thread allow to keep the files of neighbour tiles open
+        readersPool = new LasReaderPool(crs, Math.max(8, 2 * JGTExecutionService.getParallelism()));
     }
 
     @Override
@@ -125,97 +131,106 @@ class LasFolderIndexDataManager extends ALasDataManager implements AutoCloseable
      * @throws Exception
      */
     @Override
-    public void open() throws Exception {
+    public synchronized void open() throws Exception {
         mainLasFolderIndex = OmsLasIndexReader.readIndex(lasFolderIndexFile.getAbsolutePath());
     }
 
-    /**
-     * Get points inside a given geometry boundary.
-     *
-     * @param checkGeom the {@link com.vividsolutions.jts.geom.Geometry} to use to check.
-     * @param doOnlyEnvelope check for the geom envelope instead of a intersection with it.
-     * @return the list of points contained in the supplied geometry.
-     * @throws Exception
-     */
     @Override
     @SuppressWarnings("rawtypes")
-    public synchronized List<LasRecord> getPointsInGeometry( Geometry checkGeom, boolean doOnlyEnvelope ) throws Exception {
+    public LasPointBatch getPointBatchInGeometry( Geometry checkGeom, boolean doOnlyEnvelope ) throws Exception {
         checkOpen();
-        ArrayList<LasRecord> pointsListForTile = new ArrayList<LasRecord>();
+        LasPointBatch pointsForTile = new LasPointBatch();
 
         Envelope env = checkGeom.getEnvelopeInternal();
-        PreparedGeometry preparedGeometry = null;
+        PointInPolygonChecker checker = null;
         if (!doOnlyEnvelope) {
-            preparedGeometry = PreparedGeometryFactory.prepare(checkGeom);
+            checker = new PointInPolygonChecker(checkGeom);
         }
+        LasPointBlock readBlock = null;
 
         List filesList = mainLasFolderIndex.query(env);
         for( Object fileName : filesList ) {
             if (fileName instanceof String) {
                 String name = (String) fileName;
+                File lasFile = new File(lasFolder, name);
+                File lasIndexFile = FileUtilities.substituteExtention(lasFile, "lasfix");
+                if (!lasIndexFile.exists()) {
+                    continue;
+                }
 
-                Pair pair = fileName2LasReaderMap.get(name);
-                if (pair == null) {
-                    File lasFile = new File(lasFolder, name);
-                    File lasIndexFile = FileUtilities.substituteExtention(lasFile, "lasfix");
-
-                    if (lasIndexFile.exists()) {
-                        pair = getIndexPair(lasFile);
-                        if (pair != null) {
-                            fileName2LasReaderMap.put(name, pair);
-                            fileName4LasReaderMapSupport.add(name);
+                List addressesList = getIndex(lasIndexFile).query(env);
+                long[] ranges = LasUtils.mergeAddressRanges(addressesList, MAX_MERGE_GAP);
+                if (ranges.length == 0) {
+                    continue;
+                }
+                if (readBlock == null) {
+                    readBlock = new LasPointBlock(READ_BLOCK_SIZE);
+                }
+                ALasReader reader = readersPool.acquire(lasFile);
+                try {
+                    for( int i = 0; i < ranges.length; i += 2 ) {
+                        long pointNum = ranges[i];
+                        long to = ranges[i + 1];
+                        while( pointNum < to ) {
+                            int read = reader.readPointsAt(pointNum, (int) Math.min(to - pointNum, READ_BLOCK_SIZE), readBlock);
+                            if (read == 0) {
+                                break;
+                            }
+                            pointNum += read;
+                            addPoints(readBlock, env, checker, pointsForTile);
                         }
-                    } else {
-                        continue;
                     }
+                } finally {
+                    readersPool.release(lasFile, reader);
                 }
+            }
+        }
+        return pointsForTile;
+    }
 
-                List addressesList = pair.strTree.query(env);
-                for( Object obj : addressesList ) {
-                    if (obj instanceof double[]) {
-                        double[] addresses = (double[]) obj;
-                        long from = (long) addresses[0];
-                        long to = (long) addresses[1];
-                        for( long pointNum = from; pointNum < to; pointNum++ ) {
-                            LasRecord lasDot = pair.reader.getPointAt(pointNum);
-                            if (!doAccept(lasDot)) {
-                                continue;
-                            }
-                            if (inDem != null) {
-                                Coordinate c = new Coordinate(lasDot.x, lasDot.y);
-                                if (env.contains(c)) {
-                                    // check geom instead of only envelope?
-                                    if (!doOnlyEnvelope && !preparedGeometry.contains(gf.createPoint(c))) {
-                                        continue;
-                                    }
-                                    double value = CoverageUtilities.getValue(inDem, lasDot.x, lasDot.y);
-                                    if (JGTConstants.isNovalue(value)) {
-                                        continue;
-                                    }
-                                    double height = lasDot.z - value;
-                                    if (height > elevThreshold) {
-                                        // lasDot.z = height;
-                                        lasDot.groundElevation = height;
-                                        pointsListForTile.add(lasDot);
-                                    }
-                                }
-                            } else {
-                                Coordinate c = new Coordinate(lasDot.x, lasDot.y);
-                                if (env.contains(c)) {
-                                    // check geom instead of only envelope?
-                                    if (!doOnlyEnvelope && !preparedGeometry.contains(gf.createPoint(c))) {
-                                        continue;
-                                    }
-                                    pointsListForTile.add(lasDot);
-                                }
-                            }
+    /**
+     * Get the index of a single las file, reading it if it is not cached.
+     */
+    private STRtreeJGT getIndex( File lasIndexFile ) throws Exception {
+        String path = lasIndexFile.getAbsolutePath();
+        SoftReference<STRtreeJGT> indexReference = fileName2IndexMap.get(path);
+        STRtreeJGT lasIndex = indexReference != null ? indexReference.get() : null;
+        if (lasIndex == null) {
+            // concurrent reads of the same index are harmless, the last one is kept
+            lasIndex = OmsLasIndexReader.readIndex(path);
+            lasIndex.build();
+            fileName2IndexMap.put(path, new SoftReference<STRtreeJGT>(lasIndex));
+        }
+        return lasIndex;
+    }
 
-                        }
-                    }
+    private void addPoints( LasPointBlock block, Envelope env, PointInPolygonChecker checker, LasPointBatch pointsForTile ) {
+        for( int i = 0; i < block.size(); i++ ) {
+            if (!doAccept(block, i)) {
+                continue;
+            }
+            double x = block.x[i];
+            double y = block.y[i];
+            if (!env.contains(x, y)) {
+                continue;
+            }
+            // check geom instead of only envelope?
+            if (checker != null && !checker.contains(x, y)) {
+                continue;
+            }
+            if (inDem != null) {
+                double value = CoverageUtilities.getValue(inDem, x, y);
+                if (JGTConstants.isNovalue(value)) {
+                    continue;
                 }
+                double height = block.z[i] - value;
+                if (height > elevThreshold) {
+                    pointsForTile.add(block, i, height);
+                }
+            } else {
+                pointsForTile.add(block, i, Double.NaN);
             }
         }
-        return pointsListForTile;
     }
 
     /**
@@ -228,7 +243,7 @@ class LasFolderIndexDataManager extends ALasDataManager implements AutoCloseable
      * @throws Exception
      */
     @Override
-    public synchronized List<Geometry> getEnvelopesInGeometry( Geometry checkGeom, boolean doOnlyEnvelope, double[] minMaxZ )
+    public List<Geometry> getEnvelopesInGeometry( Geometry checkGeom, boolean doOnlyEnvelope, double[] minMaxZ )
             throws Exception {
         checkOpen();
         ArrayList<Geometry> envelopeListForTile = new ArrayList<Geometry>();
@@ -247,12 +262,7 @@ class LasFolderIndexDataManager extends ALasDataManager implements AutoCloseable
                 File lasFile = new File(lasFolder, name);
                 File lasIndexFile = FileUtilities.substituteExtention(lasFile, "lasfix");
 
-                String absolutePath = lasIndexFile.getAbsolutePath();
-                STRtreeJGT lasIndex = fileName2IndexMap.get(absolutePath);
-                if (lasIndex == null) {
-                    lasIndex = OmsLasIndexReader.readIndex(absolutePath);
-                    fileName2IndexMap.put(absolutePath, lasIndex);
-                }
+                STRtreeJGT lasIndex = getIndex(lasIndexFile);
                 List< ? > queryBoundables = lasIndex.queryBoundables(env);
                 for( Object object : queryBoundables ) {
                     if (object instanceof ItemBoundable) {
@@ -326,19 +336,20 @@ class LasFolderIndexDataManager extends ALasDataManager implements AutoCloseable
     @Override
     public synchronized ReferencedEnvelope3D getEnvelope3D() throws Exception {
         if (referencedEnvelope3D == null) {
-            checkReadersMap();
-
-            for( String key : fileName4LasReaderMapSupport ) {
-                Pair pair = fileName2LasReaderMap.get(key);
-                if (pair == null) {
-                    File lasFile = new File(lasFolder, key);
-                    pair = getIndexPair(lasFile);
-                    if (pair == null) {
-                        System.err.println("Null reader pair: " + lasFile);
-                        continue;
-                    }
+            for( String name : getLasFileNames() ) {
+                File lasFile = new File(lasFolder, name);
+                File lasIndexFile = FileUtilities.substituteExtention(lasFile, "lasfix");
+                if (!lasIndexFile.exists()) {
+                    System.err.println("Doesn't exist: " + lasIndexFile);
+                    continue;
+                }
+                ALasReader reader = readersPool.acquire(lasFile);
+                ILasHeader header;
+                try {
+                    header = reader.getHeader();
+                } finally {
+                    readersPool.release(lasFile, reader);
                 }
-                ILasHeader header = pair.reader.getHeader();
                 ReferencedEnvelope3D envelope = header.getDataEnvelope();
                 if (referencedEnvelope3D == null) {
                     referencedEnvelope3D = envelope;
@@ -379,93 +390,45 @@ class LasFolderIndexDataManager extends ALasDataManager implements AutoCloseable
         return overviewFeatures;
     }
 
+    /**
+     * @return the names of the las files of the folder index.
+     */
     @SuppressWarnings("rawtypes")
-    private void checkReadersMap() throws Exception {
+    private List<String> getLasFileNames() throws Exception {
         checkOpen();
-        if (fileName2LasReaderMap.size() == 0) {
-            List filesList = mainLasFolderIndex.itemsTree();
-            for( Object fileName : filesList ) {
-                if (fileName instanceof String) {
-                    String name = (String) fileName;
-                    getReader(name);
-                } else if (fileName instanceof List) {
-                    List filesList2 = (List) fileName;
-                    for( Object fileName2 : filesList2 ) {
-                        if (fileName2 instanceof String) {
-                            String name2 = (String) fileName2;
-                            getReader(name2);
-                        }
+        List<String> names = new ArrayList<String>();
+        List filesList = mainLasFolderIndex.itemsTree();
+        for( Object fileName : filesList ) {
+            if (fileName instanceof String) {
+                names.add((String) fileName);
+            } else if (fileName instanceof List) {
+                List filesList2 = (List) fileName;
+                for( Object fileName2 : filesList2 ) {
+                    if (fileName2 instanceof String) {
+                        names.add((String) fileName2);
                     }
-                } else {
-                    throw new RuntimeException();
                 }
+            } else {
+                throw new RuntimeException();
             }
         }
-    }
-
-    private void getReader( String name ) throws Exception {
-        Pair pair = fileName2LasReaderMap.get(name);
-        if (pair == null) {
-            File lasFile = new File(lasFolder, name);
-            pair = getIndexPair(lasFile);
-            if (pair != null) {
-                fileName2LasReaderMap.put(name, pair);
-                fileName4LasReaderMapSupport.add(name);
-            }
-            // System.out.println("Added: " + lasIndexFile);
-            // } else {
-
-        }
-    }
-
-    private Pair getIndexPair( File lasFile ) throws Exception {
-        File lasIndexFile = FileUtilities.substituteExtention(lasFile, "lasfix");
-        if (lasIndexFile.exists()) {
-            ALasReader reader = ALasReader.getReader(lasFile, crs);
-            reader.open();
-            reader.getHeader();
-            STRtreeJGT lasIndex = OmsLasIndexReader.readIndex(lasIndexFile.getAbsolutePath());
-            Pair pair = new Pair();
-            pair.reader = reader;
-            pair.strTree = lasIndex;
-            return pair;
-        } else {
-            System.err.println("Doesn't exist: " + lasIndexFile);
-        }
-        return null;
+        return names;
     }
 
     private void checkOpen() throws Exception {
         if (mainLasFolderIndex == null) {
-            open();
+            synchronized (this) {
+                if (mainLasFolderIndex == null) {
+                    open();
+                }
+            }
         }
     }
 
     @Override
     public void close() throws Exception {
-        for( String key : fileName4LasReaderMapSupport ) {
-            Pair pair = fileName2LasReaderMap.get(key);
-            if (pair != null)
-                pair.close();
-        }
-        fileName4LasReaderMapSupport.clear();
-        fileName2LasReaderMap.clear();
-        fileName2LasReaderMap = null;
-    }
-
-    private class Pair {
-        ALasReader reader;
-        STRtreeJGT strTree;
-        public void close() {
-            if (reader != null)
-                try {
-                    reader.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            reader = null;
-            strTree = null;
-        }
+        readersPool.close();
+        fileName2IndexMap.clear();
     }
 
 }
@@ -0,0 +1,404 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.las;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.jgrasstools.gears.io.las.core.LasPointBlock;
+import org.jgrasstools.gears.io.las.core.LasRecord;
+import org.jgrasstools.gears.utils.geometry.PointInPolygonChecker;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A growable set of las points held column by column, with a selection.
+ *
+ * <p>This is what the {@link ALasDataManager} queries return: every field of the
+ * {@link LasRecord} has its own primitive array, valid up to {@link #size()}. The
+ * arrays are not copies, so they can be read directly, but they change when
+ * points are added.</p>
+ *
+ * <p>The selection marks the points that passed a filter (see for example
+ * {@link #selectVerticalRange(double, double, boolean)}), so that the points don't
+ * need to be copied to a new list for every filter. Added points are selected.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class LasPointBatch {
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private short[] intensity;
+    private byte[] classification;
+    private short[] returnNumber;
+    private short[] numberOfReturns;
+    private double[] gpsTime;
+    private short[] red;
+    private short[] green;
+    private short[] blue;
+    private double[] groundElevation;
+
+    private int size = 0;
+    private final BitSet selection = new BitSet();
+
+    public LasPointBatch() {
+        this(1024);
+    }
+
+    /**
+     * @param initialCapacity the initial capacity, the batch grows if necessary.
+     */
+    public LasPointBatch( int initialCapacity ) {
+        if (initialCapacity < 16) {
+            initialCapacity = 16;
+        }
+        x = new double[initialCapacity];
+        y = new double[initialCapacity];
+        z = new double[initialCapacity];
+        intensity = new short[initialCapacity];
+        classification = new byte[initialCapacity];
+        returnNumber = new short[initialCapacity];
+        numberOfReturns = new short[initialCapacity];
+        gpsTime = new double[initialCapacity];
+        red = new short[initialCapacity];
+        green = new short[initialCapacity];
+        blue = new short[initialCapacity];
+        groundElevation = new double[initialCapacity];
+    }
+
+    /**
+     * Create a batch from a list of records.
+     *
+     * @param records the records.
+     * @return the batch, with all points selected.
+     */
+    public static LasPointBatch fromRecords( List<LasRecord> records ) {
+        LasPointBatch batch = new LasPointBatch(records.size());
+        for( LasRecord record : records ) {
+            batch.add(record);
+        }
+        return batch;
+    }
+
+    /**
+     * @return the number of points.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int nextIndex() {
+        if (size == x.length) {
+            int newCapacity = x.length + (x.length >> 1);
+            x = Arrays.copyOf(x, newCapacity);
+            y = Arrays.copyOf(y, newCapacity);
+            z = Arrays.copyOf(z, newCapacity);
+            intensity = Arrays.copyOf(intensity, newCapacity);
+            classification = Arrays.copyOf(classification, newCapacity);
+            returnNumber = Arrays.copyOf(returnNumber, newCapacity);
+            numberOfReturns = Arrays.copyOf(numberOfReturns, newCapacity);
+            gpsTime = Arrays.copyOf(gpsTime, newCapacity);
+            red = Arrays.copyOf(red, newCapacity);
+            green = Arrays.copyOf(green, newCapacity);
+            blue = Arrays.copyOf(blue, newCapacity);
+            groundElevation = Arrays.copyOf(groundElevation, newCapacity);
+        }
+        selection.set(size);
+        return size++;
+    }
+
+    /**
+     * Add a point read by a las reader.
+     *
+     * @param block the block of read points.
+     * @param blockIndex the position of the point in the block.
+     * @param groundHeight the height over the ground, or {@link Double#NaN}.
+     * @return the index of the point in the batch.
+     */
+    public int add( LasPointBlock block, int blockIndex, double groundHeight ) {
+        int i = nextIndex();
+        x[i] = block.x[blockIndex];
+        y[i] = block.y[blockIndex];
+        z[i] = block.z[blockIndex];
+        intensity[i] = block.intensity[blockIndex];
+        classification[i] = block.classification[blockIndex];
+        returnNumber[i] = block.returnNumber[blockIndex];
+        numberOfReturns[i] = block.numberOfReturns[blockIndex];
+        gpsTime[i] = block.gpsTime[blockIndex];
+        red[i] = block.red[blockIndex];
+        green[i] = block.green[blockIndex];
+        blue[i] = block.blue[blockIndex];
+        groundElevation[i] = groundHeight;
+        return i;
+    }
+
+    /**
+     * Add a point of another batch.
+     *
+     * @param batch the other batch.
+     * @param index the index of the point in the other batch.
+     * @param groundHeight the height over the ground, or {@link Double#NaN}.
+     * @return the index of the point in this batch.
+     */
+    public int add( LasPointBatch batch, int index, double groundHeight ) {
+        int i = nextIndex();
+        x[i] = batch.x[index];
+        y[i] = batch.y[index];
+        z[i] = batch.z[index];
+        intensity[i] = batch.intensity[index];
+        classification[i] = batch.classification[index];
+        returnNumber[i] = batch.returnNumber[index];
+        numberOfReturns[i] = batch.numberOfReturns[index];
+        gpsTime[i] = batch.gpsTime[index];
+        red[i] = batch.red[index];
+        green[i] = batch.green[index];
+        blue[i] = batch.blue[index];
+        groundElevation[i] = groundHeight;
+        return i;
+    }
+
+    /**
+     * Add a record.
+     *
+     * @param record the record.
+     * @return the index of the point in the batch.
+     */
+    public int add( LasRecord record ) {
+        int i = nextIndex();
+        x[i] = record.x;
+        y[i] = record.y;
+        z[i] = record.z;
+        intensity[i] = record.intensity;
+        classification[i] = record.classification;
+        returnNumber[i] = record.returnNumber;
+        numberOfReturns[i] = record.numberOfReturns;
+        gpsTime[i] = record.gpsTime;
+        red[i] = record.color[0];
+        green[i] = record.color[1];
+        blue[i] = record.color[2];
+        groundElevation[i] = record.groundElevation;
+        return i;
+    }
+
+    /**
+     * Create a {@link LasRecord} from a point of the batch.
+     *
+     * @param index the index of the point.
+     * @return the new record.
+     */
+    public LasRecord getRecord( int index ) {
+        LasRecord record = new LasRecord();
+        record.x = x[index];
+        record.y = y[index];
+        record.z = z[index];
+        record.intensity = intensity[index];
+        record.classification = classification[index];
+        record.returnNumber = returnNumber[index];
+        record.numberOfReturns = numberOfReturns[index];
+        record.gpsTime = gpsTime[index];
+        record.color[0] = red[index];
+        record.color[1] = green[index];
+        record.color[2] = blue[index];
+        record.groundElevation = groundElevation[index];
+        return record;
+    }
+
+    /**
+     * @return the selected points as {@link LasRecord}s.
+     */
+    public List<LasRecord> toRecords() {
+        List<LasRecord> records = new ArrayList<LasRecord>(getSelectedCount());
+        for( int i = nextSelected(0); i >= 0; i = nextSelected(i + 1) ) {
+            records.add(getRecord(i));
+        }
+        return records;
+    }
+
+    /**
+     * @return a new batch containing only the selected points.
+     */
+    public LasPointBatch getSelectedPoints() {
+        LasPointBatch batch = new LasPointBatch(getSelectedCount());
+        for( int i = nextSelected(0); i >= 0; i = nextSelected(i + 1) ) {
+            batch.add(this, i, groundElevation[i]);
+        }
+        return batch;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    public double[] getZ() {
+        return z;
+    }
+
+    public short[] getIntensity() {
+        return intensity;
+    }
+
+    public byte[] getClassification() {
+        return classification;
+    }
+
+    public short[] getReturnNumber() {
+        return returnNumber;
+    }
+
+    public short[] getNumberOfReturns() {
+        return numberOfReturns;
+    }
+
+    public double[] getGpsTime() {
+        return gpsTime;
+    }
+
+    public short[] getRed() {
+        return red;
+    }
+
+    public short[] getGreen() {
+        return green;
+    }
+
+    public short[] getBlue() {
+        return blue;
+    }
+
+    /**
+     * @return the heights over the ground, {@link Double#NaN} where not available.
+     */
+    public double[] getGroundElevation() {
+        return groundElevation;
+    }
+
+    /**
+     * @param index the index of the point.
+     * @return <code>true</code> if the point is selected.
+     */
+    public boolean isSelected( int index ) {
+        return selection.get(index);
+    }
+
+    /**
+     * @param index the index of the point.
+     * @param selected the selection state to set.
+     */
+    public void setSelected( int index, boolean selected ) {
+        selection.set(index, selected);
+    }
+
+    /**
+     * Iterate over the selected points:
+     * <pre>
+     * for( int i = batch.nextSelected(0); i >= 0; i = batch.nextSelected(i + 1) ) {
+     * </pre>
+     *
+     * @param from the index to start from (inclusive).
+     * @return the index of the next selected point or -1.
+     */
+    public int nextSelected( int from ) {
+        int next = selection.nextSetBit(from);
+        return next < size ? next : -1;
+    }
+
+    /**
+     * @return the number of selected points.
+     */
+    public int getSelectedCount() {
+        return selection.cardinality();
+    }
+
+    /**
+     * Select all the points.
+     */
+    public void selectAll() {
+        selection.set(0, size);
+    }
+
+    /**
+     * Select the points in a vertical range, the others are deselected.
+     *
+     * @param min the min value of the range (inclusive).
+     * @param max the max value of the range (inclusive).
+     * @param isGroundElev if <code>true</code>, ground elevation is used instead of z.
+     * @return the number of selected points.
+     */
+    public int selectVerticalRange( double min, double max, boolean isGroundElev ) {
+        double[] values = isGroundElev ? groundElevation : z;
+        selection.clear();
+        for( int i = 0; i < size; i++ ) {
+            if (values[i] >= min && values[i] <= max) {
+                selection.set(i);
+            }
+        }
+        return selection.cardinality();
+    }
+
+    /**
+     * Deselect the selected points that are not inside a geometry.
+     *
+     * @param geometry the geometry.
+     * @param doOnlyEnvelope check for the geometry envelope instead of the geometry.
+     * @return the number of selected points.
+     */
+    public int retainInGeometry( Geometry geometry, boolean doOnlyEnvelope ) {
+        if (doOnlyEnvelope) {
+            Envelope envelope = geometry.getEnvelopeInternal();
+            int count = 0;
+            for( int i = nextSelected(0); i >= 0; i = nextSelected(i + 1) ) {
+                if (envelope.contains(x[i], y[i])) {
+                    count++;
+                } else {
+                    selection.clear(i);
+                }
+            }
+            return count;
+        }
+        return new PointInPolygonChecker(geometry).retainContained(x, y, size, selection);
+    }
+
+    /**
+     * @return the index of the selected point with the lowest z, or -1 if none is selected.
+     */
+    public int getLowestSelected() {
+        int lowest = -1;
+        for( int i = nextSelected(0); i >= 0; i = nextSelected(i + 1) ) {
+            if (lowest == -1 || z[i] < z[lowest]) {
+                lowest = i;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Remove all the points.
+     */
+    public void clear() {
+        size = 0;
+        selection.clear();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.las;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.jgrasstools.gears.io.las.core.ALasReader;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * A bounded pool of open las readers, shared by the threads reading a set of las files.
+ *
+ * <p>A reader has a file position, so it is used by one thread at a time: it is taken
+ * through {@link #acquire(File)} and given back through {@link #release(File, ALasReader)}.
+ * Released readers are kept open to be reused. When the maximum number of open readers
+ * is reached, the least recently used idle reader is closed to open a new one, and if all
+ * readers are busy {@link #acquire(File)} waits for one to be released.</p>
+ *
+ * <p>The lock is held only to pick the reader, files are opened and read outside of it.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+class LasReaderPool implements AutoCloseable {
+    private final CoordinateReferenceSystem crs;
+    private final int maxOpenReaders;
+
+    /**
+     * The idle readers of every file, in access order (the eldest is the least recently used).
+     */
+    private final LinkedHashMap<File, Deque<ALasReader>> idleReaders = new LinkedHashMap<File, Deque<ALasReader>>(16, 0.75f,
+            true);
+    /**
+     * The number of open readers, idle or in use.
+     */
+    private int openReaders = 0;
+    private boolean isClosed = false;
+
+    /**
+     * @param crs the crs of the las files.
+     * @param maxOpenReaders the maximum number of readers open at the same time.
+     */
+    LasReaderPool( CoordinateReferenceSystem crs, int maxOpenReaders ) {
+        if (maxOpenReaders < 1) {
+            throw new IllegalArgumentException("At least one reader has to be allowed.");
+        }
+        this.crs = crs;
+        this.maxOpenReaders = maxOpenReaders;
+    }
+
+    /**
+     * Get an open reader for a file, to be given back through {@link #release(File, ALasReader)}.
+     *
+     * @param lasFile the las file.
+     * @return the open reader.
+     * @throws Exception
+     */
+    ALasReader acquire( File lasFile ) throws Exception {
+        ALasReader readerToClose = null;
+        synchronized (this) {
+            while( true ) {
+                if (isClosed) {
+                    throw new IllegalStateException("The las readers pool has been closed.");
+                }
+                Deque<ALasReader> readers = idleReaders.get(lasFile);
+                if (readers != null) {
+                    ALasReader reader = readers.pollFirst();
+                    if (readers.isEmpty()) {
+                        idleReaders.remove(lasFile);
+                    }
+                    return reader;
+                }
+                if (openReaders < maxOpenReaders) {
+                    openReaders++;
+                    break;
+                }
+                readerToClose = pollLeastRecentlyUsed();
+                if (readerToClose != null) {
+                    // the new reader takes the place of the closed one
+                    break;
+                }
+                wait();
+            }
+        }
+
+        if (readerToClose != null) {
+            closeReader(readerToClose);
+        }
+        try {
+            ALasReader reader = ALasReader.getReader(lasFile, crs);
+            reader.open();
+            reader.getHeader();
+            return reader;
+        } catch (Exception e) {
+            synchronized (this) {
+                openReaders--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a reader taken through {@link #acquire(File)}.
+     *
+     * @param lasFile the las file of the reader.
+     * @param reader the reader.
+     */
+    void release( File lasFile, ALasReader reader ) {
+        synchronized (this) {
+            if (!isClosed) {
+                Deque<ALasReader> readers = idleReaders.get(lasFile);
+                if (readers == null) {
+                    readers = new ArrayDeque<ALasReader>();
+                    idleReaders.put(lasFile, readers);
+                }
+                readers.addFirst(reader);
+                notifyAll();
+                return;
+            }
+            openReaders--;
+        }
+        closeReader(reader);
+    }
+
+    private ALasReader pollLeastRecentlyUsed() {
+        Iterator<Entry<File, Deque<ALasReader>>> iterator = idleReaders.entrySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Deque<ALasReader> readers = iterator.next().getValue();
+        ALasReader reader = readers.pollLast();
+        if (readers.isEmpty()) {
+            iterator.remove();
+        }
+        return reader;
+    }
+
+    private static void closeReader( ALasReader reader ) {
+        try {
+            reader.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Close the idle readers, the readers in use are closed when released.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            isClosed = true;
+            for( Deque<ALasReader> readers : idleReaders.values() ) {
+                for( ALasReader reader : readers ) {
+                    closeReader(reader);
+                    openReaders--;
+                }
+            }
+            idleReaders.clear();
+            notifyAll();
+        }
+    }
+}
@@ -70,6 +70,50 @@ public abstract class ALasReader extends Las implements AutoCloseable{
      */
     public abstract LasRecord getNextPoint() throws IOException;
 
+    /**
+     * Read the next records into a block of points.
+     *
+     * <p>This is an alternative to the {@link #hasNextPoint()}/{@link #getNextPoint()}
+     * iteration, which doesn't create an object per point. The two can be mixed,
+     * the block is filled starting from the next point.</p>
+     *
+     * <p>The default implementation copies the records read through {@link #getNextPoint()},
+     * readers that can decode the data directly override it.</p>
+     *
+     * @param block the block to fill, its size is set to the number of read points.
+     * @return the number of read points, 0 if none available.
+     * @throws IOException
+     */
+    public int readNextPoints( LasPointBlock block ) throws IOException {
+        int read = 0;
+        int capacity = block.capacity();
+        while( read < capacity && hasNextPoint() ) {
+            block.set(read++, getNextPoint());
+        }
+        block.setSize(read);
+        return read;
+    }
+
+    /**
+     * Read a range of records into a block of points.
+     *
+     * <p>The default implementation copies the records read through {@link #getPointAt(long)}.</p>
+     *
+     * @param pointPosition the position of the first point to read.
+     * @param count the number of points to read, at most the capacity of the block are read.
+     * @param block the block to fill, its size is set to the number of read points.
+     * @return the number of read points.
+     * @throws IOException
+     */
+    public int readPointsAt( long pointPosition, int count, LasPointBlock block ) throws IOException {
+        int toRead = Math.min(count, block.capacity());
+        for( int i = 0; i < toRead; i++ ) {
+            block.set(i, getPointAt(pointPosition + i));
+        }
+        block.setSize(toRead);
+        return toRead;
+    }
+
     /**
      * Reads a dot at a given address.
      * 
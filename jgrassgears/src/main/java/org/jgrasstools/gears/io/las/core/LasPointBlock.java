@@ -0,0 +1,170 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.las.core;
+
+/**
+ * A block of las points held column by column.
+ *
+ * <p>Every field of the {@link LasRecord} has its own array, the point <code>i</code>
+ * of the block being at position <code>i</code> of every array. The block is meant
+ * to be reused through {@link ALasReader#readNextPoints(LasPointBlock)}, so that
+ * reading a file doesn't create an object per point.</p>
+ *
+ * <p>The arrays have the block capacity as size, only the first {@link #size()}
+ * positions are valid.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class LasPointBlock {
+    /**
+     * The x coordinates, with scale and offset already applied.
+     */
+    public final double[] x;
+    /**
+     * The y coordinates, with scale and offset already applied.
+     */
+    public final double[] y;
+    /**
+     * The z coordinates, with scale and offset already applied.
+     */
+    public final double[] z;
+    /**
+     * The intensity values.
+     */
+    public final short[] intensity;
+    /**
+     * The classifications.
+     */
+    public final byte[] classification;
+    /**
+     * The return numbers.
+     */
+    public final short[] returnNumber;
+    /**
+     * The numbers of returns (given pulse).
+     */
+    public final short[] numberOfReturns;
+    /**
+     * The gps timestamps (-1 if the point format has no time).
+     */
+    public final double[] gpsTime;
+    /**
+     * The red color component.
+     */
+    public final short[] red;
+    /**
+     * The green color component.
+     */
+    public final short[] green;
+    /**
+     * The blue color component.
+     */
+    public final short[] blue;
+
+    private int size = 0;
+
+    /**
+     * Create a block.
+     *
+     * @param capacity the maximum number of points the block can hold.
+     */
+    public LasPointBlock( int capacity ) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The block capacity has to be positive.");
+        }
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        intensity = new short[capacity];
+        classification = new byte[capacity];
+        returnNumber = new short[capacity];
+        numberOfReturns = new short[capacity];
+        gpsTime = new double[capacity];
+        red = new short[capacity];
+        green = new short[capacity];
+        blue = new short[capacity];
+    }
+
+    /**
+     * @return the maximum number of points the block can hold.
+     */
+    public int capacity() {
+        return x.length;
+    }
+
+    /**
+     * @return the number of valid points in the block.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Set the number of valid points, used by the readers filling the block.
+     *
+     * @param size the number of points.
+     */
+    public void setSize( int size ) {
+        if (size < 0 || size > x.length) {
+            throw new IllegalArgumentException("The size has to be between 0 and the block capacity.");
+        }
+        this.size = size;
+    }
+
+    /**
+     * Copy a record into the block.
+     *
+     * @param index the position in the block.
+     * @param record the record to copy.
+     */
+    public void set( int index, LasRecord record ) {
+        x[index] = record.x;
+        y[index] = record.y;
+        z[index] = record.z;
+        intensity[index] = record.intensity;
+        classification[index] = record.classification;
+        returnNumber[index] = record.returnNumber;
+        numberOfReturns[index] = record.numberOfReturns;
+        gpsTime[index] = record.gpsTime;
+        red[index] = record.color[0];
+        green[index] = record.color[1];
+        blue[index] = record.color[2];
+    }
+
+    /**
+     * Create a {@link LasRecord} from a point of the block.
+     *
+     * @param index the position in the block.
+     * @return the new record.
+     */
+    public LasRecord getRecord( int index ) {
+        LasRecord record = new LasRecord();
+        record.x = x[index];
+        record.y = y[index];
+        record.z = z[index];
+        record.intensity = intensity[index];
+        record.classification = classification[index];
+        record.returnNumber = returnNumber[index];
+        record.numberOfReturns = numberOfReturns[index];
+        record.gpsTime = gpsTime[index];
+        record.color[0] = red[index];
+        record.color[1] = green[index];
+        record.color[2] = blue[index];
+        return record;
+    }
+}
@@ -22,10 +22,13 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 
 import org.jgrasstools.gears.io.las.core.ALasReader;
 import org.jgrasstools.gears.io.las.core.ILasHeader;
+import org.jgrasstools.gears.io.las.core.LasPointBlock;
 import org.jgrasstools.gears.io.las.core.LasRecord;
 import org.jgrasstools.gears.utils.ByteUtilities;
 import org.jgrasstools.gears.utils.CrsUtilities;
@@ -37,6 +40,11 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
  * @author Andrea Antonello (www.hydrologis.com)
  */
 public class LasReader extends ALasReader {
+    /**
+     * The maximum size of the file region mapped at once when reading blocks of points.
+     */
+    private static final int MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
     private final byte[] doubleDataArray = new byte[8];
     private final ByteBuffer doubleBb = ByteBuffer.wrap(doubleDataArray);
     private final byte[] longDataArray = new byte[4];
@@ -72,6 +80,10 @@ public class LasReader extends ALasReader {
 
     private LasHeader header;
 
+    private MappedByteBuffer mappedData;
+    private long mappedFirstPoint;
+    private int mappedPointsNum;
+
     public LasReader( File lasFile, CoordinateReferenceSystem crs ) throws Exception {
         this.lasFile = lasFile;
         if (crs != null) {
@@ -114,6 +126,7 @@ public class LasReader extends ALasReader {
 
     @Override
     public void close() throws Exception {
+        mappedData = null;
         if (fc != null && fc.isOpen())
             fc.close();
         if (fis != null)
@@ -297,6 +310,96 @@ public class LasReader extends ALasReader {
         return dot;
     }
 
+    /**
+     * Read the next records into a block of points.
+     *
+     * <p>The point data are memory mapped and decoded straight from the mapped
+     * region, one window of points at a time. The file position is moved after
+     * the last read point, so the per record reading can go on from there.</p>
+     */
+    @Override
+    public int readNextPoints( LasPointBlock block ) throws IOException {
+        checkOpen();
+        long firstPoint = (fc.position() - offset) / recordLength;
+        int read = decodePoints(firstPoint, block.capacity(), block);
+        fc.position(offset + (firstPoint + read) * recordLength);
+        readRecords += read;
+        return read;
+    }
+
+    /**
+     * Read a range of records into a block of points, decoding them from the memory
+     * mapped point data. The file position is moved after the last read point.
+     */
+    @Override
+    public int readPointsAt( long pointPosition, int count, LasPointBlock block ) throws IOException {
+        checkOpen();
+        int read = decodePoints(pointPosition, Math.min(count, block.capacity()), block);
+        fc.position(offset + (pointPosition + read) * recordLength);
+        return read;
+    }
+
+    private int decodePoints( long firstPoint, int maxCount, LasPointBlock block ) throws IOException {
+        int toRead = (int) Math.max(0, Math.min(maxCount, records - firstPoint));
+
+        byte pointDataFormat = header.pointDataFormat;
+        boolean hasGpsTime = pointDataFormat == 1 || pointDataFormat == 3;
+        boolean hasColor = pointDataFormat == 2 || pointDataFormat == 3;
+        int colorPosition = pointDataFormat == 3 ? 28 : 20;
+
+        int read = 0;
+        while( read < toRead ) {
+            long point = firstPoint + read;
+            if (mappedData == null || point < mappedFirstPoint || point >= mappedFirstPoint + mappedPointsNum) {
+                mapPoints(point);
+            }
+            int count = (int) Math.min(toRead - read, mappedFirstPoint + mappedPointsNum - point);
+            int position = (int) (point - mappedFirstPoint) * recordLength;
+            int end = read + count;
+            for( int i = read; i < end; i++ ) {
+                // coordinates are read unsigned, as in the per record reading
+                block.x[i] = (mappedData.getInt(position) & 0xFFFFFFFFL) * xScale + xOffset;
+                block.y[i] = (mappedData.getInt(position + 4) & 0xFFFFFFFFL) * yScale + yOffset;
+                block.z[i] = (mappedData.getInt(position + 8) & 0xFFFFFFFFL) * zScale + zOffset;
+                block.intensity[i] = mappedData.getShort(position + 12);
+                byte b = mappedData.get(position + 14);
+                block.returnNumber[i] = (short) (b & 0x07);
+                block.numberOfReturns[i] = (short) ((b >> 3) & 0x07);
+                block.classification[i] = mappedData.get(position + 15);
+                // skip scan angle rank, file marker and point source id
+                block.gpsTime[i] = hasGpsTime ? mappedData.getDouble(position + 20) : -1;
+                if (hasColor) {
+                    block.red[i] = mappedData.getShort(position + colorPosition);
+                    block.green[i] = mappedData.getShort(position + colorPosition + 2);
+                    block.blue[i] = mappedData.getShort(position + colorPosition + 4);
+                } else {
+                    block.red[i] = 100;
+                    block.green[i] = 100;
+                    block.blue[i] = 100;
+                }
+                position += recordLength;
+            }
+            read = end;
+        }
+        block.setSize(read);
+        return read;
+    }
+
+    /**
+     * Map the window of point data starting at a given point.
+     */
+    private void mapPoints( long point ) throws IOException {
+        long pointsInFile = (fc.size() - offset) / recordLength;
+        long pointsNum = Math.min(Math.min(records, pointsInFile) - point, Math.max(1, MAP_WINDOW_SIZE / recordLength));
+        if (pointsNum <= 0) {
+            throw new IOException("The las file is shorter than declared in its header: " + lasFile.getAbsolutePath());
+        }
+        mappedData = fc.map(MapMode.READ_ONLY, offset + point * recordLength, pointsNum * recordLength);
+        mappedData.order(ByteOrder.LITTLE_ENDIAN);
+        mappedFirstPoint = point;
+        mappedPointsNum = (int) pointsNum;
+    }
+
     public LasRecord getPointAtAddress( long address ) throws IOException {
         fc.position(address);
         return getPoint();
@@ -58,6 +58,7 @@ import org.jgrasstools.gears.io.las.index.strtree.STRtreeJGT;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
 import org.jgrasstools.gears.modules.utils.fileiterator.OmsFileIterator;
 import org.jgrasstools.gears.utils.CrsUtilities;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
@@ -72,9 +73,6 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import static java.lang.Math.round;
 
@@ -187,7 +185,7 @@ public class LasIndexer extends JGTModel {
         if (doOverview)
             envelopesQueue = new ConcurrentLinkedQueue<>();
         if (pThreads > 1) {
-            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(pThreads);
+            JGTTaskGroup taskGroup = newTaskGroup(pThreads, pm);
             for( final File file : filesList ) {
                 Runnable runner = new Runnable(){
                     public void run() {
@@ -199,15 +197,9 @@ public class LasIndexer extends JGTModel {
                         }
                     }
                 };
-                fixedThreadPool.execute(runner);
-            }
-            try {
-                fixedThreadPool.shutdown();
-                fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
-                fixedThreadPool.shutdownNow();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                taskGroup.execute(runner);
             }
+            taskGroup.await();
         } else {
             for( final File file : filesList ) {
                 processFile(file, false);
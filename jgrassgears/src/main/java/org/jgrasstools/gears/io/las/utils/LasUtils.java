@@ -25,6 +25,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -770,4 +772,73 @@ public class LasUtils {
         clone.pointsDensity = lasRecord.pointsDensity;
         return clone;
     }
+
+    /**
+     * Merge the point ranges returned by a las index query.
+     * 
+     * <p>The ranges are sorted and the overlapping ones, the adjacent ones and
+     * the ones separated by at most <code>maxGap</code> points are merged, so that
+     * they can be read sequentially in large chunks. The points of the gaps
+     * are read too, so they have to be filtered like the others.</p>
+     * 
+     * @param addressesList the query result, containing <code>double[]{from, to}</code> 
+     *              point ranges (<code>to</code> excluded). Other objects are ignored. 
+     * @param maxGap the max number of points between two ranges to merge them.
+     * @return the merged ranges as <code>[from1, to1, from2, to2, ...]</code>.
+     */
+    public static long[] mergeAddressRanges( List< ? > addressesList, long maxGap ) {
+        long[] ranges = new long[addressesList.size() * 2];
+        int count = 0;
+        for( Object obj : addressesList ) {
+            if (obj instanceof double[]) {
+                double[] addresses = (double[]) obj;
+                long from = (long) addresses[0];
+                long to = (long) addresses[1];
+                if (to > from) {
+                    ranges[count * 2] = from;
+                    ranges[count * 2 + 1] = to;
+                    count++;
+                }
+            }
+        }
+        if (count == 0) {
+            return new long[0];
+        }
+
+        // sort the ranges by start, through their indexes
+        Integer[] order = new Integer[count];
+        for( int i = 0; i < count; i++ ) {
+            order[i] = i;
+        }
+        final long[] fRanges = ranges;
+        Arrays.sort(order, new Comparator<Integer>(){
+            public int compare( Integer o1, Integer o2 ) {
+                long from1 = fRanges[o1 * 2];
+                long from2 = fRanges[o2 * 2];
+                return from1 < from2 ? -1 : (from1 == from2 ? 0 : 1);
+            }
+        });
+
+        long[] merged = new long[count * 2];
+        int mergedCount = 0;
+        long currentFrom = ranges[order[0] * 2];
+        long currentTo = ranges[order[0] * 2 + 1];
+        for( int i = 1; i < count; i++ ) {
+            long from = ranges[order[i] * 2];
+            long to = ranges[order[i] * 2 + 1];
+            if (from - currentTo <= maxGap) {
+                currentTo = Math.max(currentTo, to);
+            } else {
+                merged[mergedCount * 2] = currentFrom;
+                merged[mergedCount * 2 + 1] = currentTo;
+                mergedCount++;
+                currentFrom = from;
+                currentTo = to;
+            }
+        }
+        merged[mergedCount * 2] = currentFrom;
+        merged[mergedCount * 2 + 1] = currentTo;
+        mergedCount++;
+        return Arrays.copyOf(merged, mergedCount * 2);
+    }
 }
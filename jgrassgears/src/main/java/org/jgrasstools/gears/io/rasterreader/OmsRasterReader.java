@@ -465,7 +465,7 @@ public class OmsRasterReader extends JGTModel {
             int height = params.get(ROWS).intValue();
             int width = params.get(COLS).intValue();
             WritableRaster tmpWR = createDoubleWritableRaster(width, height, null, null, null);
-            WritableRandomIter tmpIter = RandomIterFactory.createWritable(tmpWR, null);
+            WritableRandomIter tmpIter = CoverageUtilities.getWritableRandomIterator(tmpWR);
             RenderedImage readRI = outRaster.getRenderedImage();
             RandomIter readIter = RandomIterFactory.create(readRI, null);
             int minX = readRI.getMinX();
@@ -42,6 +42,7 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -137,6 +138,31 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
 
     private DateTime expectedTimestamp = null;
 
+    /**
+     * The ids of the consecutive groups of columns having the same id.
+     */
+    private int[] groupIds;
+    /**
+     * The number of columns of every group.
+     */
+    private int[] groupCounts;
+
+    /**
+     * The binary store, if the file is in the binary format.
+     */
+    private TimeSeriesBinaryStore binaryStore;
+    /**
+     * The next row of the binary store to read, -1 before the first seek.
+     */
+    private int binaryNextRow = -1;
+    private double[] binaryRowValues;
+    private double[] binarySums;
+    private int[] binaryCounts;
+    /**
+     * The data map filled at every timestep in binary mode, the arrays are reused.
+     */
+    private HashMap<Integer, double[]> binaryOutData;
+
     @Initialize
     public void initProcess() {
         // activate time
@@ -144,8 +170,35 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
 
     }
     private void ensureOpen() throws IOException {
-        if (table == null) {
-            table = DataIO.table(new File(file), null);
+        if (binaryStore != null) {
+            return;
+        }
+        File inFile = new File(file);
+        if (TimeSeriesBinaryStore.isBinaryStore(inFile)) {
+            binaryStore = new TimeSeriesBinaryStore(inFile);
+            if (tStart == null && binaryStore.getRowsCount() > 0) {
+                tStart = formatter.print(binaryStore.getTime(0));
+                if (binaryStore.getRowsCount() > 1) {
+                    tTimestep = (int) ((binaryStore.getTime(1) - binaryStore.getTime(0)) / 60000L);
+                }
+            }
+            int[] ids = binaryStore.getIds();
+            Integer[] columnIds = new Integer[ids.length];
+            for( int i = 0; i < ids.length; i++ ) {
+                columnIds[i] = ids[i];
+            }
+            groupColumns(columnIds);
+
+            int columnsNum = binaryStore.getColumnsCount();
+            binaryRowValues = new double[columnsNum];
+            binarySums = new double[columnsNum];
+            binaryCounts = new int[columnsNum];
+            binaryOutData = new HashMap<Integer, double[]>();
+            for( int g = 0; g < groupIds.length; g++ ) {
+                binaryOutData.put(groupIds[g], new double[groupCounts[g]]);
+            }
+        } else if (table == null) {
+            table = DataIO.table(inFile, null);
             rowsIterator = (TableIterator<String[]>) table.rows().iterator();
             /*
              * If tStart is null then the reader try to read all the value in the file, nb time step constant.
@@ -170,6 +223,41 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
                 rowsIterator = (TableIterator<String[]>) table.rows().iterator();
             }
 
+            int columnCount = table.getColumnCount();
+            Integer[] columnIds = new Integer[columnCount - 1];
+            for( int i = 2; i <= columnCount; i++ ) {
+                String id = table.getColumnInfo(i).get(idfield);
+                try {
+                    columnIds[i - 2] = Integer.valueOf(id);
+                } catch (Exception e) {
+                    throw new ModelsIllegalargumentException("The id value doesn't seem to be an integer.", this.getClass()
+                            .getSimpleName(), pm);
+                }
+            }
+            groupColumns(columnIds);
+        }
+    }
+
+    /**
+     * Group the consecutive columns with the same id, done once since the columns don't change.
+     */
+    private void groupColumns( Integer[] columnIds ) {
+        List<Integer> idList = new ArrayList<Integer>();
+        List<Integer> idCountList = new ArrayList<Integer>();
+        for( int i = 0; i < columnIds.length; i++ ) {
+            if (i > 0 && columnIds[i].intValue() == columnIds[i - 1].intValue()) {
+                int last = idCountList.size() - 1;
+                idCountList.set(last, idCountList.get(last) + 1);
+            } else {
+                idList.add(columnIds[i]);
+                idCountList.add(1);
+            }
+        }
+        groupIds = new int[idList.size()];
+        groupCounts = new int[idList.size()];
+        for( int g = 0; g < groupIds.length; g++ ) {
+            groupIds[g] = idList.get(g);
+            groupCounts[g] = idCountList.get(g);
         }
     }
 
@@ -186,51 +274,40 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
             expectedTimestamp = expectedTimestamp.plusMinutes(tTimestep);
             tCurrent = expectedTimestamp.toString(formatter);
         }
-        outData = new HashMap<Integer, double[]>();
+        if (binaryStore != null) {
+            readBinaryRecord();
+        } else {
+            readTableRecord();
+        }
 
-        int columnCount = table.getColumnCount();
-        List<Integer> idList = new ArrayList<Integer>();
-        List<Integer> idCountList = new ArrayList<Integer>();
-        int count = 0;
-        Integer previousIdInteger = null;
-        for( int i = 2; i <= columnCount; i++ ) {
-            String id = table.getColumnInfo(i).get(idfield);
-            try {
-                Integer idInteger = Integer.valueOf(id);
-                idList.add(idInteger);
-                if (previousIdInteger == null) {
-                    count++;
-                } else {
-                    if (idInteger.intValue() == previousIdInteger.intValue()) {
-                        count++;
-                    } else {
-                        idCountList.add(count);
-                        count = 1;
-                    }
-                }
-                if (i == columnCount) {
-                    idCountList.add(count);
-                }
-                previousIdInteger = idInteger;
-            } catch (Exception e) {
-                throw new ModelsIllegalargumentException("The id value doesn't seem to be an integer.", this.getClass()
-                        .getSimpleName(), pm);
+        // time ran out
+        if (tEnd != null && tCurrent.equals(tEnd)) {
+            doProcess = false;
+        }
+        // data ran out
+        if (binaryStore != null) {
+            if (binaryNextRow >= binaryStore.getRowsCount()) {
+                doProcess = false;
             }
+        } else if (!rowsIterator.hasNext()) {
+            doProcess = false;
         }
+    }
 
+    private void readTableRecord() throws IOException {
+        outData = new HashMap<Integer, double[]>();
         if (rowsIterator.hasNext()) {
             String[] row = getExpectedRow(rowsIterator, expectedTimestamp);
 
-            int idCountIndex = 0;
-            for( int i = 2; i < row.length; i++ ) {
-                Integer id = idList.get(i - 2);
-                Integer idCount = idCountList.get(idCountIndex);
-                double[] values = outData.get(id);
+            int i = 2;
+            for( int g = 0; g < groupIds.length; g++ ) {
+                int idCount = groupCounts[g];
+                double[] values = outData.get(groupIds[g]);
                 if (values == null) {
                     values = new double[idCount];
-                    outData.put(id, values);
+                    outData.put(groupIds[g], values);
                 }
-                for( int j = 0; j < idCount; j++, i++ ) {
+                for( int j = 0; j < idCount && i < row.length; j++, i++ ) {
                     if (row[i] == null || row[i].length() == 0) {
                         values[j] = novalue;
                     } else {
@@ -242,21 +319,81 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
                         }
                     }
                 }
-                idCountIndex++;
-                i--;
             }
         } else {
             outData = null;
         }
+    }
 
-        // time ran out
-        if (tEnd != null && tCurrent.equals(tEnd)) {
-            doProcess = false;
+    /**
+     * Read the record of the expected timestamp from the binary store.
+     * 
+     * <p>The first record is found through a binary search on the timestamps,
+     * the following ones by moving forward. The values are copied in the
+     * arrays of the previous timestep.</p>
+     */
+    private void readBinaryRecord() throws IOException {
+        int rowsNum = binaryStore.getRowsCount();
+        long expectedTime = expectedTimestamp.getMillis();
+        if (binaryNextRow < 0) {
+            binaryNextRow = binaryStore.findRow(expectedTime);
+        } else {
+            while( binaryNextRow < rowsNum && binaryStore.getTime(binaryNextRow) < expectedTime ) {
+                binaryNextRow++;
+            }
         }
-        // data ran out
-        if (!rowsIterator.hasNext()) {
-            doProcess = false;
+        if (binaryNextRow >= rowsNum) {
+            outData = null;
+            return;
+        }
+        long currentTime = binaryStore.getTime(binaryNextRow);
+        if (currentTime > expectedTime) {
+            String message = "The data are not aligned with the simulation interval (" + formatter.print(currentTime) + "/"
+                    + expectedTimestamp + "). Check your data file: " + file;
+            throw new IOException(message);
+        }
+
+        int rowNum = Math.min(pNum, rowsNum - binaryNextRow);
+        binaryStore.readRow(binaryNextRow, binaryRowValues);
+        if (pNum > 1) {
+            // aggregate the values of the following rows, ignoring novalues
+            Arrays.fill(binarySums, 0.0);
+            Arrays.fill(binaryCounts, 0);
+            for( int r = 0; r < rowNum; r++ ) {
+                if (r > 0) {
+                    binaryStore.readRow(binaryNextRow + r, binaryRowValues);
+                }
+                for( int col = 0; col < binaryRowValues.length; col++ ) {
+                    double value = binaryRowValues[col];
+                    if (!Double.isNaN(value)) {
+                        binarySums[col] += value;
+                        binaryCounts[col]++;
+                    }
+                }
+            }
+            for( int col = 0; col < binaryRowValues.length; col++ ) {
+                if (binaryCounts[col] == 0) {
+                    binaryRowValues[col] = Double.NaN;
+                } else if (pAggregation == 0) {
+                    binaryRowValues[col] = binarySums[col];
+                } else if (pAggregation == 1) {
+                    binaryRowValues[col] = binarySums[col] / pNum;
+                } else {
+                    binaryRowValues[col] = Double.NaN;
+                }
+            }
         }
+        binaryNextRow += rowNum;
+
+        int col = 0;
+        for( int g = 0; g < groupIds.length; g++ ) {
+            double[] values = binaryOutData.get(groupIds[g]);
+            for( int j = 0; j < values.length; j++, col++ ) {
+                double value = binaryRowValues[col];
+                values[j] = Double.isNaN(value) ? novalue : value;
+            }
+        }
+        outData = binaryOutData;
     }
 
     /**
@@ -352,6 +489,11 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
 
     @Finalize
     public void close() throws IOException {
-        rowsIterator.close();
+        if (rowsIterator != null) {
+            rowsIterator.close();
+        }
+        if (binaryStore != null) {
+            binaryStore.close();
+        }
     }
 }
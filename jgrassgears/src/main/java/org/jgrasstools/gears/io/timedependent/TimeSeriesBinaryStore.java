@@ -0,0 +1,332 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.timedependent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+import oms3.io.CSTable;
+import oms3.io.DataIO;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * A binary store of time series, to be read without parsing.
+ *
+ * <p>The store holds the same data as the OMS csv tables read by the
+ * {@link OmsTimeSeriesIteratorReader}: a timestamp per row and a double value per
+ * column, every column having an integer id. It is created from a table through
+ * {@link #convert(CSTable, File, String, String)}.</p>
+ *
+ * <p>The file layout (little endian) is:</p>
+ * <pre>
+ * int      magic number
+ * int      version
+ * int      number of rows
+ * int      number of columns
+ * int[]    the ids of the columns
+ * double[] the values, row after row (novalues are stored as NaN)
+ * long[]   the timestamps of the rows, in UTC milliseconds, in ascending order
+ * </pre>
+ *
+ * <p>The values are memory mapped in windows of whole rows, so that a row is read with
+ * a bulk copy into a reusable array, and the timestamps are memory mapped to find a
+ * given time through a binary search.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TimeSeriesBinaryStore implements AutoCloseable {
+    /**
+     * The extension of the binary time series files.
+     */
+    public static final String EXTENSION = "tsb";
+
+    private static final int MAGIC = 0x4a475453; // JGTS
+    private static final int VERSION = 1;
+    private static final int MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private FileChannel fc;
+    private final int rowsNum;
+    private final int columnsNum;
+    private final int[] ids;
+    private final long valuesPosition;
+    private final int rowBytes;
+    private final MappedByteBuffer timesData;
+
+    private DoubleBuffer valuesData;
+    private int valuesFirstRow = 0;
+    private int valuesRowsNum = 0;
+
+    /**
+     * Open a binary time series file.
+     *
+     * @param file the file to read.
+     * @throws IOException if the file is not a valid time series store.
+     */
+    public TimeSeriesBinaryStore( File file ) throws IOException {
+        this.file = file;
+        raf = new RandomAccessFile(file, "r");
+        fc = raf.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary time series file: " + file);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported binary time series version: " + header.getInt(4));
+            }
+            rowsNum = header.getInt(8);
+            columnsNum = header.getInt(12);
+
+            ByteBuffer idsBuffer = ByteBuffer.allocate(4 * columnsNum).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(idsBuffer, 16);
+            ids = new int[columnsNum];
+            idsBuffer.asIntBuffer().get(ids);
+
+            valuesPosition = 16 + 4L * columnsNum;
+            rowBytes = 8 * columnsNum;
+            long timesPosition = valuesPosition + (long) rowBytes * rowsNum;
+            if (fc.size() < timesPosition + 8L * rowsNum) {
+                throw new IOException("The binary time series file is truncated: " + file);
+            }
+            timesData = fc.map(MapMode.READ_ONLY, timesPosition, 8L * rowsNum);
+            timesData.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void readFully( ByteBuffer buffer, long position ) throws IOException {
+        while( buffer.hasRemaining() ) {
+            if (fc.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("The binary time series file is truncated: " + file);
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * @return the number of rows (timesteps).
+     */
+    public int getRowsCount() {
+        return rowsNum;
+    }
+
+    /**
+     * @return the number of value columns.
+     */
+    public int getColumnsCount() {
+        return columnsNum;
+    }
+
+    /**
+     * @return the ids of the columns.
+     */
+    public int[] getIds() {
+        return Arrays.copyOf(ids, ids.length);
+    }
+
+    /**
+     * Get the timestamp of a row.
+     *
+     * @param row the row index.
+     * @return the timestamp in UTC milliseconds.
+     */
+    public long getTime( int row ) {
+        return timesData.getLong(row * 8);
+    }
+
+    /**
+     * Find the first row with timestamp equal or after a given one.
+     *
+     * @param time the timestamp in UTC milliseconds.
+     * @return the row index, or the number of rows if all the rows are before the time.
+     */
+    public int findRow( long time ) {
+        int low = 0;
+        int high = rowsNum;
+        while( low < high ) {
+            int mid = (low + high) >>> 1;
+            if (getTime(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Read the values of a row.
+     *
+     * @param row the row index.
+     * @param values the array to fill, of at least {@link #getColumnsCount()} length.
+     *          Novalues are set to NaN.
+     * @throws IOException
+     */
+    public void readRow( int row, double[] values ) throws IOException {
+        if (row < 0 || row >= rowsNum) {
+            throw new IndexOutOfBoundsException("Row " + row + " is not in [0, " + rowsNum + ").");
+        }
+        if (row < valuesFirstRow || row >= valuesFirstRow + valuesRowsNum) {
+            mapValues(row);
+        }
+        valuesData.position((row - valuesFirstRow) * columnsNum);
+        valuesData.get(values, 0, columnsNum);
+    }
+
+    private void mapValues( int row ) throws IOException {
+        int windowRows = Math.max(1, MAP_WINDOW_SIZE / Math.max(1, rowBytes));
+        valuesFirstRow = row;
+        valuesRowsNum = Math.min(windowRows, rowsNum - row);
+        MappedByteBuffer mapped = fc.map(MapMode.READ_ONLY, valuesPosition + (long) row * rowBytes, (long) valuesRowsNum
+                * rowBytes);
+        valuesData = mapped.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        valuesData = null;
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            fc = null;
+        }
+    }
+
+    /**
+     * Convert a time series csv file to the binary format.
+     *
+     * @param csvFile the OMS csv file.
+     * @param binaryFile the binary file to create.
+     * @param idfield the name of the column info holding the id.
+     * @param fileNovalue the novalue used in the csv file.
+     * @throws IOException
+     */
+    public static void convert( File csvFile, File binaryFile, String idfield, String fileNovalue ) throws IOException {
+        convert(DataIO.table(csvFile, null), binaryFile, idfield, fileNovalue);
+    }
+
+    /**
+     * Convert a time series table to the binary format.
+     *
+     * <p>The second column of the table holds the timestamps, in the
+     * {@link JGTConstants#utcDateFormatterYYYYMMDDHHMM} format, the following
+     * ones the values.</p>
+     *
+     * @param table the OMS table.
+     * @param binaryFile the binary file to create.
+     * @param idfield the name of the column info holding the id.
+     * @param fileNovalue the novalue used in the table.
+     * @throws IOException
+     */
+    public static void convert( CSTable table, File binaryFile, String idfield, String fileNovalue ) throws IOException {
+        int columnsNum = table.getColumnCount() - 1;
+        int[] ids = new int[columnsNum];
+        for( int i = 0; i < columnsNum; i++ ) {
+            String id = table.getColumnInfo(i + 2).get(idfield);
+            try {
+                ids[i] = Integer.parseInt(id.trim());
+            } catch (Exception e) {
+                throw new IOException("The id value doesn't seem to be an integer: " + id);
+            }
+        }
+
+        DateTimeFormatter formatter = JGTConstants.utcDateFormatterYYYYMMDDHHMM;
+        long[] times = new long[1024];
+        int rowsNum = 0;
+        RandomAccessFile raf = new RandomAccessFile(binaryFile, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel fc = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(16 + 4 * columnsNum).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(columnsNum);
+            for( int id : ids ) {
+                header.putInt(id);
+            }
+            header.flip();
+            writeFully(fc, header);
+
+            ByteBuffer rowBuffer = ByteBuffer.allocate(8 * columnsNum).order(ByteOrder.LITTLE_ENDIAN);
+            long previousTime = Long.MIN_VALUE;
+            for( String[] row : table.rows() ) {
+                long time = formatter.parseDateTime(row[1].trim()).getMillis();
+                if (time <= previousTime) {
+                    throw new IOException("The timestamps have to be in ascending order: " + row[1]);
+                }
+                previousTime = time;
+                if (rowsNum == times.length) {
+                    times = Arrays.copyOf(times, times.length * 2);
+                }
+                times[rowsNum++] = time;
+
+                rowBuffer.clear();
+                for( int col = 0; col < columnsNum; col++ ) {
+                    int index = col + 2;
+                    String valueStr = index < row.length && row[index] != null ? row[index].trim() : "";
+                    if (valueStr.length() == 0 || valueStr.equals(fileNovalue)) {
+                        rowBuffer.putDouble(Double.NaN);
+                    } else {
+                        rowBuffer.putDouble(Double.parseDouble(valueStr));
+                    }
+                }
+                rowBuffer.flip();
+                writeFully(fc, rowBuffer);
+            }
+
+            ByteBuffer timesBuffer = ByteBuffer.allocate(8 * rowsNum).order(ByteOrder.LITTLE_ENDIAN);
+            timesBuffer.asLongBuffer().put(times, 0, rowsNum);
+            writeFully(fc, timesBuffer);
+
+            ByteBuffer rowsNumBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            rowsNumBuffer.putInt(rowsNum).flip();
+            fc.write(rowsNumBuffer, 8);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void writeFully( FileChannel fc, ByteBuffer buffer ) throws IOException {
+        while( buffer.hasRemaining() ) {
+            fc.write(buffer);
+        }
+    }
+
+    /**
+     * Check if a file is a binary time series store, by its extension.
+     *
+     * @param file the file to check.
+     * @return <code>true</code> if the file has the binary store extension.
+     */
+    public static boolean isBinaryStore( File file ) {
+        return file.getName().toLowerCase().endsWith("." + EXTENSION);
+    }
+}
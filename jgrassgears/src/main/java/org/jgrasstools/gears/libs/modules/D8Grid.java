@@ -0,0 +1,290 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import javax.media.jai.iterator.RandomIter;
+
+/**
+ * A raster held in a flat array, with its cells addressed by index.
+ *
+ * <p>This is the primitive counterpart of {@link GridNode} and {@link FlowNode}: instead
+ * of creating a node object for every visited cell, cells are identified by their
+ * index <code>row * cols + col</code> and the neighbours are reached through the
+ * offset tables, which are indexed by the flow direction code (see {@link Direction}):</p>
+ * <pre>
+ *      +-----+-----+-----+
+ *      |  4  |  3  |  2  |
+ *      +-----+-----+-----+
+ *      |  5  |  x  |  1  |
+ *      +-----+-----+-----+
+ *      |  6  |  7  |  8  |
+ *      +-----+-----+-----+
+ * </pre>
+ *
+ * <p>When the grid contains flow directions, the flow methods ({@link #getDownstream(int)},
+ * {@link #flowsInto(int, int)}, ...) follow the same rules as {@link FlowNode}.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class D8Grid {
+    /**
+     * The index returned for cells that don't exist.
+     */
+    public static final int NO_CELL = -1;
+
+    /**
+     * The column offset for every flow direction code (0, 9 and 10 don't move).
+     */
+    public static final int[] DCOL = {0, 1, 1, 0, -1, -1, -1, 0, 1, 0, 0};
+    /**
+     * The row offset for every flow direction code (0, 9 and 10 don't move).
+     */
+    public static final int[] DROW = {0, 0, -1, -1, -1, 0, 1, 1, 1, 0, 0};
+    /**
+     * The flow code the neighbour in a direction must have to flow into the center cell.
+     */
+    public static final int[] ENTERING = {0, 5, 6, 7, 8, 1, 2, 3, 4};
+
+    private final double[] values;
+    private final int cols;
+    private final int rows;
+    /**
+     * The index offset for every flow direction code.
+     */
+    private final int[] indexOffsets = new int[9];
+
+    /**
+     * Create the grid on an existing array.
+     *
+     * @param values the values of the raster, row by row.
+     * @param cols the columns of the raster.
+     * @param rows the rows of the raster.
+     */
+    public D8Grid( double[] values, int cols, int rows ) {
+        if (values.length != cols * rows) {
+            throw new IllegalArgumentException("The values don't match the grid size.");
+        }
+        this.values = values;
+        this.cols = cols;
+        this.rows = rows;
+        for( int k = 1; k <= 8; k++ ) {
+            indexOffsets[k] = DROW[k] * cols + DCOL[k];
+        }
+    }
+
+    /**
+     * Create the grid reading a raster.
+     *
+     * @param iter the raster iterator.
+     * @param cols the columns of the raster.
+     * @param rows the rows of the raster.
+     * @return the grid.
+     */
+    public static D8Grid read( RandomIter iter, int cols, int rows ) {
+        double[] values = new double[cols * rows];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                values[r * cols + c] = iter.getSampleDouble(c, r, 0);
+            }
+        }
+        return new D8Grid(values, cols, rows);
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCellsNum() {
+        return values.length;
+    }
+
+    /**
+     * @return the array of values (not a copy).
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    public int index( int col, int row ) {
+        return row * cols + col;
+    }
+
+    public int col( int index ) {
+        return index % cols;
+    }
+
+    public int row( int index ) {
+        return index / cols;
+    }
+
+    public boolean isInRaster( int col, int row ) {
+        return col >= 0 && row >= 0 && col < cols && row < rows;
+    }
+
+    public double get( int index ) {
+        return values[index];
+    }
+
+    public void set( int index, double value ) {
+        values[index] = value;
+    }
+
+    /**
+     * @param index the cell index.
+     * @return <code>true</code> if the cell doesn't contain a novalue.
+     */
+    public boolean isValid( int index ) {
+        return !isNovalue(values[index]);
+    }
+
+    /**
+     * Get the neighbour of a cell.
+     *
+     * @param col the column of the cell.
+     * @param row the row of the cell.
+     * @param direction the direction code, from 1 to 8.
+     * @return the index of the neighbour or {@link #NO_CELL} if it is outside the raster.
+     */
+    public int getNeighbour( int col, int row, int direction ) {
+        int nCol = col + DCOL[direction];
+        int nRow = row + DROW[direction];
+        if (nCol < 0 || nRow < 0 || nCol >= cols || nRow >= rows) {
+            return NO_CELL;
+        }
+        return nRow * cols + nCol;
+    }
+
+    /**
+     * Get the neighbour of a cell.
+     *
+     * @param index the cell index.
+     * @param direction the direction code, from 1 to 8.
+     * @return the index of the neighbour or {@link #NO_CELL} if it is outside the raster.
+     */
+    public int getNeighbour( int index, int direction ) {
+        int col = index % cols;
+        int nCol = col + DCOL[direction];
+        if (nCol < 0 || nCol >= cols) {
+            return NO_CELL;
+        }
+        int nIndex = index + indexOffsets[direction];
+        if (nIndex < 0 || nIndex >= values.length) {
+            return NO_CELL;
+        }
+        return nIndex;
+    }
+
+    /**
+     * Get the value of the neighbour of a cell.
+     *
+     * @param index the cell index.
+     * @param direction the direction code, from 1 to 8.
+     * @return the value or a novalue if the neighbour is outside the raster.
+     */
+    public double getNeighbourValue( int index, int direction ) {
+        int nIndex = getNeighbour(index, direction);
+        if (nIndex == NO_CELL) {
+            return JGTConstants.doubleNovalue;
+        }
+        return values[nIndex];
+    }
+
+    /**
+     * @param index the cell index.
+     * @return <code>true</code> if the cell is on the raster border or next to a novalue.
+     */
+    public boolean touchesBound( int index ) {
+        for( int k = 1; k <= 8; k++ ) {
+            if (isNovalue(getNeighbourValue(index, k))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param index the cell index.
+     * @return <code>true</code> if the flow of the cell has the {@link FlowNode#OUTLET} value.
+     */
+    public boolean isOutlet( int index ) {
+        return (int) values[index] == (int) FlowNode.OUTLET;
+    }
+
+    /**
+     * Get the cell the flow of a cell drains into.
+     *
+     * @param index the cell index.
+     * @return the index of the downstream cell or {@link #NO_CELL} if the cell is an outlet,
+     *          it is invalid or it drains outside of the valid raster.
+     */
+    public int getDownstream( int index ) {
+        double flow = values[index];
+        if (isNovalue(flow)) {
+            return NO_CELL;
+        }
+        int direction = (int) flow;
+        if (direction < 1 || direction > 8) {
+            return NO_CELL;
+        }
+        int nIndex = getNeighbour(index, direction);
+        if (nIndex == NO_CELL || isNovalue(values[nIndex])) {
+            return NO_CELL;
+        }
+        return nIndex;
+    }
+
+    /**
+     * Check if the neighbour in a direction drains into a cell.
+     *
+     * @param index the cell index.
+     * @param direction the direction code of the neighbour, from 1 to 8.
+     * @return <code>true</code> if the neighbour exists and drains into the cell.
+     */
+    public boolean flowsInto( int index, int direction ) {
+        int nIndex = getNeighbour(index, direction);
+        return nIndex != NO_CELL && (int) values[nIndex] == ENTERING[direction];
+    }
+
+    /**
+     * @param index the cell index.
+     * @return the number of neighbours that drain into the cell.
+     */
+    public int getEnteringCount( int index ) {
+        int count = 0;
+        for( int k = 1; k <= 8; k++ ) {
+            if (flowsInto(index, k)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param index the cell index.
+     * @return <code>true</code> if the cell is valid and no other cell drains into it.
+     */
+    public boolean isSource( int index ) {
+        return isValid(index) && getEnteringCount(index) == 0;
+    }
+}
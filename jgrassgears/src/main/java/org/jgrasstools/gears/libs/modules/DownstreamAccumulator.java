@@ -0,0 +1,296 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import javax.media.jai.iterator.RandomIter;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Accumulation of cell values along the downstream direction.
+ *
+ * <p>Every cell passes its value (optionally weighted) to its receivers, once all the cells
+ * that drain into it have been done. The cells are visited in topological order, counting
+ * the number of donors of every cell first, so every cell is handled once.</p>
+ *
+ * <p>The cells are addressed by their index <code>row * cols + col</code>. A cell can have
+ * a single receiver (D8 flow, see {@link #singleReceiver(int[])}) or many receivers with
+ * weights (multiple flow directions, see {@link #multipleReceivers(int[], int[], double[])}).</p>
+ *
+ * <p>Basins that don't share cells are independent, so with more than one thread
+ * they are accumulated in parallel.</p>
+ *
+ * <p>Cells that lie on a loop of the flow (or downstream of one) are never done, see
+ * {@link #isResolved(int)}.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class DownstreamAccumulator {
+    /**
+     * The receiver value for cells that don't drain into another cell.
+     */
+    public static final int NO_RECEIVER = D8Grid.NO_CELL;
+
+    private final int cellsNum;
+    /**
+     * The offsets of the receivers of every cell, <code>null</code> if every cell has at most one receiver.
+     */
+    private final int[] receiverOffsets;
+    private final int[] receivers;
+    /**
+     * The weights of the receivers, <code>null</code> if they are all 1.
+     */
+    private final double[] weights;
+
+    private int[] donorsCount;
+
+    private DownstreamAccumulator( int cellsNum, int[] receiverOffsets, int[] receivers, double[] weights ) {
+        this.cellsNum = cellsNum;
+        this.receiverOffsets = receiverOffsets;
+        this.receivers = receivers;
+        this.weights = weights;
+    }
+
+    /**
+     * Create an accumulator for cells with at most one receiver.
+     *
+     * @param receivers the index of the receiver of every cell or {@link #NO_RECEIVER}.
+     * @return the accumulator.
+     */
+    public static DownstreamAccumulator singleReceiver( int[] receivers ) {
+        return new DownstreamAccumulator(receivers.length, null, receivers, null);
+    }
+
+    /**
+     * Create an accumulator for cells with many receivers.
+     *
+     * <p>The receivers of cell <code>i</code> are the ones between <code>receiverOffsets[i]</code>
+     * (inclusive) and <code>receiverOffsets[i + 1]</code> (exclusive).</p>
+     *
+     * @param receiverOffsets the offsets of the receivers of every cell, with size cells + 1.
+     * @param receivers the indexes of the receivers.
+     * @param weights the weight applied to the value passed to each receiver, or <code>null</code>.
+     * @return the accumulator.
+     */
+    public static DownstreamAccumulator multipleReceivers( int[] receiverOffsets, int[] receivers, double[] weights ) {
+        return new DownstreamAccumulator(receiverOffsets.length - 1, receiverOffsets, receivers, weights);
+    }
+
+    /**
+     * Read the receivers from a D8 flow directions map.
+     *
+     * <p>Cells with novalue flow, with the {@link FlowNode#OUTLET outlet} value or draining into
+     * a novalue or outside the map have no receiver.</p>
+     *
+     * @param flowIter the flow directions map.
+     * @param cols the columns of the map.
+     * @param rows the rows of the map.
+     * @return the index of the receiver of every cell or {@link #NO_RECEIVER}.
+     */
+    public static int[] getD8Receivers( RandomIter flowIter, int cols, int rows ) {
+        D8Grid flowGrid = D8Grid.read(flowIter, cols, rows);
+        int[] receivers = new int[flowGrid.getCellsNum()];
+        for( int i = 0; i < receivers.length; i++ ) {
+            receivers[i] = flowGrid.getDownstream(i);
+        }
+        return receivers;
+    }
+
+    /**
+     * Accumulate the values downstream.
+     *
+     * <p>At the end every cell contains its own value plus the (weighted) values
+     * accumulated in the cells that drain into it.</p>
+     *
+     * @param values the values of the cells, modified in place.
+     * @param threadsNum the number of threads to use.
+     * @param pm the progress monitor.
+     * @return <code>false</code> if the process was canceled.
+     */
+    public boolean accumulate( final double[] values, int threadsNum, final IJGTProgressMonitor pm ) {
+        donorsCount = new int[cellsNum];
+        for( int i = 0; i < cellsNum; i++ ) {
+            int end = getReceiversEnd(i);
+            for( int e = getReceiversStart(i); e < end; e++ ) {
+                donorsCount[receivers[e]]++;
+            }
+        }
+
+        if (threadsNum <= 1) {
+            int[] cells = new int[cellsNum];
+            for( int i = 0; i < cellsNum; i++ ) {
+                cells[i] = i;
+            }
+            pm.beginTask("Accumulating downstream...", 1);
+            boolean done = accumulate(values, cells, 0, cellsNum, pm);
+            pm.worked(1);
+            pm.done();
+            return done;
+        }
+
+        /*
+         * group the cells by basin, joining small basins in batches
+         */
+        int[] basins = getBasins();
+        int minBatchSize = Math.max(cellsNum / (threadsNum * 8), 1024);
+        int[] batchOfBasin = new int[cellsNum];
+        for( int i = 0; i < cellsNum; i++ ) {
+            batchOfBasin[basins[i]]++;
+        }
+        int batchesNum = 0;
+        int batchSize = 0;
+        for( int i = 0; i < cellsNum; i++ ) {
+            if (basins[i] != i) {
+                continue;
+            }
+            int basinSize = batchOfBasin[i];
+            if (batchSize >= minBatchSize) {
+                batchesNum++;
+                batchSize = 0;
+            }
+            batchOfBasin[i] = batchesNum;
+            batchSize += basinSize;
+        }
+        if (batchSize > 0) {
+            batchesNum++;
+        }
+        final int[] batchStarts = new int[batchesNum + 1];
+        for( int i = 0; i < cellsNum; i++ ) {
+            batchStarts[batchOfBasin[basins[i]] + 1]++;
+        }
+        for( int b = 0; b < batchesNum; b++ ) {
+            batchStarts[b + 1] += batchStarts[b];
+        }
+        final int[] cells = new int[cellsNum];
+        int[] positions = new int[batchesNum];
+        System.arraycopy(batchStarts, 0, positions, 0, batchesNum);
+        for( int i = 0; i < cellsNum; i++ ) {
+            cells[positions[batchOfBasin[basins[i]]]++] = i;
+        }
+        basins = null;
+        batchOfBasin = null;
+        positions = null;
+
+        pm.beginTask("Accumulating downstream...", batchesNum);
+        JGTTaskGroup taskGroup = JGTExecutionService.newTaskGroup(threadsNum, pm);
+        for( int b = 0; b < batchesNum; b++ ) {
+            final int batch = b;
+            taskGroup.execute(new Runnable(){
+                public void run() {
+                    accumulate(values, cells, batchStarts[batch], batchStarts[batch + 1], pm);
+                    pm.worked(1);
+                }
+            });
+        }
+        taskGroup.await();
+        pm.done();
+        return !taskGroup.isCanceled();
+    }
+
+    /**
+     * Check if a cell has been accumulated.
+     *
+     * @param index the index of the cell.
+     * @return <code>false</code> if the cell is on a loop of the flow or downstream of one.
+     */
+    public boolean isResolved( int index ) {
+        return donorsCount[index] == 0;
+    }
+
+    /**
+     * Accumulate a group of cells that no other group drains into.
+     */
+    private boolean accumulate( double[] values, int[] cells, int from, int to, IJGTProgressMonitor pm ) {
+        int[] queue = new int[to - from];
+        int head = 0;
+        int tail = 0;
+        for( int i = from; i < to; i++ ) {
+            if (donorsCount[cells[i]] == 0) {
+                queue[tail++] = cells[i];
+            }
+        }
+        while( head < tail ) {
+            int cell = queue[head++];
+            double value = values[cell];
+            int end = getReceiversEnd(cell);
+            for( int e = getReceiversStart(cell); e < end; e++ ) {
+                int receiver = receivers[e];
+                if (weights == null) {
+                    values[receiver] += value;
+                } else {
+                    values[receiver] += value * weights[e];
+                }
+                if (--donorsCount[receiver] == 0) {
+                    queue[tail++] = receiver;
+                }
+            }
+            if ((head & 0xFFFF) == 0 && pm.isCanceled()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Label every cell with the smallest cell index of its basin (union-find over the receivers).
+     */
+    private int[] getBasins() {
+        int[] parents = new int[cellsNum];
+        for( int i = 0; i < cellsNum; i++ ) {
+            parents[i] = i;
+        }
+        for( int i = 0; i < cellsNum; i++ ) {
+            int end = getReceiversEnd(i);
+            for( int e = getReceiversStart(i); e < end; e++ ) {
+                int root1 = findRoot(parents, i);
+                int root2 = findRoot(parents, receivers[e]);
+                if (root1 < root2) {
+                    parents[root2] = root1;
+                } else if (root2 < root1) {
+                    parents[root1] = root2;
+                }
+            }
+        }
+        for( int i = 0; i < cellsNum; i++ ) {
+            parents[i] = parents[parents[i]];
+        }
+        return parents;
+    }
+
+    private static int findRoot( int[] parents, int index ) {
+        while( parents[index] != index ) {
+            parents[index] = parents[parents[index]];
+            index = parents[index];
+        }
+        return index;
+    }
+
+    private int getReceiversStart( int cell ) {
+        if (receiverOffsets == null) {
+            return cell;
+        }
+        return receiverOffsets[cell];
+    }
+
+    private int getReceiversEnd( int cell ) {
+        if (receiverOffsets == null) {
+            return receivers[cell] == NO_RECEIVER ? cell : cell + 1;
+        }
+        return receiverOffsets[cell + 1];
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * The horizon angles of a dem, to shade it for any sun position.
+ *
+ * <p>For every cell and for a number of azimuth sectors, the elevation angle of
+ * the horizon seen from the cell is computed once. A cell is then in the shadow of
+ * the terrain if the sun is below the horizon in its direction, which is a lookup
+ * instead of a sweep of the whole dem for every sun position.</p>
+ *
+ * <p>The azimuth is measured clockwise from the north (the decreasing rows) and the
+ * sectors are centered on the azimuths <code>2&pi; s / sectorsNum</code>. The sun
+ * vectors follow the convention of {@link ModelsEngine#calculateFactor}: the first
+ * component along the columns, the second along the rows, the third up.</p>
+ *
+ * <p>The cells of a sector are swept along parallel lines, keeping the upper convex
+ * hull of the profile already visited: the horizon of a cell is the tangent from the
+ * cell to the hull, so every sector costs a time linear in the number of cells.
+ * The sectors are computed in parallel.</p>
+ *
+ * <p>The angles can be cached in a file, see {@link #create(Raster, double, int, File, int, IJGTProgressMonitor)},
+ * which is reused as long as the dem and the number of sectors don't change.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class HorizonEngine {
+    /**
+     * The extension of the horizon cache files.
+     */
+    public static final String EXTENSION = "hzn";
+
+    /**
+     * The angle of the horizon of cells with no terrain in front of them.
+     */
+    public static final float NO_HORIZON = (float) (-Math.PI / 2.0);
+
+    private static final int MAGIC = 0x4a47485a; // JGHZ
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 36;
+
+    private final int cols;
+    private final int rows;
+    private final double res;
+    private final int sectorsNum;
+    private final long demHash;
+    /**
+     * The horizon angles in radians, per sector, with the cells at index <code>row * cols + col</code>.
+     */
+    private final float[][] horizons;
+
+    private HorizonEngine( int cols, int rows, double res, int sectorsNum, long demHash ) {
+        this.cols = cols;
+        this.rows = rows;
+        this.res = res;
+        this.sectorsNum = sectorsNum;
+        this.demHash = demHash;
+        horizons = new float[sectorsNum][];
+    }
+
+    /**
+     * Get the horizon angles of a dem, reading them from a cache file if possible.
+     *
+     * @param demWR the dem, novalues have to be NaN or a value low enough to never cast a shadow.
+     * @param res the resolution of the dem.
+     * @param sectorsNum the number of azimuth sectors.
+     * @param cacheFile the file to read the angles from, if it was created for the same dem and sectors,
+     *              and to write them to otherwise. If <code>null</code>, no cache is used.
+     * @param threadsNum the number of threads to use, if < 1 the default.
+     * @param pm the progress monitor.
+     * @return the horizon angles.
+     * @throws IOException if the cache file can't be written.
+     */
+    public static HorizonEngine create( Raster demWR, double res, int sectorsNum, File cacheFile, int threadsNum,
+            IJGTProgressMonitor pm ) throws IOException {
+        if (sectorsNum < 1) {
+            throw new IllegalArgumentException("The number of sectors has to be positive.");
+        }
+        int cols = demWR.getWidth();
+        int rows = demWR.getHeight();
+        double[] elevation = demWR.getSamples(demWR.getMinX(), demWR.getMinY(), cols, rows, 0, new double[cols * rows]);
+        long demHash = hash(elevation, res);
+
+        if (cacheFile != null && cacheFile.exists()) {
+            try {
+                HorizonEngine cached = read(cacheFile);
+                if (cached.cols == cols && cached.rows == rows && cached.res == res && cached.sectorsNum == sectorsNum
+                        && cached.demHash == demHash) {
+                    return cached;
+                }
+            } catch (IOException e) {
+                // not a valid cache, it is computed again
+            }
+        }
+
+        HorizonEngine engine = new HorizonEngine(cols, rows, res, sectorsNum, demHash);
+        engine.compute(elevation, threadsNum, pm);
+        if (cacheFile != null) {
+            engine.write(cacheFile);
+        }
+        return engine;
+    }
+
+    private void compute( final double[] elevation, int threadsNum, final IJGTProgressMonitor pm ) {
+        pm.beginTask("Calculating the horizon angles...", sectorsNum);
+        JGTTaskGroup taskGroup = JGTExecutionService.newTaskGroup(threadsNum, pm);
+        for( int s = 0; s < sectorsNum; s++ ) {
+            final int sector = s;
+            taskGroup.execute(new Runnable(){
+                public void run() {
+                    horizons[sector] = sweep(elevation, 2.0 * Math.PI * sector / sectorsNum);
+                    pm.worked(1);
+                }
+            });
+        }
+        taskGroup.await();
+        pm.done();
+        if (taskGroup.isCanceled()) {
+            throw new IllegalStateException("The calculation of the horizon angles has been canceled.");
+        }
+    }
+
+    /**
+     * Compute the horizon angles of every cell in a direction.
+     *
+     * <p>The lines parallel to the direction are walked from the far end (the one the
+     * direction points to) backwards, one row or column per step like in
+     * {@link ModelsEngine#calculateFactor}. The lines start on every row (or column), so
+     * that every cell is on exactly one line.</p>
+     */
+    private float[] sweep( double[] elevation, double azimuth ) {
+        float[] horizon = new float[cols * rows];
+        double dirX = Math.sin(azimuth);
+        double dirY = -Math.cos(azimuth);
+        double m = Math.max(Math.abs(dirX), Math.abs(dirY));
+        double stepX = -dirX / m;
+        double stepY = -dirY / m;
+        double stepLength = res / m;
+
+        boolean isMajorX = Math.abs(stepX) >= Math.abs(stepY);
+        int majorSize = isMajorX ? cols : rows;
+        int minorSize = isMajorX ? rows : cols;
+        double majorStep = isMajorX ? stepX : stepY;
+        double minorStep = isMajorX ? stepY : stepX;
+        int majorStart = majorStep < 0 ? majorSize - 1 : 0;
+        int majorDelta = majorStep < 0 ? -1 : 1;
+
+        int[] minorOffsets = new int[majorSize];
+        for( int i = 0; i < majorSize; i++ ) {
+            minorOffsets[i] = (int) Math.round(i * minorStep);
+        }
+        int span = Math.abs(minorOffsets[majorSize - 1]);
+        int firstLine = minorStep > 0 ? -span : 0;
+        int lastLine = minorStep > 0 ? minorSize - 1 : minorSize - 1 + span;
+
+        double[] hullDistance = new double[majorSize];
+        double[] hullElevation = new double[majorSize];
+        for( int line = firstLine; line <= lastLine; line++ ) {
+            int hullSize = 0;
+            for( int i = 0; i < majorSize; i++ ) {
+                int minor = line + minorOffsets[i];
+                if (minor < 0 || minor >= minorSize) {
+                    continue;
+                }
+                int major = majorStart + i * majorDelta;
+                int index = isMajorX ? minor * cols + major : major * cols + minor;
+                double z = elevation[index];
+                if (Double.isNaN(z)) {
+                    horizon[index] = Float.NaN;
+                    continue;
+                }
+                double distance = i * stepLength;
+
+                // drop the hull points that are below the line from the previous one to this cell
+                while( hullSize >= 2
+                        && slope(hullDistance[hullSize - 2], hullElevation[hullSize - 2], distance, z) >= slope(
+                                hullDistance[hullSize - 1], hullElevation[hullSize - 1], distance, z) ) {
+                    hullSize--;
+                }
+                if (hullSize == 0) {
+                    horizon[index] = NO_HORIZON;
+                } else {
+                    horizon[index] = (float) Math.atan(slope(hullDistance[hullSize - 1], hullElevation[hullSize - 1],
+                            distance, z));
+                }
+                hullDistance[hullSize] = distance;
+                hullElevation[hullSize] = z;
+                hullSize++;
+            }
+        }
+        return horizon;
+    }
+
+    /**
+     * The tangent of the elevation angle of a point seen from a cell farther along the line.
+     */
+    private static double slope( double pointDistance, double pointElevation, double cellDistance, double cellElevation ) {
+        return (pointElevation - cellElevation) / (cellDistance - pointDistance);
+    }
+
+    /**
+     * @return the number of azimuth sectors.
+     */
+    public int getSectorsNum() {
+        return sectorsNum;
+    }
+
+    /**
+     * Get the horizon angle of a cell in a sector.
+     *
+     * @param col the column of the cell.
+     * @param row the row of the cell.
+     * @param sector the sector.
+     * @return the angle in radians, {@link #NO_HORIZON} if there is no terrain in front of the cell
+     *          or NaN for novalues.
+     */
+    public double getHorizon( int col, int row, int sector ) {
+        return horizons[sector][row * cols + col];
+    }
+
+    /**
+     * Get the horizon angle of a cell in a direction, interpolating between the two nearest sectors.
+     *
+     * @param col the column of the cell.
+     * @param row the row of the cell.
+     * @param azimuth the azimuth in radians.
+     * @return the angle in radians or NaN for novalues.
+     */
+    public double getHorizon( int col, int row, double azimuth ) {
+        double position = azimuth / (2.0 * Math.PI) * sectorsNum;
+        double floor = Math.floor(position);
+        double weight = position - floor;
+        int sector = (int) (floor % sectorsNum);
+        if (sector < 0) {
+            sector += sectorsNum;
+        }
+        int next = (sector + 1) % sectorsNum;
+        int index = row * cols + col;
+        return (1.0 - weight) * horizons[sector][index] + weight * horizons[next][index];
+    }
+
+    /**
+     * Get the shading factor of a cell, as {@link ModelsEngine#calculateFactor} does.
+     *
+     * @param col the column of the cell.
+     * @param row the row of the cell.
+     * @param sunVector the vector pointing to the sun.
+     * @return 1 if the cell is lit, 0 if it is in the shadow of the terrain.
+     */
+    public double getShadowFactor( int col, int row, double[] sunVector ) {
+        double horizontal = Math.sqrt(sunVector[0] * sunVector[0] + sunVector[1] * sunVector[1]);
+        double azimuth = Math.atan2(sunVector[0], -sunVector[1]);
+        double elevation = Math.atan2(sunVector[2], horizontal);
+        double horizon = getHorizon(col, row, azimuth);
+        if (Double.isNaN(horizon) || elevation > horizon) {
+            return 1.0;
+        }
+        return 0.0;
+    }
+
+    /**
+     * Get the sky view factor of a cell, the part of the sky hemisphere not hidden by the terrain.
+     *
+     * @param col the column of the cell.
+     * @param row the row of the cell.
+     * @return the sky view factor, between 0 and 1, or NaN for novalues.
+     */
+    public double getSkyviewFactor( int col, int row ) {
+        int index = row * cols + col;
+        double sum = 0;
+        for( int s = 0; s < sectorsNum; s++ ) {
+            double horizon = Math.max(0.0, horizons[s][index]);
+            double cos = Math.cos(horizon);
+            sum = sum + cos * cos;
+        }
+        return sum / sectorsNum;
+    }
+
+    private static long hash( double[] elevation, double res ) {
+        // FNV-1a over the bits of the values
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ Double.doubleToLongBits(res)) * 0x100000001b3L;
+        for( double z : elevation ) {
+            hash = (hash ^ Double.doubleToLongBits(z)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void write( File file ) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel fc = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(cols).putInt(rows).putInt(sectorsNum).putDouble(res).putLong(demHash);
+            header.flip();
+            writeFully(fc, header);
+
+            ByteBuffer buffer = ByteBuffer.allocate(4 * cols * rows).order(ByteOrder.LITTLE_ENDIAN);
+            for( int s = 0; s < sectorsNum; s++ ) {
+                buffer.clear();
+                buffer.asFloatBuffer().put(horizons[s]);
+                writeFully(fc, buffer);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static HorizonEngine read( File file ) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel fc = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(fc, header);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a horizon file: " + file);
+            }
+            if (header.getInt() != VERSION) {
+                throw new IOException("Unsupported horizon file version: " + file);
+            }
+            int cols = header.getInt();
+            int rows = header.getInt();
+            int sectorsNum = header.getInt();
+            double res = header.getDouble();
+            long demHash = header.getLong();
+            if (cols < 1 || rows < 1 || sectorsNum < 1 || fc.size() != HEADER_SIZE + 4L * cols * rows * sectorsNum) {
+                throw new IOException("The horizon file is corrupted: " + file);
+            }
+
+            HorizonEngine engine = new HorizonEngine(cols, rows, res, sectorsNum, demHash);
+            ByteBuffer buffer = ByteBuffer.allocate(4 * cols * rows).order(ByteOrder.LITTLE_ENDIAN);
+            for( int s = 0; s < sectorsNum; s++ ) {
+                buffer.clear();
+                readFully(fc, buffer);
+                engine.horizons[s] = new float[cols * rows];
+                buffer.asFloatBuffer().get(engine.horizons[s]);
+            }
+            return engine;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void readFully( FileChannel fc, ByteBuffer buffer ) throws IOException {
+        while( buffer.hasRemaining() ) {
+            if (fc.read(buffer) < 0) {
+                throw new IOException("The horizon file is truncated.");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully( FileChannel fc, ByteBuffer buffer ) throws IOException {
+        while( buffer.hasRemaining() ) {
+            fc.write(buffer);
+        }
+    }
+}
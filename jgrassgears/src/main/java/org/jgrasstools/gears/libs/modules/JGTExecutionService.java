@@ -0,0 +1,121 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * The process-wide work-stealing execution service.
+ *
+ * <p>All the modules share a single {@link ForkJoinPool}, so that modules chained
+ * in the same run do not oversubscribe the available cores and no pool has to be
+ * started and stopped for every call.</p>
+ *
+ * <p>Modules do not submit to the pool directly, but through a {@link JGTTaskGroup},
+ * which limits the number of threads the module uses, supports nesting and
+ * cancellation through the {@link IJGTProgressMonitor}.</p>
+ *
+ * <p>The parallelism defaults to the number of available processors and can be changed
+ * through the {@value #THREADS_PROPERTY} system property or {@link #setParallelism(int)}.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class JGTExecutionService {
+
+    /**
+     * The system property that can be used to set the shared parallelism.
+     */
+    public static final String THREADS_PROPERTY = "jgt.threads";
+
+    private static ForkJoinPool sharedPool;
+    private static int parallelism = -1;
+
+    private JGTExecutionService() {
+    }
+
+    /**
+     * Get the shared pool, creating it if necessary.
+     *
+     * @return the shared {@link ForkJoinPool}.
+     */
+    public static synchronized ForkJoinPool getSharedPool() {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool(getParallelism());
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Get the parallelism of the shared pool.
+     *
+     * @return the number of threads of the shared pool.
+     */
+    public static synchronized int getParallelism() {
+        if (parallelism < 1) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+            String threadsProperty = System.getProperty(THREADS_PROPERTY);
+            if (threadsProperty != null) {
+                try {
+                    int threads = Integer.parseInt(threadsProperty.trim());
+                    if (threads > 0) {
+                        parallelism = threads;
+                    }
+                } catch (NumberFormatException e) {
+                    // ignore and keep the number of processors
+                }
+            }
+        }
+        return parallelism;
+    }
+
+    /**
+     * Set the parallelism of the shared pool.
+     *
+     * <p>If the pool was already created with a different parallelism, a new one is created
+     * at the next request. The old pool is not shut down, since the groups created on it
+     * may still be running: they keep using it and its threads end once they are idle.</p>
+     *
+     * @param threadsNum the number of threads to use, if < 1 the number of processors is used.
+     */
+    public static synchronized void setParallelism( int threadsNum ) {
+        int newParallelism = threadsNum < 1 ? Runtime.getRuntime().availableProcessors() : threadsNum;
+        if (sharedPool != null && sharedPool.getParallelism() != newParallelism) {
+            sharedPool = null;
+        }
+        parallelism = newParallelism;
+    }
+
+    /**
+     * Create a new group of tasks that is executed in the shared pool.
+     *
+     * @param threadsNum the maximum number of threads the group is allowed to use at the same time.
+     *              If < 1, the parallelism of the pool is used.
+     * @param pm the monitor to check for cancellation. Can be <code>null</code>.
+     * @return the new task group.
+     */
+    public static JGTTaskGroup newTaskGroup( int threadsNum, IJGTProgressMonitor pm ) {
+        ForkJoinPool pool = getSharedPool();
+        if (threadsNum < 1) {
+            threadsNum = pool.getParallelism();
+        }
+        return new JGTTaskGroup(pool, threadsNum, pm);
+    }
+
+}
@@ -106,13 +106,25 @@ public class JGTModel implements Process {
     /**
      * Get the default number of threads.
      * 
-     * <p>At the moment this gives the number of processors.</p> 
+     * <p>This is the parallelism of the shared {@link JGTExecutionService}, 
+     * by default the number of processors.</p> 
      * 
      * @return the default number of threads.
      */
     public static int getDefaultThreadsNum() {
-        int availableProcessors = Runtime.getRuntime().availableProcessors();
-        return availableProcessors;
+        return JGTExecutionService.getParallelism();
+    }
+
+    /**
+     * Create a new group of tasks running in the shared work-stealing pool.
+     * 
+     * @param threadsNum the maximum number of threads the module wants to use. 
+     *              If < 1 the default number of threads is used.
+     * @param pm the monitor used to check for cancellation. Can be <code>null</code>.
+     * @return the new {@link JGTTaskGroup}.
+     */
+    public static JGTTaskGroup newTaskGroup( int threadsNum, IJGTProgressMonitor pm ) {
+        return JGTExecutionService.newTaskGroup(threadsNum, pm);
     }
 
     /**
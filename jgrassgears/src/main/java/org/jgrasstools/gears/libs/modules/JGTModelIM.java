@@ -25,15 +25,21 @@ import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
 
 import javax.media.jai.iterator.RandomIter;
 import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
+import oms3.annotations.Description;
+import oms3.annotations.In;
+
 import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
@@ -73,10 +79,19 @@ public abstract class JGTModelIM extends JGTModel {
 
     private List<ImageMosaicReader> readers = new ArrayList<ImageMosaicReader>();
 
-    protected List<RandomIter> inRasterIterators = new ArrayList<RandomIter>();
-    protected List<GridCoverage2D> inRasters = new ArrayList<GridCoverage2D>();
-    protected List<WritableRandomIter> outRasters = new ArrayList<WritableRandomIter>();
-    protected List<GridCoverage2D> outGridCoverages = new ArrayList<GridCoverage2D>();
+    /*
+     * the tile lists are bound to the thread processing the tile, so that 
+     * processCell can access them also when tiles are processed in parallel
+     */
+    private TileBoundList<RandomIter> tileInRasterIterators = new TileBoundList<RandomIter>();
+    private TileBoundList<GridCoverage2D> tileInRasters = new TileBoundList<GridCoverage2D>();
+    private TileBoundList<WritableRandomIter> tileOutRasters = new TileBoundList<WritableRandomIter>();
+    private TileBoundList<GridCoverage2D> tileOutGridCoverages = new TileBoundList<GridCoverage2D>();
+
+    protected List<RandomIter> inRasterIterators = tileInRasterIterators;
+    protected List<GridCoverage2D> inRasters = tileInRasters;
+    protected List<WritableRandomIter> outRasters = tileOutRasters;
+    protected List<GridCoverage2D> outGridCoverages = tileOutGridCoverages;
     private List<File> outRasterFiles = new ArrayList<File>();
 
     protected String locationField;
@@ -89,7 +104,17 @@ public abstract class JGTModelIM extends JGTModel {
 
     protected int cellBuffer = 0;
 
+    @Description("The number of tiles to process in parallel (1 processes the tiles sequentially).")
+    @In
+    public int pTileThreads = 1;
+
+    /**
+     * The grid geometry of the last read tile. 
+     * 
+     * <p>Not valid if tiles are processed in parallel, use {@link #getReadGridGeometry()}.</p>
+     */
     protected GridGeometry2D readGridGeometry;
+    private ThreadLocal<GridGeometry2D> currentReadGridGeometry = new ThreadLocal<GridGeometry2D>();
     private boolean isSingleInX = true;
     private boolean isSingleInY = true;
 
@@ -184,16 +209,17 @@ public abstract class JGTModelIM extends JGTModel {
     }
 
     protected void processByTileCells() throws Exception {
+        if (pTileThreads > 1) {
+            processByTileCellsParallel();
+            return;
+        }
         int size = boundsGeometries.size();
         int count = 0;
         // pm.beginTask("Processing tiles...", size);
         for( Geometry boundGeometry : boundsGeometries ) {
             count++;
             try {
-                pm.message("Processing tile " + boundGeometry.getUserData() + "(" + count + " of " + size + ")");
-                pm.message("\t\t->geom: " + boundGeometry.getEnvelopeInternal());
-                pm.message("\t\t->reading with cell buffer: " + cellBuffer);
-                pm.message("\t\t->reading with x/y resolution: " + xRes + "/" + yRes);
+                logTile(count, size, boundGeometry);
                 processGeometryByTileCell(count, boundGeometry);
             } catch (Exception e) {
                 pm.errorMessage("Problems found for tile: " + boundGeometry.getUserData());
@@ -205,7 +231,76 @@ public abstract class JGTModelIM extends JGTModel {
 
     }
 
+    /**
+     * Process the tiles with {@link #pTileThreads} tiles in flight.
+     * 
+     * <p>Every tile is read and processed by a single thread, to which the in and out
+     * iterators are confined. Processed tiles are written in tile order, while the
+     * following tiles are still being processed. The number of tiles held in memory
+     * is bounded to twice the number of threads.</p>
+     */
+    private void processByTileCellsParallel() throws Exception {
+        final int size = boundsGeometries.size();
+        final Semaphore tilesInMemory = new Semaphore(2 * pTileThreads);
+        final OrderedTileWriter tileWriter = new OrderedTileWriter(tilesInMemory);
+        // cancellation is checked by the tasks, since every tile has to release its permit
+        final JGTTaskGroup taskGroup = newTaskGroup(pTileThreads, null);
+
+        int count = 0;
+        for( final Geometry boundGeometry : boundsGeometries ) {
+            count++;
+            tilesInMemory.acquire();
+            if (tileWriter.error != null || isCanceled(pm)) {
+                tilesInMemory.release();
+                break;
+            }
+            final int tileIndex = count;
+            taskGroup.execute(new Runnable(){
+                public void run() {
+                    Tile tile = null;
+                    boolean isProcessed = false;
+                    try {
+                        if (!pm.isCanceled()) {
+                            logTile(tileIndex, size, boundGeometry);
+                            tile = readTile(tileIndex, boundGeometry);
+                            processTile(tile);
+                            isProcessed = true;
+                        }
+                    } catch (Exception e) {
+                        pm.errorMessage("Problems found for tile: " + boundGeometry.getUserData());
+                        tileWriter.setError(e);
+                    } finally {
+                        tileWriter.tileDone(tileIndex, isProcessed ? tile : null);
+                    }
+                }
+            });
+        }
+        taskGroup.await();
+
+        if (tileWriter.error != null) {
+            throw tileWriter.error;
+        }
+    }
+
+    private void logTile( int count, int size, Geometry boundGeometry ) {
+        pm.message("Processing tile " + boundGeometry.getUserData() + "(" + count + " of " + size + ")");
+        pm.message("\t\t->geom: " + boundGeometry.getEnvelopeInternal());
+        pm.message("\t\t->reading with cell buffer: " + cellBuffer);
+        pm.message("\t\t->reading with x/y resolution: " + xRes + "/" + yRes);
+    }
+
     private void processGeometryByTileCell( int count, Geometry boundGeometry ) throws IOException, TransformException, Exception {
+        Tile tile = readTile(count, boundGeometry);
+        readGridGeometry = tile.readGridGeometry;
+        processTile(tile);
+        writeTile(tile);
+    }
+
+    /**
+     * Create the output rasters and read the buffered input rasters of a tile.
+     */
+    private Tile readTile( int count, Geometry boundGeometry ) throws Exception {
+        Tile tile = new Tile(count);
         Envelope writeEnv = boundGeometry.getEnvelopeInternal();
 
         double writeEast = writeEnv.getMaxX();
@@ -214,6 +309,8 @@ public abstract class JGTModelIM extends JGTModel {
         double writeSouth = writeEnv.getMinY();
         int writeCols = (int) ((writeEast - writeWest) / xRes);
         int writeRows = (int) ((writeNorth - writeSouth) / yRes);
+        tile.writeCols = writeCols;
+        tile.writeRows = writeRows;
 
         Envelope readEnv = new Envelope(writeEnv);
         readEnv.expandBy(cellBuffer * xRes, cellBuffer * yRes);
@@ -225,34 +322,25 @@ public abstract class JGTModelIM extends JGTModel {
         // int readCols = (int) ((readEast - readWest) / xRes);
         // int readRows = (int) ((readNorth - readSouth) / yRes);
 
-        /*
-         * clear lists of in and out data local to the loop
-         */
-        outGridCoverages.clear();
-        inRasterIterators.clear();
-        inRasters.clear();
-        outRasters.clear();
-
-        GridGeometry2D writeGridGeometry = CoverageUtilities.gridGeometryFromRegionValues(writeNorth, writeSouth, writeEast,
-                writeWest, writeCols, writeRows, crs);
+        tile.writeGridGeometry = CoverageUtilities.gridGeometryFromRegionValues(writeNorth, writeSouth, writeEast, writeWest,
+                writeCols, writeRows, crs);
 
         for( File outRasterFile : outRasterFiles ) {
             File parentFile = outRasterFile.getParentFile();
             if (parentFile != null && parentFile.exists()) {
                 WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(writeCols, writeRows, null, null,
                         JGTConstants.doubleNovalue);
-                RegionMap writeParams = CoverageUtilities.gridGeometry2RegionParamsMap(writeGridGeometry);
+                RegionMap writeParams = CoverageUtilities.gridGeometry2RegionParamsMap(tile.writeGridGeometry);
                 GridCoverage2D writeGC = CoverageUtilities.buildCoverage(outRasterFile.getName(), outWR, writeParams, crs);
-                outGridCoverages.add(writeGC);
+                tile.outGridCoverages.add(writeGC);
                 WritableRandomIter outDataIter = CoverageUtilities.getWritableRandomIterator(outWR);
-                outRasters.add(outDataIter);
+                tile.outRasters.add(outDataIter);
             } else {
-                outGridCoverages.add(null);
-                outRasters.add(null);
+                tile.outGridCoverages.add(null);
+                tile.outRasters.add(null);
             }
         }
 
-        readGridGeometry = null;
         GeneralParameterValue[] readGeneralParameterValues = CoverageUtilities.createGridGeometryGeneralParameter(xRes, yRes,
                 readNorth, readSouth, readEast, readWest, crs);
 
@@ -260,12 +348,12 @@ public abstract class JGTModelIM extends JGTModel {
         for( ImageMosaicReader reader : readers ) {
             try {
                 GridCoverage2D readGC = reader.read(readGeneralParameterValues);
-                readGridGeometry = readGC.getGridGeometry();
+                tile.readGridGeometry = readGC.getGridGeometry();
                 // read raster at once, since a randomiter is way slower when wrapping borders
                 Raster readRaster = readGC.getRenderedImage().getData();
                 RandomIter readIter = RandomIterFactory.create(readRaster, null);
-                inRasterIterators.add(readIter);
-                inRasters.add(readGC);
+                tile.inRasterIterators.add(readIter);
+                tile.inRasters.add(readGC);
                 index++;
             } catch (Exception e) {
                 StringBuilder errSb = new StringBuilder();
@@ -274,12 +362,25 @@ public abstract class JGTModelIM extends JGTModel {
                 errSb.append("ERROR: with reader N." + index + ": " + Arrays.toString(reader.getGridCoverageNames()));
                 errSb.append("\nERROR: " + e.getLocalizedMessage());
                 pm.errorMessage(errSb.toString());
-                freeIterators();
+                freeIterators(tile);
                 // e.printStackTrace();
                 // return;
                 throw new IOException("Problems reading Mosaic!");
             }
         }
+        return tile;
+    }
+
+    /**
+     * Run {@link #processCell(int, int, int, int, int, int, int, int)} over a read tile.
+     * 
+     * <p>The in and out lists of the tile are bound to the current thread while processing.</p>
+     */
+    private void processTile( Tile tile ) throws Exception {
+        GridGeometry2D tileReadGridGeometry = tile.readGridGeometry;
+        GridGeometry2D writeGridGeometry = tile.writeGridGeometry;
+        int writeCols = tile.writeCols;
+        int writeRows = tile.writeRows;
 
         // Envelope allBoundsEnv = new Envelope(new Coordinate(llCorner[0], llCorner[1]), new
         // Coordinate(urCorner[0], urCorner[1]));
@@ -291,15 +392,15 @@ public abstract class JGTModelIM extends JGTModel {
         // int maxX = (int) round(transformed.getMaxX());
         // int minY = (int) round(transformed.getMinY());
 
-        GridCoordinates2D llGrid = readGridGeometry.worldToGrid(new DirectPosition2D(llCorner[0], llCorner[1]));
-        GridCoordinates2D urGrid = readGridGeometry.worldToGrid(new DirectPosition2D(urCorner[0], urCorner[1]));
+        GridCoordinates2D llGrid = tileReadGridGeometry.worldToGrid(new DirectPosition2D(llCorner[0], llCorner[1]));
+        GridCoordinates2D urGrid = tileReadGridGeometry.worldToGrid(new DirectPosition2D(urCorner[0], urCorner[1]));
         int minX = llGrid.x;
         int maxY = llGrid.y; // y grid is inverse
         int maxX = urGrid.x;
         int minY = urGrid.y;
 
         // is there a gridrange shift?
-        GridEnvelope2D gridRange2D = readGridGeometry.getGridRange2D();
+        GridEnvelope2D gridRange2D = tileReadGridGeometry.getGridRange2D();
         int readRows = gridRange2D.height;
         minY = minY + gridRange2D.y;
         // TODO check this out properly
@@ -316,6 +417,11 @@ public abstract class JGTModelIM extends JGTModel {
             maxX = maxX + gridRange2D.x;
         }
 
+        tileInRasterIterators.bind(tile.inRasterIterators);
+        tileInRasters.bind(tile.inRasters);
+        tileOutRasters.bind(tile.outRasters);
+        tileOutGridCoverages.bind(tile.outGridCoverages);
+        currentReadGridGeometry.set(tileReadGridGeometry);
         try {
             final GridCoordinates2D gridCoordinates2D = new GridCoordinates2D();
             for( int writeCol = 0; writeCol < writeCols; writeCol++ ) {
@@ -323,7 +429,7 @@ public abstract class JGTModelIM extends JGTModel {
                     gridCoordinates2D.x = writeCol;
                     gridCoordinates2D.y = writeRow;
                     DirectPosition writeGridToWorld = writeGridGeometry.gridToWorld(gridCoordinates2D);
-                    GridCoordinates2D worldToReadGrid = readGridGeometry.worldToGrid(writeGridToWorld);
+                    GridCoordinates2D worldToReadGrid = tileReadGridGeometry.worldToGrid(writeGridToWorld);
                     int readCol = worldToReadGrid.x;
                     int readRow = worldToReadGrid.y;
 
@@ -337,19 +443,27 @@ public abstract class JGTModelIM extends JGTModel {
             }
 
         } finally {
-            freeIterators();
+            freeIterators(tile);
+            // the pool threads are shared, do not leave the tile bound to them
+            currentReadGridGeometry.remove();
+            tileInRasterIterators.unbind();
+            tileInRasters.unbind();
+            tileOutRasters.unbind();
+            tileOutGridCoverages.unbind();
         }
+    }
 
+    private void writeTile( Tile tile ) throws Exception {
         for( int i = 0; i < outRasterFiles.size(); i++ ) {
             File outputFile = outRasterFiles.get(i);
-            GridCoverage2D writeGC = outGridCoverages.get(i);
+            GridCoverage2D writeGC = tile.outGridCoverages.get(i);
             if (writeGC != null) {
                 File outParentFolder = outputFile.getParentFile();
                 if (outParentFolder == null || !outParentFolder.exists()) {
                     continue;
                 }
                 String outBaseName = FileUtilities.getNameWithoutExtention(outputFile);
-                File outTileFile = new File(outParentFolder, outBaseName + "_" + count + ".tiff");
+                File outTileFile = new File(outParentFolder, outBaseName + "_" + tile.index + ".tiff");
                 OmsRasterWriter writer = new OmsRasterWriter();
                 writer.pm = new DummyProgressMonitor();
                 writer.inRaster = writeGC;
@@ -357,20 +471,35 @@ public abstract class JGTModelIM extends JGTModel {
                 writer.process();
             }
         }
-
     }
 
-    private void freeIterators() {
-        for( RandomIter inRasterIterator : inRasterIterators ) {
+    private void freeIterators( Tile tile ) {
+        for( RandomIter inRasterIterator : tile.inRasterIterators ) {
             if (inRasterIterator != null)
                 inRasterIterator.done();
         }
-        for( RandomIter outRasterIterator : outRasters ) {
+        for( RandomIter outRasterIterator : tile.outRasters ) {
             if (outRasterIterator != null)
                 outRasterIterator.done();
         }
     }
 
+    /**
+     * Get the grid geometry of the tile currently read.
+     * 
+     * <p>Contrary to {@link #readGridGeometry}, this is also valid when tiles are
+     * processed in parallel.</p>
+     * 
+     * @return the grid geometry of the read tile handled by the current thread.
+     */
+    protected GridGeometry2D getReadGridGeometry() {
+        GridGeometry2D gridGeometry = currentReadGridGeometry.get();
+        if (gridGeometry == null) {
+            return readGridGeometry;
+        }
+        return gridGeometry;
+    }
+
     protected void makeMosaic() throws Exception {
         for( int i = 0; i < outRasterFiles.size(); i++ ) {
             File outputFile = outRasterFiles.get(i);
@@ -430,4 +559,125 @@ public abstract class JGTModelIM extends JGTModel {
     protected abstract void processCell( int readCol, int readRow, int writeCol, int writeRow, int readCols, int readRows,
             int writeCols, int writeRows );
 
+    /**
+     * The data of a single tile.
+     */
+    private static class Tile {
+        final int index;
+        GridGeometry2D readGridGeometry;
+        GridGeometry2D writeGridGeometry;
+        int writeCols;
+        int writeRows;
+        final List<RandomIter> inRasterIterators = new ArrayList<RandomIter>();
+        final List<GridCoverage2D> inRasters = new ArrayList<GridCoverage2D>();
+        final List<WritableRandomIter> outRasters = new ArrayList<WritableRandomIter>();
+        final List<GridCoverage2D> outGridCoverages = new ArrayList<GridCoverage2D>();
+
+        Tile( int index ) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Writes processed tiles in tile order.
+     * 
+     * <p>The thread that finishes a tile writes all the tiles that are ready, 
+     * while only one thread at a time is writing.</p>
+     */
+    private class OrderedTileWriter {
+        private final Semaphore tilesInMemory;
+        private final TreeMap<Integer, Tile> doneTiles = new TreeMap<Integer, Tile>();
+        private int nextTileIndex = 1;
+        private boolean isWriting = false;
+        volatile Exception error;
+
+        OrderedTileWriter( Semaphore tilesInMemory ) {
+            this.tilesInMemory = tilesInMemory;
+        }
+
+        synchronized void setError( Exception e ) {
+            if (error == null) {
+                error = e;
+            }
+        }
+
+        /**
+         * @param tileIndex the index of the tile.
+         * @param tile the processed tile or <code>null</code>, if it failed.
+         */
+        void tileDone( int tileIndex, Tile tile ) {
+            synchronized (this) {
+                doneTiles.put(tileIndex, tile);
+                if (isWriting) {
+                    return;
+                }
+                isWriting = true;
+            }
+            while( true ) {
+                Tile nextTile;
+                synchronized (this) {
+                    if (!doneTiles.containsKey(nextTileIndex)) {
+                        isWriting = false;
+                        return;
+                    }
+                    nextTile = doneTiles.remove(nextTileIndex);
+                    nextTileIndex++;
+                }
+                try {
+                    if (nextTile != null && error == null) {
+                        writeTile(nextTile);
+                    }
+                } catch (Exception e) {
+                    pm.errorMessage("Problems writing tile: " + nextTile.index);
+                    setError(e);
+                } finally {
+                    tilesInMemory.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * A list whose content is local to the thread accessing it.
+     */
+    private static class TileBoundList<E> extends AbstractList<E> {
+        private final ThreadLocal<List<E>> threadList = new ThreadLocal<List<E>>(){
+            protected List<E> initialValue() {
+                return new ArrayList<E>();
+            }
+        };
+
+        void bind( List<E> list ) {
+            threadList.set(list);
+        }
+
+        void unbind() {
+            threadList.remove();
+        }
+
+        public E get( int index ) {
+            return threadList.get().get(index);
+        }
+
+        public int size() {
+            return threadList.get().size();
+        }
+
+        public E set( int index, E element ) {
+            return threadList.get().set(index, element);
+        }
+
+        public void add( int index, E element ) {
+            threadList.get().add(index, element);
+        }
+
+        public E remove( int index ) {
+            return threadList.get().remove(index);
+        }
+
+        public void clear() {
+            threadList.get().clear();
+        }
+    }
+
 }
@@ -0,0 +1,192 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * A group of tasks executed in the shared {@link JGTExecutionService} pool.
+ *
+ * <p>The group never occupies more than its thread budget in the pool. The thread
+ * that waits for the group helps executing the pending tasks, so groups can be
+ * nested (a task can create and wait for its own group) without starving the pool.</p>
+ *
+ * <p>If the progress monitor is canceled or {@link #cancel()} is called, the tasks
+ * that did not start yet are dropped.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class JGTTaskGroup {
+
+    private final ForkJoinPool pool;
+    private final int threadsNum;
+    private final IJGTProgressMonitor pm;
+
+    private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicInteger unfinishedTasks = new AtomicInteger();
+    private final Object finishLock = new Object();
+
+    private volatile boolean isCanceled = false;
+    private volatile Throwable firstError;
+
+    JGTTaskGroup( ForkJoinPool pool, int threadsNum, IJGTProgressMonitor pm ) {
+        this.pool = pool;
+        this.threadsNum = threadsNum;
+        this.pm = pm;
+    }
+
+    /**
+     * @return the maximum number of threads used by this group.
+     */
+    public int getThreadsNum() {
+        return threadsNum;
+    }
+
+    /**
+     * Add a task to the group.
+     *
+     * @param task the task to run.
+     */
+    public void execute( Runnable task ) {
+        if (isCanceled()) {
+            return;
+        }
+        unfinishedTasks.incrementAndGet();
+        pendingTasks.add(task);
+        startWorker();
+    }
+
+    /**
+     * Wait for all the tasks of the group to finish.
+     *
+     * <p>The calling thread executes pending tasks while waiting.</p>
+     *
+     * @throws RuntimeException the first unchecked exception thrown by a task, if any.
+     */
+    public void await() {
+        Runnable task;
+        while( (task = pendingTasks.poll()) != null ) {
+            runTask(task);
+        }
+        if (unfinishedTasks.get() > 0) {
+            try {
+                ForkJoinPool.managedBlock(new ManagedBlocker(){
+                    public boolean block() throws InterruptedException {
+                        synchronized (finishLock) {
+                            while( unfinishedTasks.get() > 0 ) {
+                                finishLock.wait();
+                            }
+                        }
+                        return true;
+                    }
+                    public boolean isReleasable() {
+                        return unfinishedTasks.get() == 0;
+                    }
+                });
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Throwable error = firstError;
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        }
+    }
+
+    /**
+     * Drop all the tasks that did not start yet.
+     */
+    public void cancel() {
+        isCanceled = true;
+        while( pendingTasks.poll() != null ) {
+            taskFinished();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the group or its progress monitor were canceled.
+     */
+    public boolean isCanceled() {
+        if (!isCanceled && pm != null && pm.isCanceled()) {
+            isCanceled = true;
+        }
+        return isCanceled;
+    }
+
+    private void startWorker() {
+        while( true ) {
+            int active = activeWorkers.get();
+            if (active >= threadsNum) {
+                return;
+            }
+            if (activeWorkers.compareAndSet(active, active + 1)) {
+                pool.execute(new Worker());
+                return;
+            }
+        }
+    }
+
+    private void runTask( Runnable task ) {
+        try {
+            if (!isCanceled()) {
+                task.run();
+            }
+        } catch (Throwable t) {
+            if (firstError == null) {
+                firstError = t;
+            }
+        } finally {
+            taskFinished();
+        }
+    }
+
+    private void taskFinished() {
+        if (unfinishedTasks.decrementAndGet() == 0) {
+            synchronized (finishLock) {
+                finishLock.notifyAll();
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            try {
+                Runnable task;
+                while( (task = pendingTasks.poll()) != null ) {
+                    runTask(task);
+                }
+            } finally {
+                activeWorkers.decrementAndGet();
+            }
+            // a task might have been added while this worker was exiting
+            if (!pendingTasks.isEmpty()) {
+                startWorker();
+            }
+        }
+    }
+}
@@ -35,6 +35,8 @@ import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
@@ -238,7 +240,7 @@ public class ModelsEngine {
 
         CoordinateList coordlist = new CoordinateList();
         RandomIter m1RandomIter = RandomIterFactory.create(flowImage, null);
-        RandomIter netNumRandomIter = RandomIterFactory.create(netNumImage, null);
+        RandomIter netNumRandomIter = CoverageUtilities.getRandomIterator(netNumImage);
         // GEOMETRY
         // creates new LineSting array
         LineString[] newGeometry = new LineString[nstream.size()];
@@ -711,14 +713,19 @@ public class ModelsEngine {
         RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(flowGC);
         int cols = regionMap.getCols();
         int rows = regionMap.getRows();
-        WritableRaster netnumWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
-        WritableRandomIter netnumIter = RandomIterFactory.createWritable(netnumWR, null);
 
         RandomIter flowIter = CoverageUtilities.getRandomIterator(flowGC);
         RandomIter netIter = CoverageUtilities.getRandomIterator(netGC);
-        RandomIter tcaIter = null;
-        if (tcaGC != null)
-            tcaIter = CoverageUtilities.getRandomIterator(tcaGC);
+        D8Grid flowGrid = D8Grid.read(flowIter, cols, rows);
+        D8Grid netGrid = D8Grid.read(netIter, cols, rows);
+        flowIter.done();
+        netIter.done();
+        double[] tca = null;
+        if (tcaGC != null) {
+            RandomIter tcaIter = CoverageUtilities.getRandomIterator(tcaGC);
+            tca = D8Grid.read(tcaIter, cols, rows).getValues();
+            tcaIter.done();
+        }
 
         /*
          * split nodes are points that create new numbering:
@@ -726,8 +733,10 @@ public class ModelsEngine {
          * - confluences
          * - supplied points
          */
-        List<FlowNode> splitNodes = new ArrayList<FlowNode>();
-        List<Boolean> splitNodesIsNetStart = new ArrayList<Boolean>();
+        int[] splitCells = new int[64];
+        int splitsNum = 0;
+        BitSet isSplitCell = new BitSet(cols * rows);
+        BitSet splitIsNetStart = new BitSet();
         // SUPPLIED POINTS
         if (pointsFC != null) {
             Envelope envelope = regionMap.toEnvelope();
@@ -741,82 +750,83 @@ public class ModelsEngine {
 
                     GridCoordinates2D gridCoordinate = gridGeometry.worldToGrid(new DirectPosition2D(pointCoordinate.x,
                             pointCoordinate.y));
-
-                    GridNode netNode = new GridNode(netIter, cols, rows, -1, -1, gridCoordinate.x, gridCoordinate.y);
-                    FlowNode flowNode = new FlowNode(flowIter, cols, rows, gridCoordinate.x, gridCoordinate.y);
-                    while( !netNode.isValid() ) {
-                        flowNode = flowNode.goDownstream();
-                        if (flowNode == null)
-                            break;
-                        netNode = new GridNode(netIter, cols, rows, -1, -1, flowNode.col, flowNode.row);
+                    if (!flowGrid.isInRaster(gridCoordinate.x, gridCoordinate.y)) {
+                        continue;
+                    }
+                    int cell = flowGrid.index(gridCoordinate.x, gridCoordinate.y);
+                    while( cell != D8Grid.NO_CELL && !netGrid.isValid(cell) ) {
+                        cell = flowGrid.getDownstream(cell);
                     }
-                    if (flowNode != null) {
-                        splitNodes.add(flowNode);
-                        splitNodesIsNetStart.add(false);
+                    if (cell != D8Grid.NO_CELL) {
+                        if (splitsNum == splitCells.length) {
+                            splitCells = Arrays.copyOf(splitCells, splitsNum * 2);
+                        }
+                        splitCells[splitsNum++] = cell;
+                        isSplitCell.set(cell);
                     }
                 }
             }
+            pointsIter.close();
         }
 
         // FIND CONFLUENCES AND NETWORK STARTING POINTS (MOST UPSTREAM)
         pm.beginTask("Find confluences...", rows);
         for( int r = 0; r < rows; r++ ) {
             for( int c = 0; c < cols; c++ ) {
-                GridNode netNode = new GridNode(netIter, cols, rows, -1, -1, c, r);
-                if (netNode.isValid()) {
-                    List<GridNode> validSurroundingNodes = netNode.getValidSurroundingNodes();
-                    FlowNode currentflowNode = new FlowNode(flowIter, cols, rows, c, r);
+                int cell = netGrid.index(c, r);
+                if (netGrid.isValid(cell)) {
                     int enteringCount = 0;
-                    for( GridNode gridNode : validSurroundingNodes ) {
-                        FlowNode tmpNode = new FlowNode(flowIter, cols, rows, gridNode.col, gridNode.row);
-                        List<FlowNode> enteringNodes = currentflowNode.getEnteringNodes();
-                        if (enteringNodes.contains(tmpNode)) {
+                    for( int k = 1; k <= 8; k++ ) {
+                        int neighbour = netGrid.getNeighbour(c, r, k);
+                        if (neighbour != D8Grid.NO_CELL && netGrid.isValid(neighbour) && flowGrid.flowsInto(cell, k)) {
                             enteringCount++;
                         }
                     }
                     if (enteringCount != 1) {
                         // starting (==0) + confluences (>1)
-                        splitNodes.add(currentflowNode);
+                        if (splitsNum == splitCells.length) {
+                            splitCells = Arrays.copyOf(splitCells, splitsNum * 2);
+                        }
                         if (enteringCount == 0) {
-                            splitNodesIsNetStart.add(true);
-                        } else {
-                            splitNodesIsNetStart.add(false);
+                            splitIsNetStart.set(splitsNum);
                         }
+                        splitCells[splitsNum++] = cell;
+                        isSplitCell.set(cell);
                     }
                 }
             }
             pm.worked(1);
         }
         pm.done();
-        pm.message("Found split points: " + splitNodes.size());
+        pm.message("Found split points: " + splitsNum);
 
+        double[] netnum = new double[cols * rows];
         int channel = 1;
-        pm.beginTask("Numbering network...", splitNodes.size());
-        for( int i = 0; i < splitNodes.size(); i++ ) {
-            FlowNode splitNode = splitNodes.get(i);
-            boolean isNetStart = splitNodesIsNetStart.get(i);
+        pm.beginTask("Numbering network...", splitsNum);
+        for( int i = 0; i < splitsNum; i++ ) {
+            int splitCell = splitCells[i];
 
             // we simply go down to the next split with one number
-            splitNode.setValueInMap(netnumIter, channel);
+            netnum[splitCell] = channel;
 
             // if it is a net start, check the tca if it exists
-            if (isNetStart) {
-                double netStartTca = splitNode.getValueFromMap(tcaIter);
+            if (splitIsNetStart.get(i) && tca != null) {
+                double netStartTca = tca[splitCell];
                 if (!isNovalue(netStartTca) && netStartTca > tcaThreshold) {
                     channel++;
                 }
             }
 
-            FlowNode nextNode = splitNode.goDownstream();
+            int nextCell = flowGrid.getDownstream(splitCell);
             double startTca = doubleNovalue;
-            if (nextNode != null)
-                startTca = nextNode.getValueFromMap(tcaIter);
-            while( nextNode != null && !splitNodes.contains(nextNode) ) {
-                nextNode.setValueInMap(netnumIter, channel);
-                nextNode = nextNode.goDownstream();
+            if (nextCell != D8Grid.NO_CELL && tca != null)
+                startTca = tca[nextCell];
+            while( nextCell != D8Grid.NO_CELL && !isSplitCell.get(nextCell) ) {
+                netnum[nextCell] = channel;
+                nextCell = flowGrid.getDownstream(nextCell);
                 double endTca = doubleNovalue;
-                if (nextNode != null)
-                    endTca = nextNode.getValueFromMap(tcaIter);
+                if (nextCell != D8Grid.NO_CELL && tca != null)
+                    endTca = tca[nextCell];
                 if (!isNovalue(startTca) && !isNovalue(endTca)) {
                     double diffTca = endTca - startTca;
                     if (diffTca > tcaThreshold) {
@@ -829,6 +839,9 @@ public class ModelsEngine {
             pm.worked(1);
         }
         pm.done();
+
+        WritableRaster netnumWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
+        netnumWR.setSamples(0, 0, cols, rows, 0, netnum);
         return netnumWR;
     }
 
@@ -854,7 +867,7 @@ public class ModelsEngine {
         }
 
         WritableRaster subbasinWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
-        WritableRandomIter subbasinIter = RandomIterFactory.createWritable(subbasinWR, null);
+        WritableRandomIter subbasinIter = CoverageUtilities.getWritableRandomIterator(subbasinWR);
 
         markHillSlopeWithLinkValue(flowIter, netNumberIter, subbasinIter, cols, rows, pm);
 
@@ -890,47 +903,48 @@ public class ModelsEngine {
      */
     public static void markHillSlopeWithLinkValue( RandomIter flowIter, RandomIter attributeIter, WritableRandomIter markedIter,
             int cols, int rows, IJGTProgressMonitor pm ) {
+        D8Grid flowGrid = D8Grid.read(flowIter, cols, rows);
         pm.beginTask("Marking the hillslopes with the channel value...", rows);
         for( int r = 0; r < rows; r++ ) {
             for( int c = 0; c < cols; c++ ) {
-                FlowNode flowNode = new FlowNode(flowIter, cols, rows, c, r);
-                if (flowNode.isHeadingOutside()) {
+                int cell = flowGrid.index(c, r);
+                if (flowGrid.touchesBound(cell) && flowGrid.getDownstream(cell) == D8Grid.NO_CELL) {
                     // ignore single cells on borders that exit anyway
                     continue;
                 }
 
-                if (flowNode.isMarkedAsOutlet()) {
-                    double attributeValue = flowNode.getValueFromMap(attributeIter);
-                    flowNode.setValueInMap(markedIter, attributeValue);
+                if (flowGrid.isOutlet(cell)) {
+                    double attributeValue = attributeIter.getSampleDouble(c, r, 0);
+                    markedIter.setSample(c, r, 0, attributeValue);
                     continue;
                 }
-                if (flowNode.isValid() && flowNode.isSource()) {
+                if (flowGrid.isSource(cell)) {
                     /*
                      * run down to the net to find the
                      * attribute map content on the net 
                      */
                     double attributeValue = doubleNovalue;
-                    FlowNode runningNode = flowNode.goDownstream();
+                    int runningCell = flowGrid.getDownstream(cell);
                     int runningRow = -1;
                     int runningCol = -1;
-                    while( runningNode != null && runningNode.isValid() ) {
-                        runningRow = runningNode.row;
-                        runningCol = runningNode.col;
-                        if (runningNode.isMarkedAsOutlet()) {
-                            attributeValue = runningNode.getValueFromMap(attributeIter);
+                    while( runningCell != D8Grid.NO_CELL ) {
+                        runningRow = flowGrid.row(runningCell);
+                        runningCol = flowGrid.col(runningCell);
+                        if (flowGrid.isOutlet(runningCell)) {
+                            attributeValue = attributeIter.getSampleDouble(runningCol, runningRow, 0);
                             break;
                         }
-                        runningNode = runningNode.goDownstream();
+                        runningCell = flowGrid.getDownstream(runningCell);
                     }
                     if (!isNovalue(attributeValue)) {
                         // run down marking the hills
-                        runningNode = flowNode;
-                        while( runningNode != null && runningNode.isValid() ) {
-                            runningNode.setValueInMap(markedIter, attributeValue);
-                            if (runningNode.isMarkedAsOutlet()) {
+                        runningCell = cell;
+                        while( runningCell != D8Grid.NO_CELL ) {
+                            markedIter.setSample(flowGrid.col(runningCell), flowGrid.row(runningCell), 0, attributeValue);
+                            if (flowGrid.isOutlet(runningCell)) {
                                 break;
                             }
-                            runningNode = runningNode.goDownstream();
+                            runningCell = flowGrid.getDownstream(runningCell);
                         }
                     } else {
                         throw new ModelsIllegalargumentException(
@@ -1122,10 +1136,6 @@ public class ModelsEngine {
      */
     public static WritableRaster sumDownstream( RandomIter flowIter, RandomIter mapToSumIter, int width, int height,
             Double upperThreshold, Double lowerThreshold, IJGTProgressMonitor pm ) {
-        final int[] point = new int[2];
-        WritableRaster summedMapWR = CoverageUtilities.createDoubleWritableRaster(width, height, null, null, null);
-        WritableRandomIter summedMapIter = RandomIterFactory.createWritable(summedMapWR, null);
-
         double uThres = Double.POSITIVE_INFINITY;
         if (upperThreshold != null) {
             uThres = upperThreshold;
@@ -1135,41 +1145,35 @@ public class ModelsEngine {
             lThres = lowerThreshold;
         }
 
-        pm.beginTask("Calculating downstream sum...", height);
+        /*
+         * only the valid cells inside the thresholds take part in the sum
+         */
+        double[] summed = new double[width * height];
         for( int r = 0; r < height; r++ ) {
             for( int c = 0; c < width; c++ ) {
                 double mapToSumValue = mapToSumIter.getSampleDouble(c, r, 0);
-                if (!isNovalue(flowIter.getSampleDouble(c, r, 0)) && //
-                        mapToSumValue < uThres && //
-                        mapToSumValue > lThres //
-                ) {
-                    point[0] = c;
-                    point[1] = r;
-                    while( flowIter.getSampleDouble(point[0], point[1], 0) < 9
-                            && //
-                            !isNovalue(flowIter.getSampleDouble(point[0], point[1], 0))
-                            && (checkRange(mapToSumIter.getSampleDouble(point[0], point[1], 0), uThres, lThres)) ) {
-
-                        double sumValue = summedMapIter.getSampleDouble(point[0], point[1], 0)
-                                + mapToSumIter.getSampleDouble(c, r, 0);
-
-                        summedMapIter.setSample(point[0], point[1], 0, sumValue);
-
-                        if (!go_downstream(point, flowIter.getSampleDouble(point[0], point[1], 0)))
-                            return null;
-                    }
-
-                    double sumValue = summedMapIter.getSampleDouble(point[0], point[1], 0)
-                            + mapToSumIter.getSampleDouble(c, r, 0);
-                    summedMapIter.setSample(point[0], point[1], 0, sumValue);
+                if (!isNovalue(flowIter.getSampleDouble(c, r, 0)) && checkRange(mapToSumValue, uThres, lThres)) {
+                    summed[r * width + c] = mapToSumValue;
                 } else {
-                    summedMapIter.setSample(c, r, 0, doubleNovalue);
+                    summed[r * width + c] = doubleNovalue;
                 }
             }
-            pm.worked(1);
         }
-        pm.done();
+        int[] receivers = DownstreamAccumulator.getD8Receivers(flowIter, width, height);
+        for( int i = 0; i < receivers.length; i++ ) {
+            int receiver = receivers[i];
+            if (receiver != DownstreamAccumulator.NO_RECEIVER && (isNovalue(summed[i]) || isNovalue(summed[receiver]))) {
+                receivers[i] = DownstreamAccumulator.NO_RECEIVER;
+            }
+        }
 
+        DownstreamAccumulator accumulator = DownstreamAccumulator.singleReceiver(receivers);
+        if (!accumulator.accumulate(summed, JGTExecutionService.getParallelism(), pm)) {
+            return null;
+        }
+
+        WritableRaster summedMapWR = CoverageUtilities.createDoubleWritableRaster(width, height, null, null, null);
+        summedMapWR.setSamples(0, 0, width, height, 0, summed);
         return summedMapWR;
     }
 
@@ -18,38 +18,36 @@
 package org.jgrasstools.gears.libs.modules;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 
 /**
  * Multithreading util class.
  * 
+ * <p>The runnables are executed in the shared pool of the {@link JGTExecutionService},
+ * using at most the requested number of threads.</p>
+ * 
  * @author Andrea Antonello (www.hydrologis.com)
  */
 public class ThreadedRunnable<E> {
 
-    private ExecutorService fixedThreadPool;
+    private JGTTaskGroup taskGroup;
     private ConcurrentLinkedQueue<E> queue = new ConcurrentLinkedQueue<E>();
     private IJGTProgressMonitor pm;
 
     public ThreadedRunnable( int numThreads, IJGTProgressMonitor pm ) {
         this.pm = pm;
-        fixedThreadPool = Executors.newFixedThreadPool(numThreads);
+        taskGroup = JGTExecutionService.newTaskGroup(numThreads, pm);
     }
 
     public void executeRunnable( Runnable runner ) {
-        fixedThreadPool.execute(runner);
+        taskGroup.execute(runner);
     }
 
     public void waitAndClose() {
         try {
-            fixedThreadPool.shutdown();
-            fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
-            fixedThreadPool.shutdownNow();
-        } catch (InterruptedException e) {
+            taskGroup.await();
+        } catch (RuntimeException e) {
             e.printStackTrace();
         }
         if (pm != null) {
@@ -43,7 +43,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -208,7 +207,7 @@ public class OmsBobTheBuilder extends JGTModel {
 
         WritableRaster outputWR = CoverageUtilities
                 .createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter outputIter = RandomIterFactory.createWritable(outputWR, null);
+        WritableRandomIter outputIter = CoverageUtilities.getWritableRandomIterator(outputWR);
 
         DefaultFeatureCollection newCollection = new DefaultFeatureCollection();
         newCollection.add(polygonMate.getFeature());
@@ -189,7 +189,7 @@ public class OmsCarver extends JGTModel {
 
         RandomIter dtmIter = RandomIterFactory.create(dtmRI, null);
         RandomIter depthIter = RandomIterFactory.create(depthRI, null);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
         for( int x = 0; x < dtmRI.getWidth(); x++ ) {
             for( int y = 0; y < dtmRI.getHeight(); y++ ) {
                 double dtmValue = dtmIter.getSampleDouble(x, y, 0);
@@ -128,7 +128,7 @@ public class OmsCutOut extends JGTModel {
         }
 
         WritableRaster outWR = CoverageUtilities.renderedImage2WritableRaster(geodataRI, false);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         pm.beginTask("Processing map...", nRows);
         for( int i = 0; i < nRows; i++ ) {
@@ -80,7 +80,7 @@ public class OmsKernelFilter extends JGTModel {
         RandomIter inIter = RandomIterFactory.create(inImg, null);
 
         WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         float[] kernelData = kernel.getKernelData();
         pm.beginTask("Processing...", cols - 2 * pRadius);
@@ -40,12 +40,8 @@ import static org.jgrasstools.gears.libs.modules.Variables.TPS;
 
 import java.awt.image.WritableRaster;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -70,6 +66,7 @@ import org.geotools.data.simple.SimpleFeatureIterator;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
 import org.jgrasstools.gears.modules.r.interpolation2d.core.IDWInterpolator;
 import org.jgrasstools.gears.modules.r.interpolation2d.core.ISurfaceInterpolator;
 import org.jgrasstools.gears.modules.r.interpolation2d.core.TPSInterpolator;
@@ -203,13 +200,13 @@ public class OmsSurfaceInterpolator extends JGTModel {
 
         WritableRaster interpolatedWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null,
                 JGTConstants.doubleNovalue);
-        final WritableRandomIter interpolatedIter = RandomIterFactory.createWritable(interpolatedWR, null);
+        final WritableRandomIter interpolatedIter = CoverageUtilities.getWritableRandomIterator(interpolatedWR);
 
         boolean doMultiThread = pMaxThreads > 1;
 
-        ExecutorService fixedThreadPool = null;
+        JGTTaskGroup taskGroup = null;
         if (doMultiThread)
-            fixedThreadPool = Executors.newFixedThreadPool(pMaxThreads);
+            taskGroup = newTaskGroup(pMaxThreads, pm);
 
         pm.beginTask("Performing interpolation...", rows);
 
@@ -222,20 +219,14 @@ public class OmsSurfaceInterpolator extends JGTModel {
                         processing(cols, coordinatesSpatialTree, interpolatedIter, eval, row);
                     }
                 };
-                fixedThreadPool.execute(runner);
+                taskGroup.execute(runner);
             } else {
                 processing(cols, coordinatesSpatialTree, interpolatedIter, eval, row);
             }
         }
 
         if (doMultiThread) {
-            try {
-                fixedThreadPool.shutdown();
-                fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
-                fixedThreadPool.shutdownNow();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            taskGroup.await();
         }
         pm.done();
 
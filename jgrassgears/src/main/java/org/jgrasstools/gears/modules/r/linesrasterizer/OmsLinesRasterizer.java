@@ -42,7 +42,6 @@ import static org.jgrasstools.gears.utils.geometry.GeometryUtilities.getGeometry
 import java.awt.image.WritableRaster;
 import java.util.List;
 
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -166,7 +165,7 @@ public class OmsLinesRasterizer extends JGTModel {
 
         WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(regionMap.getCols(), regionMap.getRows(), null, null,
                 JGTConstants.doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         List<FeatureMate> matesList = FeatureUtilities.featureCollectionToMatesList(inVector);
         pm.beginTask("Rasterizing lines...", matesList.size());
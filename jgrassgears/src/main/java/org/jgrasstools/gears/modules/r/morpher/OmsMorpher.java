@@ -31,7 +31,6 @@ import static org.jgrasstools.gears.libs.modules.Variables.SKELETONIZE3;
 
 import java.awt.image.WritableRaster;
 
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -156,8 +155,8 @@ public class OmsMorpher extends JGTModel {
         double xres = regionMap.getXres();
         double yres = regionMap.getYres();
 
-        WritableRandomIter inIter = RandomIterFactory.createWritable(inWR, null);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter inIter = CoverageUtilities.getWritableRandomIterator(inWR);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         int[][] kernel = MorpherHelp.getSquareKernelMatrix(kernelArray);
 
@@ -218,8 +217,8 @@ public class OmsMorpher extends JGTModel {
         double xres = regionMap.getXres();
         double yres = regionMap.getYres();
 
-        WritableRandomIter inIter = RandomIterFactory.createWritable(inWR, null);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter inIter = CoverageUtilities.getWritableRandomIterator(inWR);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         int[][] kernel = MorpherHelp.getSquareKernelMatrix(kernelArray);
 
@@ -301,8 +300,8 @@ public class OmsMorpher extends JGTModel {
     public static void skeletonize( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[][] kernels ) {
         int cols = regionMap.getCols();
         int rows = regionMap.getRows();
-        WritableRandomIter inIter = RandomIterFactory.createWritable(inWR, null);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter inIter = CoverageUtilities.getWritableRandomIterator(inWR);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
         BinaryFast binaryData = toBinaryFast(cols, rows, inIter);
 
         new Thin().processSkeleton(binaryData, kernels);
@@ -313,8 +312,8 @@ public class OmsMorpher extends JGTModel {
     public static void prune( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[][] kernels, int iterations ) {
         int cols = regionMap.getCols();
         int rows = regionMap.getRows();
-        WritableRandomIter inIter = RandomIterFactory.createWritable(inWR, null);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter inIter = CoverageUtilities.getWritableRandomIterator(inWR);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
         BinaryFast binaryData = toBinaryFast(cols, rows, inIter);
 
         new Thin().processPruning(binaryData, iterations, kernels);
@@ -325,8 +324,8 @@ public class OmsMorpher extends JGTModel {
     public static void lineendings( WritableRaster inWR, RegionMap regionMap, WritableRaster outWR, int[][] kernels ) {
         int cols = regionMap.getCols();
         int rows = regionMap.getRows();
-        WritableRandomIter inIter = RandomIterFactory.createWritable(inWR, null);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter inIter = CoverageUtilities.getWritableRandomIterator(inWR);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
         BinaryFast binaryData = toBinaryFast(cols, rows, inIter);
 
         new Thin().processLineendings(binaryData, kernels);
@@ -173,7 +173,7 @@ public class OmsMosaic extends JGTModel {
         int endHeight = np - sp;
         WritableRaster outputWR = CoverageUtilities.createDoubleWritableRaster(endWidth, endHeight, null, null,
                 JGTConstants.doubleNovalue);
-        WritableRandomIter outputIter = RandomIterFactory.createWritable(outputWR, null);
+        WritableRandomIter outputIter = CoverageUtilities.getWritableRandomIterator(outputWR);
 
         int offestX = Math.abs(wp);
         int offestY = Math.abs(sp);
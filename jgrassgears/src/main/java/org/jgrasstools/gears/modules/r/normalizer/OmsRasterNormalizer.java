@@ -25,7 +25,6 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -86,7 +85,7 @@ public class OmsRasterNormalizer extends JGTModel {
         RandomIter rasterIter = CoverageUtilities.getRandomIterator(inRaster);
 
         WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         pm.beginTask("Normalizing...", nRows);
         for( int r = 0; r < nRows; r++ ) {
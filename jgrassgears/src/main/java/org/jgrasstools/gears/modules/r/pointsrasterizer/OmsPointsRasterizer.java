@@ -35,7 +35,6 @@ import static org.jgrasstools.gears.utils.geometry.GeometryUtilities.getGeometry
 import java.awt.image.WritableRaster;
 import java.util.List;
 
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -113,7 +112,7 @@ public class OmsPointsRasterizer extends JGTModel {
 
         WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(regionMap.getCols(), regionMap.getRows(), null, null,
                 JGTConstants.doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         List<FeatureMate> matesList = FeatureUtilities.featureCollectionToMatesList(inVector);
         double value = 0;
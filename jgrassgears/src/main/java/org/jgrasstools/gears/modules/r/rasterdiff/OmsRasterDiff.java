@@ -37,7 +37,6 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -104,7 +103,7 @@ public class OmsRasterDiff extends JGTModel {
         RandomIter r2Iter = CoverageUtilities.getRandomIterator(inRaster2);
 
         WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(outWR);
 
         pm.beginTask("Subtracting raster...", cols);
         for( int c = 0; c < cols; c++ ) {
@@ -43,9 +43,6 @@ import static org.jgrasstools.gears.utils.geometry.GeometryUtilities.getGeometry
 
 import java.awt.image.WritableRaster;
 import java.text.MessageFormat;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import javax.media.jai.iterator.RandomIter;
 
@@ -74,6 +71,7 @@ import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
@@ -227,7 +225,7 @@ public class OmsScanLineRasterizer extends JGTModel {
         pm.beginTask("Rasterizing features...", size);
         FeatureIterator<SimpleFeature> featureIterator = inVector.features();
 
-        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(getDefaultThreadsNum());
+        JGTTaskGroup taskGroup = newTaskGroup(getDefaultThreadsNum(), pm);
 
         while( featureIterator.hasNext() ) {
             final SimpleFeature feature = featureIterator.next();
@@ -315,16 +313,9 @@ public class OmsScanLineRasterizer extends JGTModel {
                     }
                 }
             };
-            fixedThreadPool.execute(runner);
-        }
-
-        try {
-            fixedThreadPool.shutdown();
-            fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
-            fixedThreadPool.shutdownNow();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            taskGroup.execute(runner);
         }
+        taskGroup.await();
         pm.done();
         featureIterator.close();
     }
@@ -23,6 +23,8 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_LICENSE;
 
 import java.awt.image.Raster;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -47,7 +49,9 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTModelIM;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
 import org.jgrasstools.gears.utils.features.FeatureUtilities;
 import org.jgrasstools.gears.utils.math.NumericsUtilities;
 import org.opengis.feature.simple.SimpleFeature;
@@ -125,6 +129,12 @@ public class OmsZonalStatsIM extends JGTModelIM {
         allGeometriesQueue.addAll(geometriesList);
         ConcurrentLinkedQueue<Geometry> keepGeometriesQueue;
         ConcurrentLinkedQueue<Geometry> removeGeometriesQueue;
+        JGTTaskGroup taskGroup = null;
+        List<double[]> binsTotals = new ArrayList<double[]>();
+        List<List<Object[]>> binsValues = new ArrayList<List<Object[]>>();
+        if (pTileThreads > 1) {
+            taskGroup = newTaskGroup(pTileThreads, pm);
+        }
         pm.beginTask("Processing polygons...", xBins.length - 1);
         for( int x = 0; x < xBins.length - 1; x++ ) {
             for( int y = 0; y < yBins.length - 1; y++ ) {
@@ -151,48 +161,40 @@ public class OmsZonalStatsIM extends JGTModelIM {
                 }
 
                 // pm.message("" + readEnvelope);
-                GridCoverage2D readGC = getGridCoverage(0, readEnvelope);
-                GridGeometry2D gridGeometry = readGC.getGridGeometry();
-                Raster readRaster = readGC.getRenderedImage().getData();
-                RandomIter readIter = RandomIterFactory.create(readRaster, null);
-                for( Geometry geometry : removeGeometriesQueue ) {
-                    double[] polygonStats = OmsZonalStats.polygonStats(geometry, gridGeometry, readIter, hasUserTotalMean,
-                            tm_usertm_tactivecells, pPercentageThres, pm);
-                    if (polygonStats == null) {
-                        continue;
-                    }
-
-                    Object[] values;
-                    if (pTotalMean == null) {
-                        values = new Object[]{geometry, //
-                                polygonStats[0], //
-                                polygonStats[1], //
-                                polygonStats[2], //
-                                polygonStats[3], //
-                                polygonStats[4], //
-                                (int) polygonStats[5], //
-                                (int) polygonStats[6] //
-                        };
-                    } else {
-                        values = new Object[]{geometry, //
-                                polygonStats[0], //
-                                polygonStats[1], //
-                                polygonStats[2], //
-                                polygonStats[3], //
-                                polygonStats[4], //
-                                polygonStats[5], //
-                                (int) polygonStats[6], //
-                                (int) polygonStats[7] //
-                        };
-                    }
-
-                    featureBuilder.addAll(values);
-                    SimpleFeature feature = featureBuilder.buildFeature(null);
-                    ((DefaultFeatureCollection) outVector).add(feature);
+                if (pTileThreads > 1) {
+                    final Envelope binReadEnvelope = readEnvelope;
+                    final ConcurrentLinkedQueue<Geometry> binGeometries = removeGeometriesQueue;
+                    final double[] binTotals = new double[]{0.0, tm_usertm_tactivecells[1], 0.0};
+                    final List<Object[]> binValues = new ArrayList<Object[]>();
+                    binsTotals.add(binTotals);
+                    binsValues.add(binValues);
+                    taskGroup.execute(new Runnable(){
+                        public void run() {
+                            try {
+                                processBin(binGeometries, binReadEnvelope, binTotals, binValues);
+                            } catch (Exception e) {
+                                throw new ModelsRuntimeException(e.getLocalizedMessage(), OmsZonalStatsIM.this);
+                            }
+                        }
+                    });
+                } else {
+                    List<Object[]> binValues = new ArrayList<Object[]>();
+                    processBin(removeGeometriesQueue, readEnvelope, tm_usertm_tactivecells, binValues);
+                    addFeatures(featureBuilder, binValues);
                 }
             }
             pm.worked(1);
         }
+        if (taskGroup != null) {
+            taskGroup.await();
+            // merge the bins in bin order, as the sequential run would
+            for( int i = 0; i < binsValues.size(); i++ ) {
+                double[] binTotals = binsTotals.get(i);
+                tm_usertm_tactivecells[0] = tm_usertm_tactivecells[0] + binTotals[0];
+                tm_usertm_tactivecells[2] = tm_usertm_tactivecells[2] + binTotals[2];
+                addFeatures(featureBuilder, binsValues.get(i));
+            }
+        }
         pm.done();
 
         if (!hasUserTotalMean) {
@@ -203,6 +205,64 @@ public class OmsZonalStatsIM extends JGTModelIM {
         dispose();
     }
 
+    /**
+     * Calculate the stats of the polygons of a bin.
+     * 
+     * @param geometries the polygons of the bin.
+     * @param readEnvelope the envelope containing all the polygons.
+     * @param tm_utm_tac the array of the totals to update.
+     * @param valuesList the list to which the feature values are added.
+     * @throws Exception
+     */
+    private void processBin( Collection<Geometry> geometries, Envelope readEnvelope, double[] tm_utm_tac,
+            List<Object[]> valuesList ) throws Exception {
+        boolean hasUserTotalMean = pTotalMean != null;
+        GridCoverage2D readGC = getGridCoverage(0, readEnvelope);
+        GridGeometry2D gridGeometry = readGC.getGridGeometry();
+        Raster readRaster = readGC.getRenderedImage().getData();
+        RandomIter readIter = RandomIterFactory.create(readRaster, null);
+        for( Geometry geometry : geometries ) {
+            double[] polygonStats = OmsZonalStats.polygonStats(geometry, gridGeometry, readIter, hasUserTotalMean, tm_utm_tac,
+                    pPercentageThres, pm);
+            if (polygonStats == null) {
+                continue;
+            }
+
+            Object[] values;
+            if (!hasUserTotalMean) {
+                values = new Object[]{geometry, //
+                        polygonStats[0], //
+                        polygonStats[1], //
+                        polygonStats[2], //
+                        polygonStats[3], //
+                        polygonStats[4], //
+                        (int) polygonStats[5], //
+                        (int) polygonStats[6] //
+                };
+            } else {
+                values = new Object[]{geometry, //
+                        polygonStats[0], //
+                        polygonStats[1], //
+                        polygonStats[2], //
+                        polygonStats[3], //
+                        polygonStats[4], //
+                        polygonStats[5], //
+                        (int) polygonStats[6], //
+                        (int) polygonStats[7] //
+                };
+            }
+            valuesList.add(values);
+        }
+    }
+
+    private void addFeatures( SimpleFeatureBuilder featureBuilder, List<Object[]> valuesList ) {
+        for( Object[] values : valuesList ) {
+            featureBuilder.addAll(values);
+            SimpleFeature feature = featureBuilder.buildFeature(null);
+            ((DefaultFeatureCollection) outVector).add(feature);
+        }
+    }
+
     protected void processCell( int readCol, int readRow, int writeCol, int writeRow, int readCols, int readRows, int writeCols,
             int writeRows ) {
         // not used in this case
@@ -47,8 +47,6 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSTMSGENERATOR_pWest_DES
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -73,6 +71,7 @@ import org.jgrasstools.gears.libs.exceptions.ModelsIOException;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
 import org.jgrasstools.gears.utils.features.FeatureUtilities;
 import org.jgrasstools.gears.utils.files.FileUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
@@ -330,7 +329,7 @@ public class OmsTmsGenerator extends JGTModel {
 
             final ReferencedEnvelope levelBounds = new ReferencedEnvelope(mercatorCrs);
 
-            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+            JGTTaskGroup taskGroup = newTaskGroup(threads, pm);
 
             pm.beginTask("Generating tiles at zoom level: " + z, (endXTile - startXTile + 1) * (endYTile - startYTile + 1));
             for( int i = startXTile; i <= endXTile; i++ ) {
@@ -379,7 +378,7 @@ public class OmsTmsGenerator extends JGTModel {
                                 pm.worked(1);
                             }
                         };
-                        fixedThreadPool.execute(runner);
+                        taskGroup.execute(runner);
 
                     } else {
                         File imageFolder = new File(baseFolder, z + "/" + i);
@@ -414,18 +413,11 @@ public class OmsTmsGenerator extends JGTModel {
                                 }
                             }
                         };
-                        fixedThreadPool.execute(runner);
+                        taskGroup.execute(runner);
                     }
                 }
             }
-            try {
-                fixedThreadPool.shutdown();
-                while( !fixedThreadPool.isTerminated() ) {
-                    Thread.sleep(100);
-                }
-            } catch (InterruptedException exx) {
-                exx.printStackTrace();
-            }
+            taskGroup.await();
             pm.done();
 
             pm.message("Zoom level: " + z + " has " + tileNum + " tiles.");
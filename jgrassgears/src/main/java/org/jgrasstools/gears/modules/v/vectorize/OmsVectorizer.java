@@ -50,7 +50,6 @@ import javax.media.jai.JAI;
 import javax.media.jai.ParameterBlockJAI;
 import javax.media.jai.RenderedOp;
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
@@ -253,7 +252,7 @@ public class OmsVectorizer extends JGTModel {
         RandomIter rasterIter = CoverageUtilities.getRandomIterator(inRaster);
         WritableRaster[] holder = new WritableRaster[1];
         GridCoverage2D outGC = CoverageUtilities.createCoverageFromTemplate(inRaster, JGTConstants.doubleNovalue, holder);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(holder[0], null);
+        WritableRandomIter outIter = CoverageUtilities.getWritableRandomIterator(holder[0]);
 
         pm.beginTask("Masking map...", nRows);
         for( int r = 0; r < nRows; r++ ) {
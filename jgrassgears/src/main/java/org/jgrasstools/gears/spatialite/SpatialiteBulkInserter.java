@@ -0,0 +1,283 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.spatialite;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * A bulk inserter of records into a table.
+ *
+ * <p>The records are inserted through a single prepared statement in batches,
+ * with one transaction per chunk of records. The geometries are passed as WKB.</p>
+ *
+ * <p>While the inserter is open, the database is tuned for the load (no disk
+ * synchronization, journal in memory) and the spatial index of the table is dropped.
+ * On {@link #close()} the settings are restored and the spatial index is rebuilt
+ * at once.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * try (SpatialiteBulkInserter inserter = db.createBulkInserter("roads", new String[]{"name", "type"}, 0)) {
+ *     inserter.insert(geometry, name, type);
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class SpatialiteBulkInserter implements AutoCloseable {
+
+    /**
+     * The default number of records inserted in a transaction.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    /**
+     * The batch size of the statement.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The page cache used during the load, in KiB (negative as by sqlite convention).
+     */
+    private static final int LOAD_CACHE_SIZE = -65536;
+
+    private final Connection conn;
+    private final String tableName;
+    private final SpatialiteGeometryColumns geometryColumns;
+    private final int chunkSize;
+    private final int valuesNum;
+    private final PreparedStatement pStmt;
+    private final WKBWriter wkbWriter = new WKBWriter();
+
+    private final boolean previousAutoCommit;
+    private final String previousSynchronous;
+    private final String previousJournalMode;
+    private final String previousCacheSize;
+    private boolean rebuildSpatialIndex = false;
+
+    private long insertedCount = 0;
+    private int inBatch = 0;
+    private int inChunk = 0;
+    private boolean isClosed = false;
+
+    /**
+     * Create the inserter, see {@link SpatialiteDb#createBulkInserter(String, String[], int)}.
+     */
+    SpatialiteBulkInserter( SpatialiteDb db, String tableName, String[] columnNames, int chunkSize ) throws SQLException {
+        this.conn = db.getConnection();
+        this.tableName = tableName;
+        this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+        valuesNum = columnNames.length;
+        geometryColumns = db.getGeometryColumnsForTable(tableName);
+
+        StringBuilder names = new StringBuilder();
+        StringBuilder qMarks = new StringBuilder();
+        for( int i = 0; i < columnNames.length; i++ ) {
+            if (i != 0) {
+                names.append(",");
+                qMarks.append(",");
+            }
+            names.append(columnNames[i]);
+            qMarks.append("?");
+        }
+        if (geometryColumns != null) {
+            if (names.length() > 0) {
+                names.append(",");
+                qMarks.append(",");
+            }
+            names.append(geometryColumns.f_geometry_column);
+            qMarks.append("GeomFromWKB(?, ").append(geometryColumns.srid).append(")");
+        }
+        String sql = "INSERT INTO " + tableName + " (" + names + ") VALUES (" + qMarks + ")";
+
+        // the journal mode can't be changed inside a transaction
+        previousAutoCommit = conn.getAutoCommit();
+        previousSynchronous = getPragma("synchronous");
+        previousJournalMode = getPragma("journal_mode");
+        previousCacheSize = getPragma("cache_size");
+        boolean isOpen = false;
+        try {
+            setPragma("synchronous", "OFF");
+            setPragma("journal_mode", "MEMORY");
+            setPragma("cache_size", String.valueOf(LOAD_CACHE_SIZE));
+
+            if (geometryColumns != null && geometryColumns.spatial_index_enabled == 1) {
+                rebuildSpatialIndex = true;
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SELECT DisableSpatialIndex('" + tableName + "', '" + geometryColumns.f_geometry_column + "')");
+                    stmt.execute("DROP TABLE IF EXISTS idx_" + tableName + "_" + geometryColumns.f_geometry_column);
+                }
+            }
+
+            conn.setAutoCommit(false);
+            pStmt = conn.prepareStatement(sql);
+            isOpen = true;
+        } finally {
+            if (!isOpen) {
+                // leave the database as it was found
+                restoreDatabase();
+            }
+        }
+    }
+
+    /**
+     * Insert a record.
+     *
+     * @param geometry the geometry of the record, ignored if the table is not spatial.
+     * @param values the values of the record, in the order of the columns of the inserter.
+     * @throws SQLException if the insert fails. The records of the current chunk are rolled back.
+     */
+    public void insert( Geometry geometry, Object... values ) throws SQLException {
+        if (values.length != valuesNum) {
+            throw new IllegalArgumentException("Expected " + valuesNum + " values, got " + values.length + ".");
+        }
+        try {
+            for( int i = 0; i < valuesNum; i++ ) {
+                setValue(i + 1, values[i]);
+            }
+            if (geometryColumns != null) {
+                if (geometry == null) {
+                    pStmt.setNull(valuesNum + 1, Types.BLOB);
+                } else {
+                    pStmt.setBytes(valuesNum + 1, wkbWriter.write(geometry));
+                }
+            }
+            pStmt.addBatch();
+            insertedCount++;
+            inChunk++;
+            if (++inBatch == BATCH_SIZE) {
+                pStmt.executeBatch();
+                inBatch = 0;
+            }
+            if (inChunk == chunkSize) {
+                conn.commit();
+                inChunk = 0;
+            }
+        } catch (SQLException e) {
+            rollbackChunk();
+            throw e;
+        }
+    }
+
+    /**
+     * Roll back the records of the current chunk, also those still in the batch.
+     */
+    private void rollbackChunk() throws SQLException {
+        conn.rollback();
+        pStmt.clearBatch();
+        insertedCount -= inChunk;
+        inBatch = 0;
+        inChunk = 0;
+    }
+
+    private void setValue( int index, Object object ) throws SQLException {
+        if (object == null) {
+            pStmt.setNull(index, Types.NULL);
+        } else if (object instanceof Double) {
+            pStmt.setDouble(index, (Double) object);
+        } else if (object instanceof Float) {
+            pStmt.setFloat(index, (Float) object);
+        } else if (object instanceof Integer) {
+            pStmt.setInt(index, (Integer) object);
+        } else if (object instanceof Long) {
+            pStmt.setLong(index, (Long) object);
+        } else if (object instanceof String) {
+            pStmt.setString(index, (String) object);
+        } else if (object instanceof Geometry) {
+            pStmt.setString(index, ((Geometry) object).toText());
+        } else {
+            pStmt.setString(index, object.toString());
+        }
+    }
+
+    /**
+     * @return the number of records inserted so far.
+     */
+    public long getInsertedCount() {
+        return insertedCount;
+    }
+
+    /**
+     * Commit the pending records, restore the database settings and rebuild the spatial index.
+     * 
+     * @throws SQLException if the commit fails. The records of the last chunk are rolled back.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            if (inBatch > 0) {
+                pStmt.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            // roll back before restoring the autocommit, which would commit the chunk
+            rollbackChunk();
+            throw e;
+        } finally {
+            pStmt.close();
+            restoreDatabase();
+        }
+    }
+
+    /**
+     * Restore the settings changed for the load and rebuild the spatial index, if it was dropped.
+     */
+    private void restoreDatabase() throws SQLException {
+        conn.setAutoCommit(previousAutoCommit);
+        setPragma("synchronous", previousSynchronous);
+        setPragma("journal_mode", previousJournalMode);
+        setPragma("cache_size", previousCacheSize);
+        if (rebuildSpatialIndex) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SELECT CreateSpatialIndex('" + tableName + "', '" + geometryColumns.f_geometry_column + "')");
+            }
+        }
+    }
+
+    private String getPragma( String name ) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("PRAGMA " + name);
+            if (rs.next()) {
+                return rs.getString(1);
+            }
+            return null;
+        }
+    }
+
+    private void setPragma( String name, String value ) throws SQLException {
+        if (value == null) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA " + name + " = " + value);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.spatialite;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+
+/**
+ * A cursor over the records of a query.
+ *
+ * <p>The records are read one at a time from the database, so that tables of any size
+ * can be scanned in constant memory. The geometry of a record is kept as WKB and decoded
+ * only when asked for.</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * try (SpatialiteCursor cursor = db.getTableCursor("roads", new String[]{"name"}, envelope, -1)) {
+ *     while( cursor.next() ) {
+ *         Geometry geometry = cursor.getGeometry();
+ *         Object name = cursor.getObject(1);
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class SpatialiteCursor implements AutoCloseable {
+    private final Statement stmt;
+    private final ResultSet rs;
+    private final List<String> names = new ArrayList<String>();
+    private final List<String> types = new ArrayList<String>();
+    private final int columnCount;
+    private int geometryIndex = -1;
+
+    private WKBReader wkbReader;
+    private Geometry geometry;
+    private boolean isGeometryRead;
+
+    /**
+     * Run a query, see {@link SpatialiteDb#getTableCursor(String, String[], com.vividsolutions.jts.geom.Envelope, int)}
+     * and {@link SpatialiteDb#getRawSqlCursor(String)}.
+     *
+     * @param geometryColumn the name of the column holding the geometry as WKB. If <code>null</code>,
+     *              the first column that looks like a geometry is used.
+     */
+    SpatialiteCursor( Connection conn, String sql, String geometryColumn ) throws SQLException {
+        stmt = conn.createStatement();
+        try {
+            rs = stmt.executeQuery(sql);
+            ResultSetMetaData rsmd = rs.getMetaData();
+            columnCount = rsmd.getColumnCount();
+            for( int i = 1; i <= columnCount; i++ ) {
+                String columnName = rsmd.getColumnName(i);
+                String columnTypeName = rsmd.getColumnTypeName(i);
+                names.add(columnName);
+                types.add(columnTypeName);
+                if (geometryIndex == -1) {
+                    if (geometryColumn != null) {
+                        if (columnName.equals(geometryColumn)) {
+                            geometryIndex = i - 1;
+                        }
+                    } else if (columnTypeName.equals("BLOB") && SpatialiteGeometryType.forValue(rsmd.getColumnType(i)) != null) {
+                        geometryIndex = i - 1;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the names of the columns.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return the type names of the columns.
+     */
+    public List<String> getTypes() {
+        return Collections.unmodifiableList(types);
+    }
+
+    /**
+     * @return the index of the geometry column or -1.
+     */
+    public int getGeometryIndex() {
+        return geometryIndex;
+    }
+
+    /**
+     * Move to the next record.
+     *
+     * @return <code>false</code> if there are no more records.
+     * @throws SQLException
+     */
+    public boolean next() throws SQLException {
+        geometry = null;
+        isGeometryRead = false;
+        return rs.next();
+    }
+
+    /**
+     * Get a value of the current record.
+     *
+     * <p>For the geometry column this is the raw WKB, see {@link #getGeometry()}.</p>
+     *
+     * @param index the index of the column, starting from 0.
+     * @return the value.
+     * @throws SQLException
+     */
+    public Object getObject( int index ) throws SQLException {
+        return rs.getObject(index + 1);
+    }
+
+    /**
+     * Get the geometry of the current record.
+     *
+     * @return the geometry, or <code>null</code> if there is no geometry column or the value is null.
+     * @throws SQLException
+     * @throws ParseException if the geometry is not WKB.
+     */
+    public Geometry getGeometry() throws SQLException, ParseException {
+        if (!isGeometryRead) {
+            isGeometryRead = true;
+            if (geometryIndex != -1) {
+                byte[] geomBytes = rs.getBytes(geometryIndex + 1);
+                if (geomBytes != null) {
+                    if (wkbReader == null) {
+                        wkbReader = new WKBReader();
+                    }
+                    geometry = wkbReader.read(geomBytes);
+                }
+            }
+        }
+        return geometry;
+    }
+
+    /**
+     * Get all the values of the current record, with the geometry decoded.
+     *
+     * @return the record, as in {@link QueryResult#data}.
+     * @throws SQLException
+     * @throws ParseException if the geometry is not WKB.
+     */
+    public Object[] getRecord() throws SQLException, ParseException {
+        Object[] rec = new Object[columnCount];
+        for( int i = 0; i < columnCount; i++ ) {
+            if (i == geometryIndex) {
+                rec[i] = getGeometry();
+            } else {
+                rec[i] = rs.getObject(i + 1);
+            }
+        }
+        return rec;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+    }
+}
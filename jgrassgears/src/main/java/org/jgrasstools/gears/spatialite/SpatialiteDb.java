@@ -263,6 +263,24 @@ public class SpatialiteDb implements AutoCloseable {
         }
     }
 
+    /**
+     * Create a bulk inserter of records into a table.
+     * 
+     * <p>Until the inserter is closed, the connection is dedicated to it.</p>
+     * 
+     * @param tableName the table to insert into.
+     * @param columnNames the names of the non geometric columns to fill, in the order 
+     *              of the values passed to {@link SpatialiteBulkInserter#insert(Geometry, Object...)}.
+     * @param chunkSize the number of records inserted in a transaction. If < 1, 
+     *              {@link SpatialiteBulkInserter#DEFAULT_CHUNK_SIZE} is used.
+     * @return the inserter, to close at the end of the load.
+     * @throws SQLException
+     */
+    public SpatialiteBulkInserter createBulkInserter( String tableName, String[] columnNames, int chunkSize )
+            throws SQLException {
+        return new SpatialiteBulkInserter(this, tableName, columnNames, chunkSize);
+    }
+
     /**
      * Get the list of available tables.
      * 
@@ -513,6 +531,47 @@ public class SpatialiteDb implements AutoCloseable {
         if (!alsoPK_UID)
             tableColumns.remove(PK_UID);
 
+        try (SpatialiteCursor cursor = getTableCursor(tableName, tableColumns.toArray(new String[0]), envelope, limit)) {
+            queryResult.names.addAll(cursor.getNames());
+            queryResult.types.addAll(cursor.getTypes());
+            queryResult.geometryIndex = cursor.getGeometryIndex();
+            while( cursor.next() ) {
+                queryResult.data.add(cursor.getRecord());
+            }
+            return queryResult;
+        }
+    }
+
+    /**
+     * Open a cursor over the records of a table.
+     * 
+     * <p>The geometry, if the table is spatial, is the first column of the records.</p>
+     * 
+     * @param tableName the table name.
+     * @param columns the non geometric columns to read. If <code>null</code>, all of them are read.
+     * @param envelope if not <code>null</code>, only the records with geometry intersecting 
+     *              the envelope are read, through the spatial index.
+     * @param limit if > 0 a limit is set.
+     * @return the cursor, to close after use.
+     * @throws SQLException
+     */
+    public SpatialiteCursor getTableCursor( String tableName, String[] columns, Envelope envelope, int limit )
+            throws SQLException {
+        SpatialiteGeometryColumns gCol = getGeometryColumnsForTable(tableName);
+        boolean hasGeom = gCol != null;
+
+        List<String> tableColumns = new ArrayList<>();
+        if (columns != null) {
+            tableColumns.addAll(Arrays.asList(columns));
+        } else {
+            for( String[] info : getTableColumns(tableName) ) {
+                tableColumns.add(info[0]);
+            }
+            if (hasGeom) {
+                tableColumns.remove(gCol.f_geometry_column);
+            }
+        }
+
         String sql = "SELECT ";
         if (hasGeom) {
             sql += "ST_AsBinary(" + gCol.f_geometry_column + ") AS " + gCol.f_geometry_column;
@@ -534,39 +593,21 @@ public class SpatialiteDb implements AutoCloseable {
         if (limit > 0) {
             sql += " LIMIT " + limit;
         }
-        WKBReader wkbReader = new WKBReader();
-        try (Statement stmt = conn.createStatement()) {
-            ResultSet rs = stmt.executeQuery(sql);
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int columnCount = rsmd.getColumnCount();
-
-            for( int i = 1; i <= columnCount; i++ ) {
-                String columnName = rsmd.getColumnName(i);
-                queryResult.names.add(columnName);
-                String columnTypeName = rsmd.getColumnTypeName(i);
-                queryResult.types.add(columnTypeName);
-                if (hasGeom && columnName.equals(gCol.f_geometry_column)) {
-                    queryResult.geometryIndex = i - 1;
-                }
-            }
+        return new SpatialiteCursor(conn, sql, hasGeom ? gCol.f_geometry_column : null);
+    }
 
-            while( rs.next() ) {
-                int i = 1;
-                Object[] rec = new Object[columnCount];
-                if (hasGeom) {
-                    byte[] geomBytes = rs.getBytes(i);
-                    Geometry geometry = wkbReader.read(geomBytes);
-                    rec[i - 1] = geometry;
-                    i++;
-                }
-                for( int j = i; j <= columnCount; j++ ) {
-                    Object object = rs.getObject(j);
-                    rec[j - 1] = object;
-                }
-                queryResult.data.add(rec);
-            }
-            return queryResult;
-        }
+    /**
+     * Open a cursor over the records of a query from raw sql.
+     * 
+     * <p>Geometries need to be selected as WKB (ex. <code>ST_AsBinary(the_geom)</code>) to be
+     * decoded by {@link SpatialiteCursor#getGeometry()}.</p>
+     * 
+     * @param sql the sql to run.
+     * @return the cursor, to close after use.
+     * @throws SQLException
+     */
+    public SpatialiteCursor getRawSqlCursor( String sql ) throws SQLException {
+        return new SpatialiteCursor(conn, sql, null);
     }
 
     /**
@@ -718,23 +759,9 @@ public class SpatialiteDb implements AutoCloseable {
     public List<Geometry> getGeometriesIn( String tableName, Envelope envelope ) throws SQLException, ParseException {
         List<Geometry> geoms = new ArrayList<Geometry>();
 
-        SpatialiteGeometryColumns gCol = getGeometryColumnsForTable(tableName);
-        String sql = "SELECT ST_AsBinary(" + gCol.f_geometry_column + ") FROM " + tableName;
-
-        if (envelope != null) {
-            double x1 = envelope.getMinX();
-            double y1 = envelope.getMinY();
-            double x2 = envelope.getMaxX();
-            double y2 = envelope.getMaxY();
-            sql += " WHERE " + getSpatialindexBBoxWherePiece(tableName, null, x1, y1, x2, y2);
-        }
-        WKBReader wkbReader = new WKBReader();
-        try (Statement stmt = conn.createStatement()) {
-            ResultSet rs = stmt.executeQuery(sql);
-            while( rs.next() ) {
-                byte[] geomBytes = rs.getBytes(1);
-                Geometry geometry = wkbReader.read(geomBytes);
-                geoms.add(geometry);
+        try (SpatialiteCursor cursor = getTableCursor(tableName, new String[0], envelope, -1)) {
+            while( cursor.next() ) {
+                geoms.add(cursor.getGeometry());
             }
             return geoms;
         }
@@ -18,8 +18,6 @@
 package org.jgrasstools.gears.spatialite;
 
 import java.io.File;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -138,68 +136,44 @@ public class SpatialiteImportUtils {
             tableColumns.add(item[0]);
         }
         SpatialiteGeometryColumns geometryColumns = db.getGeometryColumnsForTable(tableName);
-        String gCol = geometryColumns.f_geometry_column;
 
         int epsg = geometryColumns.srid;
         CoordinateReferenceSystem crs = CRS.decode("EPSG:" + epsg);
         ReprojectingFeatureCollection repFeatures = new ReprojectingFeatureCollection(features, crs);
         SimpleFeatureIterator featureIterator = repFeatures.features();
 
-        String valueNames = "";
-        String qMarks = "";
-        for( AttributeDescriptor attributeDescriptor : attributeDescriptors ) {
+        List<String> valueNames = new ArrayList<String>();
+        List<Integer> valueIndexes = new ArrayList<Integer>();
+        for( int i = 0; i < attributeDescriptors.size(); i++ ) {
+            AttributeDescriptor attributeDescriptor = attributeDescriptors.get(i);
             String attrName = attributeDescriptor.getLocalName();
-            if (attrName.equals(SpatialiteDb.PK_UID)) {
+            if (attrName.equals(SpatialiteDb.PK_UID) || attributeDescriptor instanceof GeometryDescriptor) {
                 continue;
             }
-            if (attributeDescriptor instanceof GeometryDescriptor) {
-                valueNames += "," + gCol;
-                qMarks += ",GeomFromText(?, " + epsg + ")";
-            } else {
-                if (!tableColumns.contains(attrName)) {
-                    throw new IllegalArgumentException("The imported shapefile doesn't seem to match the table's schema.");
-                }
-                valueNames += "," + attrName;
-                qMarks += ",?";
+            if (!tableColumns.contains(attrName)) {
+                throw new IllegalArgumentException("The imported shapefile doesn't seem to match the table's schema.");
             }
+            valueNames.add(attrName);
+            valueIndexes.add(i);
         }
-        valueNames = valueNames.substring(1);
-        qMarks = qMarks.substring(1);
-        String sql = "INSERT INTO " + tableName + " (" + valueNames + ") VALUES (" + qMarks + ")";
 
-        Connection conn = db.getConnection();
-        try (PreparedStatement pStmt = conn.prepareStatement(sql)) {
+        Object[] values = new Object[valueNames.size()];
+        try (SpatialiteBulkInserter inserter = db.createBulkInserter(tableName, valueNames.toArray(new String[0]),
+                SpatialiteBulkInserter.DEFAULT_CHUNK_SIZE)) {
             int count = 0;
             while( featureIterator.hasNext() ) {
                 SimpleFeature f = (SimpleFeature) featureIterator.next();
-                List<Object> attributes = f.getAttributes();
-                for( int i = 0; i < attributes.size(); i++ ) {
-                    Object object = attributes.get(i);
-                    if (object == null) {
-                        continue;
-                    }
-                    int iPlus = i + 1;
-                    if (object instanceof Double) {
-                        pStmt.setDouble(iPlus, (Double) object);
-                    } else if (object instanceof Float) {
-                        pStmt.setFloat(iPlus, (Float) object);
-                    } else if (object instanceof Integer) {
-                        pStmt.setInt(iPlus, (Integer) object);
-                    } else if (object instanceof String) {
-                        pStmt.setString(iPlus, (String) object);
-                    } else if (object instanceof Geometry) {
-                        pStmt.setString(iPlus, ((Geometry) object).toText());
-                    } else {
-                        pStmt.setString(iPlus, object.toString());
-                    }
+                for( int i = 0; i < values.length; i++ ) {
+                    values[i] = f.getAttribute(valueIndexes.get(i));
                 }
-                pStmt.executeUpdate();
+                inserter.insert((Geometry) f.getDefaultGeometry(), values);
 
                 count++;
                 if (limit > 0 && count > limit) {
                     break;
                 }
             }
+        } finally {
             featureIterator.close();
         }
     }
@@ -0,0 +1,150 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils;
+
+/**
+ * A binary min heap of int values (ex. cell indexes) ordered by a double key (ex. elevation).
+ *
+ * <p>Entries with the same key are ordered by value, so that the order in which
+ * entries are extracted is deterministic. No object is created per entry.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class DoubleIntMinHeap {
+    private double[] keys;
+    private int[] values;
+    private int size = 0;
+
+    /**
+     * Create the heap with an initial capacity.
+     *
+     * @param initialCapacity the initial capacity, the heap grows if necessary.
+     */
+    public DoubleIntMinHeap( int initialCapacity ) {
+        if (initialCapacity < 16) {
+            initialCapacity = 16;
+        }
+        keys = new double[initialCapacity];
+        values = new int[initialCapacity];
+    }
+
+    /**
+     * @return the number of entries in the heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return <code>true</code> if the heap has no entries.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Add an entry.
+     *
+     * @param key the key to order by.
+     * @param value the value.
+     */
+    public void push( double key, int value ) {
+        if (size == keys.length) {
+            int newCapacity = keys.length + (keys.length >> 1);
+            double[] newKeys = new double[newCapacity];
+            int[] newValues = new int[newCapacity];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            keys = newKeys;
+            values = newValues;
+        }
+        // sift up
+        int index = size++;
+        while( index > 0 ) {
+            int parent = (index - 1) >>> 1;
+            if (!isLess(key, value, keys[parent], values[parent])) {
+                break;
+            }
+            keys[index] = keys[parent];
+            values[index] = values[parent];
+            index = parent;
+        }
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    /**
+     * @return the key of the smallest entry.
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * @return the value of the smallest entry.
+     */
+    public int peekValue() {
+        return values[0];
+    }
+
+    /**
+     * Remove the smallest entry and return its value.
+     *
+     * <p>The key of the entry has to be read before through {@link #peekKey()}, if needed.</p>
+     *
+     * @return the value of the removed entry.
+     */
+    public int pop() {
+        int top = values[0];
+        size--;
+        if (size > 0) {
+            double key = keys[size];
+            int value = values[size];
+            // sift down
+            int index = 0;
+            int half = size >>> 1;
+            while( index < half ) {
+                int child = 2 * index + 1;
+                int right = child + 1;
+                if (right < size && isLess(keys[right], values[right], keys[child], values[child])) {
+                    child = right;
+                }
+                if (!isLess(keys[child], values[child], key, value)) {
+                    break;
+                }
+                keys[index] = keys[child];
+                values[index] = values[child];
+                index = child;
+            }
+            keys[index] = key;
+            values[index] = value;
+        }
+        return top;
+    }
+
+    private static boolean isLess( double key1, int value1, double key2, int value2 ) {
+        return key1 < key2 || (key1 == key2 && value1 < value2);
+    }
+}
@@ -19,7 +19,6 @@ package org.jgrasstools.gears.utils.coverage;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
-import static org.jgrasstools.gears.libs.modules.JGTConstants.doesOverFlow;
 import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
 import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 
@@ -68,6 +67,7 @@ import org.jgrasstools.gears.io.grasslegacy.GrassLegacyGridCoverage2D;
 import org.jgrasstools.gears.io.grasslegacy.GrassLegacyRandomIter;
 import org.jgrasstools.gears.io.grasslegacy.GrassLegacyWritableRaster;
 import org.jgrasstools.gears.io.grasslegacy.utils.Window;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
@@ -126,26 +126,45 @@ public class CoverageUtilities {
             return iter;
         }
         RenderedImage renderedImage = coverage.getRenderedImage();
+        if (renderedImage instanceof DiskTiledImage) {
+            return new DiskTiledRandomIter(((DiskTiledImage) renderedImage).getRaster());
+        }
         RandomIter iter = RandomIterFactory.create(renderedImage, null);
         return iter;
     }
 
+    /**
+     * Creates a {@link RandomIter} for the given {@link Raster}.
+     * 
+     * <p>For the rasters kept on disk, a {@link DiskTiledRandomIter} is created.
+     * 
+     * @param raster the raster on which to wrap a {@link RandomIter}.
+     * @return the iterator.
+     */
+    public static RandomIter getRandomIterator( Raster raster ) {
+        if (raster instanceof DiskTiledWritableRaster) {
+            return new DiskTiledRandomIter(((DiskTiledWritableRaster) raster).getTiledRaster());
+        }
+        RandomIter iter = RandomIterFactory.create(raster, null);
+        return iter;
+    }
+
     /**
      * Creates a {@link WritableRandomIter}.
      * 
      * <p>It is important to use this method since it supports also 
      * large GRASS rasters.
      * 
-     * <p>If the size would throw an integer overflow, a {@link GrassLegacyRandomIter}
-     * will be proposed to try to save the saveable.
+     * <p>If the raster {@link DiskTiledRaster#isOutOfCore(int, int) is kept on disk}, a 
+     * {@link DiskTiledRandomIter} on a {@link DiskTiledRaster} is created.
      * 
-     * @param raster the coverage on which to wrap a {@link WritableRandomIter}.
+     * @param width the width of the raster.
+     * @param height the height of the raster.
      * @return the iterator.
      */
     public static WritableRandomIter getWritableRandomIterator( int width, int height ) {
-        if (doesOverFlow(width, height)) {
-            GrassLegacyRandomIter iter = new GrassLegacyRandomIter(new double[height][width]);
-            return iter;
+        if (DiskTiledRaster.isOutOfCore(width, height)) {
+            return new DiskTiledRandomIter(createDiskTiledRaster(width, height, DataBuffer.TYPE_DOUBLE, null));
         }
         WritableRaster pitRaster = CoverageUtilities.createDoubleWritableRaster(width, height, null, null, null);
         WritableRandomIter iter = RandomIterFactory.createWritable(pitRaster, null);
@@ -158,17 +177,18 @@ public class CoverageUtilities {
      * <p>It is important to use this method since it supports also 
      * large GRASS rasters.
      * 
-     * <p>If the size would throw an integer overflow, a {@link GrassLegacyRandomIter}
-     * will be proposed to try to save the saveable.
+     * <p>For the rasters kept on disk, a {@link DiskTiledRandomIter} is created.
      * 
      * @param raster the coverage on which to wrap a {@link WritableRandomIter}.
      * @return the iterator.
      */
     public static WritableRandomIter getWritableRandomIterator( WritableRaster raster ) {
+        if (raster instanceof DiskTiledWritableRaster) {
+            return new DiskTiledRandomIter(((DiskTiledWritableRaster) raster).getTiledRaster());
+        }
         if (raster instanceof GrassLegacyWritableRaster) {
             GrassLegacyWritableRaster wRaster = (GrassLegacyWritableRaster) raster;
-            double[][] data = wRaster.getData();
-            getWritableRandomIterator(data[0].length, data.length);
+            return new GrassLegacyRandomIter(wRaster.getData());
         }
         WritableRandomIter iter = RandomIterFactory.createWritable(raster, null);
         return iter;
@@ -207,7 +227,9 @@ public class CoverageUtilities {
      *                  <code>new ComponentSampleModel(dataType, width, height, 1, width, new int[]{0});</code>.
      * @param value value to which to set the raster to. If null, the default of the raster creation is 
      *                  used, which is 0.
-     * @return a {@link WritableRaster writable raster}.
+     * @return a {@link WritableRaster writable raster}. If a single band raster {@link DiskTiledRaster#isOutOfCore(int, int) 
+     *                  is kept on disk}, it is a {@link DiskTiledWritableRaster}, whose iterators have to be 
+     *                  created through {@link #getWritableRandomIterator(WritableRaster)}.
      */
     public static WritableRaster createDoubleWritableRaster( int width, int height, Class< ? > dataClass,
             SampleModel sampleModel, Double value ) {
@@ -224,7 +246,9 @@ public class CoverageUtilities {
             }
         }
 
-        if (!doesOverFlow(width, height)) {
+        // the rasters on disk have a single band
+        boolean isMultiband = sampleModel != null && sampleModel.getNumBands() > 1;
+        if (!DiskTiledRaster.isOutOfCore(width, height) || isMultiband) {
             if (sampleModel == null) {
                 sampleModel = new ComponentSampleModel(dataType, width, height, 1, width, new int[]{0});
             }
@@ -247,8 +271,19 @@ public class CoverageUtilities {
             }
             return raster;
         } else {
-            WritableRaster raster = new GrassLegacyWritableRaster(new double[height][width]);
-            return raster;
+            if (sampleModel != null) {
+                dataType = sampleModel.getDataType();
+            }
+            return new DiskTiledWritableRaster(createDiskTiledRaster(width, height, dataType, value));
+        }
+    }
+
+    private static DiskTiledRaster createDiskTiledRaster( int width, int height, int dataType, Double value ) {
+        try {
+            return new DiskTiledRaster(width, height, dataType, value != null ? value : 0.0);
+        } catch (IOException e) {
+            throw new ModelsRuntimeException("Unable to create the scratch file of the raster: " + e.getLocalizedMessage(),
+                    "CoverageUtilities");
         }
     }
 
@@ -677,7 +712,7 @@ public class CoverageUtilities {
         }
         WritableRaster writableRaster = createDoubleWritableRaster(width, height, null, null, null);
 
-        WritableRandomIter rasterIter = RandomIterFactory.createWritable(writableRaster, null);
+        WritableRandomIter rasterIter = getWritableRandomIterator(writableRaster);
         for( int x = 0; x < width; x++ ) {
             for( int y = 0; y < height; y++ ) {
                 if (matrixIsRowCol) {
@@ -709,7 +744,7 @@ public class CoverageUtilities {
         }
         WritableRaster writableRaster = createDoubleWritableRaster(width, height, null, null, null);
 
-        WritableRandomIter disckRandomIter = RandomIterFactory.createWritable(writableRaster, null);
+        WritableRandomIter disckRandomIter = getWritableRandomIterator(writableRaster);
         for( int x = 0; x < width; x++ ) {
             for( int y = 0; y < height; y++ ) {
                 if (matrixIsRowCol) {
@@ -734,7 +769,7 @@ public class CoverageUtilities {
         }
         WritableRaster writableRaster = createDoubleWritableRaster(width, height, null, null, null);
 
-        WritableRandomIter disckRandomIter = RandomIterFactory.createWritable(writableRaster, null);
+        WritableRandomIter disckRandomIter = getWritableRandomIterator(writableRaster);
         for( int x = 0; x < width; x++ ) {
             for( int y = 0; y < height; y++ ) {
                 if (matrixIsRowCol) {
@@ -845,7 +880,10 @@ public class CoverageUtilities {
      */
     public static GridCoverage2D buildCoverage( String name, WritableRaster writableRaster,
             HashMap<String, Double> envelopeParams, CoordinateReferenceSystem crs ) {
-        if (writableRaster instanceof GrassLegacyWritableRaster) {
+        if (writableRaster instanceof DiskTiledWritableRaster) {
+            DiskTiledRaster tiledRaster = ((DiskTiledWritableRaster) writableRaster).getTiledRaster();
+            return buildCoverage(name, new DiskTiledImage(tiledRaster), envelopeParams, crs);
+        } else if (writableRaster instanceof GrassLegacyWritableRaster) {
             GrassLegacyWritableRaster wRaster = (GrassLegacyWritableRaster) writableRaster;
             double west = envelopeParams.get(WEST);
             double south = envelopeParams.get(SOUTH);
@@ -895,15 +933,30 @@ public class CoverageUtilities {
      * 
      * @param renderedImage the image to convert.
      * @param nullBorders a flag that indicates if the borders should be set to null.
-     * @return the converted writable raster.
+     * @return the converted writable raster, a {@link DiskTiledWritableRaster} if the image is
+     *          too large to be {@link DiskTiledRaster#isOutOfCore(int, int) kept in memory}.
      */
     public static WritableRaster renderedImage2WritableRaster( RenderedImage renderedImage, boolean nullBorders ) {
         int width = renderedImage.getWidth();
         int height = renderedImage.getHeight();
 
-        Raster data = renderedImage.getData();
-        WritableRaster writableRaster = data.createCompatibleWritableRaster();
-        writableRaster.setDataElements(0, 0, data);
+        WritableRaster writableRaster;
+        if (DiskTiledRaster.isOutOfCore(width, height)) {
+            // copy tile by tile, the image can't be held in a single raster
+            int dataType = renderedImage.getSampleModel().getDataType();
+            writableRaster = new DiskTiledWritableRaster(createDiskTiledRaster(width, height, dataType, null));
+            int minTileX = renderedImage.getMinTileX();
+            int minTileY = renderedImage.getMinTileY();
+            for( int tileY = minTileY; tileY < minTileY + renderedImage.getNumYTiles(); tileY++ ) {
+                for( int tileX = minTileX; tileX < minTileX + renderedImage.getNumXTiles(); tileX++ ) {
+                    writableRaster.setRect(renderedImage.getTile(tileX, tileY));
+                }
+            }
+        } else {
+            Raster data = renderedImage.getData();
+            writableRaster = data.createCompatibleWritableRaster();
+            writableRaster.setDataElements(0, 0, data);
+        }
         if (nullBorders) {
             for( int c = 0; c < width; c++ ) {
                 writableRaster.setSample(c, 0, 0, doubleNovalue);
@@ -1155,8 +1208,8 @@ public class CoverageUtilities {
      * @return the rendered image with the substituted novalue. 
      */
     public static WritableRaster replaceNovalue( RenderedImage renderedImage, double newValue ) {
-        WritableRaster tmpWR = (WritableRaster) renderedImage.getData();
-        RandomIter pitTmpIterator = RandomIterFactory.create(renderedImage, null);
+        WritableRaster tmpWR = renderedImage2WritableRaster(renderedImage, false);
+        RandomIter pitTmpIterator = getRandomIterator(tmpWR);
 
         int height = renderedImage.getHeight();
         int width = renderedImage.getWidth();
@@ -1279,7 +1332,7 @@ public class CoverageUtilities {
         RandomIter valuesIter = RandomIterFactory.create(valuesMap.getRenderedImage(), null);
         RandomIter maskIter = RandomIterFactory.create(maskMap.getRenderedImage(), null);
         WritableRaster writableRaster = createDoubleWritableRaster(cs, rs, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(writableRaster, null);
+        WritableRandomIter outIter = getWritableRandomIterator(writableRaster);
 
         for( int c = 0; c < cs; c++ ) {
             for( int r = 0; r < rs; r++ ) {
@@ -1320,7 +1373,7 @@ public class CoverageUtilities {
 
         RandomIter valuesIter = RandomIterFactory.create(valuesMap.getRenderedImage(), null);
         WritableRaster outWR = renderedImage2WritableRaster(onMap.getRenderedImage(), false);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = getWritableRandomIterator(outWR);
 
         for( int c = 0; c < cs; c++ ) {
             for( int r = 0; r < rs; r++ ) {
@@ -1456,7 +1509,7 @@ public class CoverageUtilities {
         RandomIter rasterIter = CoverageUtilities.getRandomIterator(raster);
 
         WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
+        WritableRandomIter outIter = getWritableRandomIterator(outWR);
         for( int r = 0; r < nRows; r++ ) {
             for( int c = 0; c < nCols; c++ ) {
                 double value = rasterIter.getSampleDouble(c, r, 0);
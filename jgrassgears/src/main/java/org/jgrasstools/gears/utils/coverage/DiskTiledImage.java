@@ -0,0 +1,73 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.coverage;
+
+import java.awt.Point;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+
+/**
+ * A tiled image over a {@link DiskTiledRaster}.
+ * 
+ * <p>The image tiles match the tiles of the raster and are read from it
+ * when requested, so that the image can be used as the source of a coverage
+ * without holding all the cells in memory.</p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @see DiskTiledRaster
+ */
+public class DiskTiledImage extends PlanarImage {
+
+    private final DiskTiledRaster raster;
+
+    public DiskTiledImage( DiskTiledRaster raster ) {
+        super(createLayout(raster), null, null);
+        this.raster = raster;
+    }
+
+    private static ImageLayout createLayout( DiskTiledRaster raster ) {
+        int tileSize = raster.getTileSize();
+        SampleModel sampleModel = new ComponentSampleModel(raster.getDataType(), tileSize, tileSize, 1, tileSize,
+                new int[]{0});
+        return new ImageLayout(0, 0, raster.getWidth(), raster.getHeight(), 0, 0, tileSize, tileSize, sampleModel,
+                createColorModel(sampleModel));
+    }
+
+    /**
+     * @return the raster on which the image works.
+     */
+    public DiskTiledRaster getRaster() {
+        return raster;
+    }
+
+    public Raster getTile( int tileX, int tileY ) {
+        int x = tileXToX(tileX);
+        int y = tileYToY(tileY);
+        WritableRaster tile = Raster.createWritableRaster(getSampleModel(), new Point(x, y));
+        int w = Math.min(getTileWidth(), getWidth() - x);
+        int h = Math.min(getTileHeight(), getHeight() - y);
+        tile.setSamples(x, y, w, h, 0, raster.getSamples(x, y, w, h, null));
+        return tile;
+    }
+
+}
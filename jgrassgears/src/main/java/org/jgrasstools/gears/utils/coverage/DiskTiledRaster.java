@@ -0,0 +1,452 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.coverage;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doesOverFlow;
+
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+
+/**
+ * A single band raster of any size, kept on disk in tiles.
+ *
+ * <p>
+ * The last used tiles are kept in memory as primitive arrays. When a tile is evicted
+ * from the cache it is written to a memory mapped scratch file, from which it is read
+ * back when needed again. Tiles that were never evicted do not use disk space.
+ * </p>
+ * <p>
+ * The raster is accessed through {@link DiskTiledWritableRaster}, {@link DiskTiledRandomIter} and
+ * {@link DiskTiledImage}, which are handed out by {@link CoverageUtilities} for the rasters that 
+ * are {@link #isOutOfCore(int, int) kept on disk}.
+ * All the accessors are synchronized, so the raster can be shared by parallel tasks.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class DiskTiledRaster {
+
+    /**
+     * The maximum size of a mapped segment of the scratch file.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private static int defaultTileSize = 512;
+    private static int defaultCachedTiles = 256;
+    private static File defaultScratchFolder = null;
+    private static long outOfCoreThreshold = Long.MAX_VALUE;
+
+    private final int width;
+    private final int height;
+    private final int dataType;
+    private final int tileSize;
+    private final int tileCols;
+    private final double fillValue;
+
+    private final File scratchFile;
+    private final RandomAccessFile scratchRaf;
+    private final long tileBytes;
+    private final int tilesPerSegment;
+    private final MappedByteBuffer[] segments;
+    private final BitSet storedTiles = new BitSet();
+
+    private final LinkedHashMap<Integer, Tile> tilesCache;
+    private Tile lastTile;
+
+    private static class Tile {
+        final int index;
+        final double[] doubles;
+        final float[] floats;
+        final int[] ints;
+        boolean isDirty;
+
+        Tile( int index, int dataType, int cellsNum ) {
+            this.index = index;
+            doubles = dataType == DataBuffer.TYPE_DOUBLE ? new double[cellsNum] : null;
+            floats = dataType == DataBuffer.TYPE_FLOAT ? new float[cellsNum] : null;
+            ints = dataType == DataBuffer.TYPE_INT ? new int[cellsNum] : null;
+        }
+    }
+
+    /**
+     * Create a raster with the default tile size, cache and scratch folder.
+     *
+     * @param width the width of the raster.
+     * @param height the height of the raster.
+     * @param dataType the cell type, one of {@link DataBuffer#TYPE_DOUBLE}, {@link DataBuffer#TYPE_FLOAT}
+     *        and {@link DataBuffer#TYPE_INT} (byte and short are kept as int).
+     * @param fillValue the initial value of the cells.
+     * @throws IOException if the scratch file can't be created.
+     */
+    public DiskTiledRaster( int width, int height, int dataType, double fillValue ) throws IOException {
+        this(width, height, dataType, fillValue, defaultTileSize, defaultCachedTiles, defaultScratchFolder);
+    }
+
+    /**
+     * Create a raster.
+     *
+     * @param width the width of the raster.
+     * @param height the height of the raster.
+     * @param dataType the cell type, one of {@link DataBuffer#TYPE_DOUBLE}, {@link DataBuffer#TYPE_FLOAT}
+     *        and {@link DataBuffer#TYPE_INT} (byte and short are kept as int).
+     * @param fillValue the initial value of the cells.
+     * @param tileSize the size of the side of the square tiles.
+     * @param cachedTiles the number of tiles kept in memory.
+     * @param scratchFolder the folder for the scratch file. If <code>null</code>, the system temporary
+     *        folder is used.
+     * @throws IOException if the scratch file can't be created.
+     */
+    public DiskTiledRaster( int width, int height, int dataType, double fillValue, int tileSize, int cachedTiles,
+            File scratchFolder ) throws IOException {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("The raster size has to be positive.");
+        }
+        if (tileSize < 16 || tileSize > 4096) {
+            throw new IllegalArgumentException("The tile size has to be between 16 and 4096.");
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.fillValue = fillValue;
+        int cellBytes;
+        if (dataType == DataBuffer.TYPE_DOUBLE) {
+            cellBytes = 8;
+        } else if (dataType == DataBuffer.TYPE_FLOAT) {
+            cellBytes = 4;
+        } else {
+            dataType = DataBuffer.TYPE_INT;
+            cellBytes = 4;
+        }
+        this.dataType = dataType;
+
+        tileCols = (width + tileSize - 1) / tileSize;
+        int tileRows = (height + tileSize - 1) / tileSize;
+        tileBytes = (long) tileSize * tileSize * cellBytes;
+        tilesPerSegment = (int) Math.max(1, SEGMENT_SIZE / tileBytes);
+        int tilesNum = tileCols * tileRows;
+        segments = new MappedByteBuffer[(tilesNum + tilesPerSegment - 1) / tilesPerSegment];
+
+        scratchFile = File.createTempFile("jgt-tiledraster", ".tmp", scratchFolder);
+        scratchFile.deleteOnExit();
+        scratchRaf = new RandomAccessFile(scratchFile, "rw");
+
+        final int maxCachedTiles = Math.max(1, cachedTiles);
+        tilesCache = new LinkedHashMap<Integer, Tile>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry( Map.Entry<Integer, Tile> eldest ) {
+                if (size() > maxCachedTiles) {
+                    store(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Set the defaults used for the rasters created by {@link CoverageUtilities}.
+     *
+     * @param tileSize the size of the side of the square tiles.
+     * @param cachedTiles the number of tiles kept in memory by each raster.
+     * @param scratchFolder the folder for the scratch files, <code>null</code> for the system temporary folder.
+     */
+    public static void setDefaults( int tileSize, int cachedTiles, File scratchFolder ) {
+        defaultTileSize = tileSize;
+        defaultCachedTiles = cachedTiles;
+        defaultScratchFolder = scratchFolder;
+    }
+
+    /**
+     * Set the number of cells above which the rasters created by {@link CoverageUtilities} 
+     * are kept on disk.
+     * 
+     * <p>Rasters that overflow the array index of a {@link DataBuffer} are always kept on disk.</p>
+     *
+     * @param cellsNum the maximum number of cells of the rasters kept in memory. With 
+     *        {@link Long#MAX_VALUE}, the default, only the rasters that overflow are kept on disk.
+     */
+    public static void setOutOfCoreThreshold( long cellsNum ) {
+        outOfCoreThreshold = cellsNum;
+    }
+
+    /**
+     * @return the number of cells above which the rasters are kept on disk.
+     */
+    public static long getOutOfCoreThreshold() {
+        return outOfCoreThreshold;
+    }
+
+    /**
+     * Checks if a raster has to be kept on disk, because its size would overflow the
+     * array index of a {@link DataBuffer} or exceeds the {@link #setOutOfCoreThreshold(long) threshold}.
+     *
+     * @param width the width of the raster.
+     * @param height the height of the raster.
+     * @return <code>true</code> if the raster has to be kept on disk.
+     */
+    public static boolean isOutOfCore( int width, int height ) {
+        return doesOverFlow(width, height) || (long) width * height > outOfCoreThreshold;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the cell type of the raster.
+     */
+    public int getDataType() {
+        return dataType;
+    }
+
+    /**
+     * @return the size of the side of the tiles.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public synchronized int getSample( int x, int y ) {
+        Tile tile = getTile(x, y);
+        int i = cellIndex(x, y);
+        if (tile.doubles != null) {
+            return (int) tile.doubles[i];
+        } else if (tile.floats != null) {
+            return (int) tile.floats[i];
+        }
+        return tile.ints[i];
+    }
+
+    public synchronized float getSampleFloat( int x, int y ) {
+        Tile tile = getTile(x, y);
+        int i = cellIndex(x, y);
+        if (tile.doubles != null) {
+            return (float) tile.doubles[i];
+        } else if (tile.floats != null) {
+            return tile.floats[i];
+        }
+        return tile.ints[i];
+    }
+
+    public synchronized double getSampleDouble( int x, int y ) {
+        Tile tile = getTile(x, y);
+        int i = cellIndex(x, y);
+        if (tile.doubles != null) {
+            return tile.doubles[i];
+        } else if (tile.floats != null) {
+            return tile.floats[i];
+        }
+        return tile.ints[i];
+    }
+
+    public synchronized void setSample( int x, int y, int value ) {
+        Tile tile = getTile(x, y);
+        int i = cellIndex(x, y);
+        if (tile.doubles != null) {
+            tile.doubles[i] = value;
+        } else if (tile.floats != null) {
+            tile.floats[i] = value;
+        } else {
+            tile.ints[i] = value;
+        }
+        tile.isDirty = true;
+    }
+
+    public synchronized void setSample( int x, int y, float value ) {
+        Tile tile = getTile(x, y);
+        int i = cellIndex(x, y);
+        if (tile.doubles != null) {
+            tile.doubles[i] = value;
+        } else if (tile.floats != null) {
+            tile.floats[i] = value;
+        } else {
+            tile.ints[i] = (int) value;
+        }
+        tile.isDirty = true;
+    }
+
+    public synchronized void setSample( int x, int y, double value ) {
+        Tile tile = getTile(x, y);
+        int i = cellIndex(x, y);
+        if (tile.doubles != null) {
+            tile.doubles[i] = value;
+        } else if (tile.floats != null) {
+            tile.floats[i] = (float) value;
+        } else {
+            tile.ints[i] = (int) value;
+        }
+        tile.isDirty = true;
+    }
+
+    /**
+     * Read a rectangle of cells.
+     *
+     * @param x the column of the upper left cell.
+     * @param y the row of the upper left cell.
+     * @param w the width of the rectangle.
+     * @param h the height of the rectangle.
+     * @param dArray the array to fill row by row, if <code>null</code> a new one is created.
+     * @return the values of the cells.
+     */
+    public synchronized double[] getSamples( int x, int y, int w, int h, double[] dArray ) {
+        if (dArray == null) {
+            dArray = new double[w * h];
+        }
+        int i = 0;
+        for( int row = y; row < y + h; row++ ) {
+            for( int col = x; col < x + w; col++ ) {
+                dArray[i++] = getSampleDouble(col, row);
+            }
+        }
+        return dArray;
+    }
+
+    /**
+     * Write a rectangle of cells.
+     *
+     * @param x the column of the upper left cell.
+     * @param y the row of the upper left cell.
+     * @param w the width of the rectangle.
+     * @param h the height of the rectangle.
+     * @param dArray the values, row by row.
+     */
+    public synchronized void setSamples( int x, int y, int w, int h, double[] dArray ) {
+        int i = 0;
+        for( int row = y; row < y + h; row++ ) {
+            for( int col = x; col < x + w; col++ ) {
+                setSample(col, row, dArray[i++]);
+            }
+        }
+    }
+
+    private int cellIndex( int x, int y ) {
+        return (y % tileSize) * tileSize + (x % tileSize);
+    }
+
+    private Tile getTile( int x, int y ) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds: " + x + "/" + y);
+        }
+        int index = (y / tileSize) * tileCols + x / tileSize;
+        // most accesses hit the same tile of the previous one
+        if (lastTile != null && lastTile.index == index) {
+            return lastTile;
+        }
+        Tile tile = tilesCache.get(index);
+        if (tile == null) {
+            tile = load(index);
+            tilesCache.put(index, tile);
+        }
+        lastTile = tile;
+        return tile;
+    }
+
+    private Tile load( int index ) {
+        Tile tile = new Tile(index, dataType, tileSize * tileSize);
+        if (storedTiles.get(index)) {
+            ByteBuffer buffer = tileBuffer(index);
+            if (tile.doubles != null) {
+                buffer.asDoubleBuffer().get(tile.doubles);
+            } else if (tile.floats != null) {
+                buffer.asFloatBuffer().get(tile.floats);
+            } else {
+                buffer.asIntBuffer().get(tile.ints);
+            }
+        } else if (fillValue != 0.0) {
+            if (tile.doubles != null) {
+                Arrays.fill(tile.doubles, fillValue);
+            } else if (tile.floats != null) {
+                Arrays.fill(tile.floats, (float) fillValue);
+            } else {
+                Arrays.fill(tile.ints, (int) fillValue);
+            }
+        }
+        return tile;
+    }
+
+    private void store( Tile tile ) {
+        if (!tile.isDirty) {
+            return;
+        }
+        ByteBuffer buffer = tileBuffer(tile.index);
+        if (tile.doubles != null) {
+            buffer.asDoubleBuffer().put(tile.doubles);
+        } else if (tile.floats != null) {
+            buffer.asFloatBuffer().put(tile.floats);
+        } else {
+            buffer.asIntBuffer().put(tile.ints);
+        }
+        tile.isDirty = false;
+        storedTiles.set(tile.index);
+    }
+
+    /**
+     * Get the part of the scratch file of a tile, mapping its segment if necessary.
+     */
+    private ByteBuffer tileBuffer( int index ) {
+        int segmentIndex = index / tilesPerSegment;
+        MappedByteBuffer segment = segments[segmentIndex];
+        if (segment == null) {
+            try {
+                segment = scratchRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, segmentIndex * tilesPerSegment * tileBytes,
+                        tilesPerSegment * tileBytes);
+            } catch (IOException e) {
+                throw new ModelsRuntimeException("Unable to map the scratch file " + scratchFile + ": " + e.getLocalizedMessage(),
+                        this);
+            }
+            segments[segmentIndex] = segment;
+        }
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position((int) ((index % tilesPerSegment) * tileBytes));
+        buffer.limit((int) (buffer.position() + tileBytes));
+        return buffer.slice();
+    }
+
+    /**
+     * Release the tiles and delete the scratch file.
+     *
+     * <p>The raster can't be used any more after this.</p>
+     */
+    public synchronized void dispose() {
+        tilesCache.clear();
+        lastTile = null;
+        Arrays.fill(segments, null);
+        try {
+            scratchRaf.close();
+        } catch (IOException e) {
+            // the file is deleted anyways
+        }
+        scratchFile.delete();
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.coverage;
+
+import java.awt.Point;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * A {@link WritableRaster} over a {@link DiskTiledRaster}.
+ * 
+ * <p>The single and bulk pixel, sample and data element accessors read and write the tiles.
+ * The raster is not backed by a {@link DataBuffer}, which can't address the cells of the
+ * largest rasters, so the data buffer, the sample model and the children throw an
+ * {@link UnsupportedOperationException}. Since JAI iterators work on the data buffer, the
+ * modules have to get their iterators through {@link CoverageUtilities#getWritableRandomIterator(WritableRaster)}
+ * and {@link CoverageUtilities#getRandomIterator(Raster)}.</p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @see DiskTiledRaster
+ */
+public class DiskTiledWritableRaster extends WritableRaster {
+
+    private final DiskTiledRaster raster;
+
+    public DiskTiledWritableRaster( DiskTiledRaster raster ) {
+        super(new ComponentSampleModel(raster.getDataType(), 1, 1, 1, 1, new int[]{0}), new Point(0, 0));
+        this.raster = raster;
+        // the sample model is a placeholder, the real size is the one of the tiled raster
+        width = raster.getWidth();
+        height = raster.getHeight();
+    }
+
+    /**
+     * @return the tiled raster backing this raster.
+     */
+    public DiskTiledRaster getTiledRaster() {
+        return raster;
+    }
+
+    public int[] getPixel( int x, int y, int[] iArray ) {
+        if (iArray == null) {
+            iArray = new int[1];
+        }
+        iArray[0] = raster.getSample(x, y);
+        return iArray;
+    }
+
+    public float[] getPixel( int x, int y, float[] fArray ) {
+        if (fArray == null) {
+            fArray = new float[1];
+        }
+        fArray[0] = raster.getSampleFloat(x, y);
+        return fArray;
+    }
+
+    public double[] getPixel( int x, int y, double[] dArray ) {
+        if (dArray == null) {
+            dArray = new double[1];
+        }
+        dArray[0] = raster.getSampleDouble(x, y);
+        return dArray;
+    }
+
+    public int getSample( int x, int y, int b ) {
+        return raster.getSample(x, y);
+    }
+
+    public double getSampleDouble( int x, int y, int b ) {
+        return raster.getSampleDouble(x, y);
+    }
+
+    public float getSampleFloat( int x, int y, int b ) {
+        return raster.getSampleFloat(x, y);
+    }
+
+    public void setPixel( int x, int y, int[] iArray ) {
+        raster.setSample(x, y, iArray[0]);
+    }
+
+    public void setPixel( int x, int y, float[] fArray ) {
+        raster.setSample(x, y, fArray[0]);
+    }
+
+    public void setPixel( int x, int y, double[] dArray ) {
+        raster.setSample(x, y, dArray[0]);
+    }
+
+    public void setSample( int x, int y, int b, int s ) {
+        raster.setSample(x, y, s);
+    }
+
+    public void setSample( int x, int y, int b, float s ) {
+        raster.setSample(x, y, s);
+    }
+
+    public void setSample( int x, int y, int b, double s ) {
+        raster.setSample(x, y, s);
+    }
+
+    // the raster has a single band, so pixels and samples are the same
+
+    public int[] getPixels( int x, int y, int w, int h, int[] iArray ) {
+        return getSamples(x, y, w, h, 0, iArray);
+    }
+
+    public float[] getPixels( int x, int y, int w, int h, float[] fArray ) {
+        return getSamples(x, y, w, h, 0, fArray);
+    }
+
+    public double[] getPixels( int x, int y, int w, int h, double[] dArray ) {
+        return getSamples(x, y, w, h, 0, dArray);
+    }
+
+    public int[] getSamples( int x, int y, int w, int h, int b, int[] iArray ) {
+        if (iArray == null) {
+            iArray = new int[w * h];
+        }
+        int i = 0;
+        for( int row = y; row < y + h; row++ ) {
+            for( int col = x; col < x + w; col++ ) {
+                iArray[i++] = raster.getSample(col, row);
+            }
+        }
+        return iArray;
+    }
+
+    public float[] getSamples( int x, int y, int w, int h, int b, float[] fArray ) {
+        if (fArray == null) {
+            fArray = new float[w * h];
+        }
+        int i = 0;
+        for( int row = y; row < y + h; row++ ) {
+            for( int col = x; col < x + w; col++ ) {
+                fArray[i++] = raster.getSampleFloat(col, row);
+            }
+        }
+        return fArray;
+    }
+
+    public double[] getSamples( int x, int y, int w, int h, int b, double[] dArray ) {
+        return raster.getSamples(x, y, w, h, dArray);
+    }
+
+    public void setPixels( int x, int y, int w, int h, int[] iArray ) {
+        setSamples(x, y, w, h, 0, iArray);
+    }
+
+    public void setPixels( int x, int y, int w, int h, float[] fArray ) {
+        setSamples(x, y, w, h, 0, fArray);
+    }
+
+    public void setPixels( int x, int y, int w, int h, double[] dArray ) {
+        setSamples(x, y, w, h, 0, dArray);
+    }
+
+    public void setSamples( int x, int y, int w, int h, int b, int[] iArray ) {
+        int i = 0;
+        for( int row = y; row < y + h; row++ ) {
+            for( int col = x; col < x + w; col++ ) {
+                raster.setSample(col, row, iArray[i++]);
+            }
+        }
+    }
+
+    public void setSamples( int x, int y, int w, int h, int b, float[] fArray ) {
+        int i = 0;
+        for( int row = y; row < y + h; row++ ) {
+            for( int col = x; col < x + w; col++ ) {
+                raster.setSample(col, row, fArray[i++]);
+            }
+        }
+    }
+
+    public void setSamples( int x, int y, int w, int h, int b, double[] dArray ) {
+        raster.setSamples(x, y, w, h, dArray);
+    }
+
+    /*
+     * the data elements are arrays of the type of the tiled raster, which is also
+     * the transfer type of the placeholder sample model.
+     */
+
+    public Object getDataElements( int x, int y, Object outData ) {
+        return getDataElements(x, y, 1, 1, outData);
+    }
+
+    public Object getDataElements( int x, int y, int w, int h, Object outData ) {
+        switch( getTransferType() ) {
+        case DataBuffer.TYPE_DOUBLE:
+            return getSamples(x, y, w, h, 0, (double[]) outData);
+        case DataBuffer.TYPE_FLOAT:
+            return getSamples(x, y, w, h, 0, (float[]) outData);
+        default:
+            return getSamples(x, y, w, h, 0, (int[]) outData);
+        }
+    }
+
+    public void setDataElements( int x, int y, Object inData ) {
+        setDataElements(x, y, 1, 1, inData);
+    }
+
+    public void setDataElements( int x, int y, int w, int h, Object inData ) {
+        switch( getTransferType() ) {
+        case DataBuffer.TYPE_DOUBLE:
+            setSamples(x, y, w, h, 0, (double[]) inData);
+            break;
+        case DataBuffer.TYPE_FLOAT:
+            setSamples(x, y, w, h, 0, (float[]) inData);
+            break;
+        default:
+            setSamples(x, y, w, h, 0, (int[]) inData);
+            break;
+        }
+    }
+
+    public void setDataElements( int x, int y, Raster inRaster ) {
+        int dstX = x + inRaster.getMinX();
+        int dstY = y + inRaster.getMinY();
+        int w = inRaster.getWidth();
+        int h = inRaster.getHeight();
+        if (dstX < 0 || dstY < 0 || dstX + w > width || dstY + h > height) {
+            throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+        }
+        copy(inRaster, x, y, dstX, dstY, w, h);
+    }
+
+    public void setRect( int dx, int dy, Raster srcRaster ) {
+        int startX = Math.max(srcRaster.getMinX() + dx, 0);
+        int startY = Math.max(srcRaster.getMinY() + dy, 0);
+        int endX = Math.min(srcRaster.getMinX() + dx + srcRaster.getWidth(), width);
+        int endY = Math.min(srcRaster.getMinY() + dy + srcRaster.getHeight(), height);
+        if (startX < endX && startY < endY) {
+            copy(srcRaster, dx, dy, startX, startY, endX - startX, endY - startY);
+        }
+    }
+
+    /**
+     * Copy a rectangle of the first band of a raster, row by row.
+     */
+    private void copy( Raster srcRaster, int dx, int dy, int dstX, int dstY, int w, int h ) {
+        double[] row = new double[w];
+        for( int y = dstY; y < dstY + h; y++ ) {
+            srcRaster.getSamples(dstX - dx, y - dy, w, 1, 0, row);
+            raster.setSamples(dstX, y, w, 1, row);
+        }
+    }
+
+    public DataBuffer getDataBuffer() {
+        throw unsupported("getDataBuffer");
+    }
+
+    public SampleModel getSampleModel() {
+        throw unsupported("getSampleModel");
+    }
+
+    public Raster createChild( int parentX, int parentY, int width, int height, int childMinX, int childMinY,
+            int[] bandList ) {
+        throw unsupported("createChild");
+    }
+
+    public WritableRaster createWritableChild( int parentX, int parentY, int w, int h, int childMinX, int childMinY,
+            int[] bandList ) {
+        throw unsupported("createWritableChild");
+    }
+
+    private UnsupportedOperationException unsupported( String method ) {
+        return new UnsupportedOperationException(method + " is not supported by the disk tiled raster of " + width + "x"
+                + height + " cells, access it through the iterators of CoverageUtilities.");
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.geometry;
+
+import java.util.BitSet;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * Point in polygon check for many points, working on plain coordinates.
+ *
+ * <p>The edges of the polygon rings are held in primitive arrays and indexed
+ * by horizontal bands, so that a point is checked only against the edges of
+ * its band, through the crossing number rule. No geometry is created for the
+ * checked points.</p>
+ *
+ * <p>As for {@link PreparedGeometry#contains(Geometry)}, points on the boundary
+ * are not contained. Geometries that don't contain polygons are checked through
+ * a {@link PreparedGeometry}.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class PointInPolygonChecker {
+    private static final int MAX_BANDS = 4096;
+
+    private final Envelope envelope;
+    private final double[] x1;
+    private final double[] y1;
+    private final double[] x2;
+    private final double[] y2;
+
+    private final int bandsNum;
+    private final double minY;
+    private final double bandHeight;
+    private final int[] bandStarts;
+    private final int[] bandEdges;
+
+    private final PreparedGeometry preparedGeometry;
+
+    /**
+     * @param geometry the polygonal geometry to check the points against.
+     */
+    public PointInPolygonChecker( Geometry geometry ) {
+        envelope = geometry.getEnvelopeInternal();
+
+        int edgesNum = 0;
+        boolean isPolygonal = geometry.getNumGeometries() > 0;
+        for( int i = 0; i < geometry.getNumGeometries(); i++ ) {
+            Geometry part = geometry.getGeometryN(i);
+            if (!(part instanceof Polygon)) {
+                isPolygonal = false;
+                break;
+            }
+            Polygon polygon = (Polygon) part;
+            edgesNum += getEdgesNum(polygon.getExteriorRing());
+            for( int j = 0; j < polygon.getNumInteriorRing(); j++ ) {
+                edgesNum += getEdgesNum(polygon.getInteriorRingN(j));
+            }
+        }
+
+        if (!isPolygonal) {
+            preparedGeometry = PreparedGeometryFactory.prepare(geometry);
+            x1 = y1 = x2 = y2 = null;
+            bandsNum = 0;
+            minY = bandHeight = 0;
+            bandStarts = bandEdges = null;
+            return;
+        }
+        preparedGeometry = null;
+
+        x1 = new double[edgesNum];
+        y1 = new double[edgesNum];
+        x2 = new double[edgesNum];
+        y2 = new double[edgesNum];
+        int edge = 0;
+        for( int i = 0; i < geometry.getNumGeometries(); i++ ) {
+            Polygon polygon = (Polygon) geometry.getGeometryN(i);
+            edge = addRing(polygon.getExteriorRing(), edge);
+            for( int j = 0; j < polygon.getNumInteriorRing(); j++ ) {
+                edge = addRing(polygon.getInteriorRingN(j), edge);
+            }
+        }
+
+        /*
+         * register every edge in the bands its y range falls into
+         */
+        bandsNum = Math.max(1, Math.min(MAX_BANDS, edgesNum));
+        minY = envelope.getMinY();
+        bandHeight = envelope.getHeight() / bandsNum;
+        bandStarts = new int[bandsNum + 1];
+        for( int e = 0; e < edgesNum; e++ ) {
+            int to = getBand(Math.max(y1[e], y2[e]));
+            for( int b = getBand(Math.min(y1[e], y2[e])); b <= to; b++ ) {
+                bandStarts[b + 1]++;
+            }
+        }
+        for( int b = 0; b < bandsNum; b++ ) {
+            bandStarts[b + 1] += bandStarts[b];
+        }
+        bandEdges = new int[bandStarts[bandsNum]];
+        int[] positions = new int[bandsNum];
+        System.arraycopy(bandStarts, 0, positions, 0, bandsNum);
+        for( int e = 0; e < edgesNum; e++ ) {
+            int to = getBand(Math.max(y1[e], y2[e]));
+            for( int b = getBand(Math.min(y1[e], y2[e])); b <= to; b++ ) {
+                bandEdges[positions[b]++] = e;
+            }
+        }
+    }
+
+    private static int getEdgesNum( LineString ring ) {
+        return Math.max(0, ring.getNumPoints() - 1);
+    }
+
+    private int addRing( LineString ring, int edge ) {
+        Coordinate[] coordinates = ring.getCoordinates();
+        for( int i = 0; i < coordinates.length - 1; i++ ) {
+            x1[edge] = coordinates[i].x;
+            y1[edge] = coordinates[i].y;
+            x2[edge] = coordinates[i + 1].x;
+            y2[edge] = coordinates[i + 1].y;
+            edge++;
+        }
+        return edge;
+    }
+
+    private int getBand( double y ) {
+        if (bandHeight <= 0) {
+            return 0;
+        }
+        int band = (int) ((y - minY) / bandHeight);
+        if (band < 0) {
+            return 0;
+        }
+        if (band >= bandsNum) {
+            return bandsNum - 1;
+        }
+        return band;
+    }
+
+    /**
+     * Check if a point is inside the geometry.
+     *
+     * @param x the x coordinate of the point.
+     * @param y the y coordinate of the point.
+     * @return <code>true</code> if the point is in the interior of the geometry.
+     */
+    public boolean contains( double x, double y ) {
+        if (!envelope.contains(x, y)) {
+            return false;
+        }
+        if (preparedGeometry != null) {
+            return preparedGeometry.contains(GeometryUtilities.gf().createPoint(new Coordinate(x, y)));
+        }
+
+        boolean inside = false;
+        int band = getBand(y);
+        int end = bandStarts[band + 1];
+        for( int i = bandStarts[band]; i < end; i++ ) {
+            int e = bandEdges[i];
+            double ex1 = x1[e];
+            double ey1 = y1[e];
+            double ex2 = x2[e];
+            double ey2 = y2[e];
+            if (y < Math.min(ey1, ey2) || y > Math.max(ey1, ey2)) {
+                continue;
+            }
+            // on the boundary
+            if (x >= Math.min(ex1, ex2) && x <= Math.max(ex1, ex2) && (ex2 - ex1) * (y - ey1) == (x - ex1) * (ey2 - ey1)) {
+                return false;
+            }
+            if ((ey1 > y) != (ey2 > y) && x < ex1 + (y - ey1) * (ex2 - ex1) / (ey2 - ey1)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Check a set of points.
+     *
+     * @param xs the x coordinates of the points.
+     * @param ys the y coordinates of the points.
+     * @param size the number of points to check.
+     * @param selection the points to check, the points outside the geometry are cleared.
+     * @return the number of selected points inside the geometry.
+     */
+    public int retainContained( double[] xs, double[] ys, int size, BitSet selection ) {
+        int count = 0;
+        for( int i = selection.nextSetBit(0); i >= 0 && i < size; i = selection.nextSetBit(i + 1) ) {
+            if (contains(xs[i], ys[i])) {
+                count++;
+            } else {
+                selection.clear(i);
+            }
+        }
+        return count;
+    }
+}
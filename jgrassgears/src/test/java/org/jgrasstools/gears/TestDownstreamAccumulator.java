@@ -0,0 +1,78 @@
+package org.jgrasstools.gears;
+
+import static org.jgrasstools.gears.libs.modules.DownstreamAccumulator.NO_RECEIVER;
+
+import java.util.Random;
+
+import org.jgrasstools.gears.libs.modules.DownstreamAccumulator;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link DownstreamAccumulator}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestDownstreamAccumulator extends HMTestCase {
+
+    public void testSingleReceiver() throws Exception {
+        /*
+         * 0 -> 1 -> 2 <- 3, 4 -> 3, 5 alone, 6 <-> 7 loop
+         */
+        int[] receivers = {1, 2, NO_RECEIVER, 2, 3, NO_RECEIVER, 7, 6};
+        double[] values = {1, 1, 1, 1, 1, 1, 1, 1};
+
+        DownstreamAccumulator accumulator = DownstreamAccumulator.singleReceiver(receivers);
+        assertTrue(accumulator.accumulate(values, 1, new DummyProgressMonitor()));
+
+        double[] expected = {1, 2, 5, 2, 1, 1};
+        for( int i = 0; i < expected.length; i++ ) {
+            assertTrue(accumulator.isResolved(i));
+            assertEquals(expected[i], values[i], DELTA);
+        }
+        assertFalse(accumulator.isResolved(6));
+        assertFalse(accumulator.isResolved(7));
+    }
+
+    public void testMultipleReceivers() throws Exception {
+        /*
+         * 0 -> 1 (0.25), 0 -> 2 (0.75), 1 -> 3, 2 -> 3
+         */
+        int[] receiverOffsets = {0, 2, 3, 4, 4};
+        int[] receivers = {1, 2, 3, 3};
+        double[] weights = {0.25, 0.75, 1, 1};
+        double[] values = {4, 1, 1, 1};
+
+        DownstreamAccumulator accumulator = DownstreamAccumulator.multipleReceivers(receiverOffsets, receivers, weights);
+        assertTrue(accumulator.accumulate(values, 1, new DummyProgressMonitor()));
+
+        assertEquals(4.0, values[0], DELTA);
+        assertEquals(2.0, values[1], DELTA);
+        assertEquals(4.0, values[2], DELTA);
+        assertEquals(7.0, values[3], DELTA);
+    }
+
+    public void testParallelEqualsSequential() throws Exception {
+        Random random = new Random(12);
+        int cellsNum = 50000;
+        int[] receivers = new int[cellsNum];
+        double[] values = new double[cellsNum];
+        for( int i = 0; i < cellsNum; i++ ) {
+            if (i == cellsNum - 1 || random.nextInt(20) == 0) {
+                receivers[i] = NO_RECEIVER;
+            } else {
+                receivers[i] = i + 1 + random.nextInt(Math.min(100, cellsNum - 1 - i));
+            }
+            values[i] = random.nextInt(10);
+        }
+
+        double[] sequential = values.clone();
+        DownstreamAccumulator.singleReceiver(receivers).accumulate(sequential, 1, new DummyProgressMonitor());
+        double[] parallel = values.clone();
+        DownstreamAccumulator.singleReceiver(receivers).accumulate(parallel, 4, new DummyProgressMonitor());
+
+        for( int i = 0; i < cellsNum; i++ ) {
+            assertEquals(sequential[i], parallel[i], DELTA);
+        }
+    }
+}
@@ -10,9 +10,11 @@ import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.jgrasstools.gears.utils.HMTestCase;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.jgrasstools.gears.utils.geometry.PointInPolygonChecker;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineSegment;
@@ -20,6 +22,8 @@ import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.LinearRing;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 import com.vividsolutions.jts.io.WKTReader;
 
 /**
@@ -460,4 +464,35 @@ public class TestGeometryUtilities extends HMTestCase {
 
     }
 
+    public void testPointInPolygonChecker() throws Exception {
+        WKTReader reader = new WKTReader();
+        String[] wkts = {IRREGULAR_POLYGON, TWO_BALLS, RECTANGLE,
+                "POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 8 2, 8 8, 2 8, 2 2))"};
+        for( String wkt : wkts ) {
+            Geometry geometry = reader.read(wkt);
+            PreparedGeometry preparedGeometry = PreparedGeometryFactory.prepare(geometry);
+            PointInPolygonChecker checker = new PointInPolygonChecker(geometry);
+
+            Envelope envelope = geometry.getEnvelopeInternal();
+            envelope.expandBy(1);
+            // the grid is shifted to not fall exactly on the edges
+            int steps = 200;
+            double shift = 0.00012345;
+            for( int i = 0; i <= steps; i++ ) {
+                for( int j = 0; j <= steps; j++ ) {
+                    double x = envelope.getMinX() + shift + envelope.getWidth() * i / steps;
+                    double y = envelope.getMinY() + shift + envelope.getHeight() * j / steps;
+                    boolean expected = preparedGeometry.contains(GeometryUtilities.gf().createPoint(new Coordinate(x, y)));
+                    assertEquals(expected, checker.contains(x, y));
+                }
+            }
+        }
+
+        // boundary points are not contained
+        PointInPolygonChecker checker = new PointInPolygonChecker(reader.read(RECTANGLE));
+        assertFalse(checker.contains(0, 5));
+        assertFalse(checker.contains(10, 10));
+        assertTrue(checker.contains(5, 5));
+    }
+
 }
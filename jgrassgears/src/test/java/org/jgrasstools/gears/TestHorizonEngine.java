@@ -0,0 +1,80 @@
+package org.jgrasstools.gears;
+
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link HorizonEngine}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestHorizonEngine extends HMTestCase {
+    private static final double ANGLE_DELTA = 0.000001;
+    private static final int SECTORS = 16;
+    private static final int EAST = 4;
+    private static final int WEST = 12;
+
+    /**
+     * A flat dem of 20 columns with a wall of 100 meters on column 10.
+     */
+    private WritableRaster createDem() {
+        WritableRaster demWR = Raster.createWritableRaster(new BandedSampleModel(DataBuffer.TYPE_DOUBLE, 20, 5, 1), null);
+        for( int row = 0; row < 5; row++ ) {
+            demWR.setSample(10, row, 0, 100.0);
+        }
+        return demWR;
+    }
+
+    public void testHorizonAngles() throws Exception {
+        HorizonEngine engine = HorizonEngine.create(createDem(), 10.0, SECTORS, null, 2, new DummyProgressMonitor());
+
+        // the wall is 50 meters east of column 5
+        assertEquals(Math.atan(100.0 / 50.0), engine.getHorizon(5, 2, EAST), ANGLE_DELTA);
+        assertEquals(Math.atan(100.0 / 50.0), engine.getHorizon(5, 2, Math.PI / 2.0), ANGLE_DELTA);
+        assertEquals(0.0, engine.getHorizon(5, 2, WEST), ANGLE_DELTA);
+        assertEquals(HorizonEngine.NO_HORIZON, engine.getHorizon(0, 2, WEST), ANGLE_DELTA);
+        // the wall is 20 meters west of column 12
+        assertEquals(Math.atan(100.0 / 20.0), engine.getHorizon(12, 2, WEST), ANGLE_DELTA);
+
+        double[] lowEastSun = {Math.cos(Math.toRadians(30)), 0, Math.sin(Math.toRadians(30))};
+        double[] highEastSun = {Math.cos(Math.toRadians(70)), 0, Math.sin(Math.toRadians(70))};
+        assertEquals(0.0, engine.getShadowFactor(5, 2, lowEastSun), ANGLE_DELTA);
+        assertEquals(1.0, engine.getShadowFactor(5, 2, highEastSun), ANGLE_DELTA);
+        assertEquals(1.0, engine.getShadowFactor(15, 2, lowEastSun), ANGLE_DELTA);
+
+        // the nearer the wall, the less sky is seen
+        assertTrue(engine.getSkyviewFactor(9, 2) < engine.getSkyviewFactor(0, 2));
+        assertTrue(engine.getSkyviewFactor(0, 2) < 1.0);
+    }
+
+    public void testCache() throws Exception {
+        File cacheFile = File.createTempFile("jgt-horizon", "." + HorizonEngine.EXTENSION);
+        cacheFile.deleteOnExit();
+        WritableRaster demWR = createDem();
+
+        HorizonEngine computed = HorizonEngine.create(demWR, 10.0, SECTORS, cacheFile, 2, new DummyProgressMonitor());
+        HorizonEngine cached = HorizonEngine.create(demWR, 10.0, SECTORS, cacheFile, 2, new DummyProgressMonitor());
+        for( int s = 0; s < SECTORS; s++ ) {
+            for( int row = 0; row < 5; row++ ) {
+                for( int col = 0; col < 20; col++ ) {
+                    assertEquals(computed.getHorizon(col, row, s), cached.getHorizon(col, row, s), ANGLE_DELTA);
+                }
+            }
+        }
+
+        // a different dem is not read from the cache
+        for( int row = 0; row < 5; row++ ) {
+            demWR.setSample(10, row, 0, 0.0);
+        }
+        HorizonEngine flat = HorizonEngine.create(demWR, 10.0, SECTORS, cacheFile, 2, new DummyProgressMonitor());
+        assertEquals(0.0, flat.getHorizon(5, 2, EAST), ANGLE_DELTA);
+        assertEquals(1.0, flat.getSkyviewFactor(5, 2), ANGLE_DELTA);
+    }
+}
@@ -1,5 +1,6 @@
 package org.jgrasstools.gears;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -129,4 +130,27 @@ public class TestLasUtilities extends HMTestCase {
         assertEquals(131.8103148957786, lastVisiblePointData[9], DELTA);
     }
 
+    public void testMergeAddressRanges() throws Exception {
+        List<Object> addresses = new ArrayList<Object>();
+        addresses.add(new double[]{100, 200});
+        addresses.add(new double[]{0, 50});
+        addresses.add(new double[]{150, 180});
+        addresses.add(new double[]{200, 250});
+        addresses.add(new double[]{260, 300});
+        addresses.add(new double[]{400, 400});
+        addresses.add("not a range");
+
+        long[] ranges = LasUtils.mergeAddressRanges(addresses, 0);
+        assertTrue(Arrays.equals(new long[]{0, 50, 100, 250, 260, 300}, ranges));
+
+        ranges = LasUtils.mergeAddressRanges(addresses, 10);
+        assertTrue(Arrays.equals(new long[]{0, 50, 100, 300}, ranges));
+
+        ranges = LasUtils.mergeAddressRanges(addresses, 50);
+        assertTrue(Arrays.equals(new long[]{0, 300}, ranges));
+
+        ranges = LasUtils.mergeAddressRanges(new ArrayList<Object>(), 10);
+        assertEquals(0, ranges.length);
+    }
+
 }
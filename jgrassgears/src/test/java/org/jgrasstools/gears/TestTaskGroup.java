@@ -0,0 +1,123 @@
+package org.jgrasstools.gears;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jgrasstools.gears.libs.modules.JGTExecutionService;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link JGTTaskGroup}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestTaskGroup extends HMTestCase {
+
+    public void testNestedGroups() throws Exception {
+        final AtomicLong sum = new AtomicLong();
+        JGTTaskGroup outerGroup = JGTExecutionService.newTaskGroup(2, null);
+        for( int i = 0; i < 20; i++ ) {
+            outerGroup.execute(new Runnable(){
+                public void run() {
+                    JGTTaskGroup innerGroup = JGTExecutionService.newTaskGroup(2, null);
+                    for( int j = 0; j < 100; j++ ) {
+                        final int value = j;
+                        innerGroup.execute(new Runnable(){
+                            public void run() {
+                                sum.addAndGet(value);
+                            }
+                        });
+                    }
+                    innerGroup.await();
+                }
+            });
+        }
+        outerGroup.await();
+
+        assertEquals(20 * 4950, sum.get());
+    }
+
+    public void testThreadBudget() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        JGTTaskGroup group = JGTExecutionService.newTaskGroup(1, null);
+        for( int i = 0; i < 50; i++ ) {
+            group.execute(new Runnable(){
+                public void run() {
+                    int now = running.incrementAndGet();
+                    if (now > maxRunning.get()) {
+                        maxRunning.set(now);
+                    }
+                    running.decrementAndGet();
+                }
+            });
+        }
+        group.await();
+
+        // the budget thread plus the waiting caller
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    public void testCancel() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        DummyProgressMonitor monitor = new DummyProgressMonitor(){
+            public boolean isCanceled() {
+                return true;
+            }
+        };
+        JGTTaskGroup group = JGTExecutionService.newTaskGroup(2, monitor);
+        for( int i = 0; i < 50; i++ ) {
+            group.execute(new Runnable(){
+                public void run() {
+                    count.incrementAndGet();
+                }
+            });
+        }
+        group.await();
+
+        assertEquals(0, count.get());
+        assertTrue(group.isCanceled());
+    }
+
+    public void testParallelismChangeWhileRunning() throws Exception {
+        int parallelism = JGTExecutionService.getParallelism();
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch changed = new CountDownLatch(1);
+        JGTTaskGroup group = JGTExecutionService.newTaskGroup(1, null);
+        try {
+            group.execute(new Runnable(){
+                public void run() {
+                    started.countDown();
+                    try {
+                        changed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    count.incrementAndGet();
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            JGTExecutionService.setParallelism(parallelism + 1);
+            changed.countDown();
+
+            // the group keeps submitting to the pool it was created on
+            for( int i = 0; i < 50; i++ ) {
+                group.execute(new Runnable(){
+                    public void run() {
+                        count.incrementAndGet();
+                    }
+                });
+            }
+            group.await();
+            assertEquals(51, count.get());
+            assertEquals(parallelism + 1, JGTExecutionService.getSharedPool().getParallelism());
+        } finally {
+            JGTExecutionService.setParallelism(parallelism);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.awt.Point;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.coverage.DiskTiledImage;
+import org.jgrasstools.gears.utils.coverage.DiskTiledRaster;
+import org.jgrasstools.gears.utils.coverage.DiskTiledWritableRaster;
+/**
+ * Test {@link DiskTiledRaster}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestDiskTiledRaster extends HMTestCase {
+
+    public void testTilesRoundTrip() throws Exception {
+        int width = 101;
+        int height = 67;
+        // small tiles and cache, so that the tiles are evicted to the scratch file
+        DiskTiledRaster raster = new DiskTiledRaster(width, height, DataBuffer.TYPE_DOUBLE, Double.NaN, 16, 2, null);
+        try {
+            assertTrue(Double.isNaN(raster.getSampleDouble(width - 1, height - 1)));
+
+            double[][] expected = new double[height][width];
+            Random random = new Random(1);
+            for( int y = 0; y < height; y++ ) {
+                for( int x = 0; x < width; x++ ) {
+                    expected[y][x] = random.nextDouble();
+                    raster.setSample(x, y, expected[y][x]);
+                }
+            }
+            for( int x = 0; x < width; x++ ) {
+                for( int y = 0; y < height; y++ ) {
+                    assertEquals(expected[y][x], raster.getSampleDouble(x, y), 0.0);
+                }
+            }
+
+            DiskTiledWritableRaster writableRaster = new DiskTiledWritableRaster(raster);
+            assertEquals(width, writableRaster.getWidth());
+            assertEquals(height, writableRaster.getHeight());
+            writableRaster.setSample(3, 4, 0, 42.0);
+            assertEquals(42.0, raster.getSampleDouble(3, 4), 0.0);
+        } finally {
+            raster.dispose();
+        }
+    }
+
+    public void testIntTiles() throws Exception {
+        DiskTiledRaster raster = new DiskTiledRaster(50, 40, DataBuffer.TYPE_INT, -9999, 16, 1, null);
+        try {
+            raster.setSample(0, 0, 7);
+            raster.setSample(49, 39, 11);
+            assertEquals(7, raster.getSample(0, 0));
+            assertEquals(11, raster.getSample(49, 39));
+            assertEquals(-9999, raster.getSample(25, 20));
+        } finally {
+            raster.dispose();
+        }
+    }
+
+    public void testBulkAndImage() throws Exception {
+        DiskTiledRaster raster = new DiskTiledRaster(50, 40, DataBuffer.TYPE_DOUBLE, Double.NaN, 16, 1, null);
+        try {
+            // a block across four tiles
+            double[] values = new double[20 * 10];
+            for( int i = 0; i < values.length; i++ ) {
+                values[i] = i;
+            }
+            raster.setSamples(10, 12, 20, 10, values);
+            assertEquals(0.0, raster.getSampleDouble(10, 12), 0.0);
+            assertEquals(199.0, raster.getSampleDouble(29, 21), 0.0);
+            double[] read = raster.getSamples(10, 12, 20, 10, null);
+            for( int i = 0; i < values.length; i++ ) {
+                assertEquals(values[i], read[i], 0.0);
+            }
+
+            DiskTiledImage image = new DiskTiledImage(raster);
+            assertEquals(50, image.getWidth());
+            assertEquals(4, image.getNumXTiles());
+            assertEquals(3, image.getNumYTiles());
+            Raster tile = image.getTile(1, 1);
+            assertEquals(16, tile.getMinX());
+            assertEquals(16, tile.getMinY());
+            assertEquals(raster.getSampleDouble(20, 18), tile.getSampleDouble(20, 18, 0), 0.0);
+            assertTrue(Double.isNaN(tile.getSampleDouble(31, 31, 0)));
+            // the last tile exceeds the border of the image
+            raster.setSample(49, 39, 5.0);
+            Raster lastTile = image.getTile(3, 2);
+            assertEquals(5.0, lastTile.getSampleDouble(49, 39, 0), 0.0);
+        } finally {
+            raster.dispose();
+        }
+    }
+
+    public void testOutOfCore() throws Exception {
+        assertFalse(DiskTiledRaster.isOutOfCore(100, 100));
+        // large, but still addressable by a data buffer
+        assertFalse(DiskTiledRaster.isOutOfCore(40000, 40000));
+        assertTrue(DiskTiledRaster.isOutOfCore(100000, 100000));
+
+        long threshold = DiskTiledRaster.getOutOfCoreThreshold();
+        try {
+            DiskTiledRaster.setOutOfCoreThreshold(100);
+            assertFalse(DiskTiledRaster.isOutOfCore(10, 10));
+            assertTrue(DiskTiledRaster.isOutOfCore(11, 10));
+        } finally {
+            DiskTiledRaster.setOutOfCoreThreshold(threshold);
+        }
+    }
+
+    public void testPlaceholderRaster() throws Exception {
+        DiskTiledRaster raster = new DiskTiledRaster(50, 40, DataBuffer.TYPE_DOUBLE, 1.0, 16, 1, null);
+        try {
+            DiskTiledWritableRaster wr = new DiskTiledWritableRaster(raster);
+            wr.setSample(10, 10, 0, 3.0);
+            assertEquals(3.0, wr.getSampleDouble(10, 10, 0), 0.0);
+            assertEquals(1.0, wr.getSampleDouble(49, 39, 0), 0.0);
+            try {
+                wr.getDataBuffer();
+                fail("the data buffer is a placeholder");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+            double[] pixels = wr.getPixels(9, 9, 2, 2, (double[]) null);
+            assertEquals(1.0, pixels[0], 0.0);
+            assertEquals(3.0, pixels[3], 0.0);
+
+            // bulk writes across the tiles
+            int[] samples = new int[20 * 5];
+            for( int i = 0; i < samples.length; i++ ) {
+                samples[i] = i;
+            }
+            wr.setSamples(10, 14, 20, 5, 0, samples);
+            assertEquals(0.0, wr.getSampleDouble(10, 14, 0), 0.0);
+            assertEquals(99.0, wr.getSampleDouble(29, 18, 0), 0.0);
+
+            // copy of an in memory raster, clipped to the bounds
+            WritableRaster memoryRaster = Raster.createWritableRaster(new BandedSampleModel(DataBuffer.TYPE_DOUBLE, 5, 5, 1),
+                    new Point(47, 37));
+            memoryRaster.setSample(49, 39, 0, 8.0);
+            wr.setRect(memoryRaster);
+            assertEquals(0.0, wr.getSampleDouble(47, 37, 0), 0.0);
+            assertEquals(8.0, wr.getSampleDouble(49, 39, 0), 0.0);
+            assertEquals(1.0, wr.getSampleDouble(46, 39, 0), 0.0);
+        } finally {
+            raster.dispose();
+        }
+    }
+}
@@ -2,16 +2,23 @@ package org.jgrasstools.gears.modules;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.jgrasstools.gears.io.disktree.IDiskTree;
+import org.jgrasstools.gears.io.disktree.PackedTreeReader;
+import org.jgrasstools.gears.io.disktree.PackedTreeWriter;
 import org.jgrasstools.gears.utils.HMTestCase;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.index.quadtree.Quadtree;
 import com.vividsolutions.jts.io.WKTReader;
 /**
@@ -151,6 +158,50 @@ public class TestDiskTreeIO extends HMTestCase {
 
     }
 
+    public void testPackedTree() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        Random random = new Random(7);
+        Geometry[] geoms = new Geometry[1000];
+        for( int i = 0; i < geoms.length; i++ ) {
+            double x = random.nextDouble() * 1000;
+            double y = random.nextDouble() * 1000;
+            geoms[i] = gf.toGeometry(new Envelope(x, x + random.nextDouble() * 10, y, y + random.nextDouble() * 10));
+            geoms[i].setUserData("id" + i);
+        }
+
+        File file = File.createTempFile("jgt-packedtree", ".jgpt");
+        try {
+            // small nodes to get a few levels
+            new PackedTreeWriter(file.getAbsolutePath(), 4).writeGeometries(geoms);
+
+            try (PackedTreeReader reader = new PackedTreeReader(file.getAbsolutePath())) {
+                assertEquals(geoms.length, reader.getItemsNum());
+
+                for( int q = 0; q < 20; q++ ) {
+                    double x = random.nextDouble() * 1000;
+                    double y = random.nextDouble() * 1000;
+                    Envelope queryEnvelope = new Envelope(x, x + 100, y, y + 100);
+
+                    Set<Object> expected = new HashSet<Object>();
+                    for( Geometry geometry : geoms ) {
+                        if (geometry.getEnvelopeInternal().intersects(queryEnvelope)) {
+                            expected.add(geometry.getUserData());
+                        }
+                    }
+                    Set<Object> found = new HashSet<Object>();
+                    for( Geometry geometry : reader.query(queryEnvelope) ) {
+                        int index = Integer.parseInt(geometry.getUserData().toString().substring(2));
+                        assertTrue(geometry.equalsExact(geoms[index]));
+                        found.add(geometry.getUserData());
+                    }
+                    assertEquals(expected, found);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
     private static byte[] serialize( Object obj ) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         ObjectOutputStream out = new ObjectOutputStream(bos);
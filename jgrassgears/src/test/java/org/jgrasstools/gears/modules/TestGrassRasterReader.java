@@ -0,0 +1,96 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.io.File;
+import java.net.URL;
+
+import org.jgrasstools.gears.io.grasslegacy.io.GrassRasterReader;
+import org.jgrasstools.gears.io.grasslegacy.utils.Window;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.HMTestMaps;
+/**
+ * Test {@link GrassRasterReader}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestGrassRasterReader extends HMTestCase {
+
+    private String grassPath;
+
+    protected void setUp() throws Exception {
+        URL testUrl = this.getClass().getClassLoader().getResource("gbovest/testcase/cell/test");
+        grassPath = new File(testUrl.toURI()).getAbsolutePath();
+    }
+
+    public void testReadInBlocks() throws Exception {
+        Window fileWindow = new Window(1640650.0, 1640950.0, 5139780.0, 5140020.0, 30.0, 30.0);
+
+        GrassRasterReader reader = new GrassRasterReader();
+        try {
+            reader.setOutputDataObject(new double[0][0]);
+            reader.setDataWindow(fileWindow);
+            // small blocks and cache, so that blocks are decoded in parallel and evicted
+            reader.setParameter("threads", 2);
+            reader.setParameter("blockrows", 3);
+            reader.setParameter("cachedblocks", 1);
+            assertTrue(reader.open(grassPath));
+            assertTrue(reader.hasMoreData(pm));
+            double[][] data = (double[][]) reader.getNextData();
+            checkMatrixEqual(data, HMTestMaps.mapData, 0.0);
+
+            // a coarser window on the same open map
+            reader.setDataWindow(new Window(1640650.0, 1640950.0, 5139780.0, 5140020.0, 60.0, 60.0));
+            assertTrue(reader.hasMoreData(pm));
+            data = (double[][]) reader.getNextData();
+            double[][] expected = new double[][]{//
+            {800.0, 1000.0, 1200.0, 1300.0, 1450.0}, //
+                    {500.0, 700.0, 800.0, 900.0, 1100.0}, //
+                    {450.0, 430.0, 600.0, 800.0, 450.0}, //
+                    {600.0, 750.0, 780.0, 1000.0, 1250.0} //
+            };
+            assertEquals(expected.length, data.length);
+            checkMatrixEqual(data, expected, 0.0);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testReadAsFloat() throws Exception {
+        GrassRasterReader reader = new GrassRasterReader();
+        try {
+            reader.setOutputDataObject(new float[0][0]);
+            reader.setDataWindow(new Window(1640650.0, 1640950.0, 5139780.0, 5140020.0, 30.0, 30.0));
+            assertTrue(reader.open(grassPath));
+            assertTrue(reader.hasMoreData(pm));
+            float[][] data = (float[][]) reader.getNextData();
+            for( int row = 0; row < data.length; row++ ) {
+                for( int col = 0; col < data[0].length; col++ ) {
+                    double expected = HMTestMaps.mapData[row][col];
+                    if (Double.isNaN(expected)) {
+                        assertTrue(Float.isNaN(data[row][col]));
+                    } else {
+                        assertEquals(expected, data[row][col], 0.0);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
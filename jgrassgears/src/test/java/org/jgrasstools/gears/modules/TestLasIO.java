@@ -25,6 +25,7 @@ import java.net.URL;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.jgrasstools.gears.io.las.core.ILasHeader;
+import org.jgrasstools.gears.io.las.core.LasPointBlock;
 import org.jgrasstools.gears.io.las.core.LasRecord;
 import org.jgrasstools.gears.io.las.core.liblas.LiblasHeader;
 import org.jgrasstools.gears.io.las.core.liblas.LiblasJNALibrary;
@@ -94,6 +95,39 @@ public class TestLasIO extends HMTestCase {
         processFile(name, expectedCount, true);
     }
 
+    public void testLasBlockReader() throws Exception {
+        String[] names = {"las/1.0_1.las", "las/1.2_3.las", "las/1.2-with-color.las"};
+        for( String name : names ) {
+            URL lasUrl = this.getClass().getClassLoader().getResource(name);
+            File lasFile = new File(lasUrl.toURI());
+
+            LasReader recordReader = new LasReader(lasFile, null);
+            recordReader.open();
+            LasReader blockReader = new LasReader(lasFile, null);
+            blockReader.open();
+
+            // small block to cross the block bounds
+            LasPointBlock block = new LasPointBlock(100);
+            long count = 0;
+            while( blockReader.readNextPoints(block) > 0 ) {
+                for( int i = 0; i < block.size(); i++ ) {
+                    assertTrue(recordReader.hasNextPoint());
+                    LasRecord dot = recordReader.getNextPoint();
+                    assertTrue(LasUtils.lasRecordEqual(dot, block.getRecord(i)));
+                    assertEquals(dot.gpsTime, block.gpsTime[i], DELTA);
+                    assertEquals(dot.color[1], block.green[i]);
+                    count++;
+                }
+            }
+            assertEquals(recordReader.getHeader().getRecordsCount(), count);
+            assertFalse(recordReader.hasNextPoint());
+            assertFalse(blockReader.hasNextPoint());
+
+            recordReader.close();
+            blockReader.close();
+        }
+    }
+
     public void testLazReader() throws Exception {
         if (doNative) {
             String name = "las/1.2-with-color.laz";
@@ -19,9 +19,11 @@ package org.jgrasstools.gears.modules;
 
 import java.io.File;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import org.jgrasstools.gears.io.timedependent.OmsTimeSeriesIteratorReader;
+import org.jgrasstools.gears.io.timedependent.TimeSeriesBinaryStore;
 import org.jgrasstools.gears.utils.HMTestCase;
 /**
  * Test {@link OmsTimeSeriesIteratorReader}.
@@ -93,6 +95,48 @@ public class TestTimeSeriesIteratorReader extends HMTestCase {
         }
 
     }
+
+    public void testBinaryStoreReader() throws Exception {
+        URL dataUrl = this.getClass().getClassLoader().getResource("csvtest2.csv");
+        File csvFile = new File(dataUrl.toURI());
+        File binaryFile = File.createTempFile("jgt-timeseries", "." + TimeSeriesBinaryStore.EXTENSION);
+        binaryFile.deleteOnExit();
+        TimeSeriesBinaryStore.convert(csvFile, binaryFile, "ID", "-9999.0");
+
+        OmsTimeSeriesIteratorReader csvReader = new OmsTimeSeriesIteratorReader();
+        csvReader.file = csvFile.getAbsolutePath();
+        OmsTimeSeriesIteratorReader binaryReader = new OmsTimeSeriesIteratorReader();
+        binaryReader.file = binaryFile.getAbsolutePath();
+        for( OmsTimeSeriesIteratorReader reader : new OmsTimeSeriesIteratorReader[]{csvReader, binaryReader} ) {
+            reader.idfield = "ID";
+            // start in the middle of the file, the binary reader seeks to it
+            reader.tStart = "2000-02-27 00:00";
+            reader.tEnd = "2000-03-03 00:00";
+            reader.tTimestep = 1440;
+            reader.initProcess();
+        }
+        try {
+            int count = 0;
+            while( csvReader.doProcess ) {
+                csvReader.nextRecord();
+                binaryReader.nextRecord();
+                assertEquals(csvReader.tCurrent, binaryReader.tCurrent);
+                HashMap<Integer, double[]> csvData = csvReader.outData;
+                HashMap<Integer, double[]> binaryData = binaryReader.outData;
+                assertEquals(csvData.size(), binaryData.size());
+                for( Integer id : csvData.keySet() ) {
+                    assertTrue(Arrays.equals(csvData.get(id), binaryData.get(id)));
+                }
+                count++;
+            }
+            assertFalse(binaryReader.doProcess);
+            assertEquals(6, count);
+        } finally {
+            csvReader.close();
+            binaryReader.close();
+        }
+    }
+
     public static void main( String[] args ) throws Exception {
         new TestTimeSeriesIteratorReader().testId2ValueReader2();
     }
@@ -23,7 +23,7 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.media.jai.iterator.RandomIter;
@@ -48,8 +48,7 @@ import org.geotools.geometry.DirectPosition2D;
 import org.geotools.geometry.Envelope2D;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.jgrasstools.gears.io.las.ALasDataManager;
-import org.jgrasstools.gears.io.las.core.LasRecord;
-import org.jgrasstools.gears.io.las.utils.LasRecordGroundElevationComparator;
+import org.jgrasstools.gears.io.las.LasPointBatch;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.modules.r.filter.OmsKernelFilter;
@@ -157,7 +156,7 @@ public class LasHeightDistribution extends JGTModel {
                 RegionMap tileRegionMap = CoverageUtilities.getRegionParamsFromGridCoverage(tmp);
                 GridGeometry2D tileGridGeometry = tmp.getGridGeometry();
 
-                List<LasRecord> pointsListForTile = dataManager.getPointsInGeometry(tileGeom, true);
+                LasPointBatch pointsListForTile = dataManager.getPointBatchInGeometry(tileGeom, true);
                 // do something with the data
 
                 if (pointsListForTile.size() == 0) {
@@ -171,9 +170,10 @@ public class LasHeightDistribution extends JGTModel {
                 List<double[]> negativeRanges = analyseNegativeLayerRanges(id, pointsListForTile);
                 List<GridCoverage2D> rangeCoverages = new ArrayList<GridCoverage2D>();
 
+                double[] xs = pointsListForTile.getX();
+                double[] ys = pointsListForTile.getY();
                 for( double[] range : negativeRanges ) {
-                    List<LasRecord> pointsInVerticalRange = ALasDataManager.getPointsInVerticalRange(pointsListForTile, range[0],
-                            range[1], true);
+                    pointsListForTile.selectVerticalRange(range[0], range[1], true);
 
                     WritableRaster[] wrH = new WritableRaster[1];
                     GridCoverage2D tmpCoverage = CoverageUtilities.createSubCoverageFromTemplate(inDemGC, tileEnvelope,
@@ -183,8 +183,8 @@ public class LasHeightDistribution extends JGTModel {
                     WritableRandomIter tmpIter = CoverageUtilities.getWritableRandomIterator(wrH[0]);
 
                     final DirectPosition2D wp = new DirectPosition2D();
-                    for( LasRecord lasRecord : pointsInVerticalRange ) {
-                        wp.setLocation(lasRecord.x, lasRecord.y);
+                    for( int p = pointsListForTile.nextSelected(0); p >= 0; p = pointsListForTile.nextSelected(p + 1) ) {
+                        wp.setLocation(xs[p], ys[p]);
                         GridCoordinates2D gp = tileGridGeometry.worldToGrid(wp);
                         double count = tmpIter.getSampleDouble(gp.x, gp.y, 0);
                         if (isNovalue(count)) {
@@ -321,14 +321,9 @@ public class LasHeightDistribution extends JGTModel {
         return false;
     }
 
-    private List<double[]> analyseNegativeLayerRanges( String id, List<LasRecord> pointsList ) throws Exception {
-        Collections.sort(pointsList, new LasRecordGroundElevationComparator());
-
-        double[] pointsArray = new double[pointsList.size()];
-        for( int i = 0; i < pointsArray.length; i++ ) {
-            LasRecord lasRecord = pointsList.get(i);
-            pointsArray[i] = lasRecord.groundElevation;
-        }
+    private List<double[]> analyseNegativeLayerRanges( String id, LasPointBatch pointsList ) throws Exception {
+        double[] pointsArray = Arrays.copyOf(pointsList.getGroundElevation(), pointsList.size());
+        Arrays.sort(pointsArray);
 
         double binSize = 0.5;
         double[][] bins = toBins(pointsArray, binSize);
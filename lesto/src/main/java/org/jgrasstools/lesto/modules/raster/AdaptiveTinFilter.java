@@ -23,7 +23,6 @@ import java.awt.image.WritableRaster;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 import oms3.annotations.Author;
@@ -46,8 +45,7 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.jgrasstools.gears.io.las.ALasDataManager;
-import org.jgrasstools.gears.io.las.core.LasRecord;
-import org.jgrasstools.gears.io.las.utils.LasRecordElevationComparator;
+import org.jgrasstools.gears.io.las.LasPointBatch;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.libs.modules.ThreadedRunnable;
@@ -352,11 +350,11 @@ public class AdaptiveTinFilter extends JGTModel {
                 tRun.executeRunnable(new Runnable(){
                     public void run() {
                         try {
-                            final List<LasRecord> pointsInGeom = lasHandler.getPointsInGeometry(secGridGeom, true);
+                            final LasPointBatch pointsInGeom = lasHandler.getPointBatchInGeometry(secGridGeom, true);
                             if (pointsInGeom.size() != 0) {
-                                Collections.sort(pointsInGeom, new LasRecordElevationComparator());
-                                LasRecord seedPoint = pointsInGeom.get(0);
-                                seedsList.add(new Coordinate(seedPoint.x, seedPoint.y, seedPoint.z));
+                                int seed = pointsInGeom.getLowestSelected();
+                                seedsList.add(new Coordinate(pointsInGeom.getX()[seed], pointsInGeom.getY()[seed],
+                                        pointsInGeom.getZ()[seed]));
                             } else {
                                 pm.errorMessage("No points in: " + secGridGeom);
                             }
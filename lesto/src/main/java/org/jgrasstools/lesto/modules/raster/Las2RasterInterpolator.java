@@ -24,7 +24,6 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_DRAFT;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_LICENSE;
 
 import java.io.File;
-import java.util.List;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -42,7 +41,7 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.jgrasstools.gears.io.las.ALasDataManager;
-import org.jgrasstools.gears.io.las.core.LasRecord;
+import org.jgrasstools.gears.io.las.LasPointBatch;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.libs.modules.Variables;
@@ -116,7 +115,7 @@ public class Las2RasterInterpolator extends JGTModel {
                 lasData.setImpulsesConstraint(new double[]{pImpulse});
             }
 
-            List<LasRecord> lasPoints = lasData.getPointsInGeometry(polygon, false);
+            LasPointBatch lasPoints = lasData.getPointBatchInGeometry(polygon, false);
             if (lasPoints.size() == 0) {
                 pm.message("No points foudn in the given area. Check your input.");
                 return;
@@ -146,10 +145,13 @@ public class Las2RasterInterpolator extends JGTModel {
             final SimpleFeatureType featureType = b.buildFeatureType();
             SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
 
+            double[] xs = lasPoints.getX();
+            double[] ys = lasPoints.getY();
+            double[] zs = lasPoints.getZ();
             pm.beginTask("Prepare points collection for interpolation...", lasPoints.size());
-            for( LasRecord r : lasPoints ) {
-                final Point point = gf.createPoint(new Coordinate(r.x, r.y));
-                final Object[] values = new Object[]{point, r.z,};
+            for( int i = 0; i < lasPoints.size(); i++ ) {
+                final Point point = gf.createPoint(new Coordinate(xs[i], ys[i]));
+                final Object[] values = new Object[]{point, zs[i],};
                 builder.addAll(values);
                 final SimpleFeature feature = builder.buildFeature(null);
                 newCollection.add(feature);
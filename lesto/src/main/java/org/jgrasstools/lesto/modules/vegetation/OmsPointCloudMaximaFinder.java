@@ -27,9 +27,6 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_LICENSE;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.media.jai.iterator.RandomIter;
@@ -51,16 +48,19 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.geometry.DirectPosition2D;
+import org.jgrasstools.gears.io.las.LasPointBatch;
 import org.jgrasstools.gears.io.las.core.LasRecord;
 import org.jgrasstools.gears.io.las.utils.LasUtils;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.GridNode;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.JGTTaskGroup;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.features.FeatureUtilities;
+import org.jgrasstools.gears.utils.math.NumericsUtilities;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
@@ -180,28 +180,43 @@ public class OmsPointCloudMaximaFinder extends JGTModel {
     public static void doProcess( final List<LasRecord> pointsInTile, final double pMaxRadius, final boolean doDynamicRadius,
             final DsmDtmDiffHelper helper, final DefaultFeatureCollection outTopsFC, final SimpleFeatureBuilder lasBuilder,
             final AtomicInteger index, final IJGTProgressMonitor pm ) throws Exception {
+        doProcess(LasPointBatch.fromRecords(pointsInTile), pMaxRadius, doDynamicRadius, helper, outTopsFC, lasBuilder, index,
+                pm);
+    }
+
+    public static void doProcess( final LasPointBatch pointsInTile, final double pMaxRadius, final boolean doDynamicRadius,
+            final DsmDtmDiffHelper helper, final DefaultFeatureCollection outTopsFC, final SimpleFeatureBuilder lasBuilder,
+            final AtomicInteger index, final IJGTProgressMonitor pm ) throws Exception {
         /*
          * we use the intensity value to mark local maxima
          * - 1 = maxima
          * - 0 = non maxima
          */
         final GeometryFactory gf = new GeometryFactory();
-        pm.beginTask("Mark local maxima...", pointsInTile.size());
-        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(getDefaultThreadsNum());
-        for( final LasRecord currentDot : pointsInTile ) {
+        final int pointsNum = pointsInTile.size();
+        final double[] xs = pointsInTile.getX();
+        final double[] ys = pointsInTile.getY();
+        final double[] groundElevations = pointsInTile.getGroundElevation();
+        pm.beginTask("Mark local maxima...", pointsNum);
+        JGTTaskGroup taskGroup = newTaskGroup(getDefaultThreadsNum(), pm);
+        for( int i = 0; i < pointsNum; i++ ) {
+            final int current = i;
             Runnable runner = new Runnable(){
                 public void run() {
                     try {
+                        double currentX = xs[current];
+                        double currentY = ys[current];
+                        double currentGroundElevation = groundElevations[current];
                         // check if it is a local maxima
                         boolean isLocalMaxima = true;
-                        for( LasRecord tmpDot : pointsInTile ) {
-                            double distance = LasUtils.distance(currentDot, tmpDot);
+                        for( int j = 0; j < pointsNum; j++ ) {
+                            double distance = NumericsUtilities.pythagoras(currentX - xs[j], currentY - ys[j]);
                             double maxRadius = pMaxRadius;
                             if (doDynamicRadius) {
                                 // use Popescu lowered to 70% (Popescu & Kini 2004 for mixed pines
                                 // and
                                 // deciduous trees)
-                                maxRadius = (2.51503 + 0.00901 * pow(currentDot.groundElevation, 2.0)) / 2.0 * 0.7;
+                                maxRadius = (2.51503 + 0.00901 * pow(currentGroundElevation, 2.0)) / 2.0 * 0.7;
                                 if (maxRadius > pMaxRadius) {
                                     maxRadius = pMaxRadius;
                                 }
@@ -209,7 +224,7 @@ public class OmsPointCloudMaximaFinder extends JGTModel {
                             if (distance > maxRadius) {
                                 continue;
                             }
-                            if (tmpDot.groundElevation > currentDot.groundElevation) {
+                            if (groundElevations[j] > currentGroundElevation) {
                                 // not local maxima
                                 isLocalMaxima = false;
                                 break;
@@ -219,8 +234,8 @@ public class OmsPointCloudMaximaFinder extends JGTModel {
                         if (isLocalMaxima) {
                             if (helper != null) {
                                 // check if it is some border or noise
-                                GridCoordinates2D gridCoord = helper.gridGeometry.worldToGrid(new DirectPosition2D(currentDot.x,
-                                        currentDot.y));
+                                GridCoordinates2D gridCoord = helper.gridGeometry.worldToGrid(new DirectPosition2D(currentX,
+                                        currentY));
                                 GridNode node = new GridNode(helper.dsmDtmDiffIter, helper.cols, helper.rows, helper.xres,
                                         helper.yres, gridCoord.x, gridCoord.y);
                                 double topElevation = node.elevation;
@@ -238,13 +253,13 @@ public class OmsPointCloudMaximaFinder extends JGTModel {
                             }
                             if (isLocalMaxima) {
                                 synchronized (lasBuilder) {
-                                    final Point point = gf.createPoint(new Coordinate(currentDot.x, currentDot.y));
-                                    double groundElevation = currentDot.groundElevation;
+                                    final Point point = gf.createPoint(new Coordinate(currentX, currentY));
+                                    double groundElevation = currentGroundElevation;
                                     // round to meter with 1 decimal
                                     groundElevation = ((int) round(groundElevation * 10)) / 10.0;
                                     final Object[] values = new Object[]{point, index.getAndIncrement(), groundElevation,
-                                            currentDot.intensity, currentDot.classification, currentDot.returnNumber,
-                                            currentDot.numberOfReturns};
+                                            pointsInTile.getIntensity()[current], pointsInTile.getClassification()[current],
+                                            pointsInTile.getReturnNumber()[current], pointsInTile.getNumberOfReturns()[current]};
                                     lasBuilder.addAll(values);
                                     final SimpleFeature feature = lasBuilder.buildFeature(null);
                                     outTopsFC.add(feature);
@@ -258,15 +273,9 @@ public class OmsPointCloudMaximaFinder extends JGTModel {
                     }
                 }
             };
-            fixedThreadPool.execute(runner);
-        }
-        try {
-            fixedThreadPool.shutdown();
-            fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
-            fixedThreadPool.shutdownNow();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            taskGroup.execute(runner);
         }
+        taskGroup.await();
         pm.done();
 
     }
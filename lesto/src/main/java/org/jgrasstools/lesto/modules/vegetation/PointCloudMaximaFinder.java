@@ -44,7 +44,7 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.jgrasstools.gears.io.las.ALasDataManager;
-import org.jgrasstools.gears.io.las.core.LasRecord;
+import org.jgrasstools.gears.io.las.LasPointBatch;
 import org.jgrasstools.gears.io.las.utils.LasUtils;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
@@ -174,7 +174,7 @@ public class PointCloudMaximaFinder extends JGTModel {
                 // remove holes
                 LineString exteriorRing = ((Polygon) regionGeometry).getExteriorRing();
                 final Polygon regionPolygon = gf.createPolygon(gf.createLinearRing(exteriorRing.getCoordinates()));
-                List<LasRecord> pointsInTile = lasData.getPointsInGeometry(regionPolygon, false);
+                LasPointBatch pointsInTile = lasData.getPointBatchInGeometry(regionPolygon, false);
                 final int size = pointsInTile.size();
                 if (size == 0) {
                     pm.errorMessage("No points processed in tile: " + regionPolygon);
@@ -26,9 +26,11 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_LIC
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_inElev_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_inHorizon_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_outHill_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_pAzimuth_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_pElev_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_pHorizonSectors_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSHILLSHADE_pMinDiffuse_DESCRIPTION;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -71,6 +73,15 @@ public class Hillshade extends JGTModel {
     @In
     public double pElev = 90;
 
+    @Description(OMSHILLSHADE_pHorizonSectors_DESCRIPTION)
+    @In
+    public int pHorizonSectors = 0;
+
+    @Description(OMSHILLSHADE_inHorizon_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inHorizon = null;
+
     @Description(OMSHILLSHADE_outHill_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -83,6 +94,8 @@ public class Hillshade extends JGTModel {
         hillshade.pMinDiffuse = pMinDiffuse;
         hillshade.pAzimuth = pAzimuth;
         hillshade.pElev = pElev;
+        hillshade.pHorizonSectors = pHorizonSectors;
+        hillshade.inHorizon = inHorizon;
         hillshade.pm = pm;
         hillshade.doProcess = doProcess;
         hillshade.doReset = doReset;
@@ -26,7 +26,9 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_LI
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_inElev_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_inHorizon_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_outIns_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_pHorizonSectors_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_tEndDate_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_tStartDate_DESCRIPTION;
 import oms3.annotations.Author;
@@ -66,6 +68,15 @@ public class Insolation extends JGTModel {
     @In
     public String tEndDate = null;
 
+    @Description(OMSINSOLATION_pHorizonSectors_DESCRIPTION)
+    @In
+    public int pHorizonSectors = 0;
+
+    @Description(OMSINSOLATION_inHorizon_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inHorizon = null;
+
     @Description(OMSINSOLATION_outIns_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -77,6 +88,8 @@ public class Insolation extends JGTModel {
         insolation.inElev = getRaster(inElev);
         insolation.tStartDate = tStartDate;
         insolation.tEndDate = tEndDate;
+        insolation.pHorizonSectors = pHorizonSectors;
+        insolation.inHorizon = inHorizon;
         insolation.pm = pm;
         insolation.doProcess = doProcess;
         insolation.doReset = doReset;
@@ -27,6 +27,8 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_NAM
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_inElev_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_outPit_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_pMode_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_pTileSize_DESCRIPTION;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Execute;
@@ -55,6 +57,14 @@ public class Pitfiller extends JGTModel {
     @In
     public String inElev;
 
+    @Description(OMSPITFILLER_pMode_DESCRIPTION)
+    @In
+    public int pMode = 0;
+
+    @Description(OMSPITFILLER_pTileSize_DESCRIPTION)
+    @In
+    public int pTileSize = 0;
+
     @Description(OMSPITFILLER_outPit_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -64,6 +74,8 @@ public class Pitfiller extends JGTModel {
     public void process() throws Exception {
         OmsPitfiller pitfiller = new OmsPitfiller();
         pitfiller.inElev = getRaster(inElev);
+        pitfiller.pMode = pMode;
+        pitfiller.pTileSize = pTileSize;
         pitfiller.pm = pm;
         pitfiller.doProcess = doProcess;
         pitfiller.doReset = doReset;
@@ -26,7 +26,9 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_LICEN
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_inElev_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_inHorizon_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_outSky_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_pHorizonSectors_DESCRIPTION;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Execute;
@@ -56,6 +58,15 @@ public class Skyview extends JGTModel {
     @In
     public String inElev = null;
 
+    @Description(OMSSKYVIEW_pHorizonSectors_DESCRIPTION)
+    @In
+    public int pHorizonSectors = 0;
+
+    @Description(OMSSKYVIEW_inHorizon_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inHorizon = null;
+
     @Description(OMSSKYVIEW_outSky_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -65,6 +76,8 @@ public class Skyview extends JGTModel {
     public void process() throws Exception {
         OmsSkyview skyview = new OmsSkyview();
         skyview.inElev = getRaster(inElev);
+        skyview.pHorizonSectors = pHorizonSectors;
+        skyview.inHorizon = inHorizon;
         skyview.pm = pm;
         skyview.doProcess = doProcess;
         skyview.doReset = doReset;
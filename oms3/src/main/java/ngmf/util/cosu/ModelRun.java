@@ -0,0 +1,23 @@
+package ngmf.util.cosu;
+
+/**
+ * A single model instance that evaluates the objective function
+ * for a parameter set.
+ *
+ * Instances are not shared between threads, each one is used by one
+ * thread at a time and owns its model component, parameter and outputs.
+ *
+ * @author od
+ * @see PopulationEvaluator
+ */
+public interface ModelRun {
+
+    /**
+     * Executes the model with a parameter set.
+     *
+     * @param x the parameter set.
+     * @return the objective function value.
+     * @throws Exception
+     */
+    double evaluate(double[] x) throws Exception;
+}
@@ -0,0 +1,180 @@
+package ngmf.util.cosu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Evaluates parameter sets on a pool of isolated model instances.
+ *
+ * There is one thread for every {@link ModelRun}, a task borrows a
+ * model run for its whole execution, so model instances are never used by
+ * two threads at the same time. Results are returned in the order of the
+ * tasks, independent of the number of threads. With a single model run
+ * the tasks are executed in the calling thread.
+ *
+ * @author od
+ */
+public class PopulationEvaluator {
+
+    /**
+     * A unit of work that executes one or more model runs.
+     */
+    public interface Task<T> {
+
+        T call(ModelRun run) throws Exception;
+    }
+
+    final BlockingQueue<ModelRun> runs;
+    final int threads;
+    ExecutorService executor;
+
+    public PopulationEvaluator(ModelRun run) {
+        this(Collections.singletonList(run));
+    }
+
+    public PopulationEvaluator(List<? extends ModelRun> runs) {
+        if (runs.isEmpty()) {
+            throw new IllegalArgumentException("No model runs.");
+        }
+        this.runs = new LinkedBlockingQueue<ModelRun>(runs);
+        this.threads = runs.size();
+    }
+
+    /**
+     * @return the number of model runs that are executed at the same time.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Evaluates a single parameter set.
+     *
+     * @param x the parameter set.
+     * @return the objective function value.
+     * @throws Exception
+     */
+    public double evaluate(double[] x) throws Exception {
+        return evaluate(new double[][]{x})[0];
+    }
+
+    /**
+     * Evaluates a population of parameter sets.
+     *
+     * @param population the parameter sets.
+     * @return the objective function values, in the order of the population.
+     * @throws Exception the first failure of a model run.
+     */
+    public double[] evaluate(double[][] population) throws Exception {
+        List<Task<Double>> tasks = new ArrayList<Task<Double>>(population.length);
+        for (final double[] x : population) {
+            tasks.add(new Task<Double>() {
+
+                @Override
+                public Double call(ModelRun run) throws Exception {
+                    return run.evaluate(x);
+                }
+            });
+        }
+        List<Double> values = invokeAll(tasks);
+        double[] result = new double[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Executes tasks on the model runs.
+     *
+     * @param tasks the tasks.
+     * @return the results, in the order of the tasks.
+     * @throws Exception the first failure of a task.
+     */
+    public <T> List<T> invokeAll(List<? extends Task<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (threads == 1 || tasks.size() < 2) {
+            ModelRun run = runs.take();
+            try {
+                for (Task<T> task : tasks) {
+                    results.add(task.call(run));
+                }
+            } finally {
+                runs.put(run);
+            }
+            return results;
+        }
+
+        ExecutorService e = executor();
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (final Task<T> task : tasks) {
+            futures.add(e.submit(new Callable<T>() {
+
+                @Override
+                public T call() throws Exception {
+                    ModelRun run = runs.take();
+                    try {
+                        return task.call(run);
+                    } finally {
+                        runs.put(run);
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<T> f : futures) {
+                results.add(f.get());
+            }
+        } catch (ExecutionException E) {
+            // drop the tasks that did not start yet.
+            for (Future<T> f : futures) {
+                f.cancel(false);
+            }
+            Throwable cause = E.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw E;
+        }
+        return results;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                int count = 0;
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "oms3-evaluator-" + (count++));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the threads of the evaluator.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+}
@@ -1,12 +1,24 @@
 package ngmf.util.cosu.luca;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.Vector;
+import ngmf.util.cosu.ModelRun;
+import ngmf.util.cosu.PopulationEvaluator;
 import oms3.dsl.cosu.Step;
 
 /**
+ * Shuffled Complex Evolution.
+ *
+ * The model can be executed on several isolated model instances at the same time:
+ * the points of the initial population are evaluated together, and so are the
+ * complexes of a shuffling loop, which evolve independently from each other. Every
+ * complex draws from its own random stream, seeded in order from the random stream
+ * of the SCE, so the result does not depend on the number of model instances.
  */
 public class SCE {
 
@@ -47,14 +59,6 @@ public class SCE {
     double[] objFuncValueOfX;
     //COORDINATES OF A SINGLE POINT IN X
     double[] pointInX;
-    //COORDINATES OF POINTS IN A COMPLEX
-    double[][] pointsInComplex;
-    //FUNCTION VALUES OF CX(.,.)
-    double[] objFuncValuesOfComplex;
-    //COORDINATES OF POINTS IN THE CURRENT SIMPLEX
-    double[][] pointsInSimplex;
-    //FUNCTION VALUES OF S(.,.)
-    double[] objFuncValuesOfSimplex;
     //WORST POINT AT CURRENT SHUFFLING LOOP
     double[] worstPoint;
     //FUNCTION VALUE OF WORSTX(.)
@@ -63,8 +67,6 @@ public class SCE {
     double[] stdDevOfPopulation;
     //NORMALIZED GEOMETRIC MEAN OF PARAMETER RANGES
     double normalizedGeometricMean;
-    //INDICES LOCATING POSITION OF S(.,.) IN X(.,.)
-    int[] indicesOfSimplex;
     //BOUND ON ITH VARIABLE BEING OPTIMIZED
     double[] bound;
     //NUMBER OF COMPLEXES IN CURRENT POPULATION
@@ -78,6 +80,8 @@ public class SCE {
     double[] initialPoint; // initial point == initialParameterSet
     //
     private ExecutionHandle executionHandle;
+    private PopulationEvaluator evaluator;
+    Random random = new Random();
     Step stepData;
     Step.Data data;
     int NLOOP = 0;
@@ -89,11 +93,30 @@ public class SCE {
     PrintStream out = System.out;
 
     public SCE(ExecutionHandle executionHandle, Step stepData, Step.Data data)  {
+        this(Collections.singletonList(executionHandle), stepData, data);
+    }
+
+    /**
+     * Creates an SCE that executes the model on several model instances at the same time.
+     *
+     * @param executionHandles the handles of the isolated model instances, one for each thread.
+     *        The first one receives the final parameter set.
+     * @param stepData the step.
+     * @param data the data of the step.
+     */
+    public SCE(List<? extends ExecutionHandle> executionHandles, Step stepData, Step.Data data)  {
 
-        this.executionHandle = executionHandle;
+        this.executionHandle = executionHandles.get(0);
         this.stepData = stepData; // stepData contains data needed for running SCE
         this.data = data;
 
+        // every model instance changes the parameter values of its own data
+        List<ModelRun> runs = new ArrayList<ModelRun>(executionHandles.size());
+        for (int i = 0; i < executionHandles.size(); i++) {
+            runs.add(new HandleRun(executionHandles.get(i), stepData, i == 0 ? data : data.copy()));
+        }
+        evaluator = new PopulationEvaluator(runs);
+
         // get values
         numOfParams = data.getParamValues().length;
         //numOfParams = stepData.params().getCount();
@@ -120,16 +143,9 @@ public class SCE {
         pointsX = new double[initTotalNumOfPoints][numOfParams];
         objFuncValueOfX = new double[initTotalNumOfPoints];
         pointInX = new double[numOfParams];
-
-        pointsInComplex = new double[numOfPointsInComplex][numOfParams];
-        objFuncValuesOfComplex = new double[numOfPointsInComplex];
-
-        pointsInSimplex = new double[numOfPointsInSubComplex][numOfParams];
-        objFuncValuesOfSimplex = new double[numOfPointsInSubComplex];
         worstPoint = new double[numOfParams];
 
         stdDevOfPopulation = new double[numOfParams];
-        indicesOfSimplex = new int[numOfPointsInSubComplex];
         bound = new double[numOfParams];
         bestCriterion = new double[10];
         initialPoint = new double[numOfParams];
@@ -139,7 +155,24 @@ public class SCE {
         this.out = out;
     }
 
+    /**
+     * Sets the seed of the random stream, to repeat an optimization.
+     *
+     * @param seed the seed.
+     */
+    public void setSeed(long seed) {
+        random = new Random(seed);
+    }
+
     public void run() throws Exception {
+        try {
+            optimize();
+        } finally {
+            evaluator.shutdown();
+        }
+    }
+
+    private void optimize() throws Exception {
         currentNumOfComplexes = initNumOfComplexes;
         totalNumOfPoints = initTotalNumOfPoints;
         double objFuncValue;
@@ -174,7 +207,7 @@ public class SCE {
         } else {
 //            out.println("Initial point won't be included");
             for (int j = 0; j < numOfParams; j++) {
-                pointsX[0][j] = lowerBound[j] + bound[j] * Math.random();
+                pointsX[0][j] = lowerBound[j] + bound[j] * random.nextDouble();
                 pointInX[j] = pointsX[0][j];
             }
             // write pointInX in the 'newPARAMS' file, executes runMMS and SRobjfun()
@@ -185,20 +218,25 @@ public class SCE {
         data.setObjFuncValueOfBestPoint(objFuncValueOfX[0]);
         int outputType = 1;
         if (icall < maxNumOfTrials) {
-            for (int i = 1; i < totalNumOfPoints; i++) {
+            // the points are drawn in order and then evaluated together
+            int count = Math.min(totalNumOfPoints - 1, maxNumOfTrials - icall);
+            double[][] population = new double[count][];
+            for (int i = 1; i <= count; i++) {
                 for (int j = 0; j < numOfParams; j++) {
-                    pointsX[i][j] = lowerBound[j] + bound[j] * Math.random();
-                    pointInX[j] = pointsX[i][j];
-                }
-
-                objFuncValueOfX[i] = execute(pointInX);
-                //ICALL++;
-                if (icall >= maxNumOfTrials) {
-                    totalNumOfPoints = i + 1;
-                    pointsX = copy(pointsX, totalNumOfPoints);
-                    objFuncValueOfX = copy(objFuncValueOfX, totalNumOfPoints);
-                    break;
+                    pointsX[i][j] = lowerBound[j] + bound[j] * random.nextDouble();
                 }
+                population[i - 1] = pointsX[i].clone();
+            }
+            double[] values = evaluator.evaluate(population);
+            for (int i = 1; i <= count; i++) {
+                objFuncValueOfX[i] = values[i - 1];
+                icall++;
+                printExecution(values[i - 1]);
+            }
+            if (icall >= maxNumOfTrials) {
+                totalNumOfPoints = count + 1;
+                pointsX = copy(pointsX, totalNumOfPoints);
+                objFuncValueOfX = copy(objFuncValueOfX, totalNumOfPoints);
             }
 //            out.println("size of pointsX = " + totalNumOfPoints + " (max size is " + pointsX.length + ")" +
 //                    ", max size of objFuncValueOfX = " + objFuncValueOfX.length);
@@ -281,75 +319,7 @@ public class SCE {
         int outputType = 1; // different output will be displayed depending on the value of ouputTYpe
         while (true) {
             NLOOP++;
-            for (IGS = 0; IGS < currentNumOfComplexes; IGS++) {
-                for (int k1 = 0; k1 < numOfPointsInComplex; k1++) {
-                    int k2 = k1 * currentNumOfComplexes + IGS;
-                    for (int j = 0; j < numOfParams; j++) {
-                        pointsInComplex[k1][j] = pointsX[k2][j];
-                    }
-                    objFuncValuesOfComplex[k1] = objFuncValueOfX[k2];
-                }
-                for (LOOP = 0; LOOP < numOfEvolutionSteps; LOOP++) {
-                    if (numOfPointsInSubComplex == numOfPointsInComplex) {
-                        for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                            indicesOfSimplex[k] = k;
-                        }
-                    } else {
-                        //  k = 0 instead of k = 1 because the line above (indicesOfSimplex[0] = ....)
-                        // is removed.
-                        for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                            boolean again = true;
-                            int lpos = -1;
-                            while (again) {
-                                again = false;
-                                lpos = (int) (numOfPointsInComplex + 0.5 -
-                                        Math.sqrt(Math.pow((numOfPointsInComplex + 0.5), 2) -
-                                        numOfPointsInComplex * (numOfPointsInComplex + 1) * Math.random()));
-                                // check if any element from indicesOfSimplex[0] to indicesOfSimplex[k-1]
-                                // is equal to LPOS. If not, get out of the for loop, finish the while(AGAIN) loop,
-                                // and set LPOS as a value of indicesOfSimplex[k]
-                                for (int k1 = 0; k1 < k; k1++) {
-                                    if (lpos == indicesOfSimplex[k1]) {
-                                        again = true;
-                                        break;
-                                    }
-                                }
-                            }
-                            indicesOfSimplex[k] = lpos;
-                        }
-                        // sort the indiciesOfSimplex array in increasing order
-                        Arrays.sort(indicesOfSimplex);
-                    }
-
-                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                        for (int j = 0; j < numOfParams; j++) {
-                            pointsInSimplex[k][j] = pointsInComplex[indicesOfSimplex[k]][j];
-                        }
-                        objFuncValuesOfSimplex[k] = objFuncValuesOfComplex[indicesOfSimplex[k]];
-                    }
-                    cce();
-                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                        for (int j = 0; j < numOfParams; j++) {
-                            pointsInComplex[indicesOfSimplex[k]][j] = pointsInSimplex[k][j];
-                        }
-                        objFuncValuesOfComplex[indicesOfSimplex[k]] = objFuncValuesOfSimplex[k];
-                    }
-                    sort_duan(pointsInComplex, objFuncValuesOfComplex);
-                    if (icall >= maxNumOfTrials) {
-                        break;
-                    }
-                } // end of loop with LOOP
-                for (int k1 = 0; k1 < numOfPointsInComplex; k1++) {
-                    int k2 = k1 * currentNumOfComplexes + IGS;
-                    for (int j = 0; j < numOfParams; j++) {
-                        pointsX[k2][j] = pointsInComplex[k1][j];
-                    }
-                    objFuncValueOfX[k2] = objFuncValuesOfComplex[k1];
-                }
-                if (icall >= maxNumOfTrials) {
-                    break;
-                }
-            } // end of for loop with IGS
+            evolveComplexes();
 
             sort_duan(pointsX, objFuncValueOfX);
             // set the best point and its objective function value
@@ -417,19 +387,59 @@ public class SCE {
     //##  Other functions
     //########################################################################
     double execute(double[] array) throws Exception {
-        data.setParamValues(array);
-        executionHandle.execute(data);
+        double of = evaluator.evaluate(array);
         icall++;
-        double of = stepData.calculateObjectiveFunctionValue(executionHandle);
-         double distribution = normdistForBestPoint();
-//          out.println("loop " + NLOOP + "  ICALL = " + icall);
-//            out.println("Number of complexes in a current population: " + currentNumOfComplexes);
-//            out.println("Objective Function value of best point: " + data.getObjFuncValueOfBestPoint());
-//            out.println("Objective Function value of worst point: " + objFuncValueOfWorstPoint);
-//            out.println("Normal Distribution of best point: " + distribution);
+        printExecution(of);
+        return of;
+    }
 
+    void printExecution(double of) {
+        double distribution = normdistForBestPoint();
         out.print("\n    " + icall + ": " + of + " [" + data.getObjFuncValueOfBestPoint() + "/" + objFuncValueOfWorstPoint+"]" + " c:" + currentNumOfComplexes + " d:" + distribution);
-        return of;
+    }
+
+    /* Evolves the complexes of a shuffling loop and puts them back in the population,
+     * stopping at the complex that reaches the maximum number of trials. */
+    void evolveComplexes() throws Exception {
+        // the seeds are drawn before any evolution, in the order of the complexes
+        List<Complex> complexes = new ArrayList<Complex>(currentNumOfComplexes);
+        for (int igs = 0; igs < currentNumOfComplexes; igs++) {
+            complexes.add(new Complex(igs, random.nextLong()));
+        }
+        if (evaluator.getThreads() > 1) {
+            // evolve all complexes at the same time, each one as if it were the first one
+            for (Complex complex : complexes) {
+                complex.budget = maxNumOfTrials - icall;
+            }
+            evaluator.invokeAll(complexes);
+        }
+        for (Complex complex : complexes) {
+            int remaining = maxNumOfTrials - icall;
+            if (!complex.evolved) {
+                complex.budget = remaining;
+                evaluator.invokeAll(Collections.singletonList(complex));
+            } else if (complex.executions >= remaining) {
+                // the complex reached the trials left by the previous complexes,
+                // it is evolved again with the same random stream and the recorded values
+                complex.replay(remaining);
+            }
+            IGS = complex.igs;
+            LOOP = complex.loop;
+            for (int i = 0; i < complex.executions; i++) {
+                icall++;
+                printExecution(complex.values[i]);
+            }
+            for (int k1 = 0; k1 < numOfPointsInComplex; k1++) {
+                int k2 = k1 * currentNumOfComplexes + complex.igs;
+                for (int j = 0; j < numOfParams; j++) {
+                    pointsX[k2][j] = complex.pointsInComplex[k1][j];
+                }
+                objFuncValueOfX[k2] = complex.objFuncValuesOfComplex[k1];
+            }
+            if (icall >= maxNumOfTrials) {
+                break;
+            }
+        }
     }
 
     void sort_duan(double[][] x, double[] y) {
@@ -538,147 +548,296 @@ public class SCE {
         }
     }
 
-    void cce() throws Exception {
-        double[] worstPointSimplex = new double[numOfParams]; // WO(.)
-        double[] centroid = new double[numOfParams]; //CE(.)
-        double[] newPoint = new double[numOfParams]; //SNEW(.)
-        double[] vector = new double[numOfParams]; //STEP(.)
-        double worstObjFuncValue; //FW
+    /* returns an array of the specified size, containing the elements of index
+     *  from 0 to size - 1 in source. */
+    double[] copy(double[] source, int size) {
+        double[] newArray = new double[size];
+        for (int i = 0; i < size; i++) {
+            newArray[i] = source[i];
+        }
+        return newArray;
+    }
 
-        for (int j = 0; j < numOfParams; j++) {
-            // pointsInSimplex[] is sorted based on the objective functions values,
-            // so the element in the last index is the worst point.
-            worstPointSimplex[j] = pointsInSimplex[numOfPointsInSubComplex - 1][j];
-            centroid[j] = 0;
-            // exclude the last point (worst point) in this loop
-            for (int i = 0; i < (numOfPointsInSubComplex - 1); i++) {
-                centroid[j] += pointsInSimplex[i][j];
-            }
-            centroid[j] = centroid[j] / ((double) (numOfPointsInSubComplex - 1));
-            vector[j] = centroid[j] - worstPointSimplex[j];
-        }
-        worstObjFuncValue = objFuncValuesOfSimplex[numOfPointsInSubComplex - 1];
-        for (int j = 0; j < numOfParams; j++) {
-            newPoint[j] = worstPointSimplex[j] + 2 * vector[j];
+    /* returns an 2D array[rowSize][length of columns of source], containing
+     *  the elements from source[0][] to source[size-1][]. */
+    double[][] copy(double[][] source, int rowSize) {
+        double[][] newArray = new double[rowSize][source[0].length];
+        for (int i = 0; i < rowSize; i++) {
+            for (int j = 0; j < newArray[0].length; j++) {
+                newArray[i][j] = source[i][j];
+            }
         }
-        boolean outOfBOUND = false;
-        for (int j = 0; j < numOfParams; j++) {
-            if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
-                outOfBOUND = true;
-                break;
+        return newArray;
+    }
+
+    /* The evolution of a complex during a shuffling loop. It reads the population
+     * and the statistics of the previous loop only, so the complexes of a loop can
+     * evolve at the same time. */
+    class Complex implements PopulationEvaluator.Task<Complex> {
+
+        final int igs;
+        final long seed;
+        // the number of model executions allowed
+        int budget;
+        boolean evolved;
+        int loop;
+        Random complexRandom;
+        ModelRun run;
+        //COORDINATES OF POINTS IN A COMPLEX
+        double[][] pointsInComplex = new double[numOfPointsInComplex][numOfParams];
+        //FUNCTION VALUES OF CX(.,.)
+        double[] objFuncValuesOfComplex = new double[numOfPointsInComplex];
+        //COORDINATES OF POINTS IN THE CURRENT SIMPLEX
+        double[][] pointsInSimplex = new double[numOfPointsInSubComplex][numOfParams];
+        //FUNCTION VALUES OF S(.,.)
+        double[] objFuncValuesOfSimplex = new double[numOfPointsInSubComplex];
+        //INDICES LOCATING POSITION OF S(.,.) IN X(.,.)
+        int[] indicesOfSimplex = new int[numOfPointsInSubComplex];
+        // the objective function values of the model executions, in order
+        double[] values = new double[16];
+        int executions;
+        double[] replayValues;
+
+        Complex(int igs, long seed) {
+            this.igs = igs;
+            this.seed = seed;
+        }
+
+        @Override
+        public Complex call(ModelRun run) throws Exception {
+            this.run = run;
+            evolve();
+            this.run = null;
+            return this;
+        }
+
+        /* Evolves the complex again with less executions allowed. Until it is stopped
+         * the evolution is the same as before, so the values are taken from the record. */
+        void replay(int budget) throws Exception {
+            replayValues = copy(values, executions);
+            this.budget = budget;
+            evolve();
+            replayValues = null;
+        }
+
+        boolean exhausted() {
+            return executions >= budget;
+        }
+
+        double execute(double[] point) throws Exception {
+            double of = replayValues != null ? replayValues[executions] : run.evaluate(point);
+            if (executions == values.length) {
+                values = Arrays.copyOf(values, executions * 2);
             }
+            values[executions++] = of;
+            return of;
         }
-        if (outOfBOUND) {
-            getNewPointAtRandom(newPoint);
+
+        void evolve() throws Exception {
+            complexRandom = new Random(seed);
+            calculateGASDEV = true;
+            executions = 0;
+            for (int k1 = 0; k1 < numOfPointsInComplex; k1++) {
+                int k2 = k1 * currentNumOfComplexes + igs;
+                for (int j = 0; j < numOfParams; j++) {
+                    pointsInComplex[k1][j] = pointsX[k2][j];
+                }
+                objFuncValuesOfComplex[k1] = objFuncValueOfX[k2];
+            }
+            for (loop = 0; loop < numOfEvolutionSteps; loop++) {
+                if (numOfPointsInSubComplex == numOfPointsInComplex) {
+                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                        indicesOfSimplex[k] = k;
+                    }
+                } else {
+                    //  k = 0 instead of k = 1 because the line above (indicesOfSimplex[0] = ....)
+                    // is removed.
+                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                        boolean again = true;
+                        int lpos = -1;
+                        while (again) {
+                            again = false;
+                            lpos = (int) (numOfPointsInComplex + 0.5 -
+                                    Math.sqrt(Math.pow((numOfPointsInComplex + 0.5), 2) -
+                                    numOfPointsInComplex * (numOfPointsInComplex + 1) * complexRandom.nextDouble()));
+                            // check if any element from indicesOfSimplex[0] to indicesOfSimplex[k-1]
+                            // is equal to LPOS. If not, get out of the for loop, finish the while(AGAIN) loop,
+                            // and set LPOS as a value of indicesOfSimplex[k]
+                            for (int k1 = 0; k1 < k; k1++) {
+                                if (lpos == indicesOfSimplex[k1]) {
+                                    again = true;
+                                    break;
+                                }
+                            }
+                        }
+                        indicesOfSimplex[k] = lpos;
+                    }
+                    // sort the indiciesOfSimplex array in increasing order
+                    Arrays.sort(indicesOfSimplex);
+                }
+
+                for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                    for (int j = 0; j < numOfParams; j++) {
+                        pointsInSimplex[k][j] = pointsInComplex[indicesOfSimplex[k]][j];
+                    }
+                    objFuncValuesOfSimplex[k] = objFuncValuesOfComplex[indicesOfSimplex[k]];
+                }
+                cce();
+                for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                    for (int j = 0; j < numOfParams; j++) {
+                        pointsInComplex[indicesOfSimplex[k]][j] = pointsInSimplex[k][j];
+                    }
+                    objFuncValuesOfComplex[indicesOfSimplex[k]] = objFuncValuesOfSimplex[k];
+                }
+                sort_duan(pointsInComplex, objFuncValuesOfComplex);
+                if (exhausted()) {
+                    break;
+                }
+            }
+            evolved = true;
         }
-        double newObjFuncValue = execute(newPoint);
 
-        if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue <= worstObjFuncValue) ||
-                (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue >= worstObjFuncValue)) {
-            if (icall >= maxNumOfTrials) {
-                return; //ICALL;
+        void cce() throws Exception {
+            double[] worstPointSimplex = new double[numOfParams]; // WO(.)
+            double[] centroid = new double[numOfParams]; //CE(.)
+            double[] newPoint = new double[numOfParams]; //SNEW(.)
+            double[] vector = new double[numOfParams]; //STEP(.)
+            double worstObjFuncValue; //FW
+
+            for (int j = 0; j < numOfParams; j++) {
+                // pointsInSimplex[] is sorted based on the objective functions values,
+                // so the element in the last index is the worst point.
+                worstPointSimplex[j] = pointsInSimplex[numOfPointsInSubComplex - 1][j];
+                centroid[j] = 0;
+                // exclude the last point (worst point) in this loop
+                for (int i = 0; i < (numOfPointsInSubComplex - 1); i++) {
+                    centroid[j] += pointsInSimplex[i][j];
+                }
+                centroid[j] = centroid[j] / ((double) (numOfPointsInSubComplex - 1));
+                vector[j] = centroid[j] - worstPointSimplex[j];
             }
+            worstObjFuncValue = objFuncValuesOfSimplex[numOfPointsInSubComplex - 1];
             for (int j = 0; j < numOfParams; j++) {
-                newPoint[j] = worstPointSimplex[j] + 0.5 * vector[j];
+                newPoint[j] = worstPointSimplex[j] + 2 * vector[j];
             }
-            newObjFuncValue = execute(newPoint);
-            if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue < worstObjFuncValue) ||
-                    (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue > worstObjFuncValue)) {
-                if (icall >= maxNumOfTrials) {
-                    return;
+            boolean outOfBOUND = false;
+            for (int j = 0; j < numOfParams; j++) {
+                if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
+                    outOfBOUND = true;
+                    break;
                 }
+            }
+            if (outOfBOUND) {
                 getNewPointAtRandom(newPoint);
+            }
+            double newObjFuncValue = execute(newPoint);
+
+            if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue <= worstObjFuncValue) ||
+                    (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue >= worstObjFuncValue)) {
+                if (exhausted()) {
+                    return; //ICALL;
+                }
+                for (int j = 0; j < numOfParams; j++) {
+                    newPoint[j] = worstPointSimplex[j] + 0.5 * vector[j];
+                }
                 newObjFuncValue = execute(newPoint);
+                if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue < worstObjFuncValue) ||
+                        (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue > worstObjFuncValue)) {
+                    if (exhausted()) {
+                        return;
+                    }
+                    getNewPointAtRandom(newPoint);
+                    newObjFuncValue = execute(newPoint);
 
-            }// end of the 2nd if ((newObjFuncValue > worstObjFuncValue) ... )
-        } // end of the 1st if ((newObjFuncValue > worstObjFuncValue) ... )
+                }// end of the 2nd if ((newObjFuncValue > worstObjFuncValue) ... )
+            } // end of the 1st if ((newObjFuncValue > worstObjFuncValue) ... )
 
-        for (int j = 0; j < numOfParams; j++) {
-            pointsInSimplex[numOfPointsInSubComplex - 1][j] = newPoint[j];
+            for (int j = 0; j < numOfParams; j++) {
+                pointsInSimplex[numOfPointsInSubComplex - 1][j] = newPoint[j];
+            }
+            objFuncValuesOfSimplex[numOfPointsInSubComplex - 1] = newObjFuncValue;
         }
-        objFuncValuesOfSimplex[numOfPointsInSubComplex - 1] = newObjFuncValue;
-    }
 
-    /* a new point is assigned to newPoint based on stdDevOfPopulation[],
-     *  gasdev(), bound[], and etc.*/
-    void getNewPointAtRandom(double[] newPoint) {
-        for (int j = 0; j < numOfParams; j++) {
-            int nnn = 0;
-            do {
-                double R = gasdev();
-                newPoint[j] = pointsInSimplex[0][j] + stdDevOfPopulation[j] * R * bound[j];
-                nnn++;
-                if (nnn == 1001) {
-                    out.println("SCE: getNewPointAtRandom(): Having hard time generating a new point in a feasible region");
-                }
-                if (nnn > 1000) {
-                    newPoint[j] = lowerBound[j] + Math.abs(R) * (0.5 * bound[j]);
-                    if (nnn % 100 == 1) {
-                        out.print("Attempt " + nnn + ": new point = " + newPoint[j] +
-                                ", lower bound = " + lowerBound[j] + ", upper bound = " + upperBound[j]);
+        /* a new point is assigned to newPoint based on stdDevOfPopulation[],
+         *  gasdev(), bound[], and etc.*/
+        void getNewPointAtRandom(double[] newPoint) {
+            for (int j = 0; j < numOfParams; j++) {
+                int nnn = 0;
+                do {
+                    double R = gasdev();
+                    newPoint[j] = pointsInSimplex[0][j] + stdDevOfPopulation[j] * R * bound[j];
+                    nnn++;
+                    if (nnn == 1001) {
+                        out.println("SCE: getNewPointAtRandom(): Having hard time generating a new point in a feasible region");
                     }
-                    if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
-                        out.println(" ---> out of bound");
-                    } else {
-                        out.println(" ---> in bound!!");
+                    if (nnn > 1000) {
+                        newPoint[j] = lowerBound[j] + Math.abs(R) * (0.5 * bound[j]);
+                        if (nnn % 100 == 1) {
+                            out.print("Attempt " + nnn + ": new point = " + newPoint[j] +
+                                    ", lower bound = " + lowerBound[j] + ", upper bound = " + upperBound[j]);
+                        }
+                        if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
+                            out.println(" ---> out of bound");
+                        } else {
+                            out.println(" ---> in bound!!");
+                        }
                     }
-                }
-            } while ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j]));
+                } while ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j]));
+            }
         }
-    }
-    //
-    boolean calculateGASDEV = true; // if true, gasdev() returns gasdevValue1
-    double gasdevValue1; // one of the two values generated in gasdev()
-    double gasdevValue2; // one of the two values generated in gasdev()
-
-    /* returns a normally distributed deviate with zero mean and unit variance,
-     *  using random number generator, as the source of uniform deviates.
-     */
-    double gasdev() {
-        double R, v1, v2;
-        if (calculateGASDEV) {
-            // if we don't have an extra deviate handy
-            do {
-                // pick two uniform numbers in the square extending from -1 to +1
-                // in each direction
-                v1 = 2 * Math.random() - 1;
-                v2 = 2 * Math.random() - 1;
-                // check if v1 and v2 are in the unit circle
-                R = v1 * v1 + v2 * v2;
-            } while (R >= 1); // if v1 and v2 are not in the unit circle
-
-            // make the Box-Muller transformation to get two normal deviates
-            double fac = Math.sqrt((-1) * ((2 * Math.log(R)) / R));
-            gasdevValue2 = v1 * fac; // one of the two normal deviates. gasdevValue2 is returned
-            // next time this function is called
-            gasdevValue1 = v2 * fac; // the other normal deviate, which will be returned at this time
-            calculateGASDEV = false;
-            return gasdevValue1;
-        } else {
-            calculateGASDEV = true;
-            return gasdevValue2;
+        //
+        boolean calculateGASDEV = true; // if true, gasdev() returns gasdevValue1
+        double gasdevValue1; // one of the two values generated in gasdev()
+        double gasdevValue2; // one of the two values generated in gasdev()
+
+        /* returns a normally distributed deviate with zero mean and unit variance,
+         *  using random number generator, as the source of uniform deviates.
+         */
+        double gasdev() {
+            double R, v1, v2;
+            if (calculateGASDEV) {
+                // if we don't have an extra deviate handy
+                do {
+                    // pick two uniform numbers in the square extending from -1 to +1
+                    // in each direction
+                    v1 = 2 * complexRandom.nextDouble() - 1;
+                    v2 = 2 * complexRandom.nextDouble() - 1;
+                    // check if v1 and v2 are in the unit circle
+                    R = v1 * v1 + v2 * v2;
+                } while (R >= 1); // if v1 and v2 are not in the unit circle
+
+                // make the Box-Muller transformation to get two normal deviates
+                double fac = Math.sqrt((-1) * ((2 * Math.log(R)) / R));
+                gasdevValue2 = v1 * fac; // one of the two normal deviates. gasdevValue2 is returned
+                // next time this function is called
+                gasdevValue1 = v2 * fac; // the other normal deviate, which will be returned at this time
+                calculateGASDEV = false;
+                return gasdevValue1;
+            } else {
+                calculateGASDEV = true;
+                return gasdevValue2;
+            }
         }
     }
 
-    /* returns an array of the specified size, containing the elements of index
-     *  from 0 to size - 1 in source. */
-    double[] copy(double[] source, int size) {
-        double[] newArray = new double[size];
-        for (int i = 0; i < size; i++) {
-            newArray[i] = source[i];
+    /* Executes the model on a model instance, with its own copy of the step data. */
+    static class HandleRun implements ModelRun {
+
+        final ExecutionHandle executionHandle;
+        final Step stepData;
+        final Step.Data data;
+
+        HandleRun(ExecutionHandle executionHandle, Step stepData, Step.Data data) {
+            this.executionHandle = executionHandle;
+            this.stepData = stepData;
+            this.data = data;
         }
-        return newArray;
-    }
 
-    /* returns an 2D array[rowSize][length of columns of source], containing
-     *  the elements from source[0][] to source[size-1][]. */
-    double[][] copy(double[][] source, int rowSize) {
-        double[][] newArray = new double[rowSize][source[0].length];
-        for (int i = 0; i < rowSize; i++) {
-            for (int j = 0; j < newArray[0].length; j++) {
-                newArray[i][j] = source[i][j];
-            }
+        @Override
+        public double evaluate(double[] x) throws Exception {
+            data.setParamValues(x);
+            executionHandle.execute(data);
+            return stepData.calculateObjectiveFunctionValue(executionHandle);
         }
-        return newArray;
     }
 }
@@ -71,6 +71,11 @@ public class ComponentAccess {
     Notification ens;
     /** Execute method. */
     final MethodInvoker exec;
+    // in and out fields in the order of exec(), null if not set up.
+    Access[] syncIns;
+    Access[] asyncIns;
+    Access[] asyncOuts;
+    Access[] syncOuts;
 
 //    public static int counter;
 //    static final Object lock = new Object();
@@ -89,7 +94,7 @@ public class ComponentAccess {
         this.ens = ens;
         
         Method execute = getMethodOfInterest(comp, Execute.class);
-        exec = Utils.reflective(comp, execute);
+        exec = Utils.invoker(comp, execute);
 //        exec = Utils.compiled(comp, execute);
         findAll(comp, ins, outs, ens);
     }
@@ -105,10 +110,41 @@ public class ComponentAccess {
 
     void setInput(String name, Access fa) {
         ins.put(name, fa);
+        syncIns = null;
     }
 
     void setOutput(String name, Access fa) {
         outs.put(name, fa);
+        syncIns = null;
+    }
+
+    /**
+     * Sort the in and outs by the way they are passed in exec().
+     */
+    private void setupAccess() {
+        ArrayList<Access> si = new ArrayList<Access>();
+        ArrayList<Access> ai = new ArrayList<Access>();
+        for (Access a : ins.values()) {
+            if (a.getClass() == FieldAccess.class) {
+                si.add(a);
+            } else if (a.getClass() == FieldObjectAccess.class || a.getClass() == FieldValueAccess.class
+                    || a.getClass() == AsyncFieldAccess.class) {
+                ai.add(a);
+            }
+        }
+        ArrayList<Access> ao = new ArrayList<Access>();
+        ArrayList<Access> so = new ArrayList<Access>();
+        for (Access a : outs.values()) {
+            if (a.getClass() == FieldObjectAccess.class || a.getClass() == AsyncFieldAccess.class) {
+                ao.add(a);
+            } else if (a.getClass() == FieldAccess.class) {
+                so.add(a);
+            }
+        }
+        asyncIns = ai.toArray(new Access[ai.size()]);
+        asyncOuts = ao.toArray(new Access[ao.size()]);
+        syncOuts = so.toArray(new Access[so.size()]);
+        syncIns = si.toArray(new Access[si.size()]);
     }
 
     /** 
@@ -148,35 +184,29 @@ public class ComponentAccess {
 
     final void exec() throws ComponentException {
         try {
+            if (syncIns == null) {
+                setupAccess();
+            }
             ens.fireWait(this);
             // synchonized in()
-            for (Access a : ins.values()) {     // wait for all inputs to arrive
-                if (a.getClass() == FieldAccess.class) {
-                    a.in();
-                }
+            for (Access a : syncIns) {          // wait for all inputs to arrive
+                a.in();
             }
             // un synchonized in()
-            for (Access a : ins.values()) {     // wait for all inputs to arrive
-                if (a.getClass() == FieldObjectAccess.class || a.getClass() == FieldValueAccess.class
-                        || a.getClass() == AsyncFieldAccess.class) {
-                    a.in();            // not synchonized.
-                }
+            for (Access a : asyncIns) {         // wait for all inputs to arrive
+                a.in();                         // not synchonized.
             }
             ens.fireStart(this);
             exec.invoke();                           // execute the object's exec method
             ens.fireFinnish(this);
 
             // unsynchronized out
-            for (Access a : outs.values()) {    // notify for output.
-                if (a.getClass() == FieldObjectAccess.class || a.getClass() == AsyncFieldAccess.class) {
-                    a.out();
-                }
+            for (Access a : asyncOuts) {        // notify for output.
+                a.out();
             }
             // synchronized out
-            for (Access a : outs.values()) {    // notify for output.
-                if (a.getClass() == FieldAccess.class) {
-                    a.out();
-                }
+            for (Access a : syncOuts) {         // notify for output.
+                a.out();
             }
         } catch (InvocationTargetException ex) {
             throw new ComponentException(ex.getCause(), comp);
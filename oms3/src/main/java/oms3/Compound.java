@@ -74,6 +74,18 @@ public  class Compound {
         Controller.reload();
     }
 
+    /** Selects the data exchange between the components of this compound.
+     * Lock free exchange avoids the monitor for every value that
+     * is passed, it has to be selected before components are connected,
+     * e.g. in the constructor. The default is set by the system property
+     * <code>oms.data.lockfree</code>.
+     *
+     * @param lockFree true for lock free exchange, false for synchronized
+     */
+    public void setLockFree(boolean lockFree) {
+        controller.setLockFree(lockFree);
+    }
+
 
     /** Connects two internal components with respect to their fields.
      *
@@ -38,6 +38,11 @@ import oms3.util.Threads;
 class Controller {
 
     static boolean checkCircular = Boolean.getBoolean("oms.check.circular");
+    // one thread per component and step, instead of the dataflow schedule.
+    static boolean threaded = Boolean.getBoolean("oms.exec.threads");
+    // lock free data exchange between the components.
+    boolean lockFree = Boolean.getBoolean("oms.data.lockfree");
+    final LockFreeFieldContent.Epoch epoch = new LockFreeFieldContent.Epoch();
     //
     private static final Logger log = Logger.getLogger("oms3.sim");
     /** Execution event Notification */
@@ -76,6 +81,25 @@ class Controller {
         return ens;
     }
 
+    /** Select the data exchange between the components.
+     *
+     * @param lockFree true for lock free data objects.
+     */
+    void setLockFree(boolean lockFree) {
+        if (!dataSet.isEmpty() && lockFree != this.lockFree) {
+            throw new ComponentException("Data exchange has to be selected before connecting components.");
+        }
+        this.lockFree = lockFree;
+    }
+
+    /** Create a new data object for a connection.
+     *
+     * @return the data object.
+     */
+    FieldContent newData() {
+        return lockFree ? new LockFreeFieldContent(epoch) : new FieldContent();
+    }
+
     /** Map two output fields.
      * 
      * @param out the output field name of this component
@@ -337,11 +361,13 @@ class Controller {
 
     static void reload() {
         executor = Executors.newCachedThreadPool();
+        Schedule.pool = new ForkJoinPool();
         Threads.e = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
     }
 
     public static void shutdown() {
         executor.shutdown();
+        Schedule.pool.shutdown();
         Threads.e.shutdown();
     }
 
@@ -380,12 +406,14 @@ class Controller {
     Latch latch = new Latch();
     Runnable[] rc;
     final Object l = new Object();
+    Schedule schedule;
 
     protected void internalExec() throws ComponentException {
         Collection<ComponentAccess> comps = oMap.values();
         if (comps.isEmpty()) {
             return;        // compound inputs to internals
         }
+        epoch.advance();
         try {
             for (Access a : ca.inputs()) {   // map the inputs
                 a.out();
@@ -398,9 +426,44 @@ class Controller {
             dataRef.invalidate();
         }
 
+        ens.fireStart(ca);
+        if (threaded) {
+            execThreaded(comps);
+        } else {
+            if (schedule == null) {
+                schedule = new Schedule(comps);
+            }
+            E = schedule.exec();
+        }
+
+        // some of the components left an
+        // exception.
+        if (E != null) {
+            ens.fireException(E);
+            throw E;
+        }
+
+        try {
+            ens.fireFinnish(ca);
+            // map the outputs.
+//            System.out.println("Comp " + ca.getComponent() + ": " + ca.outputs());
+            for (Access a : ca.outputs()) {
+                a.in();
+            }
+        } catch (Exception Ex) {
+            throw new ComponentException(Ex, ca.getComponent());
+        }
+    }
+
+    /**
+     * Execute every component in its own task, components wait for their
+     * inputs.
+     *
+     * @param comps
+     */
+    private void execThreaded(Collection<ComponentAccess> comps) {
 //        final CountDownLatch latch = new CountDownLatch(comps.size());
         latch.reload(comps.size());
-        ens.fireStart(ca);
         if (rc == null) {
             rc = new Runnable[comps.size()];
             int i = 0;
@@ -456,24 +519,6 @@ class Controller {
         } catch (InterruptedException IE) {
             // nothing to do here.
         }
-
-        // some of the components left an
-        // exception.
-        if (E != null) {
-            ens.fireException(E);
-            throw E;
-        }
-
-        try {
-            ens.fireFinnish(ca);
-            // map the outputs.
-//            System.out.println("Comp " + ca.getComponent() + ": " + ca.outputs());
-            for (Access a : ca.outputs()) {
-                a.in();
-            }
-        } catch (Exception Ex) {
-            throw new ComponentException(Ex, ca.getComponent());
-        }
     }
 
     /**
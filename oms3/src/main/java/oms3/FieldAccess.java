@@ -17,6 +17,8 @@ class FieldAccess implements Access {
     Field field;
     Object comp;
     FieldContent data;
+    final Class<?> type;
+    final FieldHandle handle;
     private static final Logger log = Logger.getLogger("oms3.sim");
 
 //    Access access;
@@ -26,6 +28,8 @@ class FieldAccess implements Access {
         this.comp = target;
         this.ens = ens;
         field.setAccessible(true);   // just in case
+        type = field.getType();
+        handle = FieldHandle.create(target, field);
 //        access = Utils.compiled(comp, field);
     }
 
@@ -33,7 +37,7 @@ class FieldAccess implements Access {
     @Override
     public FieldContent getData() {
         if (data == null) {
-            data = new FieldContent();
+            data = (ens == null) ? new FieldContent() : ens.getController().newData();
         }
         return data;
     }
@@ -84,10 +88,10 @@ class FieldAccess implements Access {
         
         // type conversion
         
-        if (val != null && field.getType() != val.getClass() && !field.getType().isAssignableFrom(val.getClass())) {
+        if (val != null && type != val.getClass() && !type.isAssignableFrom(val.getClass())) {
 //            // default type conversion fails, we need to convert.
 //            // this will use the Conversions SPI.
-            val = Conversions.convert(val, field.getType());
+            val = Conversions.convert(val, type);
         }
 
 //        access.pass((Access) val);
@@ -144,7 +148,7 @@ class FieldAccess implements Access {
      */
     @Override
     final public Object getFieldValue() throws Exception {
-        return field.get(comp);
+        return handle.get();
     }
 
     /**
@@ -155,7 +159,7 @@ class FieldAccess implements Access {
      */
     @Override
     final public void setFieldValue(Object o) throws Exception {
-        field.set(comp, o);
+        handle.set(o);
     }
 
     @Override
@@ -37,18 +37,20 @@ public class FieldContent {
 
         Field field;
         Object obj;
+        FieldHandle handle;
 
         FA(Object obj, String name) throws Exception {
             this.obj = obj;
             field = obj.getClass().getField(name);
+            handle = FieldHandle.create(obj, field);
         }
 
         Object getFieldValue() throws Exception {
-            return field.get(obj);
+            return handle.get();
         }
 
         void setFieldValue(Object o) throws Exception {
-            field.set(obj, o);
+            handle.set(o);
         }
     }
 
@@ -79,7 +81,7 @@ public class FieldContent {
 
     // Invalidate the value in between iterations.
     // invalidate only if the input can be generated again.
-    final void invalidate() {
+    void invalidate() {
         if ((access & LEAF_IN) == LEAF_IN) {
             return;
         }
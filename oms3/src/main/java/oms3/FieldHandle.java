@@ -0,0 +1,149 @@
+/*
+ * $Id$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Access to a field of a component.
+ *
+ * The field is accessed through method handles bound to the component,
+ * which the JIT can inline, unlike the reflective access. The reflective
+ * access is used if the handles cannot be created, or for all the fields
+ * with the system property <code>oms3.access=reflective</code>. Both ways
+ * convert and check the values in the same way.
+ *
+ * @author od
+ * @version $Id$
+ */
+abstract class FieldHandle {
+
+    /** Use the reflective access only. */
+    static final boolean REFLECTIVE = "reflective".equals(System.getProperty("oms3.access"));
+
+    final Field field;
+    final Object target;
+
+    FieldHandle(Object target, Field field) {
+        this.target = target;
+        this.field = field;
+    }
+
+    /**
+     * Get the value of the field.
+     *
+     * @return the value, primitive values are boxed.
+     * @throws Exception
+     */
+    abstract Object get() throws Exception;
+
+    /**
+     * Set the value of the field.
+     *
+     * @param o the value, unboxed and widened for primitive fields.
+     * @throws Exception
+     */
+    abstract void set(Object o) throws Exception;
+
+    /**
+     * Create the access to a field.
+     *
+     * @param target the component
+     * @param field the field of the component
+     * @return the field access
+     */
+    static FieldHandle create(Object target, Field field) {
+        if (!REFLECTIVE) {
+            try {
+                return new Bound(target, field);
+            } catch (IllegalAccessException E) {
+                // fall back to the reflective access, it reports the problem on access.
+            }
+        }
+        return new Reflective(target, field);
+    }
+
+    static class Reflective extends FieldHandle {
+
+        Reflective(Object target, Field field) {
+            super(target, field);
+        }
+
+        @Override
+        Object get() throws Exception {
+            return field.get(target);
+        }
+
+        @Override
+        void set(Object o) throws Exception {
+            field.set(target, o);
+        }
+    }
+
+    static class Bound extends FieldHandle {
+
+        static final MethodType GETTER = MethodType.methodType(Object.class);
+        static final MethodType SETTER = MethodType.methodType(void.class, Object.class);
+        //
+        final MethodHandle getter;
+        final MethodHandle setter;
+
+        Bound(Object target, Field field) throws IllegalAccessException {
+            super(target, field);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            getter = lookup.unreflectGetter(field).bindTo(target).asType(GETTER);
+            setter = lookup.unreflectSetter(field).bindTo(target).asType(SETTER);
+        }
+
+        @Override
+        Object get() throws Exception {
+            try {
+                return (Object) getter.invokeExact();
+            } catch (Exception | Error E) {
+                throw E;
+            } catch (Throwable T) {
+                throw new UndeclaredThrowableException(T);
+            }
+        }
+
+        @Override
+        void set(Object o) throws Exception {
+            try {
+                setter.invokeExact(o);
+            } catch (ClassCastException | NullPointerException E) {
+                // same as the reflective access.
+                throw new IllegalArgumentException("Can not set " + field.getType().getName() + " field "
+                        + field.getDeclaringClass().getName() + "." + field.getName() + " to "
+                        + (o == null ? "null value" : o.getClass().getName()));
+            } catch (Exception | Error E) {
+                throw E;
+            } catch (Throwable T) {
+                throw new UndeclaredThrowableException(T);
+            }
+        }
+    }
+}
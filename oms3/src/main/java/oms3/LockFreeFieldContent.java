@@ -0,0 +1,132 @@
+/*
+ * $Id$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Data Object for exchange without monitors.
+ *
+ * The value is valid for one step (epoch) of the compound only. Instead
+ * of invalidating all values in between steps, the compound advances the
+ * epoch, values that were set in a previous epoch are not visible any more.
+ * A consumer spins shortly for a missing value, then parks until the
+ * producer sets the value and unparks it.
+ *
+ * @author od
+ * @version $Id$
+ */
+class LockFreeFieldContent extends FieldContent {
+
+    /** The step counter of a compound, shared by all its data objects. */
+    static class Epoch {
+
+        volatile int current;
+
+        void advance() {
+            current++;
+        }
+    }
+
+    /* A parked consumer. */
+    private static final class Waiter {
+
+        final Thread thread = Thread.currentThread();
+        Waiter next;
+    }
+    //
+    private static final int SPINS = 64;
+    //
+    private final Epoch epoch;
+    /* The epoch the value was set in, published after the value. Before the
+     * first step the (null) value is valid, as for the synchronized data. */
+    private volatile int stamp;
+    private Object value;
+    private volatile Object shadow;
+    private final AtomicReference<Waiter> waiters = new AtomicReference<Waiter>();
+
+    LockFreeFieldContent(Epoch epoch) {
+        this.epoch = epoch;
+    }
+
+    @Override
+    void invalidate() {
+        // the epoch takes care of that.
+    }
+
+    @Override
+    void setValue(Object value) {
+        setValue0(value);
+        Waiter w = waiters.getAndSet(null);
+        while (w != null) {
+            LockSupport.unpark(w.thread);
+            w = w.next;
+        }
+    }
+
+    @Override
+    void setValue0(Object value) {
+        this.value = value;
+        shadow = value;
+        stamp = epoch.current;
+    }
+
+    @Override
+    Object getValue() {
+        int e = epoch.current;
+        for (int i = 0; i < SPINS; i++) {
+            if (stamp == e) {
+                return value;
+            }
+        }
+        Waiter w = new Waiter();
+        while (stamp != e) {
+            Waiter head = waiters.get();
+            w.next = head;
+            if (!waiters.compareAndSet(head, w)) {
+                continue;
+            }
+            // the producer might have been done before the push.
+            if (stamp == e) {
+                break;
+            }
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                throw new RuntimeException(new InterruptedException());
+            }
+            w = new Waiter();
+        }
+        return value;
+    }
+
+    @Override
+    Object getValue0() {
+        return value;
+    }
+
+    @Override
+    Object getShadow() {
+        return shadow;
+    }
+}
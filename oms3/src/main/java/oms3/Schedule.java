@@ -0,0 +1,271 @@
+/*
+ * $Id$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Dataflow schedule of the components of a compound.
+ *
+ * The dependencies between the components are taken from the
+ * synchronous &#64;In/&#64;Out connections once. A component is executed when
+ * all the components it depends on are done, so reading the inputs
+ * never blocks. A thread that finishes a component continues with one of
+ * the components that got ready, the others are forked into a work stealing
+ * pool. A linear chain of components is therefore executed in the calling
+ * thread without any thread hand off.
+ *
+ * Feedback and field connections do not create dependencies, they are read
+ * without synchronization as before.
+ *
+ * @author od
+ * @version $Id$
+ */
+class Schedule {
+
+    static ForkJoinPool pool = new ForkJoinPool();
+
+    static class Node {
+
+        final ComponentAccess ca;
+        final Set<Node> succ = new LinkedHashSet<Node>();
+        final AtomicInteger pending = new AtomicInteger();
+        int npred;
+        Node[] next;
+
+        Node(ComponentAccess ca) {
+            this.ca = ca;
+        }
+    }
+
+    /** A forked component, executed by the pool or the waiting thread,
+     * whoever claims it first.
+     */
+    class Task implements Runnable {
+
+        final Node node;
+        final int step;
+        final AtomicBoolean claimed = new AtomicBoolean();
+
+        Task(Node node, int step) {
+            this.node = node;
+            this.step = step;
+        }
+
+        @Override
+        public void run() {
+            if (claimed.compareAndSet(false, true)) {
+                Schedule.this.run(node, step);
+            }
+        }
+    }
+    //
+    final Node[] nodes;
+    final Node[] roots;
+    final AtomicInteger remaining = new AtomicInteger();
+    final ConcurrentLinkedQueue<Task> forked = new ConcurrentLinkedQueue<Task>();
+    final Object lock = new Object();
+    volatile boolean waiting;
+    volatile int step;
+    volatile ComponentException E;
+
+    Schedule(Collection<ComponentAccess> comps) {
+        nodes = new Node[comps.size()];
+        Map<FieldContent, Node> producer = new IdentityHashMap<FieldContent, Node>();
+        int i = 0;
+        for (ComponentAccess ca : comps) {
+            Node n = nodes[i++] = new Node(ca);
+            for (Access a : ca.outputs()) {
+                FieldContent data = data(a);
+                if (data != null) {
+                    producer.put(data, n);
+                }
+            }
+        }
+        for (Node n : nodes) {
+            for (Access a : n.ca.inputs()) {
+                if (a.getClass() == FieldAccess.class) {
+                    Node p = producer.get(((FieldAccess) a).data);
+                    if (p != null && p != n) {
+                        p.succ.add(n);
+                    }
+                }
+            }
+        }
+        List<Node> r = new ArrayList<Node>();
+        for (Node n : nodes) {
+            n.next = n.succ.toArray(new Node[n.succ.size()]);
+            for (Node s : n.next) {
+                s.npred++;
+            }
+        }
+        for (Node n : nodes) {
+            if (n.npred == 0) {
+                r.add(n);
+            }
+        }
+        roots = r.toArray(new Node[r.size()]);
+        checkCircular();
+    }
+
+    // the data of a synchronous output, null if not connected.
+    private static FieldContent data(Access a) {
+        if (a.getClass() == AsyncFieldAccess.class) {
+            a = ((AsyncFieldAccess) a).fa;
+        }
+        return a.getClass() == FieldAccess.class ? ((FieldAccess) a).data : null;
+    }
+
+    private void checkCircular() {
+        int[] pending = new int[nodes.length];
+        Map<Node, Integer> idx = new IdentityHashMap<Node, Integer>();
+        for (int i = 0; i < nodes.length; i++) {
+            pending[i] = nodes[i].npred;
+            idx.put(nodes[i], i);
+        }
+        List<Node> ready = new ArrayList<Node>();
+        for (Node n : roots) {
+            ready.add(n);
+        }
+        int done = 0;
+        while (!ready.isEmpty()) {
+            Node n = ready.remove(ready.size() - 1);
+            done++;
+            for (Node s : n.next) {
+                if (--pending[idx.get(s)] == 0) {
+                    ready.add(s);
+                }
+            }
+        }
+        if (done < nodes.length) {
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < nodes.length; i++) {
+                if (pending[i] > 0) {
+                    b.append(' ').append(nodes[i].ca.getComponent());
+                }
+            }
+            throw new ComponentException("Circular reference between:" + b);
+        }
+    }
+
+    /**
+     * Execute all components once.
+     *
+     * @return the first failure of a component, or null.
+     */
+    ComponentException exec() {
+        if (nodes.length == 0) {
+            return null;
+        }
+        int s = ++step;
+        E = null;
+        for (Node n : nodes) {
+            n.pending.set(n.npred);
+        }
+        remaining.set(nodes.length);
+        for (int i = 1; i < roots.length; i++) {
+            fork(roots[i], s);
+        }
+        run(roots[0], s);
+
+        // help with the forked components, wait for the running ones.
+        while (remaining.get() > 0 && E == null) {
+            Task t = forked.poll();
+            if (t != null) {
+                t.run();
+                continue;
+            }
+            synchronized (lock) {
+                waiting = true;
+                while (remaining.get() > 0 && E == null && forked.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        // nothing to do here.
+                    }
+                }
+                waiting = false;
+            }
+        }
+        forked.clear();
+        return E;
+    }
+
+    private void fork(Node n, int s) {
+        Task t = new Task(n, s);
+        forked.add(t);
+        if (waiting) {
+            signal();
+        }
+        pool.execute(t);
+    }
+
+    private void signal() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    void run(Node n, int s) {
+        while (n != null) {
+            if (E != null || s != step) {
+                return;
+            }
+            try {
+                n.ca.exec();
+            } catch (Throwable T) {
+                synchronized (lock) {
+                    if (E == null) {
+                        E = (T instanceof ComponentException) ? (ComponentException) T
+                                : new ComponentException(T, n.ca.getComponent());
+                    }
+                    lock.notifyAll();
+                }
+                return;
+            }
+            Node next = null;
+            for (Node succ : n.next) {
+                if (succ.pending.decrementAndGet() == 0) {
+                    if (next == null) {
+                        next = succ;
+                    } else {
+                        fork(succ, s);
+                    }
+                }
+            }
+            if (remaining.decrementAndGet() == 0) {
+                signal();
+            }
+            n = next;
+        }
+    }
+}
@@ -6,7 +6,11 @@ package oms3;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import oms3.gen.MethodInvoker;
 import oms3.compiler.Compiler;
 import java.lang.reflect.Method;
@@ -57,6 +61,49 @@ public class Utils {
         };
     }
 
+    /** Invocation through a method handle bound to the target.
+     * Failures of the method are reported as
+     * <code>InvocationTargetException</code>, like the reflective invocation.
+     *
+     * @param target
+     * @param method
+     * @return
+     */
+    static MethodInvoker handle(final Object target, final Method method) {
+        final MethodHandle mh;
+        try {
+            mh = MethodHandles.lookup().unreflect(method).bindTo(target).asType(MethodType.methodType(void.class));
+        } catch (IllegalAccessException E) {
+            return reflective(target, method);
+        }
+        return new MethodInvoker() {
+
+            @Override
+            public void invoke() throws Exception {
+                try {
+                    mh.invokeExact();
+                } catch (Throwable T) {
+                    throw new InvocationTargetException(T);
+                }
+            }
+
+            @Override
+            public void setTarget(Object target) {
+            }
+        };
+    }
+
+    /** The invocation of a component method, by method handle unless
+     * the reflective access is selected with <code>oms3.access=reflective</code>.
+     *
+     * @param target
+     * @param method
+     * @return
+     */
+    static MethodInvoker invoker(Object target, Method method) {
+        return FieldHandle.REFLECTIVE ? reflective(target, method) : handle(target, method);
+    }
+
     static MethodInvoker compiled(Object target, Method method) {
         try {
             Compiler tc = Compiler.singleton(null);
@@ -148,6 +148,25 @@ public class Output implements Buildable {
         return LEAF;
     }
 
+    /**
+     * Creates an output with the same settings, to set up for another
+     * model instance.
+     *
+     * @return the copy of this output.
+     */
+    public Output copy() {
+        Output copy = new Output();
+        copy.file = file;
+        copy.fformat = fformat;
+        copy.dformat = dformat;
+        copy.dfmt = (SimpleDateFormat) dfmt.clone();
+        for (V v : vars) {
+            copy.vars.add(copy.new V(v.token, v.name, v.idx));
+        }
+        copy.d.addAll(d);
+        return copy;
+    }
+
     public void setup(Object comp, File dir, final String header) throws IOException {
         printHeader = true;
         if (!dir.exists()) {
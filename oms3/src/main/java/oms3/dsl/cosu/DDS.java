@@ -11,17 +11,12 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import oms3.Notification.*;
 import ngmf.util.OutputStragegy;
-import ngmf.util.cosu.luca.ParameterData;
-import oms3.ComponentAccess;
+import ngmf.util.cosu.PopulationEvaluator;
 import oms3.Conversions;
-import oms3.annotations.Execute;
-import oms3.annotations.Finalize;
-import oms3.annotations.Initialize;
 import oms3.io.CSTable;
 import oms3.io.DataIO;
 
@@ -36,6 +31,7 @@ public class DDS extends AbstractSimulation {
     Params params = new Params();
     Date sens_start;
     Date sens_end;
+    int threads = 1;
     
      List<ObjFunc> ofs = new ArrayList<ObjFunc>();
 
@@ -57,6 +53,11 @@ public class DDS extends AbstractSimulation {
             if (terms != 4 && terms != 6) {
                 throw new IllegalArgumentException("terms 4 or 6 !");
             }
+        } else if (name.equals("threads")) {
+            threads = (Integer) value;
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads: " + threads);
+            }
         } else if (name.equals("sens_start")) {
             sens_start = Conversions.convert(value, Date.class);
         } else if (name.equals("sens_end")) {
@@ -79,13 +80,20 @@ public class DDS extends AbstractSimulation {
 
         ObjFunc.adjustWeights(ofs);
 
-        run(getModel(), getOut(), lastFolder, getName());
+        // the realizations are executed on isolated model instances
+        PopulationEvaluator evaluator = new PopulationEvaluator(SimulationRun.create(threads, getModel(), params,
+                getOut(), lastFolder, getName(), ofs, sens_start, sens_end));
+        try {
+            run(evaluator);
+        } finally {
+            evaluator.shutdown();
+        }
 
         return null;
     }
 
     /// DDS
-    void run(Model model, List<Output> out, File folder, String name) throws Exception {
+    void run(PopulationEvaluator evaluator) throws Exception {
 
         List<Param> pList = params.getParam();
 
@@ -144,7 +152,11 @@ public class DDS extends AbstractSimulation {
                     Param par = pList.get(i);
                     x[j][i] = p * (par.getUpper() - par.getLower()) + par.getLower();
                 }
-                y[j] = run_model(model, out, folder, name, x[j]);
+            }
+            // the realizations are independent
+            double[] of = evaluator.evaluate(x);
+            for (int j = 0; j < N; j++) {
+                y[j] = of[j];
                 System.out.println("par:" + h + " N:" + j + " of:" + y[j]);
             }
             // Compute total variance
@@ -204,56 +216,4 @@ public class DDS extends AbstractSimulation {
         b.append('\n');
         System.out.println(b.toString());
     }
-
-    private double run_model(Model model, List<Output> out, File folder, String simName, double[] x) throws Exception {
-
-        Map<String, Object> parameter = model.getParameter();
-        Object comp = model.getComponent();
-
-        // spatial params
-        ParameterData[] pd = Step.create(params, parameter);
-        for (int i = 0; i < pd.length; i++) {
-            pd[i].generateValues(x[i]);
-        }
-
-        for (int i = 0; i < pd.length; i++) {
-            String name = pd[i].getName();
-            double[] val = pd[i].getDataValue();
-            parameter.put(name, toValue(name, val, parameter));
-        }
-
-        ComponentAccess.callAnnotated(comp, Initialize.class, true);
-
-        // setting the input data;
-        boolean success = ComponentAccess.setInputData(parameter, comp, log);
-        if (!success) {
-            throw new RuntimeException("There are Parameter problems. Simulation exits.");
-        }
-
-        ComponentAccess.adjustOutputPath(folder, comp, log);
-        for (Output e : out) {
-            e.setup(comp, folder, simName);
-        }
-        // execute phases and be done.
-        log.config("Exec ...");
-        ComponentAccess.callAnnotated(comp, Execute.class, false);
-        log.config("Finalize ...");
-        ComponentAccess.callAnnotated(comp, Finalize.class, true);
-
-        for (Output e : out) {
-            e.done();
-        }
-
-        return ObjFunc.calculateObjectiveFunctionValue(ofs, sens_start, sens_end, folder);
-    }
-
-    private Object toValue(String name, double[] vals, Map<String, Object> parameter) {
-        Object orig = parameter.get(name);
-        if (orig.toString().indexOf('{') > -1) {
-            // this is an array (hopefully 1dim)
-            return Conversions.convert(vals, String.class);
-        } else {
-            return Double.toString(vals[0]);
-        }
-    }
 }
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import ngmf.util.OutputStragegy;
@@ -35,6 +36,8 @@ public class Luca extends AbstractSimulation {
     //
     Date calib_start;           // Calibration start date
     int rounds = 1;             // number of rounds
+    int threads = 1;            // number of model instances executed at the same time
+    Long seed;                  // seed of the random streams, to repeat a calibration
 
     @Override
     public Buildable create(Object name, Object value) {
@@ -47,6 +50,13 @@ public class Luca extends AbstractSimulation {
             if (rounds < 1) {
                 throw new ComponentException("Illegal 'rounds': " + rounds);
             }
+        } else if (name.equals("threads")) {
+            threads = (Integer) value;
+            if (threads < 1) {
+                throw new ComponentException("Illegal 'threads': " + threads);
+            }
+        } else if (name.equals("seed")) {
+            seed = ((Number) value).longValue();
         } else if (name.equals("calibration_start")) {
             calib_start = Conversions.convert(value, Date.class);
         } else {
@@ -77,12 +87,22 @@ public class Luca extends AbstractSimulation {
             step.init(exec, calib_start, endTime, rounds);
         }
 
+        Random random = seed == null ? null : new Random(seed);
         for (int r = 0; r < rounds; r++) {
             for (int s = 0; s < steps.size(); s++) {
                 Step step = steps.get(s);
                 Data stepData = step.round()[r];
                 System.out.println("\n\n>>>>>>>>>>>>>>  Round [" + (r + 1) + "]  Step [" + step.getName() + "] <<<<<<<<<<<<<<");
-                SCE sce = new SCE(exec, step, stepData);
+                // the other model instances start from the parameter of the previous steps
+                List<ModelExecution> execs = new ArrayList<ModelExecution>(threads);
+                execs.add(exec);
+                for (int i = 1; i < threads; i++) {
+                    execs.add(new ModelExecution(exec, i));
+                }
+                SCE sce = new SCE(execs, step, stepData);
+                if (random != null) {
+                    sce.setSeed(random.nextLong());
+                }
                 sce.run();
                 exec.writeParameterCopy(step, r);
                 step.post(r, stepData);
@@ -97,6 +117,7 @@ public class Luca extends AbstractSimulation {
 
         File lastFolder;
         Map<String, Object> parameter;
+        List<Output> out;
 
         public ModelExecution() throws IOException {
             OutputStragegy st = getOutput().getOutputStrategy(getName());
@@ -107,9 +128,24 @@ public class Luca extends AbstractSimulation {
             lastFolder.mkdirs();
 
             parameter = getModel().getParameter();
+            out = getOut();
             Logger.getLogger("oms3.model").setLevel(Level.WARNING);
         }
 
+        /**
+         * Creates another model instance, with a copy of the parameter
+         * and of the outputs in a sub folder of the simulation output folder.
+         */
+        ModelExecution(ModelExecution main, int worker) {
+            lastFolder = new File(main.lastFolder, "worker-" + worker);
+            lastFolder.mkdirs();
+            parameter = DataIO.properties(main.parameter);
+            out = new ArrayList<Output>(main.out.size());
+            for (Output e : main.out) {
+                out.add(e.copy());
+            }
+        }
+
         Map<String, Object> getParameter() {
             return parameter;
         }
@@ -126,7 +162,10 @@ public class Luca extends AbstractSimulation {
                 }
             }
 
-            Object comp = getModel().getComponent();
+            Object comp;
+            synchronized (getModel()) {
+                comp = getModel().getComponent();
+            }
 
             writeParameterFile(step);
             log.config("Init ...");
@@ -140,7 +179,7 @@ public class Luca extends AbstractSimulation {
 
             boolean adjusted = ComponentAccess.adjustOutputPath(lastFolder, comp, log);
 
-            for (Output e : getOut()) {
+            for (Output e : out) {
                 e.setup(comp, lastFolder, getName());
             }
             // execute phases and be done.
@@ -149,7 +188,7 @@ public class Luca extends AbstractSimulation {
             log.config("Finalize ...");
             ComponentAccess.callAnnotated(comp, Finalize.class, true);
 
-            for (Output e : getOut()) {
+            for (Output e : out) {
                 e.done();
             }
         }
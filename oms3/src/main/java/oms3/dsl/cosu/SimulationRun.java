@@ -0,0 +1,127 @@
+package oms3.dsl.cosu;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import ngmf.util.cosu.ModelRun;
+import ngmf.util.cosu.luca.ParameterData;
+import oms3.ComponentAccess;
+import oms3.Conversions;
+import oms3.annotations.Execute;
+import oms3.annotations.Finalize;
+import oms3.annotations.Initialize;
+import oms3.dsl.Model;
+import oms3.dsl.Output;
+import oms3.dsl.Params;
+
+/**
+ * A model instance of a sensitivity analysis, with its own parameter,
+ * outputs and output folder.
+ *
+ * @author od
+ */
+class SimulationRun implements ModelRun {
+
+    private static final Logger log = Logger.getLogger("oms3.sim");
+    //
+    Model model;
+    Map<String, Object> parameter;
+    ParameterData[] pd;
+    List<Output> out;
+    File folder;
+    String simName;
+    List<ObjFunc> ofs;
+    Date start;
+    Date end;
+
+    SimulationRun(Model model, Params params, List<Output> out, File folder, String simName,
+            List<ObjFunc> ofs, Date start, Date end) throws IOException {
+        this.model = model;
+        this.out = out;
+        this.folder = folder;
+        this.simName = simName;
+        this.ofs = ofs;
+        this.start = start;
+        this.end = end;
+        parameter = model.getParameter();
+        pd = Step.create(params, parameter);
+    }
+
+    /**
+     * Creates the model instances for a number of threads. The first one uses
+     * the output folder and the outputs of the simulation, the others a sub folder
+     * and a copy of the outputs.
+     */
+    static List<SimulationRun> create(int threads, Model model, Params params, List<Output> out, File folder,
+            String simName, List<ObjFunc> ofs, Date start, Date end) throws IOException {
+        List<SimulationRun> runs = new ArrayList<SimulationRun>(threads);
+        runs.add(new SimulationRun(model, params, out, folder, simName, ofs, start, end));
+        for (int i = 1; i < threads; i++) {
+            List<Output> outCopy = new ArrayList<Output>(out.size());
+            for (Output e : out) {
+                outCopy.add(e.copy());
+            }
+            File workerFolder = new File(folder, "worker-" + i);
+            workerFolder.mkdirs();
+            runs.add(new SimulationRun(model, params, outCopy, workerFolder, simName, ofs, start, end));
+        }
+        return runs;
+    }
+
+    @Override
+    public double evaluate(double[] x) throws Exception {
+        Object comp;
+        synchronized (model) {
+            comp = model.getComponent();
+        }
+
+        // spatial params
+        for (int i = 0; i < pd.length; i++) {
+            pd[i].generateValues(x[i]);
+        }
+
+        for (int i = 0; i < pd.length; i++) {
+            String name = pd[i].getName();
+            double[] val = pd[i].getDataValue();
+            parameter.put(name, toValue(name, val));
+        }
+
+        ComponentAccess.callAnnotated(comp, Initialize.class, true);
+
+        // setting the input data;
+        boolean success = ComponentAccess.setInputData(parameter, comp, log);
+        if (!success) {
+            throw new RuntimeException("There are Parameter problems. Simulation exits.");
+        }
+
+        ComponentAccess.adjustOutputPath(folder, comp, log);
+        for (Output e : out) {
+            e.setup(comp, folder, simName);
+        }
+        // execute phases and be done.
+        log.config("Exec ...");
+        ComponentAccess.callAnnotated(comp, Execute.class, false);
+        log.config("Finalize ...");
+        ComponentAccess.callAnnotated(comp, Finalize.class, true);
+
+        for (Output e : out) {
+            e.done();
+        }
+
+        return ObjFunc.calculateObjectiveFunctionValue(ofs, start, end, folder);
+    }
+
+    private Object toValue(String name, double[] vals) {
+        Object orig = parameter.get(name);
+        if (orig.toString().indexOf('{') > -1) {
+            // this is an array (hopefully 1dim)
+            return Conversions.convert(vals, String.class);
+        } else {
+            return Double.toString(vals[0]);
+        }
+    }
+}
@@ -153,6 +153,31 @@ public class Step implements Buildable {
         ParameterData[] paramData;
         ParameterData[] bestParamData;
 
+        /**
+         * Creates a copy of the data, for a model instance executed at the same time.
+         *
+         * @return the copy.
+         */
+        public Data copy() {
+            Data copy = new Data();
+            copy.round = round;
+            copy.bestOFPoint = bestOFPoint;
+            copy.upperBound = upperBound.clone();
+            copy.lowerBound = lowerBound.clone();
+            copy.paramValues = paramValues.clone();
+            copy.paramData = copy(paramData);
+            copy.bestParamData = bestParamData == null ? null : copy(bestParamData);
+            return copy;
+        }
+
+        private static ParameterData[] copy(ParameterData[] source) {
+            ParameterData[] copy = new ParameterData[source.length];
+            for (int i = 0; i < source.length; i++) {
+                copy[i] = new ParameterData(source[i]);
+            }
+            return copy;
+        }
+
         public void createBestParamData() {
             bestParamData = new ParameterData[paramData.length];
             for (int i = 0; i < bestParamData.length; i++) {
@@ -345,7 +370,9 @@ public class Step implements Buildable {
     }
 
     public double calculateObjectiveFunctionValue(ExecutionHandle executionHandle) {
-        return ObjFunc.calculateObjectiveFunctionValue(ofs, calibStart, calibEnd, outFolder);
+        // every model instance writes its output in its own folder
+        File folder = executionHandle instanceof ModelExecution ? ((ModelExecution) executionHandle).lastFolder : outFolder;
+        return ObjFunc.calculateObjectiveFunctionValue(ofs, calibStart, calibEnd, folder);
     }
 
 //    public static void main(String[] args) {
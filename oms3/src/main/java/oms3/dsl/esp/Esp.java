@@ -7,10 +7,17 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import ngmf.util.OutputStragegy;
 import oms3.ComponentAccess;
+import oms3.ComponentException;
 import oms3.Compound;
 import oms3.Conversions;
 import oms3.annotations.Execute;
@@ -18,6 +25,7 @@ import oms3.annotations.Finalize;
 import oms3.annotations.Initialize;
 import oms3.io.CSTable;
 import oms3.io.DataIO;
+import oms3.io.MemoryTable;
 import oms3.util.Times;
 
 public class Esp extends AbstractSimulation {
@@ -28,6 +36,10 @@ public class Esp extends AbstractSimulation {
     //
     int fc;
     Calendar fc_end;
+    // traces executed at the same time
+    int threads = 1;
+    // memory needed by a single trace in MB, bounds the threads.
+    int trace_memory;
 
     @Override
     public Buildable create(Object name, Object value) {
@@ -44,6 +56,16 @@ public class Esp extends AbstractSimulation {
             first_year = (Integer) value;
         } else if (name.equals("last_year")) {
             last_year = (Integer) value;
+        } else if (name.equals("threads")) {
+            threads = (Integer) value;
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads: " + threads);
+            }
+        } else if (name.equals("trace_memory")) {
+            trace_memory = (Integer) value;
+            if (trace_memory < 1) {
+                throw new IllegalArgumentException("trace_memory: " + trace_memory);
+            }
         } else {
             return super.create(name, value);
         }
@@ -83,36 +105,18 @@ public class Esp extends AbstractSimulation {
         }
         lastFolder.mkdirs();
         PrintWriter res = new PrintWriter(new File(lastFolder, "result.csv"));
-        res.println("@S, Result");
-
-        Calendar start = null;
-        Calendar end = null;
-
-        System.out.print(" Running ESP Traces ");
-        for (int year = first_year; year <= last_year; year++) {
-            System.out.print(" " + year);
+        try {
+            res.println("@S, Result");
 
-            Object comp = getModel().getComponent();
-            log.config("Init ...");
-            ComponentAccess.callAnnotated(comp, Initialize.class, true);
-
-            // setting the input data;
-            Map<String, Object> parameter = getModel().getParameter();
-            boolean success = ComponentAccess.setInputData(parameter, comp, log);
-            if (!success) {
+            final File folder = lastFolder;
+            final Object first = setup(folder);
+            if (first == null) {
                 System.out.println("There are Parameter problems. Simulation exits.");
                 return null;
             }
-
-            boolean adjusted = ComponentAccess.adjustOutputPath(lastFolder, comp, log);
-            if (adjusted) {
-                lastFolder.mkdirs();
-            }
-
-            start = (Calendar) comp.getClass().getField("startTime").get(comp);
-            end = (Calendar) comp.getClass().getField("endTime").get(comp);
-            File input_file = (File) comp.getClass().getField("inputFile").get(comp);
-            File out_file = (File) comp.getClass().getField("outFile").get(comp);
+            final Calendar start = (Calendar) first.getClass().getField("startTime").get(first);
+            final Calendar end = (Calendar) first.getClass().getField("endTime").get(first);
+            File input_file = (File) first.getClass().getField("inputFile").get(first);
             if (start.after(end)) {
                 throw new IllegalArgumentException("illegal startTime/endTime.");
             }
@@ -125,34 +129,129 @@ public class Esp extends AbstractSimulation {
                 fc_end.add(Calendar.DATE, fc);
             }
 
-            CSTable t = DataIO.table(input_file, "obs");
-            CSTable esp = DataIO.synthESPInput(t, start.getTime(), end.getTime(), fc, year);
-            File new_input_file = new File(lastFolder, "esp-" + year + "-" + input_file.getName());
-            PrintWriter w = new PrintWriter(new_input_file);
-            DataIO.print(esp, w);
-            w.close();
-
-            File new_outFile = new File(out_file.getParent(), "esp-" + year + "-" + out_file.getName());
-
-            comp.getClass().getField("inputFile").set(comp, new_input_file);
-            comp.getClass().getField("outFile").set(comp, new_outFile);
-            comp.getClass().getField("endTime").set(comp, fc_end);
-
-            // execute phases and be done.
-            log.config("Exec ...");
-            ComponentAccess.callAnnotated(comp, Execute.class, false);
-            log.config("Finalize ...");
-            ComponentAccess.callAnnotated(comp, Finalize.class, true);
-            res.println(" trace." + year + ", \"" + new_outFile.toString() + "\"");
+            // the observed data are read once and shared by all traces.
+            final CSTable t = new MemoryTable(DataIO.table(input_file, "obs"));
+
+            int traces = last_year - first_year + 1;
+            int n = threads(traces);
+            System.out.print(" Running ESP Traces (" + n + (n == 1 ? " thread)" : " threads)"));
+            ExecutorService executor = Executors.newFixedThreadPool(n);
+            try {
+                CompletionService<Integer> ecs = new ExecutorCompletionService<Integer>(executor);
+                final File[] outFiles = new File[traces];
+                for (int year = first_year; year <= last_year; year++) {
+                    final int y = year;
+                    ecs.submit(new Callable<Integer>() {
+
+                        @Override
+                        public Integer call() throws Exception {
+                            Object comp = (y == first_year) ? first : setup(folder);
+                            if (comp == null) {
+                                throw new ComponentException("There are Parameter problems.");
+                            }
+                            outFiles[y - first_year] = trace(comp, t, start, end, y, folder);
+                            System.out.print(" " + y);
+                            return y;
+                        }
+                    });
+                }
+                // traces are taken as they finish, the first failure
+                // interrupts the running ones (see finally).
+                for (int i = 0; i < traces; i++) {
+                    try {
+                        ecs.take().get();
+                    } catch (ExecutionException E) {
+                        Throwable cause = E.getCause();
+                        throw (cause instanceof Exception) ? (Exception) cause : E;
+                    }
+                }
+                for (int i = 0; i < traces; i++) {
+                    res.println(" trace." + (first_year + i) + ", \"" + outFiles[i] + "\"");
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            res.println(" initstart, " + Conversions.formatISO(start.getTime()));
+            res.println(" initend, " + Conversions.formatISO(end.getTime()));
+            res.println(" forecastend, " + Conversions.formatISO(fc_end.getTime()));
+            res.println(" firstyear, " + first_year);
+            res.println(" lastyear, " + last_year);
+            System.out.println();
+        } finally {
+            res.close();
+            Compound.shutdown();
         }
-        res.println(" initstart, " + Conversions.formatISO(start.getTime()));
-        res.println(" initend, " + Conversions.formatISO(end.getTime()));
-        res.println(" forecastend, " + Conversions.formatISO(fc_end.getTime()));
-        res.println(" firstyear, " + first_year);
-        res.println(" lastyear, " + last_year);
-        res.close();
-        System.out.println();
-        Compound.shutdown();
         return null;
     }
+
+    /**
+     * The number of traces to run at the same time, bound by the
+     * free memory if the memory of a trace is known.
+     */
+    private int threads(int traces) {
+        int n = Math.min(threads, traces);
+        if (trace_memory > 0) {
+            Runtime rt = Runtime.getRuntime();
+            long free = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+            n = (int) Math.max(1, Math.min(n, free / (trace_memory * 1024L * 1024L)));
+        }
+        return n;
+    }
+
+    /**
+     * Creates a model instance with the parameter set.
+     *
+     * @return the model component or null if there are parameter problems.
+     */
+    private Object setup(File lastFolder) throws Exception {
+        Object comp;
+        Map<String, Object> parameter;
+        synchronized (getModel()) {
+            comp = getModel().getComponent();
+            parameter = getModel().getParameter();
+        }
+        log.config("Init ...");
+        ComponentAccess.callAnnotated(comp, Initialize.class, true);
+
+        // setting the input data;
+        boolean success = ComponentAccess.setInputData(parameter, comp, log);
+        if (!success) {
+            return null;
+        }
+
+        boolean adjusted = ComponentAccess.adjustOutputPath(lastFolder, comp, log);
+        if (adjusted) {
+            lastFolder.mkdirs();
+        }
+        return comp;
+    }
+
+    /**
+     * Runs a single trace on its own model instance.
+     *
+     * @return the output file of the trace.
+     */
+    private File trace(Object comp, CSTable t, Calendar start, Calendar end, int year, File lastFolder) throws Exception {
+        File input_file = (File) comp.getClass().getField("inputFile").get(comp);
+        File out_file = (File) comp.getClass().getField("outFile").get(comp);
+
+        CSTable esp = DataIO.synthESPInput(t, start.getTime(), end.getTime(), fc, year);
+        File new_input_file = new File(lastFolder, "esp-" + year + "-" + input_file.getName());
+        PrintWriter w = new PrintWriter(new_input_file);
+        DataIO.print(esp, w);
+        w.close();
+
+        File new_outFile = new File(out_file.getParent(), "esp-" + year + "-" + out_file.getName());
+
+        comp.getClass().getField("inputFile").set(comp, new_input_file);
+        comp.getClass().getField("outFile").set(comp, new_outFile);
+        comp.getClass().getField("endTime").set(comp, fc_end.clone());
+
+        // execute phases and be done.
+        log.config("Exec ...");
+        ComponentAccess.callAnnotated(comp, Execute.class, false);
+        log.config("Finalize ...");
+        ComponentAccess.callAnnotated(comp, Finalize.class, true);
+        return new_outFile;
+    }
 }
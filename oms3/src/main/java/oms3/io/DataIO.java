@@ -414,8 +414,8 @@ public class DataIO {
         fcStartCal.add(Calendar.DATE, 1);
         Date fcStart = fcStartCal.getTime();
 
-        // get the initialization period
-        MemoryTable t = new MemoryTable(table);
+        // get the initialization period, a table in memory can be shared.
+        MemoryTable t = (table instanceof MemoryTable) ? (MemoryTable) table : new MemoryTable(table);
         int iniStartRow = findRowByDate(iniStart, dateColumn, t);
         int iniEndRow = findRowByDate(iniEnd, dateColumn, t);
         List<String[]> iniRows = t.getRows(iniStartRow, iniEndRow);
@@ -432,12 +432,11 @@ public class DataIO {
         List<String[]> histRows = t.getRows(histStartRow, histEndRow);
 
         // create the new Table.
-        MemoryTable espTable = new MemoryTable(table);
+        MemoryTable espTable = new MemoryTable(table, true);
         espTable.getInfo().put(DATE_START, hfmt.format(iniStart));
         espTable.getInfo().put(KEY_FC_START, hfmt.format(fcStart));
         espTable.getInfo().put(KEY_FC_DAYS, Integer.toString(fcDays));
         espTable.getInfo().put(KEY_HIST_YEAR, Integer.toString(year));
-        espTable.clearRows();
         espTable.addRows(iniRows);
         espTable.addRows(histRows);
 
@@ -0,0 +1,139 @@
+/*
+ * $Id$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Out;
+import oms3.gen.MethodInvoker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reflective vs. method handle access to components.
+ *
+ * Measures the work done on a component for every time step: setting
+ * the @In fields, calling @Execute and reading the @Out fields.
+ * Run it with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=oms3.AccessBenchmark
+ * </pre>
+ *
+ * @author od
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AccessBenchmark {
+
+    /** A small time stepping component. */
+    public static class Step {
+
+        @In public double value;
+        @In public Double factor;
+        @In public int steps;
+        @Out public double result;
+        @Out public Double total;
+
+        @Execute
+        public void execute() {
+            result = value * factor;
+            total = result + steps;
+        }
+    }
+
+    @Param({"reflective", "handle"})
+    String access;
+    //
+    Step comp;
+    FieldHandle value;
+    FieldHandle factor;
+    FieldHandle steps;
+    FieldHandle result;
+    FieldHandle total;
+    MethodInvoker exec;
+    //
+    double v;
+    Double f = 1.5;
+    Integer s = 10;
+
+    @Setup
+    public void setup() throws Exception {
+        comp = new Step();
+        value = field("value");
+        factor = field("factor");
+        steps = field("steps");
+        result = field("result");
+        total = field("total");
+        Method execute = Step.class.getMethod("execute");
+        exec = access.equals("handle") ? Utils.handle(comp, execute) : Utils.reflective(comp, execute);
+    }
+
+    FieldHandle field(String name) throws Exception {
+        if (access.equals("handle")) {
+            return new FieldHandle.Bound(comp, Step.class.getField(name));
+        }
+        return new FieldHandle.Reflective(comp, Step.class.getField(name));
+    }
+
+    @Benchmark
+    public Object setAndGet() throws Exception {
+        value.set(v++);
+        return value.get();
+    }
+
+    @Benchmark
+    public Object step() throws Exception {
+        value.set(v++);
+        factor.set(f);
+        steps.set(s);
+        exec.invoke();
+        result.get();
+        return total.get();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder().include(AccessBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+}